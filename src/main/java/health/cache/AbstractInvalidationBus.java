@@ -0,0 +1,58 @@
+package health.cache;
+
+import health.models.EntityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Listener registry and local dispatch shared by the bus implementations.
+ */
+@Slf4j
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+
+    private final Map<EntityType, List<Consumer<EntityChange>>> listeners = new EnumMap<>(EntityType.class);
+
+    protected AbstractInvalidationBus() {
+        for (EntityType type : EntityType.values()) {
+            listeners.put(type, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    @Override
+    public void subscribe(EntityType type, Consumer<EntityChange> listener) {
+        listeners.get(type).add(listener);
+    }
+
+    /**
+     * Notifies local listeners right away, or after commit when called inside a transaction.
+     */
+    protected void dispatchAfterCommit(EntityChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatch(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatch(change);
+            }
+        });
+    }
+
+    protected void dispatch(EntityChange change) {
+        for (Consumer<EntityChange> listener : listeners.get(change.type())) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                log.warn("Invalidation listener failed for {}", change, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package health.cache;
+
+import health.models.dto.MessageDto;
+import health.models.mapper.MessageMapper;
+import health.realtime.MessageCreatedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latest messages of recently used chats in memory as {@link MessageRing}s.
+ * <p>
+ * A ring is only trusted when it reaches the chat's current {@code lastMessageSeq}, which callers
+ * read from the chat row they load anyway. Messages written on other nodes therefore turn into a
+ * miss and a reload instead of a stale answer, with no invalidation traffic.
+ * <p>
+ * Chats are kept in access order and the least recently used ones are dropped once the estimated
+ * size of all rings exceeds {@code health.chat.tail.max-bytes}.
+ * <p>
+ * The cache monitor only covers the chat map and the size accounting. Reads copy messages out of a
+ * ring under the ring's own monitor, so reads of different chats do not wait for each other; changes
+ * of a ring take the cache monitor first, then the ring's.
+ */
+@Component
+public class ChatTailCache implements MeterBinder {
+
+    private final Map<Long, MessageRing> rings = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final MessageMapper messageMapper;
+    private final int capacity;
+    private final long maxBytes;
+    private long bytes;
+
+    public ChatTailCache(
+            MessageMapper messageMapper,
+            @Value("${health.chat.tail.size:64}") int capacity,
+            @Value("${health.chat.tail.max-bytes:67108864}") long maxBytes) {
+        this.messageMapper = messageMapper;
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns up to {@code limit} messages right before {@code beforeSeq}, oldest first,
+     * or empty if the ring is missing, stale or does not reach back far enough.
+     */
+    public Optional<List<MessageDto>> getBefore(long chatId, long lastMessageSeq, long beforeSeq, int limit) {
+        var ring = ring(chatId);
+        if (ring != null) {
+            synchronized (ring) {
+                if (ring.getLastSeq() >= lastMessageSeq) {
+                    long to = Math.min(beforeSeq - 1, ring.getLastSeq());
+                    long from = Math.max(1, to - limit + 1);
+                    if (to < 1 || from >= ring.getFirstSeq()) {
+                        return hit(ring.range(from, to));
+                    }
+                }
+            }
+        }
+        return miss();
+    }
+
+    /**
+     * Returns up to {@code limit} messages after {@code afterSeq}, oldest first,
+     * or empty if the ring is missing, stale or starts after {@code afterSeq + 1}.
+     */
+    public Optional<List<MessageDto>> getAfter(long chatId, long lastMessageSeq, long afterSeq, int limit) {
+        var ring = ring(chatId);
+        if (ring != null) {
+            synchronized (ring) {
+                if (ring.getLastSeq() >= lastMessageSeq && (afterSeq + 1 >= ring.getFirstSeq() || afterSeq >= ring.getLastSeq())) {
+                    return hit(ring.range(afterSeq + 1, afterSeq + limit));
+                }
+            }
+        }
+        return miss();
+    }
+
+    /**
+     * Returns the whole chat history if it still fits in the ring.
+     */
+    public Optional<List<MessageDto>> getAll(long chatId, long lastMessageSeq) {
+        var ring = ring(chatId);
+        if (ring != null) {
+            synchronized (ring) {
+                if (ring.getLastSeq() >= lastMessageSeq && ring.isComplete()) {
+                    return hit(ring.range(1, ring.getLastSeq()));
+                }
+            }
+        }
+        return miss();
+    }
+
+    /**
+     * Stores the newest messages of a chat loaded from the database.
+     * An existing ring that is already further ahead is kept.
+     *
+     * @param messages Up to {@link #getCapacity()} newest messages in ascending seq order
+     * @param lastSeq Seq of the newest message of the chat
+     */
+    public void load(long chatId, List<MessageDto> messages, long lastSeq) {
+        var tail = messages.size() > capacity ? messages.subList(messages.size() - capacity, messages.size()) : messages;
+        var ring = MessageRing.of(capacity, tail, lastSeq);
+        synchronized (this) {
+            var current = rings.get(chatId);
+            if (current != null) {
+                synchronized (current) {
+                    if (current.getLastSeq() >= lastSeq) {
+                        return;
+                    }
+                }
+            }
+            put(chatId, ring);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        append(messageMapper.mapToDto(event.message()));
+    }
+
+    /**
+     * Write-through for a newly committed message. A message that does not follow the ring directly
+     * (commits observed out of order) drops the ring, the next read reloads it.
+     */
+    public synchronized void append(MessageDto message) {
+        var ring = rings.get(message.chatId());
+        if (ring == null || message.seq() <= ring.getLastSeq()) {
+            return;
+        }
+        boolean appended;
+        long before = ring.getBytes();
+        synchronized (ring) {
+            appended = ring.append(message);
+        }
+        if (appended) {
+            bytes += ring.getBytes() - before;
+            evictOverBudget();
+        } else {
+            remove(message.chatId());
+        }
+    }
+
+    public synchronized void evict(long chatId) {
+        remove(chatId);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getChatCount() {
+        return rings.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("health.chat.tail.requests", hits, AtomicLong::get).tag("result", "hit").register(registry);
+        FunctionCounter.builder("health.chat.tail.requests", misses, AtomicLong::get).tag("result", "miss").register(registry);
+        FunctionCounter.builder("health.chat.tail.evictions", evictions, AtomicLong::get).register(registry);
+        Gauge.builder("health.chat.tail.hit.ratio", this, ChatTailCache::getHitRate).register(registry);
+        Gauge.builder("health.chat.tail.bytes", this, ChatTailCache::getBytes).baseUnit("bytes").register(registry);
+        Gauge.builder("health.chat.tail.chats", this, ChatTailCache::getChatCount).register(registry);
+    }
+
+    // Looking a chat up moves it in the access order, so even reads take the cache monitor for it
+    private synchronized MessageRing ring(long chatId) {
+        return rings.get(chatId);
+    }
+
+    private Optional<List<MessageDto>> hit(List<MessageDto> messages) {
+        hits.incrementAndGet();
+        return Optional.of(messages);
+    }
+
+    private Optional<List<MessageDto>> miss() {
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    private void put(long chatId, MessageRing ring) {
+        remove(chatId);
+        rings.put(chatId, ring);
+        bytes += ring.getBytes();
+        evictOverBudget();
+    }
+
+    private void remove(long chatId) {
+        var ring = rings.remove(chatId);
+        if (ring != null) {
+            bytes -= ring.getBytes();
+        }
+    }
+
+    private void evictOverBudget() {
+        Iterator<MessageRing> eldest = rings.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getBytes();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
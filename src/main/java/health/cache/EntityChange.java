@@ -0,0 +1,12 @@
+package health.cache;
+
+import health.models.EntityType;
+
+/**
+ * Notification that an entity (or data owned by it) was written on some node.
+ */
+public record EntityChange(
+        EntityType type,
+        long id
+) {
+}
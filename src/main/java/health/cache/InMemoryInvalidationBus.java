@@ -0,0 +1,19 @@
+package health.cache;
+
+import health.models.EntityType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-node bus: changes are only delivered to listeners in this JVM.
+ * Used in tests and when the application runs as a single instance.
+ */
+@Component
+@ConditionalOnProperty(name = "health.invalidation.bus", havingValue = "memory")
+public class InMemoryInvalidationBus extends AbstractInvalidationBus {
+
+    @Override
+    public void publish(EntityType type, long id) {
+        dispatchAfterCommit(new EntityChange(type, id));
+    }
+}
@@ -0,0 +1,28 @@
+package health.cache;
+
+import health.models.EntityType;
+
+import java.util.function.Consumer;
+
+/**
+ * Propagates entity-change events to the local caches of every API node.
+ * Services publish after a write; caches subscribe and evict or refresh the affected entries.
+ */
+public interface InvalidationBus {
+
+    /**
+     * Publishes a change. If a transaction is active, local subscribers are notified after commit.
+     *
+     * @param type Type of the changed entity
+     * @param id ID of the changed entity
+     */
+    void publish(EntityType type, long id);
+
+    /**
+     * Registers a listener for changes of the given entity type, coming from any node.
+     *
+     * @param type Entity type to listen to
+     * @param listener Listener invoked for every change
+     */
+    void subscribe(EntityType type, Consumer<EntityChange> listener);
+}
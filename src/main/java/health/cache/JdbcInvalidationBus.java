@@ -0,0 +1,126 @@
+package health.cache;
+
+import health.models.EntityChangeLog;
+import health.models.EntityType;
+import health.repos.EntityChangeLogRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Cluster-wide bus backed by the {@code entity_change_log} table.
+ * <p>
+ * Publishing inserts a row in the caller's transaction, so a change becomes visible to other
+ * nodes exactly when the data it describes is committed. Every node polls the table with a
+ * monotonic id cursor and dispatches rows written by other nodes to its local listeners.
+ * <p>
+ * Identity values are allocated before commit, so a row with a lower id can become visible after
+ * a higher one. Ids skipped by the cursor are remembered as gaps and re-checked until they show
+ * up or {@code gap-timeout-ms} passes (rolled back transactions leave gaps that never fill).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "health.invalidation.bus", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcInvalidationBus extends AbstractInvalidationBus {
+
+    private static final int MAX_TRACKED_GAPS = 10_000;
+
+    private final EntityChangeLogRepo changeLogRepo;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Long, Instant> gaps = new ConcurrentSkipListMap<>();
+    private final Duration gapTimeout;
+    private final Duration retention;
+
+    private volatile long cursor;
+
+    public JdbcInvalidationBus(
+            EntityChangeLogRepo changeLogRepo,
+            @Value("${health.invalidation.gap-timeout-ms:10000}") long gapTimeoutMs,
+            @Value("${health.invalidation.retention-hours:24}") long retentionHours) {
+        this.changeLogRepo = changeLogRepo;
+        this.gapTimeout = Duration.ofMillis(gapTimeoutMs);
+        this.retention = Duration.ofHours(retentionHours);
+    }
+
+    /**
+     * Starts from the current end of the log: caches are empty at startup, so history is irrelevant.
+     */
+    @PostConstruct
+    void initCursor() {
+        cursor = changeLogRepo.findMaxId();
+    }
+
+    @Override
+    @Transactional
+    public void publish(EntityType type, long id) {
+        changeLogRepo.save(EntityChangeLog.builder()
+                .entityType(type)
+                .entityId(id)
+                .origin(nodeId)
+                .changedAt(Instant.now())
+                .build());
+        dispatchAfterCommit(new EntityChange(type, id));
+    }
+
+    /**
+     * Fetches changes committed by other nodes since the last poll.
+     * The poll interval bounds how long a remote node can serve stale cache entries.
+     */
+    @Scheduled(fixedDelayString = "${health.invalidation.poll-interval-ms:1000}")
+    public void poll() {
+        var now = Instant.now();
+        if (!gaps.isEmpty()) {
+            var filled = changeLogRepo.findByIdIn(gaps.keySet());
+            filled.forEach(entry -> gaps.remove(entry.getId()));
+            deliver(filled);
+            gaps.values().removeIf(since -> since.plus(gapTimeout).isBefore(now));
+        }
+
+        List<EntityChangeLog> batch;
+        do {
+            batch = changeLogRepo.findTop500ByIdGreaterThanOrderByIdAsc(cursor);
+            for (EntityChangeLog entry : batch) {
+                for (long missing = cursor + 1; missing < entry.getId() && gaps.size() < MAX_TRACKED_GAPS; missing++) {
+                    gaps.put(missing, now);
+                }
+                cursor = entry.getId();
+            }
+            deliver(batch);
+        } while (batch.size() == 500);
+    }
+
+    @Scheduled(fixedDelayString = "${health.invalidation.purge-interval-ms:3600000}")
+    public void purge() {
+        int removed = changeLogRepo.deleteOlderThan(Instant.now().minus(retention));
+        if (removed > 0) {
+            log.debug("Purged {} entity change log rows", removed);
+        }
+    }
+
+    long getCursor() {
+        return cursor;
+    }
+
+    int getTrackedGaps() {
+        return gaps.size();
+    }
+
+    private void deliver(List<EntityChangeLog> entries) {
+        for (EntityChangeLog entry : entries) {
+            if (!nodeId.equals(entry.getOrigin())) {
+                dispatch(new EntityChange(entry.getEntityType(), entry.getEntityId()));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package health.cache;
+
+import health.models.dto.MessageDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring of the latest messages of one chat, addressed by seq.
+ * Seqs are gapless, so the ring always holds the contiguous range {@code [firstSeq, lastSeq]}.
+ * Not thread-safe: {@link ChatTailCache} reads a ring under the ring's monitor and changes it
+ * under its own monitor and then the ring's, so reads of different chats do not contend.
+ */
+class MessageRing {
+
+    static final long OVERHEAD_BYTES = 96;
+    static final long MESSAGE_OVERHEAD_BYTES = 160;
+
+    private final MessageDto[] slots;
+    private long lastSeq;
+    private int size;
+    private long bytes;
+
+    MessageRing(int capacity) {
+        this.slots = new MessageDto[capacity];
+        this.bytes = OVERHEAD_BYTES + 8L * capacity;
+    }
+
+    /**
+     * Builds a ring from the newest messages of a chat.
+     *
+     * @param messages Contiguous messages in ascending seq order
+     * @param lastSeq Seq of the newest message of the chat, 0 for an empty chat
+     */
+    static MessageRing of(int capacity, List<MessageDto> messages, long lastSeq) {
+        var ring = new MessageRing(capacity);
+        ring.lastSeq = lastSeq - messages.size();
+        messages.forEach(ring::append);
+        return ring;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    long getFirstSeq() {
+        return lastSeq - size + 1;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * True when the ring still holds the very first message, i.e. the whole chat history.
+     */
+    boolean isComplete() {
+        return getFirstSeq() <= 1;
+    }
+
+    /**
+     * Appends the next message, overwriting the oldest one when full.
+     *
+     * @return false if the message does not directly follow {@link #getLastSeq()}
+     */
+    boolean append(MessageDto message) {
+        if (message.seq() != lastSeq + 1) {
+            return false;
+        }
+        int slot = slot(message.seq());
+        if (slots[slot] != null) {
+            bytes -= estimate(slots[slot]);
+        }
+        slots[slot] = message;
+        bytes += estimate(message);
+        lastSeq = message.seq();
+        size = Math.min(size + 1, slots.length);
+        return true;
+    }
+
+    /**
+     * Copies messages with seq in {@code [fromSeq, toSeq]}, both ends clamped to the ring.
+     */
+    List<MessageDto> range(long fromSeq, long toSeq) {
+        long from = Math.max(fromSeq, getFirstSeq());
+        long to = Math.min(toSeq, lastSeq);
+        var result = new ArrayList<MessageDto>((int) Math.max(0, to - from + 1));
+        for (long seq = from; seq <= to; seq++) {
+            result.add(slots[slot(seq)]);
+        }
+        return result;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % slots.length);
+    }
+
+    static long estimate(MessageDto message) {
+        int chars = message.text() == null ? 0 : message.text().length();
+        return MESSAGE_OVERHEAD_BYTES + 2L * chars;
+    }
+}
@@ -0,0 +1,89 @@
+package health.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-size, direct-mapped table from an entity id to a few owner ids, all kept in one {@code long[]}.
+ * Every id hashes to exactly one slot and a new id overwrites whatever was there, so memory never grows
+ * and a collision only costs a reload. Ids are positive, so 0 marks an empty slot and a missing owner.
+ * <p>
+ * Reads are optimistic and retried under the read lock only when they raced a write, which keeps the
+ * key and its owners consistent without locking the common path. Used by {@link OwnershipIndex}.
+ */
+class OwnerTable {
+
+    static final long MISSING = 0;
+
+    private final long[] slots;
+    private final int stride;
+    private final int mask;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @param capacity Slots, rounded up to a power of two
+     * @param fields Owner ids stored per entity
+     */
+    OwnerTable(int capacity, int fields) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.stride = fields + 1;
+        this.mask = size - 1;
+        this.slots = new long[size * stride];
+    }
+
+    /**
+     * @return Owner id in {@code field} of the entity, {@link #MISSING} if the entity is not in the table
+     */
+    long get(long id, int field) {
+        int base = base(id);
+        long stamp = lock.tryOptimisticRead();
+        long key = slots[base];
+        long value = slots[base + 1 + field];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                key = slots[base];
+                value = slots[base + 1 + field];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return key == id ? value : MISSING;
+    }
+
+    void put(long id, long... owners) {
+        int base = base(id);
+        long stamp = lock.writeLock();
+        try {
+            slots[base] = id;
+            System.arraycopy(owners, 0, slots, base + 1, stride - 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void remove(long id) {
+        int base = base(id);
+        long stamp = lock.writeLock();
+        try {
+            if (slots[base] == id) {
+                Arrays.fill(slots, base, base + stride, MISSING);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return Number of slots
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    // Sequence ids are dense, the multiplier spreads neighbours over the table
+    private int base(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) ((hash ^ (hash >>> 32)) & mask) * stride;
+    }
+}
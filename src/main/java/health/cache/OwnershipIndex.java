@@ -0,0 +1,110 @@
+package health.cache;
+
+import health.models.EntityType;
+import health.realtime.ChatParticipant;
+import health.repos.AppointmentRepo;
+import health.repos.ChatRepo;
+import health.repos.DoctorRepo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Answers ownership checks (doctor of a clinic, participant of a chat, customer of an appointment) from
+ * memory, so a handler can reject a request before it loads anything and then load only what it returns.
+ * <p>
+ * Owner ids are read on the first check of an entity with a single-column query and kept in bounded
+ * {@link OwnerTable}s of {@code health.ownership.capacity} slots each. Owners never change once an entity
+ * exists, so an entry is only dropped when a change of the entity is published on the {@link InvalidationBus};
+ * an entity that does not exist is not cached and fails every check.
+ */
+@Component
+public class OwnershipIndex implements MeterBinder {
+
+    private static final int CHAT_CUSTOMER = 0;
+    private static final int CHAT_DOCTOR = 1;
+    private static final int CHAT_CLINIC = 2;
+
+    private final DoctorRepo doctorRepo;
+    private final ChatRepo chatRepo;
+    private final AppointmentRepo appointmentRepo;
+    private final OwnerTable doctors;
+    private final OwnerTable chats;
+    private final OwnerTable appointments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public OwnershipIndex(
+            DoctorRepo doctorRepo,
+            ChatRepo chatRepo,
+            AppointmentRepo appointmentRepo,
+            InvalidationBus invalidationBus,
+            @Value("${health.ownership.capacity:65536}") int capacity) {
+        this.doctorRepo = doctorRepo;
+        this.chatRepo = chatRepo;
+        this.appointmentRepo = appointmentRepo;
+        this.doctors = new OwnerTable(capacity, 1);
+        this.chats = new OwnerTable(capacity, 3);
+        this.appointments = new OwnerTable(capacity, 1);
+        invalidationBus.subscribe(EntityType.DOCTOR, change -> doctors.remove(change.id()));
+        invalidationBus.subscribe(EntityType.CHAT, change -> chats.remove(change.id()));
+        invalidationBus.subscribe(EntityType.APPOINTMENT, change -> appointments.remove(change.id()));
+    }
+
+    public boolean isDoctorOfClinic(long doctorId, long clinicId) {
+        return owner(doctors, doctorId, 0, id -> doctorRepo.findClinicIdById(id).map(clinic -> new long[]{clinic})) == clinicId;
+    }
+
+    /**
+     * @return Whether the participant takes part in the chat: its customer, its doctor or the doctor's clinic
+     */
+    public boolean isChatOf(long chatId, ChatParticipant participant) {
+        int field = switch (participant.role()) {
+            case CUSTOMER -> CHAT_CUSTOMER;
+            case DOCTOR -> CHAT_DOCTOR;
+            case CLINIC -> CHAT_CLINIC;
+        };
+        return owner(chats, chatId, field, id -> chatRepo.findOwnersById(id)
+                .map(owners -> new long[]{owners.getCustomerId(), owners.getDoctorId(), owners.getClinicId()})) == participant.id();
+    }
+
+    public boolean isAppointmentOf(long appointmentId, long customerId) {
+        return owner(appointments, appointmentId, 0, id -> appointmentRepo.findCustomerIdById(id).map(customer -> new long[]{customer})) == customerId;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("health.ownership.requests", hits, AtomicLong::get).tag("result", "hit").register(registry);
+        FunctionCounter.builder("health.ownership.requests", misses, AtomicLong::get).tag("result", "miss").register(registry);
+    }
+
+    // Missing entities come back as MISSING, which matches no owner and is not cached
+    private long owner(OwnerTable table, long id, int field, LongFunction<Optional<long[]>> loader) {
+        long owner = table.get(id, field);
+        if (owner != OwnerTable.MISSING) {
+            hits.incrementAndGet();
+            return owner;
+        }
+        misses.incrementAndGet();
+        return loader.apply(id)
+                .map(owners -> {
+                    table.put(id, owners);
+                    return owners[field];
+                })
+                .orElse(OwnerTable.MISSING);
+    }
+}
@@ -3,8 +3,13 @@ package health.controllers;
 import health.auth.services.AuthenticationService;
 import health.models.auth.User;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -70,14 +75,57 @@ public abstract class BaseController {
     }
 
     /**
-     * Checks if an entity belongs to the owner.
+     * Unwraps an asynchronous result produced inside {@link #withUserEntity} or {@link #withEntity}.
+     * Error responses from the helpers are returned as already completed results.
      *
-     * @param entityOwnerId ID of the entity owner
-     * @param ownerId ID of the expected owner
-     * @return true if entity belongs to owner
+     * @param response Response holding the deferred result, or an error response without body
+     * @return Deferred result to return from the handler
      */
-    protected boolean belongsTo(Long entityOwnerId, Long ownerId) {
-        return entityOwnerId.equals(ownerId);
+    protected <T> DeferredResult<ResponseEntity<T>> deferred(ResponseEntity<DeferredResult<ResponseEntity<T>>> response) {
+        if (response.getBody() != null) {
+            return response.getBody();
+        }
+        var result = new DeferredResult<ResponseEntity<T>>();
+        result.setResult(ResponseEntity.status(response.getStatusCode()).build());
+        return result;
+    }
+
+    /**
+     * Returns 200 OK with the entity version as ETag, for clients to send back in {@code If-Match}.
+     */
+    protected <T> ResponseEntity<T> okWithETag(T body, long version) {
+        return ResponseEntity.ok().eTag(Long.toString(version)).body(body);
+    }
+
+    /**
+     * Checks an {@code If-Match} header against the entity version with strong comparison.
+     * A missing header matches any version.
+     *
+     * @param ifMatch Header value: {@code *} or a list of entity tags, or null
+     * @param version Current version of the entity
+     * @return true if the header is missing or one of its tags is the version
+     */
+    protected boolean matchesETag(String ifMatch, long version) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return true;
+        }
+        var eTag = "\"" + version + "\"";
+        return Arrays.stream(ifMatch.split(",")).map(String::trim).anyMatch(eTag::equals);
+    }
+
+    /**
+     * Answers 409 Conflict when a versioned entity was changed by another request between loading and writing it.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    protected <T> ResponseEntity<T> conflict() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * Returns 412 Precondition Failed response.
+     */
+    protected <T> ResponseEntity<T> preconditionFailed() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
     }
 
     /**
@@ -100,4 +148,11 @@ public abstract class BaseController {
     protected <T> ResponseEntity<T> notFound() {
         return ResponseEntity.notFound().build();
     }
+
+    /**
+     * Returns 503 Service Unavailable response.
+     */
+    protected <T> ResponseEntity<T> serviceUnavailable() {
+        return ResponseEntity.status(503).build();
+    }
 }
\ No newline at end of file
@@ -1,26 +1,48 @@
 package health.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import health.auth.RegisterRequest;
 import health.auth.services.AuthenticationService;
+import health.cache.OwnershipIndex;
+import health.models.MessageSearchQuery;
 import health.models.Timetable;
 import health.models.dto.*;
 import health.models.mapper.*;
+import health.realtime.ChatParticipant;
+import health.realtime.ChatStreamService;
+import health.realtime.MessageWaitService;
 import health.services.*;
 import health.utils.EntityMergeUtil;
 import health.utils.TimetableUtil;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/clinic")
 public class ClinicController extends BaseController {
 
+    private static final long FHIR_EXPORT_RETRY_AFTER_SECONDS = 5;
+
     private final UserService userService;
     private final ClinicService clinicService;
     private final DoctorService doctorService;
@@ -28,6 +50,14 @@ public class ClinicController extends BaseController {
     private final AppointmentService appointmentService;
     private final ChatService chatService;
     private final MessageService messageService;
+    private final ChatStreamService chatStreamService;
+    private final MessageWaitService messageWaitService;
+    private final AnalysisImportService analysisImportService;
+    private final ClinicAnalysisStatsService clinicAnalysisStatsService;
+    private final CustomerService customerService;
+    private final CustomerExportService customerExportService;
+    private final FhirExportService fhirExportService;
+    private final OwnershipIndex ownershipIndex;
 
     private final ClinicMapper clinicMapper;
     private final DoctorMapper doctorMapper;
@@ -45,6 +75,14 @@ public class ClinicController extends BaseController {
             AppointmentService appointmentService,
             ChatService chatService,
             MessageService messageService,
+            ChatStreamService chatStreamService,
+            MessageWaitService messageWaitService,
+            AnalysisImportService analysisImportService,
+            ClinicAnalysisStatsService clinicAnalysisStatsService,
+            CustomerService customerService,
+            CustomerExportService customerExportService,
+            FhirExportService fhirExportService,
+            OwnershipIndex ownershipIndex,
             ClinicMapper clinicMapper,
             DoctorMapper doctorMapper,
             TimetableMapper timetableMapper,
@@ -59,6 +97,14 @@ public class ClinicController extends BaseController {
         this.appointmentService = appointmentService;
         this.chatService = chatService;
         this.messageService = messageService;
+        this.chatStreamService = chatStreamService;
+        this.messageWaitService = messageWaitService;
+        this.analysisImportService = analysisImportService;
+        this.clinicAnalysisStatsService = clinicAnalysisStatsService;
+        this.customerService = customerService;
+        this.customerExportService = customerExportService;
+        this.fhirExportService = fhirExportService;
+        this.ownershipIndex = ownershipIndex;
         this.clinicMapper = clinicMapper;
         this.doctorMapper = doctorMapper;
         this.timetableMapper = timetableMapper;
@@ -74,7 +120,7 @@ public class ClinicController extends BaseController {
                 clinic -> {
                     var clinicDto = clinicMapper.mapToDto(clinic);
                     clinicDto.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(clinicDto);
+                    return okWithETag(clinicDto, clinic.getVersion());
                 }
         );
     }
@@ -88,7 +134,28 @@ public class ClinicController extends BaseController {
                     updatedClinic = clinicService.updateClinic(updatedClinic);
                     var res = clinicMapper.mapToDto(updatedClinic);
                     res.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(res);
+                    return okWithETag(res, updatedClinic.getVersion());
+                }
+        );
+    }
+
+    /**
+     * Updates the profile with a JSON merge patch (RFC 7396): fields in the patch are replaced, fields set to
+     * null are cleared, others stay. Answers 412 if {@code If-Match} does not match the current ETag and 409
+     * if the profile changed while the patch was applied; the response carries the new ETag.
+     */
+    @PatchMapping(consumes = MergePatchMapper.MEDIA_TYPE)
+    public ResponseEntity<ClinicDto> patchClinicInfo(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestBody JsonNode patch) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!matchesETag(ifMatch, clinic.getVersion())) {
+                        return preconditionFailed();
+                    }
+                    return clinicService.patchClinic(clinic, patch)
+                            .map(patched -> okWithETag(clinicMapper.mapToDto(patched), patched.getVersion()))
+                            .orElseGet(this::badRequest);
                 }
         );
     }
@@ -128,16 +195,16 @@ public class ClinicController extends BaseController {
     public ResponseEntity<DoctorDto> getDoctor(@PathVariable Long doctorId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
-                clinic -> withEntity(
-                        doctorService::getDoctorById,
-                        doctorId,
-                        doctor -> {
-                            if (!belongsTo(doctor.getClinic().getId(), clinic.getId())) {
-                                return notFound();
-                            }
-                            return ResponseEntity.ok(doctorMapper.mapToDto(doctor));
-                        }
-                )
+                clinic -> {
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            doctorService::getDoctorById,
+                            doctorId,
+                            doctor -> ResponseEntity.ok(doctorMapper.mapToDto(doctor))
+                    );
+                }
         );
     }
 
@@ -145,18 +212,15 @@ public class ClinicController extends BaseController {
     public ResponseEntity<List<TimetableDto>> getDoctorTimetable(@PathVariable Long doctorId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
-                clinic -> withEntity(
-                        doctorService::getDoctorById,
-                        doctorId,
-                        doctor -> {
-                            if (!belongsTo(doctor.getClinic().getId(), clinic.getId())) {
-                                return notFound();
-                            }
-                            var timetables = timetableService.getTimetablesByDoctor(doctor);
-                            var timetableDtos = timetables.stream().map(timetableMapper::mapToDto).toList();
-                            return ResponseEntity.ok(timetableDtos);
-                        }
-                )
+                clinic -> {
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    var doctor = doctorService.getDoctorReference(doctorId);
+                    var timetables = timetableService.getTimetablesByDoctor(doctor);
+                    var timetableDtos = timetables.stream().map(timetableMapper::mapToDto).toList();
+                    return ResponseEntity.ok(timetableDtos);
+                }
         );
     }
 
@@ -164,28 +228,25 @@ public class ClinicController extends BaseController {
     public ResponseEntity<List<TimetableDto>> setDoctorTimetable(@Valid @RequestBody List<Instant> workingHours, @PathVariable Long doctorId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
-                clinic -> withEntity(
-                        doctorService::getDoctorById,
-                        doctorId,
-                        doctor -> {
-                            if (!belongsTo(doctor.getClinic().getId(), clinic.getId())) {
-                                return notFound();
-                            }
-                            var reservedTimetables = timetableService.getReservedTimetablesByDoctor(doctor);
-                            Set<Instant> workingHoursSet = new HashSet<>(workingHours);
-                            reservedTimetables.stream()
-                                    .map(Timetable::getStart)
-                                    .filter(start -> !workingHoursSet.contains(start))
-                                    .forEach(workingHours::add);
-                            if (TimetableUtil.hasOverlappingWorkingHours(workingHours)) {
-                                return badRequest();
-                            }
-                            timetableService.deleteFreeTimetables(doctor);
-                            List<Timetable> timetables = timetableService.addOrUpdateFromRawTimetable(workingHours, doctor);
-                            var timetableDtos = timetables.stream().map(timetableMapper::mapToDto).toList();
-                            return ResponseEntity.ok(timetableDtos);
-                        }
-                )
+                clinic -> {
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    var doctor = doctorService.getDoctorReference(doctorId);
+                    var reservedTimetables = timetableService.getReservedTimetablesByDoctor(doctor);
+                    Set<Instant> workingHoursSet = new HashSet<>(workingHours);
+                    reservedTimetables.stream()
+                            .map(Timetable::getStart)
+                            .filter(start -> !workingHoursSet.contains(start))
+                            .forEach(workingHours::add);
+                    if (TimetableUtil.hasOverlappingWorkingHours(workingHours)) {
+                        return badRequest();
+                    }
+                    timetableService.deleteFreeTimetables(doctor);
+                    List<Timetable> timetables = timetableService.addOrUpdateFromRawTimetable(workingHours, doctor);
+                    var timetableDtos = timetables.stream().map(timetableMapper::mapToDto).toList();
+                    return ResponseEntity.ok(timetableDtos);
+                }
         );
     }
 
@@ -193,18 +254,15 @@ public class ClinicController extends BaseController {
     public ResponseEntity<List<AppointmentDto>> getDoctorAppointments(@PathVariable Long doctorId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
-                clinic -> withEntity(
-                        doctorService::getDoctorById,
-                        doctorId,
-                        doctor -> {
-                            if (!belongsTo(doctor.getClinic().getId(), clinic.getId())) {
-                                return notFound();
-                            }
-                            var appointments = appointmentService.getAppointmentsByDoctor(doctor);
-                            var appointmentDtos = appointments.stream().map(appointmentMapper::mapToDto).toList();
-                            return ResponseEntity.ok(appointmentDtos);
-                        }
-                )
+                clinic -> {
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    var doctor = doctorService.getDoctorReference(doctorId);
+                    var appointments = appointmentService.getAppointmentsByDoctor(doctor);
+                    var appointmentDtos = appointments.stream().map(appointmentMapper::mapToDto).toList();
+                    return ResponseEntity.ok(appointmentDtos);
+                }
         );
     }
 
@@ -220,25 +278,164 @@ public class ClinicController extends BaseController {
         );
     }
 
-    @GetMapping("/doctor/{doctorId}/chat")
-    public ResponseEntity<List<ChatDto>> getDoctorChats(@PathVariable Long doctorId) {
+    /**
+     * Imports a CSV or NDJSON file of lab results for customers of the clinic. Every row carries a
+     * {@code customerId}; rows of customers without an appointment or chat with the clinic are rejected.
+     */
+    @PostMapping(value = "/analysis/import", consumes = {AnalysisImportService.Format.CSV_VALUE, AnalysisImportService.Format.NDJSON_VALUE})
+    public ResponseEntity<AnalysisImportReportDto> importAnalysis(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                                  InputStream body) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> AnalysisImportService.Format.of(contentType)
+                        .map(format -> ResponseEntity.ok(analysisImportService.importForClinic(
+                                clinic, body, format, AnalysisImportService.charsetOf(contentType))))
+                        .orElseGet(this::badRequest)
+        );
+    }
+
+    /**
+     * Distribution, percentiles and monthly trend of one analysis over the customers of the clinic, in the
+     * canonical unit of the name unless {@code unit} is given. Names without a canonical unit need {@code unit}.
+     */
+    @GetMapping("/analysis/stats")
+    public ResponseEntity<ClinicAnalysisStatsDto> getAnalysisStats(
+            @RequestParam String name,
+            @RequestParam(required = false) String unit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "20") int bins) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> clinicAnalysisStatsService.getStats(clinic, name, unit, from, to, bins)
+                        .map(ResponseEntity::ok)
+                        .orElseGet(this::badRequest)
+        );
+    }
+
+    /**
+     * Downloads the appointments, chats and messages of a customer with the clinic as a ZIP of NDJSON files,
+     * written while it is read.
+     */
+    @GetMapping(value = "/customer/{customerId}/export", produces = CustomerExportService.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportCustomerData(@PathVariable Long customerId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
                 clinic -> withEntity(
-                        doctorService::getDoctorById,
-                        doctorId,
-                        doctor -> {
-                            if (!belongsTo(doctor.getClinic().getId(), clinic.getId())) {
+                        customerService::getCustomerById,
+                        customerId,
+                        customer -> {
+                            if (!customerService.isCustomerOfClinic(clinic, customer)) {
                                 return notFound();
                             }
-                            var chats = chatService.getChatsByDoctor(doctor);
-                            var chatDtos = chats.stream().map(chatMapper::mapToDto).toList();
-                            return ResponseEntity.ok(chatDtos);
+                            return ResponseEntity.ok()
+                                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                            .filename("customer-" + customer.getId() + "-export.zip").build().toString())
+                                    .body((StreamingResponseBody) out -> customerExportService.exportForClinic(clinic, customer, out));
                         }
                 )
         );
     }
 
+    /**
+     * Starts a FHIR bulk export of all customers of the clinic and their analyses. Answers 202 with the
+     * status URL in {@code Content-Location}, or 429 while an export of the clinic is still running.
+     */
+    @GetMapping("/fhir/$export")
+    public ResponseEntity<Void> startFhirExport(HttpServletRequest request) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> fhirExportService.start(clinic, ServletUriComponentsBuilder.fromRequest(request).toUriString())
+                        .<ResponseEntity<Void>>map(job -> ResponseEntity.accepted()
+                                .header(HttpHeaders.CONTENT_LOCATION, ServletUriComponentsBuilder.fromCurrentContextPath()
+                                        .path("/clinic/fhir/export/{jobId}").buildAndExpand(job.getId()).toUriString())
+                                .build())
+                        .orElseGet(() -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, Long.toString(FHIR_EXPORT_RETRY_AFTER_SECONDS))
+                                .build())
+        );
+    }
+
+    /**
+     * Status of a FHIR bulk export: 202 with {@code X-Progress} while it runs, the manifest once it is complete.
+     */
+    @GetMapping("/fhir/export/{jobId}")
+    public ResponseEntity<FhirExportManifestDto> getFhirExportStatus(@PathVariable String jobId) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> fhirExportService.getJob(clinic, jobId)
+                        .map(job -> switch (job.getStatus()) {
+                            case RUNNING -> ResponseEntity.accepted()
+                                    .header("X-Progress", job.getProgress() + "%")
+                                    .header(HttpHeaders.RETRY_AFTER, Long.toString(FHIR_EXPORT_RETRY_AFTER_SECONDS))
+                                    .<FhirExportManifestDto>build();
+                            case COMPLETED -> ResponseEntity.ok(fhirExportManifest(job));
+                            case FAILED -> ResponseEntity.internalServerError().<FhirExportManifestDto>build();
+                            case CANCELLED -> this.<FhirExportManifestDto>notFound();
+                        })
+                        .orElseGet(this::notFound)
+        );
+    }
+
+    @DeleteMapping("/fhir/export/{jobId}")
+    public ResponseEntity<Void> deleteFhirExport(@PathVariable String jobId) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> fhirExportService.delete(clinic, jobId)
+                        ? ResponseEntity.accepted().<Void>build()
+                        : this.<Void>notFound()
+        );
+    }
+
+    /**
+     * Downloads one NDJSON file of a completed FHIR bulk export; {@code Range} requests resume a download.
+     */
+    @GetMapping(value = "/fhir/export/{jobId}/{type}.ndjson", produces = FhirExportService.NDJSON_MEDIA_TYPE)
+    public ResponseEntity<Resource> getFhirExportFile(@PathVariable String jobId, @PathVariable String type) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> FhirExportService.ResourceType.ofFhirName(type)
+                        .flatMap(resourceType -> fhirExportService.getFile(clinic, jobId, resourceType))
+                        .<ResponseEntity<Resource>>map(file -> ResponseEntity.ok(new FileSystemResource(file)))
+                        .orElseGet(this::notFound)
+        );
+    }
+
+    private FhirExportManifestDto fhirExportManifest(FhirExportService.Job job) {
+        var output = Stream.of(FhirExportService.ResourceType.values())
+                .map(type -> FhirExportOutputDto.builder()
+                        .type(type.getFhirName())
+                        .url(ServletUriComponentsBuilder.fromCurrentContextPath()
+                                .path("/clinic/fhir/export/{jobId}/{file}")
+                                .buildAndExpand(job.getId(), type.getFileName()).toUriString())
+                        .count(job.getCount(type))
+                        .build())
+                .toList();
+        return FhirExportManifestDto.builder()
+                .transactionTime(job.getTransactionTime())
+                .request(job.getRequest())
+                .requiresAccessToken(true)
+                .output(output)
+                .error(List.of())
+                .build();
+    }
+
+    @GetMapping("/doctor/{doctorId}/chat")
+    public ResponseEntity<List<ChatDto>> getDoctorChats(@PathVariable Long doctorId) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    var doctor = doctorService.getDoctorReference(doctorId);
+                    var chats = chatService.getChatsByDoctor(doctor);
+                    var chatDtos = chats.stream().map(chatMapper::mapToDto).toList();
+                    return ResponseEntity.ok(chatDtos);
+                }
+        );
+    }
+
     @GetMapping("/chat")
     public ResponseEntity<List<ChatDto>> getClinicChats() {
         return withUserEntity(
@@ -251,22 +448,158 @@ public class ClinicController extends BaseController {
         );
     }
 
+    @GetMapping("/chat/inbox")
+    public ResponseEntity<InboxPageDto> getInbox(@RequestParam(defaultValue = "0") int page,
+                                                 @RequestParam(defaultValue = "20") int size) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    var inbox = chatService.getInboxByClinic(clinic, page, size);
+                    return ResponseEntity.ok(new InboxPageDto(inbox.getContent(), inbox.getNumber(), inbox.hasNext()));
+                }
+        );
+    }
+
+    /**
+     * Searches all conversations of the clinic, or only those of one of its doctors.
+     */
+    @GetMapping("/chat/search")
+    public ResponseEntity<MessageSearchPageDto> searchMessages(@RequestParam String q,
+                                                               @RequestParam(required = false) Long doctorId,
+                                                               @RequestParam(defaultValue = "0") int page,
+                                                               @RequestParam(defaultValue = "20") int size) {
+        var query = MessageSearchQuery.parse(q);
+        if (query.isEmpty()) {
+            return badRequest();
+        }
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (doctorId == null) {
+                        var hits = messageService.searchByClinic(clinic, query.get(), page, size);
+                        return ResponseEntity.ok(new MessageSearchPageDto(hits.getContent(), hits.getNumber(), hits.hasNext()));
+                    }
+                    if (!ownershipIndex.isDoctorOfClinic(doctorId, clinic.getId())) {
+                        return notFound();
+                    }
+                    var hits = messageService.searchByDoctor(doctorService.getDoctorReference(doctorId), query.get(), page, size);
+                    return ResponseEntity.ok(new MessageSearchPageDto(hits.getContent(), hits.getNumber(), hits.hasNext()));
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChatMessages(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    var chatIds = chatService.getChatIdsByClinic(clinic);
+                    return ResponseEntity.ok(chatStreamService.open(ChatParticipant.clinic(clinic.getId()), chatIds, lastEventId));
+                }
+        );
+    }
+
     @GetMapping("/chat/{chatId}/message")
     public ResponseEntity<List<MessageDto>> getChatMessages(@PathVariable Long chatId) {
         return withUserEntity(
                 clinicService::getClinicByUser,
-                clinic -> withEntity(
-                        chatService::getChatById,
-                        chatId,
-                        chat -> {
-                            if (!belongsTo(chat.getClinic().getId(), clinic.getId())) {
-                                return notFound();
+                clinic -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.clinic(clinic.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessageDtosByChat(chat))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "after")
+    public ResponseEntity<MessageSyncDto> getChatMessagesAfter(@PathVariable Long chatId,
+                                                               @RequestParam(required = false) Long after,
+                                                               @RequestParam(defaultValue = "50") int limit) {
+        long seq = after == null ? 0 : after;
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.clinic(clinic.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageAfter(chat, seq, limit))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "before")
+    public ResponseEntity<MessageSyncDto> getChatMessagesBefore(@PathVariable Long chatId,
+                                                                @RequestParam(required = false) Long before,
+                                                                @RequestParam(defaultValue = "50") int limit) {
+        long seq = before == null ? Long.MAX_VALUE : before;
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.clinic(clinic.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageBefore(chat, seq, limit))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "q")
+    public ResponseEntity<MessageSearchPageDto> searchChatMessages(@PathVariable Long chatId,
+                                                                   @RequestParam String q,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "20") int size) {
+        var query = MessageSearchQuery.parse(q);
+        if (query.isEmpty()) {
+            return badRequest();
+        }
+        return withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.clinic(clinic.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> {
+                                var hits = messageService.searchInChat(chat, query.get(), page, size);
+                                return ResponseEntity.ok(new MessageSearchPageDto(hits.getContent(), hits.getNumber(), hits.hasNext()));
                             }
-                            var messages = messageService.getMessagesByChat(chat);
-                            var messageDtos = messages.stream().map(messageMapper::mapToDto).toList();
-                            return ResponseEntity.ok(messageDtos);
-                        }
-                )
+                    );
+                }
         );
     }
+
+    @GetMapping("/chat/{chatId}/message/wait")
+    public DeferredResult<ResponseEntity<MessageSyncDto>> waitForChatMessages(@PathVariable Long chatId,
+                                                                             @RequestParam(defaultValue = "0") long after,
+                                                                             @RequestParam(defaultValue = "50") int limit,
+                                                                             @RequestParam(required = false) Long timeout) {
+        return deferred(withUserEntity(
+                clinicService::getClinicByUser,
+                clinic -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.clinic(clinic.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageWaitService.await(chat, after, limit, timeout))
+                    );
+                }
+        ));
+    }
 }
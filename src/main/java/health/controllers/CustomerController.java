@@ -1,21 +1,32 @@
 package health.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import health.auth.services.AuthenticationService;
+import health.cache.OwnershipIndex;
 import health.models.*;
 import health.models.auth.Role;
 import health.models.dto.*;
 import health.models.mapper.*;
+import health.realtime.ChatParticipant;
+import health.realtime.ChatStreamService;
+import health.realtime.MessageWaitService;
 import health.services.*;
 import health.utils.ChatMessageUtil;
 import health.utils.EntityMergeUtil;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/customer")
@@ -27,6 +38,9 @@ public class CustomerController extends BaseController {
     private final AppointmentService appointmentService;
     private final ChatService chatService;
     private final MessageService messageService;
+    private final ChatStreamService chatStreamService;
+    private final MessageWaitService messageWaitService;
+    private final MessageIngestService messageIngestService;
     private final DoctorService doctorService;
 
     private final AnalysisMapper analysisMapper;
@@ -34,6 +48,10 @@ public class CustomerController extends BaseController {
     private final AppointmentMapper appointmentMapper;
     private final ChatMapper chatMapper;
     private final MessageMapper messageMapper;
+    private final JsonArrayWriter jsonArrayWriter;
+    private final AnalysisImportService analysisImportService;
+    private final CustomerExportService customerExportService;
+    private final OwnershipIndex ownershipIndex;
 
     public CustomerController(
             AuthenticationService authenticationService,
@@ -43,12 +61,19 @@ public class CustomerController extends BaseController {
             AppointmentService appointmentService,
             ChatService chatService,
             MessageService messageService,
+            ChatStreamService chatStreamService,
+            MessageWaitService messageWaitService,
+            MessageIngestService messageIngestService,
             DoctorService doctorService,
             AnalysisMapper analysisMapper,
             CustomerMapper customerMapper,
             AppointmentMapper appointmentMapper,
             ChatMapper chatMapper,
-            MessageMapper messageMapper) {
+            MessageMapper messageMapper,
+            JsonArrayWriter jsonArrayWriter,
+            AnalysisImportService analysisImportService,
+            CustomerExportService customerExportService,
+            OwnershipIndex ownershipIndex) {
         super(authenticationService);
         this.customerService = customerService;
         this.analysisService = analysisService;
@@ -56,12 +81,19 @@ public class CustomerController extends BaseController {
         this.appointmentService = appointmentService;
         this.chatService = chatService;
         this.messageService = messageService;
+        this.chatStreamService = chatStreamService;
+        this.messageWaitService = messageWaitService;
+        this.messageIngestService = messageIngestService;
         this.doctorService = doctorService;
         this.analysisMapper = analysisMapper;
         this.customerMapper = customerMapper;
         this.appointmentMapper = appointmentMapper;
         this.chatMapper = chatMapper;
         this.messageMapper = messageMapper;
+        this.jsonArrayWriter = jsonArrayWriter;
+        this.analysisImportService = analysisImportService;
+        this.customerExportService = customerExportService;
+        this.ownershipIndex = ownershipIndex;
     }
 
     @GetMapping()
@@ -71,7 +103,7 @@ public class CustomerController extends BaseController {
                 customer -> {
                     var customerDto = customerMapper.mapToDto(customer);
                     customerDto.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(customerDto);
+                    return okWithETag(customerDto, customer.getVersion());
                 }
         );
     }
@@ -85,49 +117,109 @@ public class CustomerController extends BaseController {
                     updatedCustomer = customerService.updateCustomer(updatedCustomer);
                     var res = customerMapper.mapToDto(updatedCustomer);
                     res.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(res);
+                    return okWithETag(res, updatedCustomer.getVersion());
                 }
         );
     }
 
-    @GetMapping("/analysis")
-    public ResponseEntity<List<Map<String, Object>>> getCustomerAnalysis() {
+    /**
+     * Updates the profile with a JSON merge patch (RFC 7396): fields in the patch are replaced, fields set to
+     * null are cleared, others stay. Answers 412 if {@code If-Match} does not match the current ETag and 409
+     * if the profile changed while the patch was applied; the response carries the new ETag.
+     */
+    @PatchMapping(consumes = MergePatchMapper.MEDIA_TYPE)
+    public ResponseEntity<CustomerDto> patchCustomerInfo(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                         @RequestBody JsonNode patch) {
         return withUserEntity(
                 customerService::getCustomerByUser,
                 customer -> {
-                    var analysis = analysisService.getAnalysysesByCustomer(customer);
-        var response = analysis.stream()
-                .map(analysisMapper::mapToDto)
-                .collect(Collectors.groupingBy(
-                        AnalysisDto::name,
-                        Collectors.toList()
-                ))
-                .entrySet().stream()
-                .map(entry -> {
-                    var name = entry.getKey();
+                    if (!matchesETag(ifMatch, customer.getVersion())) {
+                        return preconditionFailed();
+                    }
+                    return customerService.patchCustomer(customer, patch)
+                            .map(patched -> okWithETag(customerMapper.mapToDto(patched), patched.getVersion()))
+                            .orElseGet(this::badRequest);
+                }
+        );
+    }
 
-                    var group = entry.getValue();
+    /**
+     * Downloads everything stored about the customer as a ZIP of JSON, CSV and NDJSON files,
+     * written while it is read.
+     */
+    @GetMapping(value = "/export", produces = CustomerExportService.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportCustomerData() {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                .filename("customer-" + customer.getId() + "-export.zip").build().toString())
+                        .body((StreamingResponseBody) out -> customerExportService.exportForCustomer(customer, out))
+        );
+    }
 
-                    var unit = group.get(0).unit();
+    /**
+     * Streams the analyses of the customer grouped into one series per name, ordered by date.
+     * Optionally restricted to some {@code names}, to dates in [{@code from}, {@code to})
+     * and to results outside their reference range ({@code abnormal}).
+     */
+    @GetMapping("/analysis")
+    public ResponseEntity<StreamingResponseBody> getCustomerAnalysis(
+            @RequestParam(required = false) List<String> names,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "false") boolean abnormal) {
+        var filter = new AnalysisSeriesFilter(names, from, to, abnormal);
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(jsonArrayWriter.<AnalysisSeriesDto>stream(
+                                consumer -> analysisService.forEachSeries(customer, filter, consumer)))
+        );
+    }
 
-                    var values = group.stream()
-                            .map(dto -> {
-                                Map<String, Object> map = new HashMap<>();
-                                map.put("id", dto.id());
-                                map.put("value", dto.value()); // Преобразуем при необходимости
-                                map.put("date", dto.date());  // Преобразуем `Instant` в строку или используйте как есть
-                                return map;
-                            })
-                            .toList();
-                    return Map.of(
-                            "name", name,
-                            "unit", unit,
-                            "values", values
-                    );
-                    })
-                    .toList();
-                    return ResponseEntity.ok(response);
-                }
+    /**
+     * The latest result of every analysis name, ordered by name.
+     */
+    @GetMapping("/analysis/latest")
+    public ResponseEntity<List<AnalysisDto>> getCustomerLatestAnalysis() {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> ResponseEntity.ok(analysisService.getLatest(customer))
+        );
+    }
+
+    /**
+     * Count, min, max and average of the values in the canonical unit and the latest result of every analysis name.
+     */
+    @GetMapping("/analysis/stats")
+    public ResponseEntity<List<AnalysisStatsDto>> getCustomerAnalysisStats(
+            @RequestParam(required = false) List<String> names,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "false") boolean abnormal) {
+        var filter = new AnalysisSeriesFilter(names, from, to, abnormal);
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> ResponseEntity.ok(analysisService.getStats(customer, filter))
+        );
+    }
+
+    /**
+     * Values of one analysis in its canonical unit for charting, downsampled to at most {@code points} points.
+     */
+    @GetMapping("/analysis/chart")
+    public ResponseEntity<AnalysisSeriesDto> getCustomerAnalysisChart(
+            @RequestParam String name,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "500") int points) {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> analysisService.getDownsampledSeries(customer, name, from, to, points)
+                        .map(ResponseEntity::ok)
+                        .orElseGet(this::notFound)
         );
     }
 
@@ -148,21 +240,46 @@ public class CustomerController extends BaseController {
         );
     }
 
+    /**
+     * Imports a CSV or NDJSON file of lab results row by row and reports the rows that were rejected.
+     */
+    @PostMapping(value = "/analysis/import", consumes = {AnalysisImportService.Format.CSV_VALUE, AnalysisImportService.Format.NDJSON_VALUE})
+    public ResponseEntity<AnalysisImportReportDto> importCustomerAnalysis(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                                          InputStream body) {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> AnalysisImportService.Format.of(contentType)
+                        .map(format -> ResponseEntity.ok(analysisImportService.importForCustomer(
+                                customer, body, format, AnalysisImportService.charsetOf(contentType))))
+                        .orElseGet(this::badRequest)
+        );
+    }
+
+    /**
+     * Deletes one analysis of the customer; analyses of other customers are not found.
+     */
     @DeleteMapping("/analysis/{id}")
     public ResponseEntity<Void> deleteCustomerAnalysis(@PathVariable Long id) {
         return withUserEntity(
                 customerService::getCustomerByUser,
-                customer -> withEntity(
-                        analysisService::getAnalysisById,
-                        id,
-                        analysis -> {
-                            if (!belongsTo(analysis.getCustomer().getId(), customer.getId())) {
-                                return forbidden();
-                            }
-                            analysisService.deleteAnalysis(analysis);
-                            return ResponseEntity.ok().build();
-                        }
-                )
+                customer -> analysisService.deleteAnalyses(customer, List.of(id)) == 0
+                        ? this.<Void>notFound()
+                        : ResponseEntity.ok().<Void>build()
+        );
+    }
+
+    /**
+     * Deletes analyses of the customer by id in one statement and reports how many were deleted;
+     * ids of other customers' analyses are skipped.
+     */
+    @DeleteMapping("/analysis")
+    public ResponseEntity<AnalysisDeleteReportDto> deleteCustomerAnalyses(@RequestBody List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > AnalysisService.MAX_DELETE_IDS || ids.contains(null)) {
+            return badRequest();
+        }
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> ResponseEntity.ok(new AnalysisDeleteReportDto(ids.size(), analysisService.deleteAnalyses(customer, ids)))
         );
     }
 
@@ -181,18 +298,20 @@ public class CustomerController extends BaseController {
     public ResponseEntity<Void> deleteAppointment(@PathVariable Long appointmentId) {
         return withUserEntity(
                 customerService::getCustomerByUser,
-                customer -> withEntity(
-                        appointmentService::getAppointmentById,
-                        appointmentId,
-                        appointment -> {
-                            if (!belongsTo(appointment.getCustomer().getId(), customer.getId())) {
-                                return notFound();
+                customer -> {
+                    if (!ownershipIndex.isAppointmentOf(appointmentId, customer.getId())) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            appointmentService::getAppointmentById,
+                            appointmentId,
+                            appointment -> {
+                                timetableService.freeTimetable(appointment.getTimetable());
+                                appointmentService.deleteAppointment(appointment);
+                                return ResponseEntity.ok().build();
                             }
-                            timetableService.freeTimetable(appointment.getTimetable());
-                            appointmentService.deleteAppointment(appointment);
-                            return ResponseEntity.ok().build();
-                        }
-                )
+                    );
+                }
         );
     }
 
@@ -232,24 +351,121 @@ public class CustomerController extends BaseController {
         );
     }
 
+    @GetMapping("/chat/inbox")
+    public ResponseEntity<InboxPageDto> getInbox(@RequestParam(defaultValue = "0") int page,
+                                                 @RequestParam(defaultValue = "20") int size) {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    var inbox = chatService.getInboxByCustomer(customer, page, size);
+                    return ResponseEntity.ok(new InboxPageDto(inbox.getContent(), inbox.getNumber(), inbox.hasNext()));
+                }
+        );
+    }
+
+    @PostMapping("/chat/{chatId}/read")
+    public ResponseEntity<ReadReceiptDto> markChatRead(@PathVariable Long chatId,
+                                                       @RequestParam(required = false) Long seq) {
+        long readSeq = seq == null ? Long.MAX_VALUE : seq;
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return ResponseEntity.ok(chatService.markRead(chatService.getChatReference(chatId), Role.CUSTOMER, readSeq));
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChatMessages(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    var chatIds = chatService.getChatIdsByCustomer(customer);
+                    return ResponseEntity.ok(chatStreamService.open(ChatParticipant.customer(customer.getId()), chatIds, lastEventId));
+                }
+        );
+    }
+
     @GetMapping("/chat/{chatId}/message")
     public ResponseEntity<List<MessageDto>> getChatMessages(@PathVariable Long chatId) {
         return withUserEntity(
                 customerService::getCustomerByUser,
-                customer -> withEntity(
-                        chatService::getChatById,
-                        chatId,
-                        chat -> {
-                            if (!belongsTo(chat.getCustomer().getId(), customer.getId())) {
-                                return notFound();
-                            }
-                            List<Message> messages = messageService.getMessagesByChat(chat);
-                            return ResponseEntity.ok(messages.stream().map(messageMapper::mapToDto).toList());
-                        }
-                )
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessageDtosByChat(chat))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "after")
+    public ResponseEntity<MessageSyncDto> getChatMessagesAfter(@PathVariable Long chatId,
+                                                               @RequestParam(required = false) Long after,
+                                                               @RequestParam(defaultValue = "50") int limit) {
+        long seq = after == null ? 0 : after;
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageAfter(chat, seq, limit))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "before")
+    public ResponseEntity<MessageSyncDto> getChatMessagesBefore(@PathVariable Long chatId,
+                                                                @RequestParam(required = false) Long before,
+                                                                @RequestParam(defaultValue = "50") int limit) {
+        long seq = before == null ? Long.MAX_VALUE : before;
+        return withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageBefore(chat, seq, limit))
+                    );
+                }
         );
     }
 
+    @GetMapping("/chat/{chatId}/message/wait")
+    public DeferredResult<ResponseEntity<MessageSyncDto>> waitForChatMessages(@PathVariable Long chatId,
+                                                                             @RequestParam(defaultValue = "0") long after,
+                                                                             @RequestParam(defaultValue = "50") int limit,
+                                                                             @RequestParam(required = false) Long timeout) {
+        return deferred(withUserEntity(
+                customerService::getCustomerByUser,
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageWaitService.await(chat, after, limit, timeout))
+                    );
+                }
+        ));
+    }
+
     @PostMapping("/chat/{doctorId}")
     public ResponseEntity<ChatDto> createChat(@PathVariable Long doctorId) {
         return withUserEntity(
@@ -258,43 +474,34 @@ public class CustomerController extends BaseController {
                         doctorService::getDoctorById,
                         doctorId,
                         doctor -> {
-                            var appointmentOpt = appointmentService.getAppointmentsByDoctorAndCustomer(doctor, customer);
-                            if (appointmentOpt.isEmpty()) {
+                            if (!appointmentService.hasAppointment(doctor, customer)) {
                                 return badRequest();
                             }
-                            var chatOpt = chatService.getChatByDoctorAndCustomer(doctor, customer);
-                            if (chatOpt.isPresent()) {
-                                return ResponseEntity.ok(chatMapper.mapToDto(chatOpt.get()));
-                            }
-                            var chat = Chat.builder()
-                                    .customer(customer)
-                                    .doctor(doctor)
-                                    .clinic(doctor.getClinic())
-                                    .build();
-                            chat = chatService.saveOrUpdateChat(chat);
-                            return ResponseEntity.ok(chatMapper.mapToDto(chat));
+                            return ResponseEntity.ok(chatMapper.mapToDto(chatService.getOrCreateChat(doctor, customer)));
                         }
                 )
         );
     }
 
     @PostMapping("/chat/{chatId}/message")
-    public ResponseEntity<List<MessageDto>> createMessage(@PathVariable Long chatId, @Valid @RequestBody MessageDto messageDto) {
+    public ResponseEntity<MessageSyncDto> createMessage(@PathVariable Long chatId, @Valid @RequestBody MessageDto messageDto) {
         return withUserEntity(
                 customerService::getCustomerByUser,
-                customer -> withEntity(
-                        chatService::getChatById,
-                        chatId,
-                        chat -> {
-                            if (!belongsTo(chat.getCustomer().getId(), customer.getId())) {
-                                return notFound();
+                customer -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.customer(customer.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> {
+                                var message = ChatMessageUtil.createMessage(chat, messageDto.text(), Role.CUSTOMER);
+                                return messageIngestService.ingest(message)
+                                        .map(saved -> ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(saved), saved.getSeq(), false)))
+                                        .orElseGet(this::serviceUnavailable);
                             }
-                            var message = ChatMessageUtil.createMessage(chat, messageDto.text(), Role.CUSTOMER);
-                            message = messageService.saveOrUpdateMessage(message);
-                            var messages = messageService.getMessagesByChat(chat);
-                            return ResponseEntity.ok(messages.stream().map(messageMapper::mapToDto).toList());
-                        }
-                )
+                    );
+                }
         );
     }
 }
@@ -1,16 +1,25 @@
 package health.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import health.auth.services.AuthenticationService;
+import health.cache.OwnershipIndex;
 import health.models.Chat;
-import health.models.Message;
+import health.models.MessageSearchQuery;
 import health.models.auth.Role;
 import health.models.dto.*;
 import health.models.mapper.*;
+import health.realtime.ChatParticipant;
+import health.realtime.ChatStreamService;
+import health.realtime.MessageWaitService;
 import health.services.*;
 import health.utils.ChatMessageUtil;
 import health.utils.EntityMergeUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -30,8 +39,12 @@ public class DoctorController extends BaseController {
     private final ChatService chatService;
     private final ChatMapper chatMapper;
     private final MessageService messageService;
+    private final ChatStreamService chatStreamService;
+    private final MessageWaitService messageWaitService;
+    private final MessageIngestService messageIngestService;
     private final MessageMapper messageMapper;
     private final CustomerService customerService;
+    private final OwnershipIndex ownershipIndex;
 
     public DoctorController(
             AuthenticationService authenticationService,
@@ -44,8 +57,12 @@ public class DoctorController extends BaseController {
             ChatService chatService,
             ChatMapper chatMapper,
             MessageService messageService,
+            ChatStreamService chatStreamService,
+            MessageWaitService messageWaitService,
+            MessageIngestService messageIngestService,
             MessageMapper messageMapper,
-            CustomerService customerService) {
+            CustomerService customerService,
+            OwnershipIndex ownershipIndex) {
         super(authenticationService);
         this.appointmentService = appointmentService;
         this.appointmentMapper = appointmentMapper;
@@ -56,8 +73,12 @@ public class DoctorController extends BaseController {
         this.chatService = chatService;
         this.chatMapper = chatMapper;
         this.messageService = messageService;
+        this.chatStreamService = chatStreamService;
+        this.messageWaitService = messageWaitService;
+        this.messageIngestService = messageIngestService;
         this.messageMapper = messageMapper;
         this.customerService = customerService;
+        this.ownershipIndex = ownershipIndex;
     }
 
     @GetMapping()
@@ -67,7 +88,7 @@ public class DoctorController extends BaseController {
                 doctor -> {
                     var doctorDto = doctorMapper.mapToDto(doctor);
                     doctorDto.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(doctorDto);
+                    return okWithETag(doctorDto, doctor.getVersion());
                 }
         );
     }
@@ -81,7 +102,28 @@ public class DoctorController extends BaseController {
                     updatedDoctor = doctorService.updateDoctor(updatedDoctor);
                     var res = doctorMapper.mapToDto(updatedDoctor);
                     res.toBuilder().email(getCurrentUser().getEmail());
-                    return ResponseEntity.ok(res);
+                    return okWithETag(res, updatedDoctor.getVersion());
+                }
+        );
+    }
+
+    /**
+     * Updates the profile with a JSON merge patch (RFC 7396): fields in the patch are replaced, fields set to
+     * null are cleared, others stay. Answers 412 if {@code If-Match} does not match the current ETag and 409
+     * if the profile changed while the patch was applied; the response carries the new ETag.
+     */
+    @PatchMapping(consumes = MergePatchMapper.MEDIA_TYPE)
+    public ResponseEntity<DoctorDto> patchDoctorInfo(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestBody JsonNode patch) {
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!matchesETag(ifMatch, doctor.getVersion())) {
+                        return preconditionFailed();
+                    }
+                    return doctorService.patchDoctor(doctor, patch)
+                            .map(patched -> okWithETag(doctorMapper.mapToDto(patched), patched.getVersion()))
+                            .orElseGet(this::badRequest);
                 }
         );
     }
@@ -121,24 +163,165 @@ public class DoctorController extends BaseController {
         );
     }
 
+    @GetMapping("/chat/inbox")
+    public ResponseEntity<InboxPageDto> getInbox(@RequestParam(defaultValue = "0") int page,
+                                                 @RequestParam(defaultValue = "20") int size) {
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    var inbox = chatService.getInboxByDoctor(doctor, page, size);
+                    return ResponseEntity.ok(new InboxPageDto(inbox.getContent(), inbox.getNumber(), inbox.hasNext()));
+                }
+        );
+    }
+
+    @GetMapping("/chat/search")
+    public ResponseEntity<MessageSearchPageDto> searchMessages(@RequestParam String q,
+                                                               @RequestParam(defaultValue = "0") int page,
+                                                               @RequestParam(defaultValue = "20") int size) {
+        var query = MessageSearchQuery.parse(q);
+        if (query.isEmpty()) {
+            return badRequest();
+        }
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    var hits = messageService.searchByDoctor(doctor, query.get(), page, size);
+                    return ResponseEntity.ok(new MessageSearchPageDto(hits.getContent(), hits.getNumber(), hits.hasNext()));
+                }
+        );
+    }
+
+    @PostMapping("/chat/{chatId}/read")
+    public ResponseEntity<ReadReceiptDto> markChatRead(@PathVariable Long chatId,
+                                                       @RequestParam(required = false) Long seq) {
+        long readSeq = seq == null ? Long.MAX_VALUE : seq;
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return ResponseEntity.ok(chatService.markRead(chatService.getChatReference(chatId), Role.DOCTOR, readSeq));
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChatMessages(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    var chatIds = chatService.getChatIdsByDoctor(doctor);
+                    return ResponseEntity.ok(chatStreamService.open(ChatParticipant.doctor(doctor.getId()), chatIds, lastEventId));
+                }
+        );
+    }
+
     @GetMapping("/chat/{chatId}/message")
     public ResponseEntity<List<MessageDto>> getChatMessages(@PathVariable Long chatId) {
         return withUserEntity(
                 doctorService::getDoctorByUser,
-                doctor -> withEntity(
-                        chatService::getChatById,
-                        chatId,
-                        chat -> {
-                            if (!belongsTo(chat.getDoctor().getId(), doctor.getId())) {
-                                return notFound();
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessageDtosByChat(chat))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "after")
+    public ResponseEntity<MessageSyncDto> getChatMessagesAfter(@PathVariable Long chatId,
+                                                               @RequestParam(required = false) Long after,
+                                                               @RequestParam(defaultValue = "50") int limit) {
+        long seq = after == null ? 0 : after;
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageAfter(chat, seq, limit))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "before")
+    public ResponseEntity<MessageSyncDto> getChatMessagesBefore(@PathVariable Long chatId,
+                                                                @RequestParam(required = false) Long before,
+                                                                @RequestParam(defaultValue = "50") int limit) {
+        long seq = before == null ? Long.MAX_VALUE : before;
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageService.getMessagePageBefore(chat, seq, limit))
+                    );
+                }
+        );
+    }
+
+    @GetMapping(value = "/chat/{chatId}/message", params = "q")
+    public ResponseEntity<MessageSearchPageDto> searchChatMessages(@PathVariable Long chatId,
+                                                                   @RequestParam String q,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "20") int size) {
+        var query = MessageSearchQuery.parse(q);
+        if (query.isEmpty()) {
+            return badRequest();
+        }
+        return withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> {
+                                var hits = messageService.searchInChat(chat, query.get(), page, size);
+                                return ResponseEntity.ok(new MessageSearchPageDto(hits.getContent(), hits.getNumber(), hits.hasNext()));
                             }
-                            List<Message> messages = messageService.getMessagesByChat(chat);
-                            return ResponseEntity.ok(messages.stream().map(messageMapper::mapToDto).toList());
-                        }
-                )
+                    );
+                }
         );
     }
 
+    @GetMapping("/chat/{chatId}/message/wait")
+    public DeferredResult<ResponseEntity<MessageSyncDto>> waitForChatMessages(@PathVariable Long chatId,
+                                                                             @RequestParam(defaultValue = "0") long after,
+                                                                             @RequestParam(defaultValue = "50") int limit,
+                                                                             @RequestParam(required = false) Long timeout) {
+        return deferred(withUserEntity(
+                doctorService::getDoctorByUser,
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> ResponseEntity.ok(messageWaitService.await(chat, after, limit, timeout))
+                    );
+                }
+        ));
+    }
+
     @PostMapping("/chat/{customerId}")
     public ResponseEntity<ChatDto> createChat(@PathVariable Long customerId) {
         return withUserEntity(
@@ -147,43 +330,34 @@ public class DoctorController extends BaseController {
                         customerService::getCustomerById,
                         customerId,
                         customer -> {
-                            var appointmentOpt = appointmentService.getAppointmentsByDoctorAndCustomer(doctor, customer);
-                            if (appointmentOpt.isEmpty()) {
+                            if (!appointmentService.hasAppointment(doctor, customer)) {
                                 return badRequest();
                             }
-                            var chatOpt = chatService.getChatByDoctorAndCustomer(doctor, customer);
-                            if (chatOpt.isPresent()) {
-                                return ResponseEntity.ok(chatMapper.mapToDto(chatOpt.get()));
-                            }
-                            var chat = Chat.builder()
-                                    .customer(customer)
-                                    .doctor(doctor)
-                                    .clinic(doctor.getClinic())
-                                    .build();
-                            chat = chatService.saveOrUpdateChat(chat);
-                            return ResponseEntity.ok(chatMapper.mapToDto(chat));
+                            return ResponseEntity.ok(chatMapper.mapToDto(chatService.getOrCreateChat(doctor, customer)));
                         }
                 )
         );
     }
 
     @PostMapping("/chat/{chatId}/message")
-    public ResponseEntity<List<MessageDto>> createMessage(@PathVariable Long chatId, @Valid @RequestBody MessageDto messageDto) {
+    public ResponseEntity<MessageSyncDto> createMessage(@PathVariable Long chatId, @Valid @RequestBody MessageDto messageDto) {
         return withUserEntity(
                 doctorService::getDoctorByUser,
-                doctor -> withEntity(
-                        chatService::getChatById,
-                        chatId,
-                        chat -> {
-                            if (!belongsTo(chat.getDoctor().getId(), doctor.getId())) {
-                                return notFound();
+                doctor -> {
+                    if (!ownershipIndex.isChatOf(chatId, ChatParticipant.doctor(doctor.getId()))) {
+                        return notFound();
+                    }
+                    return withEntity(
+                            chatService::getChatById,
+                            chatId,
+                            chat -> {
+                                var message = ChatMessageUtil.createMessage(chat, messageDto.text(), Role.DOCTOR);
+                                return messageIngestService.ingest(message)
+                                        .map(saved -> ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(saved), saved.getSeq(), false)))
+                                        .orElseGet(this::serviceUnavailable);
                             }
-                            var message = ChatMessageUtil.createMessage(chat, messageDto.text(), Role.DOCTOR);
-                            message = messageService.saveOrUpdateMessage(message);
-                            var messages = messageService.getMessagesByChat(chat);
-                            return ResponseEntity.ok(messages.stream().map(messageMapper::mapToDto).toList());
-                        }
-                )
+                    );
+                }
         );
     }
 }
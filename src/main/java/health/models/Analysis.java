@@ -2,6 +2,7 @@ package health.models;
 
 
 import health.models.auth.User;
+import health.utils.AnalysisValueUtil;
 import lombok.*;
 
 import javax.persistence.*;
@@ -12,7 +13,8 @@ import java.time.Instant;
     @Index(name = "idx_analysis_customer", columnList = "customers"),
     @Index(name = "idx_analysis_name", columnList = "name"),
     @Index(name = "idx_analysis_date", columnList = "date"),
-    @Index(name = "idx_analysis_customer_name", columnList = "customers, name")
+    @Index(name = "idx_analysis_customer_name", columnList = "customers, name"),
+    @Index(name = "idx_analysis_customer_flag", columnList = "customers, flag, date")
 })
 @Getter
 @Setter
@@ -21,7 +23,8 @@ import java.time.Instant;
 @AllArgsConstructor
 public class Analysis {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "analysis_id_seq")
+    @SequenceGenerator(name = "analysis_id_seq", sequenceName = "analysis_id_seq", allocationSize = 50)
     private long id;
 
     @ManyToOne(optional = false)
@@ -34,10 +37,28 @@ public class Analysis {
     @Column(nullable = false)
     private String value;
 
+    // Value as a number when the result is one, kept in sync with value on every write
+    private Double numericValue;
+
     @Column(nullable = false)
     private String unit;
 
+    // Numeric value in the canonical unit of the name (UnitConversionService), null when it cannot be converted
+    private Double canonicalValue;
+
+    private String canonicalUnit;
+
     @Column(nullable = false)
     private Instant date;
 
+    // Set once when stored from the reference ranges of the time, null when no range applies
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private AnalysisFlag flag;
+
+    @PrePersist
+    @PreUpdate
+    void parseNumericValue() {
+        numericValue = AnalysisValueUtil.parseNumeric(value);
+    }
 }
@@ -0,0 +1,28 @@
+package health.models;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Persisted progress of one AnalysisBackfillService walk over the analysis table.
+ */
+@Entity
+@Table(name = "analysis_backfill_checkpoint")
+@Getter
+@Setter
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisBackfillCheckpoint {
+    @Id
+    @Column(length = 32)
+    private String walk;
+
+    // Highest analysis id the walk has examined
+    @Column(nullable = false)
+    private long lastId;
+
+    @Column(nullable = false)
+    private boolean done;
+}
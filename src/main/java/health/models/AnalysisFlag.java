@@ -0,0 +1,14 @@
+package health.models;
+
+/**
+ * Position of a numeric result relative to its reference range, see ReferenceRangeCatalog.
+ */
+public enum AnalysisFlag {
+    NORMAL,
+    LOW,
+    HIGH;
+
+    public boolean isAbnormal() {
+        return this != NORMAL;
+    }
+}
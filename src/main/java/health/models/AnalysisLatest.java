@@ -0,0 +1,45 @@
+package health.models;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Pointer to the latest result of every analysis name of a customer, kept up to date by AnalysisService.
+ * Latest means the highest date, and the highest id among results of the same date.
+ */
+@Entity
+@Table(name = "analysis_latest")
+@IdClass(AnalysisLatest.Key.class)
+@Getter
+@Setter
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisLatest {
+    @Id
+    @Column(name = "customers")
+    private long customerId;
+
+    @Id
+    @Column(nullable = false)
+    private String name;
+
+    @OneToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "analysis")
+    private Analysis analysis;
+
+    // Copy of the analysis date, so a new result is compared without reading the current one
+    @Column(nullable = false)
+    private Instant date;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private long customerId;
+        private String name;
+    }
+}
@@ -0,0 +1,27 @@
+package health.models;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Optional restrictions on the analysis series of a customer.
+ *
+ * @param names Analysis names to include, all when null or empty
+ * @param from Earliest date included, unbounded when null
+ * @param to Date the series end before, unbounded when null
+ * @param abnormalOnly Only results flagged LOW or HIGH
+ */
+public record AnalysisSeriesFilter(List<String> names, Instant from, Instant to, boolean abnormalOnly) {
+
+    public static final int MAX_NAMES = 100;
+
+    public static final AnalysisSeriesFilter ALL = new AnalysisSeriesFilter(null, null, null);
+
+    public AnalysisSeriesFilter {
+        names = names == null ? List.of() : names.stream().distinct().limit(MAX_NAMES).toList();
+    }
+
+    public AnalysisSeriesFilter(List<String> names, Instant from, Instant to) {
+        this(names, from, to, false);
+    }
+}
@@ -1,5 +1,6 @@
 package health.models;
 
+import health.models.auth.Role;
 import lombok.*;
 
 import javax.persistence.*;
@@ -10,7 +11,11 @@ import java.time.Instant;
     @Index(name = "idx_chat_clinic", columnList = "clinics"),
     @Index(name = "idx_chat_doctor", columnList = "doctors"),
     @Index(name = "idx_chat_customer", columnList = "customers"),
-    @Index(name = "idx_chat_doctor_customer", columnList = "doctors, customers")
+    @Index(name = "idx_chat_customer_activity", columnList = "customers, lastActivity"),
+    @Index(name = "idx_chat_doctor_activity", columnList = "doctors, lastActivity"),
+    @Index(name = "idx_chat_clinic_activity", columnList = "clinics, lastActivity")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_chat_doctor_customer", columnNames = {"doctors", "customers"})
 })
 @Getter
 @Setter
@@ -19,19 +24,44 @@ import java.time.Instant;
 @AllArgsConstructor
 public class Chat {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chats_id_seq")
+    @SequenceGenerator(name = "chats_id_seq", sequenceName = "chats_id_seq", allocationSize = 50)
     private long id;
 
-    @ManyToOne(optional = false)
+    // Participants are lazy: checks and streams need their ids only, list queries fetch doctor and customer
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "clinics")
     private Clinic clinic;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "doctors")
     private Doctor doctor;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "customers")
     private Customer customer;
 
+    // Inbox columns below are maintained only by ChatRepo queries, never written back from a loaded entity
+    @Column(nullable = false, updatable = false)
+    private long lastMessageSeq;
+
+    @Column(length = 200, updatable = false)
+    private String lastMessagePreview;
+
+    @Enumerated(EnumType.STRING)
+    @Column(updatable = false)
+    private Role lastMessageRole;
+
+    @Column(nullable = false, updatable = false)
+    private Instant lastActivity;
+
+    @Column(nullable = false, updatable = false)
+    private long customerReadSeq;
+
+    @Column(nullable = false, updatable = false)
+    private long doctorReadSeq;
+
+    // Archive checkpoint: messages with seq up to this value were moved to MessageArchive blocks
+    @Column(nullable = false, updatable = false)
+    private long archivedSeq;
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package health.models;
 
 import health.models.auth.User;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 
@@ -10,6 +11,7 @@ import javax.persistence.*;
     @Index(name = "idx_clinic_user", columnList = "_user"),
     @Index(name = "idx_clinic_name", columnList = "name")
 })
+@DynamicUpdate
 @Getter
 @Setter
 @Builder(toBuilder = true)
@@ -17,7 +19,8 @@ import javax.persistence.*;
 @AllArgsConstructor
 public class Clinic {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "clinics_id_seq")
+    @SequenceGenerator(name = "clinics_id_seq", sequenceName = "clinics_id_seq", allocationSize = 50)
     private long id;
 
     @OneToOne(optional = false)
@@ -29,4 +32,9 @@ public class Clinic {
 
     @Column(name = "description")
     private String description;
+
+    // Optimistic lock for profile updates, sent to clients as the ETag of the profile
+    @Version
+    @Column(nullable = false)
+    private long version;
 }
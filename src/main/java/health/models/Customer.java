@@ -5,6 +5,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import health.models.auth.User;
 
@@ -12,15 +13,18 @@ import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.validation.constraints.Min;
 
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.lang.Nullable;
 
 @Entity
 @Table(name = "customers", indexes = {
     @Index(name = "idx_customer_user", columnList = "_user")
 })
+@DynamicUpdate
 @Getter
 @Setter
 @Builder(toBuilder = true)
@@ -28,7 +32,8 @@ import org.springframework.lang.Nullable;
 @AllArgsConstructor
 public class Customer {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customers_id_seq")
+    @SequenceGenerator(name = "customers_id_seq", sequenceName = "customers_id_seq", allocationSize = 50)
     private long id;
 
     @OneToOne(optional = false)
@@ -55,4 +60,8 @@ public class Customer {
     @Min(value = 1, message = "Age must be greater than 0")
     private Integer height;
 
+    // Optimistic lock for profile updates, sent to clients as the ETag of the profile
+    @Version
+    @Column(nullable = false)
+    private long version;
 }
@@ -2,6 +2,7 @@ package health.models;
 
 import health.models.auth.User;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 
@@ -12,6 +13,7 @@ import javax.persistence.*;
     @Index(name = "idx_doctor_speciality", columnList = "speciality"),
     @Index(name = "idx_doctor_name", columnList = "firstName, lastName")
 })
+@DynamicUpdate
 @Getter
 @Setter
 @Builder(toBuilder = true)
@@ -20,7 +22,8 @@ import javax.persistence.*;
 public class Doctor {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "doctors_id_seq")
+    @SequenceGenerator(name = "doctors_id_seq", sequenceName = "doctors_id_seq", allocationSize = 50)
     private long id;
 
     @OneToOne(optional = false)
@@ -40,4 +43,8 @@ public class Doctor {
     @Column(nullable = false)
     private String speciality;
 
+    // Optimistic lock for profile updates, sent to clients as the ETag of the profile
+    @Version
+    @Column(nullable = false)
+    private long version;
 }
@@ -0,0 +1,35 @@
+package health.models;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@Entity
+@Table(name = "entity_change_log", indexes = {
+    @Index(name = "idx_entity_change_log_changed_at", columnList = "changedAt")
+})
+@Getter
+@Setter
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityChangeLog {
+    @Id
+    // Stays IDENTITY: pollers use the id as a cursor, per-node id blocks would defeat it
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EntityType entityType;
+
+    @Column(nullable = false)
+    private long entityId;
+
+    @Column(nullable = false)
+    private String origin;
+
+    @Column(nullable = false)
+    private Instant changedAt;
+}
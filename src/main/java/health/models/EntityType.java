@@ -0,0 +1,15 @@
+package health.models;
+
+public enum EntityType {
+    /**
+     * Analyses of a customer; published with the id of the customer.
+     */
+    ANALYSIS,
+    APPOINTMENT,
+    CHAT,
+    CLINIC,
+    CUSTOMER,
+    DOCTOR,
+    MESSAGE,
+    TIMETABLE
+}
@@ -11,6 +11,8 @@ import java.time.Instant;
     @Index(name = "idx_message_chat", columnList = "chats"),
     @Index(name = "idx_message_sendtime", columnList = "sendTime"),
     @Index(name = "idx_message_chat_sendtime", columnList = "chats, sendTime")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_message_chat_seq", columnNames = {"chats", "seq"})
 })
 @Getter
 @Setter
@@ -19,7 +21,8 @@ import java.time.Instant;
 @AllArgsConstructor
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_id_seq")
+    @SequenceGenerator(name = "messages_id_seq", sequenceName = "messages_id_seq", allocationSize = 50)
     private long id;
 
     @ManyToOne(optional = false)
@@ -34,4 +37,8 @@ public class Message {
 
     @Column(nullable = false)
     private Instant sendTime;
+
+    // Gapless position inside the chat, starting at 1
+    @Column(nullable = false, updatable = false)
+    private long seq;
 }
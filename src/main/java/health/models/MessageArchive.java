@@ -0,0 +1,51 @@
+package health.models;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A block of consecutive archived messages of one chat, see MessageArchiveService.
+ */
+@Entity
+@Table(name = "message_archive", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_message_archive_chat_last_seq", columnNames = {"chats", "lastSeq"})
+})
+@Getter
+@Setter
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageArchive {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_archive_id_seq")
+    @SequenceGenerator(name = "message_archive_id_seq", sequenceName = "message_archive_id_seq", allocationSize = 50)
+    private long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "chats")
+    private Chat chat;
+
+    @Column(nullable = false)
+    private long firstSeq;
+
+    @Column(nullable = false)
+    private long lastSeq;
+
+    @Column(nullable = false)
+    private int messageCount;
+
+    @Column(nullable = false)
+    private Instant firstSendTime;
+
+    @Column(nullable = false)
+    private Instant lastSendTime;
+
+    @Column(nullable = false)
+    private Instant archivedAt;
+
+    // Deflate-compressed JSON array of MessageDto; bytea on PostgreSQL, the length only matters to generated schemas
+    @Column(nullable = false, length = 16 * 1024 * 1024)
+    private byte[] payload;
+}
@@ -0,0 +1,106 @@
+package health.models;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search terms typed by a user. A message matches when every term starts one of its words.
+ * Terms are reduced to letters and digits, so they can be inlined in a tsquery or a LIKE pattern.
+ *
+ * @param terms Lowercase terms, at most {@value #MAX_TERMS}
+ */
+public record MessageSearchQuery(List<String> terms) {
+
+    public static final int MAX_TERMS = 8;
+    static final int EXCERPT_LENGTH = 160;
+    private static final int EXCERPT_LEAD = 40;
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    /**
+     * @return Query of the words in {@code value}, or empty if it has none
+     */
+    public static Optional<MessageSearchQuery> parse(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher matcher = WORD.matcher(value.toLowerCase(Locale.ROOT));
+        while (matcher.find() && terms.size() < MAX_TERMS) {
+            terms.add(matcher.group());
+        }
+        return terms.isEmpty() ? Optional.empty() : Optional.of(new MessageSearchQuery(List.copyOf(terms)));
+    }
+
+    /**
+     * @return Prefix query for {@code to_tsquery('simple', ...)}, e.g. {@code blood:* & test:*}
+     */
+    public String toTsQuery() {
+        return String.join(" & ", terms.stream().map(term -> term + ":*").toList());
+    }
+
+    /**
+     * Cuts an excerpt of at most about {@value #EXCERPT_LENGTH} characters around the first match,
+     * escapes it for HTML and wraps matching words in {@code <mark>}.
+     */
+    public String highlight(String text) {
+        List<int[]> matches = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            var word = matcher.group().toLowerCase(Locale.ROOT);
+            if (terms.stream().anyMatch(word::startsWith)) {
+                matches.add(new int[]{matcher.start(), matcher.end()});
+            }
+        }
+
+        int from = 0;
+        int to = text.length();
+        if (text.length() > EXCERPT_LENGTH) {
+            int first = matches.isEmpty() ? 0 : matches.get(0)[0];
+            from = Math.max(0, Math.min(first - EXCERPT_LEAD, text.length() - EXCERPT_LENGTH));
+            to = from + EXCERPT_LENGTH;
+        }
+
+        var result = new StringBuilder(to - from + 32);
+        if (from > 0) {
+            result.append('…');
+        }
+        int position = from;
+        for (int[] match : matches) {
+            if (match[1] <= from || match[0] >= to) {
+                continue;
+            }
+            int start = Math.max(match[0], from);
+            int end = Math.min(match[1], to);
+            escape(text, position, start, result);
+            result.append("<mark>");
+            escape(text, start, end, result);
+            result.append("</mark>");
+            position = end;
+        }
+        escape(text, position, to, result);
+        if (to < text.length()) {
+            result.append('…');
+        }
+        return result.toString();
+    }
+
+    private static void escape(String text, int from, int to, StringBuilder out) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package health.models;
+
+/**
+ * Normal interval of one analysis in one unit, optionally for one gender and age span.
+ *
+ * @param name Analysis name
+ * @param unit Unit the bounds are expressed in
+ * @param gender Gender it applies to, any when null
+ * @param minAge Youngest age in years it applies to, inclusive, unbounded when null
+ * @param maxAge Oldest age in years it applies to, inclusive, unbounded when null
+ * @param low Lowest normal value, unbounded when null
+ * @param high Highest normal value, unbounded when null
+ */
+public record ReferenceRange(String name, String unit, Gender gender, Integer minAge, Integer maxAge, Double low, Double high) {
+
+    boolean appliesTo(Gender customerGender, Integer age) {
+        if (gender != null && gender != customerGender) {
+            return false;
+        }
+        if (minAge == null && maxAge == null) {
+            return true;
+        }
+        return age != null && (minAge == null || age >= minAge) && (maxAge == null || age <= maxAge);
+    }
+
+    AnalysisFlag flag(double value) {
+        if (low != null && value < low) {
+            return AnalysisFlag.LOW;
+        }
+        if (high != null && value > high) {
+            return AnalysisFlag.HIGH;
+        }
+        return AnalysisFlag.NORMAL;
+    }
+
+    // Gender-specific ranges before general ones, then narrower age spans first
+    int specificity() {
+        int ageSpan = (maxAge == null ? 200 : maxAge) - (minAge == null ? 0 : minAge);
+        return (gender == null ? 0 : 1000) - ageSpan;
+    }
+}
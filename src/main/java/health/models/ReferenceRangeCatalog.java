@@ -0,0 +1,67 @@
+package health.models;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable lookup of reference ranges by analysis name and unit, both compared case-insensitively.
+ * Candidates of a name and unit are sorted most specific first when the catalog is built, so a lookup
+ * is one hash probe and a scan of a few entries.
+ */
+public final class ReferenceRangeCatalog {
+
+    public static final ReferenceRangeCatalog EMPTY = new ReferenceRangeCatalog(List.of());
+
+    private final Map<String, List<ReferenceRange>> ranges;
+    private final int size;
+
+    public ReferenceRangeCatalog(List<ReferenceRange> ranges) {
+        Map<String, List<ReferenceRange>> byKey = new HashMap<>();
+        for (ReferenceRange range : ranges) {
+            byKey.computeIfAbsent(key(range.name(), range.unit()), key -> new ArrayList<>()).add(range);
+        }
+        byKey.replaceAll((key, candidates) -> candidates.stream()
+                .sorted(Comparator.comparingInt(ReferenceRange::specificity).reversed())
+                .toList());
+        this.ranges = Map.copyOf(byKey);
+        this.size = ranges.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Most specific range for the analysis and customer, empty when none applies
+     */
+    public Optional<ReferenceRange> find(String name, String unit, Gender gender, Integer age) {
+        if (name == null || unit == null) {
+            return Optional.empty();
+        }
+        for (ReferenceRange range : ranges.getOrDefault(key(name, unit), List.of())) {
+            if (range.appliesTo(gender, age)) {
+                return Optional.of(range);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return Flag of a numeric result, null when the result is not numeric or no range applies
+     */
+    public AnalysisFlag flag(String name, String unit, Double value, Gender gender, Integer age) {
+        if (value == null) {
+            return null;
+        }
+        return find(name, unit, gender, age).map(range -> range.flag(value)).orElse(null);
+    }
+
+    private static String key(String name, String unit) {
+        return name.strip().toLowerCase(Locale.ROOT) + '\n' + unit.strip().toLowerCase(Locale.ROOT);
+    }
+}
@@ -21,7 +21,8 @@ import java.time.Instant;
 @AllArgsConstructor
 public class Timetable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "timetables_id_seq")
+    @SequenceGenerator(name = "timetables_id_seq", sequenceName = "timetables_id_seq", allocationSize = 50)
     private long id;
 
     @ManyToOne(optional = false)
@@ -0,0 +1,93 @@
+package health.models;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable table of linear unit conversions into one canonical unit per analysis name.
+ * Names are compared case-insensitively; units also ignore spaces and accept {@code u} for {@code µ},
+ * so {@code "mmol/l"} and {@code "µmol / L"} find {@code mmol/L} and {@code umol/L}.
+ * Every lookup is two hash probes, nothing is parsed per value.
+ */
+public final class UnitConversionCatalog {
+
+    public static final UnitConversionCatalog EMPTY = new UnitConversionCatalog(List.of());
+
+    /**
+     * @param name Analysis name
+     * @param unit Unit results arrive in
+     * @param canonicalUnit Unit results of the name are stored in
+     * @param factor Multiplier from {@code unit} to {@code canonicalUnit}
+     */
+    public record Conversion(String name, String unit, String canonicalUnit, double factor) {
+    }
+
+    /**
+     * A value in the canonical unit of its analysis.
+     */
+    public record Normalized(double value, String unit) {
+    }
+
+    private record Target(String canonicalUnit, Map<String, Double> factors) {
+    }
+
+    private final Map<String, Target> targets;
+    private final int size;
+
+    public UnitConversionCatalog(List<Conversion> conversions) {
+        Map<String, String> canonicalUnits = new HashMap<>();
+        Map<String, Map<String, Double>> factors = new HashMap<>();
+        for (Conversion conversion : conversions) {
+            var name = nameKey(conversion.name());
+            var canonicalUnit = canonicalUnits.putIfAbsent(name, conversion.canonicalUnit());
+            if (canonicalUnit != null && !unitKey(canonicalUnit).equals(unitKey(conversion.canonicalUnit()))) {
+                throw new IllegalArgumentException("Analysis " + conversion.name() + " has canonical units "
+                        + canonicalUnit + " and " + conversion.canonicalUnit());
+            }
+            var nameFactors = factors.computeIfAbsent(name, key -> new HashMap<>());
+            nameFactors.put(unitKey(conversion.canonicalUnit()), 1.0);
+            nameFactors.put(unitKey(conversion.unit()), conversion.factor());
+        }
+        Map<String, Target> byName = new HashMap<>();
+        canonicalUnits.forEach((name, unit) -> byName.put(name, new Target(unit, Map.copyOf(factors.get(name)))));
+        this.targets = Map.copyOf(byName);
+        this.size = conversions.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Optional<String> canonicalUnit(String name) {
+        return Optional.ofNullable(name == null ? null : targets.get(nameKey(name))).map(Target::canonicalUnit);
+    }
+
+    /**
+     * Converts a numeric result into the canonical unit of its analysis. Analyses without conversions
+     * keep their value and unit; a unit the table cannot convert for a known analysis gives null.
+     *
+     * @return The canonical value, null when the result is not numeric or cannot be converted
+     */
+    public Normalized normalize(String name, String unit, Double value) {
+        if (value == null || name == null || unit == null) {
+            return null;
+        }
+        var target = targets.get(nameKey(name));
+        if (target == null) {
+            return new Normalized(value, unit.strip());
+        }
+        var factor = target.factors().get(unitKey(unit));
+        return factor == null ? null : new Normalized(value * factor, target.canonicalUnit());
+    }
+
+    private static String nameKey(String name) {
+        return name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    static String unitKey(String unit) {
+        return unit.replace(" ", "").replace('µ', 'u').replace('μ', 'u').toLowerCase(Locale.ROOT);
+    }
+}
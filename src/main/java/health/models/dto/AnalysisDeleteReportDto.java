@@ -0,0 +1,13 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+/**
+ * Outcome of a bulk delete: ids that were unknown or belong to another customer count as requested only.
+ */
+@Builder(toBuilder = true)
+public record AnalysisDeleteReportDto(
+        int requested,
+        int deleted
+) {
+}
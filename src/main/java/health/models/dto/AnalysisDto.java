@@ -1,5 +1,6 @@
 package health.models.dto;
 
+import health.models.AnalysisFlag;
 import lombok.Builder;
 
 import javax.validation.constraints.NotBlank;
@@ -14,9 +15,13 @@ public record AnalysisDto(
         String name,
         @NotBlank(message = "Analysis value is required")
         String value,
+        Double numericValue,
         @NotBlank(message = "Analysis unit is required")
         String unit,
+        Double canonicalValue,
+        String canonicalUnit,
         @NotNull(message = "Analysis date is required")
-        Instant date
+        Instant date,
+        AnalysisFlag flag
 ) {
 }
@@ -0,0 +1,14 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+/**
+ * Values from {@code from} (inclusive) to {@code to}; the count is estimated from the distribution sketch.
+ */
+@Builder(toBuilder = true)
+public record AnalysisHistogramBinDto(
+        double from,
+        double to,
+        long count
+) {
+}
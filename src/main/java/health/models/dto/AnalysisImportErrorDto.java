@@ -0,0 +1,10 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record AnalysisImportErrorDto(
+        Long line,
+        String message
+) {
+}
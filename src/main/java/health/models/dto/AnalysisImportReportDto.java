@@ -0,0 +1,18 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Only the first errors are listed, {@code errorsTruncated} tells whether there were more.
+ */
+@Builder(toBuilder = true)
+public record AnalysisImportReportDto(
+        Long rows,
+        Long imported,
+        Long rejected,
+        List<AnalysisImportErrorDto> errors,
+        boolean errorsTruncated
+) {
+}
@@ -0,0 +1,14 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.time.YearMonth;
+
+@Builder(toBuilder = true)
+public record AnalysisMonthStatsDto(
+        YearMonth month,
+        long count,
+        double mean,
+        AnalysisPercentilesDto percentiles
+) {
+}
@@ -0,0 +1,13 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record AnalysisPercentilesDto(
+        double p5,
+        double p25,
+        double p50,
+        double p75,
+        double p95
+) {
+}
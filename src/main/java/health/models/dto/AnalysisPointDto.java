@@ -0,0 +1,17 @@
+package health.models.dto;
+
+import health.models.AnalysisFlag;
+import lombok.Builder;
+
+import java.time.Instant;
+
+@Builder(toBuilder = true)
+public record AnalysisPointDto(
+        Long id,
+        String value,
+        Double numericValue,
+        Double canonicalValue,
+        Instant date,
+        AnalysisFlag flag
+) {
+}
@@ -0,0 +1,14 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder(toBuilder = true)
+public record AnalysisSeriesDto(
+        String name,
+        String unit,
+        String canonicalUnit,
+        List<AnalysisPointDto> values
+) {
+}
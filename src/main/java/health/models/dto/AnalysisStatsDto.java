@@ -0,0 +1,24 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.time.Instant;
+
+/**
+ * Aggregates of one analysis over its values in the canonical unit; the last value is the latest result,
+ * numeric or not, in its own unit.
+ */
+@Builder(toBuilder = true)
+public record AnalysisStatsDto(
+        String name,
+        String unit,
+        String canonicalUnit,
+        Long count,
+        Double min,
+        Double max,
+        Double avg,
+        String lastValue,
+        Double lastNumericValue,
+        Instant lastDate
+) {
+}
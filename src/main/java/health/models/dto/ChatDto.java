@@ -9,6 +9,7 @@ public record ChatDto(
         Long doctorId,
         Long clinicId,
         String doctorName,
-        String customerName
+        String customerName,
+        Long lastMessageSeq
 ) {
 }
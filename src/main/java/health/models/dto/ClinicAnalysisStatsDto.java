@@ -0,0 +1,30 @@
+package health.models.dto;
+
+import health.models.AnalysisFlag;
+import lombok.Builder;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distribution of one analysis over the customers of a clinic, in one canonical unit.
+ * Min, max, mean and counts are exact, percentiles and histogram counts are estimates.
+ */
+@Builder(toBuilder = true)
+public record ClinicAnalysisStatsDto(
+        String name,
+        String unit,
+        Instant from,
+        Instant to,
+        long customers,
+        long count,
+        Double min,
+        Double max,
+        Double mean,
+        AnalysisPercentilesDto percentiles,
+        Map<AnalysisFlag, Long> flags,
+        List<AnalysisHistogramBinDto> histogram,
+        List<AnalysisMonthStatsDto> months
+) {
+}
@@ -0,0 +1,19 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Completion manifest of a bulk export, shaped as defined by the FHIR Bulk Data Access specification.
+ */
+@Builder(toBuilder = true)
+public record FhirExportManifestDto(
+        Instant transactionTime,
+        String request,
+        boolean requiresAccessToken,
+        List<FhirExportOutputDto> output,
+        List<FhirExportOutputDto> error
+) {
+}
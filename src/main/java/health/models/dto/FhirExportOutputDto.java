@@ -0,0 +1,11 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record FhirExportOutputDto(
+        String type,
+        String url,
+        Long count
+) {
+}
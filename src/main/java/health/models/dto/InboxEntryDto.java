@@ -0,0 +1,24 @@
+package health.models.dto;
+
+import health.models.auth.Role;
+import lombok.Builder;
+
+import java.time.Instant;
+
+@Builder(toBuilder = true)
+public record InboxEntryDto(
+        Long chatId,
+        Long customerId,
+        Long doctorId,
+        Long clinicId,
+        String doctorName,
+        String customerName,
+        String lastMessagePreview,
+        Role lastMessageRole,
+        Instant lastActivity,
+        Long lastMessageSeq,
+        Long customerReadSeq,
+        Long doctorReadSeq,
+        Long unreadCount
+) {
+}
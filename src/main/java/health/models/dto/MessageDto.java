@@ -13,6 +13,7 @@ public record MessageDto(
         @NotBlank(message = "Message text is required")
         String text,
         Role role,
-        Instant sendTime
+        Instant sendTime,
+        Long seq
 ) {
 }
@@ -0,0 +1,22 @@
+package health.models.dto;
+
+import health.models.auth.Role;
+import lombok.Builder;
+
+import java.time.Instant;
+
+/**
+ * One message matching a search.
+ *
+ * @param highlight HTML-escaped excerpt of the text with matching words wrapped in {@code <mark>}
+ */
+@Builder(toBuilder = true)
+public record MessageSearchHitDto(
+        Long id,
+        Long chatId,
+        Long seq,
+        Role role,
+        Instant sendTime,
+        String highlight
+) {
+}
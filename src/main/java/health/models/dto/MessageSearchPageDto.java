@@ -0,0 +1,13 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder(toBuilder = true)
+public record MessageSearchPageDto(
+        List<MessageSearchHitDto> hits,
+        Integer page,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,13 @@
+package health.models.dto;
+
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder(toBuilder = true)
+public record MessageSyncDto(
+        List<MessageDto> messages,
+        Long cursor,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,12 @@
+package health.models.dto;
+
+import health.models.auth.Role;
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record ReadReceiptDto(
+        Long chatId,
+        Role role,
+        Long seq
+) {
+}
@@ -29,8 +29,12 @@ public class AnalysisMapper {
                 .customerId(analysis.getCustomer().getId())
                 .name(analysis.getName())
                 .value(analysis.getValue())
+                .numericValue(analysis.getNumericValue())
                 .unit(analysis.getUnit())
+                .canonicalValue(analysis.getCanonicalValue())
+                .canonicalUnit(analysis.getCanonicalUnit())
                 .date(analysis.getDate())
+                .flag(analysis.getFlag())
                 .build();
     }
 }
@@ -21,6 +21,7 @@ public class ChatMapper {
                 .clinicId(chat.getClinic().getId())
                 .doctorName(chat.getDoctor().getFirstName() + " " + chat.getDoctor().getLastName())
                 .customerName(chat.getCustomer().getFirstName() + " " + chat.getCustomer().getLastName())
+                .lastMessageSeq(chat.getLastMessageSeq())
                 .build();
     }
 
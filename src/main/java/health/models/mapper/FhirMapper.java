@@ -0,0 +1,95 @@
+package health.models.mapper;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import health.models.AnalysisFlag;
+import health.models.dto.AnalysisDto;
+import health.models.dto.CustomerDto;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes customers as FHIR R4 Patient and analyses as laboratory Observation resources.
+ * Resources go straight to a generator, one JSON object each, so bulk exports build no object tree.
+ */
+@Component
+public class FhirMapper {
+
+    static final String CATEGORY_SYSTEM = "http://terminology.hl7.org/CodeSystem/observation-category";
+    static final String INTERPRETATION_SYSTEM = "http://terminology.hl7.org/CodeSystem/v3-ObservationInterpretation";
+
+    public void writePatient(JsonGenerator generator, CustomerDto customer) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("resourceType", "Patient");
+        generator.writeStringField("id", customer.id().toString());
+        generator.writeArrayFieldStart("name");
+        generator.writeStartObject();
+        if (customer.lastName() != null) {
+            generator.writeStringField("family", customer.lastName());
+        }
+        if (customer.firstName() != null) {
+            generator.writeArrayFieldStart("given");
+            generator.writeString(customer.firstName());
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeStringField("gender", customer.gender() == null ? "unknown" : customer.gender().name().toLowerCase(Locale.ROOT));
+        generator.writeEndObject();
+    }
+
+    /**
+     * Numeric results become a {@code valueQuantity} in the unit they were reported in, others a {@code valueString}.
+     */
+    public void writeObservation(JsonGenerator generator, AnalysisDto analysis) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("resourceType", "Observation");
+        generator.writeStringField("id", analysis.id().toString());
+        generator.writeStringField("status", "final");
+        generator.writeArrayFieldStart("category");
+        writeCoding(generator, CATEGORY_SYSTEM, "laboratory");
+        generator.writeEndArray();
+        generator.writeObjectFieldStart("code");
+        generator.writeStringField("text", analysis.name());
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("subject");
+        generator.writeStringField("reference", "Patient/" + analysis.customerId());
+        generator.writeEndObject();
+        generator.writeStringField("effectiveDateTime", analysis.date().toString());
+        if (analysis.numericValue() != null) {
+            generator.writeObjectFieldStart("valueQuantity");
+            generator.writeNumberField("value", analysis.numericValue());
+            generator.writeStringField("unit", analysis.unit());
+            generator.writeEndObject();
+        } else {
+            generator.writeStringField("valueString", analysis.unit() == null || analysis.unit().isBlank()
+                    ? analysis.value() : analysis.value() + " " + analysis.unit());
+        }
+        if (analysis.flag() != null) {
+            generator.writeArrayFieldStart("interpretation");
+            writeCoding(generator, INTERPRETATION_SYSTEM, interpretationCode(analysis.flag()));
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeCoding(JsonGenerator generator, String system, String code) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("coding");
+        generator.writeStartObject();
+        generator.writeStringField("system", system);
+        generator.writeStringField("code", code);
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static String interpretationCode(AnalysisFlag flag) {
+        return switch (flag) {
+            case LOW -> "L";
+            case HIGH -> "H";
+            case NORMAL -> "N";
+        };
+    }
+}
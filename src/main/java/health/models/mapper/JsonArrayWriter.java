@@ -0,0 +1,48 @@
+package health.models.mapper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes large JSON arrays straight to the response, one element at a time, with the application's
+ * Jackson settings. Nothing but the element being serialized is kept in memory.
+ */
+@Component
+public class JsonArrayWriter {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter elementWriter;
+
+    public JsonArrayWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        // The generator buffers output itself, flushing after every element would mean one write per element
+        this.elementWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @param source Produces the elements by passing each one to the consumer it is given
+     * @return Response body writing the elements as a JSON array
+     */
+    public <T> StreamingResponseBody stream(Consumer<Consumer<T>> source) {
+        return out -> {
+            try (var generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                source.accept(element -> {
+                    try {
+                        elementWriter.writeValue(generator, element);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+    }
+}
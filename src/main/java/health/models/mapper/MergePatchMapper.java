@@ -0,0 +1,87 @@
+package health.models.mapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import javax.validation.Validator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Applies JSON merge patches (RFC 7396) to DTOs: members of the patch replace those of the DTO, a null member
+ * removes the value, members left out stay as they are.
+ * <p>
+ * Only the listed editable fields may be patched, required ones cannot be removed, and the patched fields
+ * have to pass the bean validation constraints of the DTO.
+ */
+@Component
+public class MergePatchMapper {
+
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public MergePatchMapper(ObjectMapper objectMapper, Validator validator) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    /**
+     * @param current DTO of the entity as it is stored
+     * @param patch Merge patch, has to be a JSON object
+     * @param editable Fields the patch may contain
+     * @param required Editable fields that may not be removed or blank
+     * @return The patched DTO, empty if the patch is not valid for it
+     */
+    public <D> Optional<D> apply(D current, JsonNode patch, Class<D> type, Set<String> editable, Set<String> required) {
+        if (patch == null || !patch.isObject()) {
+            return Optional.empty();
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> fields = patch.fields(); fields.hasNext(); ) {
+            var field = fields.next();
+            if (!editable.contains(field.getKey())) {
+                return Optional.empty();
+            }
+            var value = field.getValue();
+            if (required.contains(field.getKey()) && (value.isNull() || (value.isTextual() && value.asText().isBlank()))) {
+                return Optional.empty();
+            }
+        }
+        D patched;
+        try {
+            patched = objectMapper.treeToValue(merge(objectMapper.valueToTree(current), patch), type);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        for (Iterator<String> fields = patch.fieldNames(); fields.hasNext(); ) {
+            if (!validator.validateProperty(patched, fields.next()).isEmpty()) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(patched);
+    }
+
+    /**
+     * MergePatch function of RFC 7396; neither argument is modified.
+     */
+    static JsonNode merge(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch.deepCopy();
+        }
+        ObjectNode result = target != null && target.isObject() ? ((ObjectNode) target).deepCopy() : ((ObjectNode) patch).objectNode();
+        patch.fields().forEachRemaining(field -> {
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), merge(result.get(field.getKey()), field.getValue()));
+            }
+        });
+        return result;
+    }
+}
@@ -2,8 +2,11 @@ package health.models.mapper;
 
 import health.models.Message;
 import health.models.dto.MessageDto;
+import health.models.dto.MessageSyncDto;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class MessageMapper {
     public Message mapFromDto(MessageDto dto) {
@@ -23,6 +26,32 @@ public class MessageMapper {
                 .text(message.getText())
                 .role(message.getRole())
                 .sendTime(message.getSendTime())
+                .seq(message.getSeq())
+                .build();
+    }
+
+    /**
+     * Maps a page read forwards. The cursor is the seq to pass as the next {@code after},
+     * it stays at {@code afterSeq} when there is nothing new.
+     */
+    public MessageSyncDto mapToForwardPage(List<Message> messages, long afterSeq, boolean hasMore) {
+        var cursor = messages.isEmpty() ? afterSeq : messages.get(messages.size() - 1).getSeq();
+        return mapToPage(messages, cursor, hasMore);
+    }
+
+    /**
+     * Maps a page read backwards. The cursor is the seq to pass as the next {@code before}.
+     */
+    public MessageSyncDto mapToBackwardPage(List<Message> messages, long beforeSeq, boolean hasMore) {
+        var cursor = messages.isEmpty() ? beforeSeq : messages.get(0).getSeq();
+        return mapToPage(messages, cursor, hasMore);
+    }
+
+    private MessageSyncDto mapToPage(List<Message> messages, long cursor, boolean hasMore) {
+        return MessageSyncDto.builder()
+                .messages(messages.stream().map(this::mapToDto).toList())
+                .cursor(cursor)
+                .hasMore(hasMore)
                 .build();
     }
 }
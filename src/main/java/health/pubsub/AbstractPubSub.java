@@ -0,0 +1,220 @@
+package health.pubsub;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Subscriber registry and local delivery shared by the pub/sub implementations.
+ * <p>
+ * Every subscriber owns a mailbox holding at most one pending position per topic. Publishing only
+ * merges into the mailboxes and schedules a drain on the delivery executor, so it costs the same
+ * whether the subscriber is idle or stuck. Drains of one mailbox never overlap, so a listener is
+ * not called concurrently with itself.
+ */
+@Slf4j
+public abstract class AbstractPubSub implements PubSub, MeterBinder {
+
+    private final Map<Topic, Set<Mailbox>> topicMailboxes = new ConcurrentHashMap<>();
+    private final Map<Topic.Kind, Set<Mailbox>> kindMailboxes = new EnumMap<>(Topic.Kind.class);
+    private final Executor deliveryExecutor;
+    private final int maxPending;
+
+    protected final AtomicLong published = new AtomicLong();
+    protected final AtomicLong delivered = new AtomicLong();
+    protected final AtomicLong coalesced = new AtomicLong();
+    protected final AtomicLong dropped = new AtomicLong();
+
+    protected AbstractPubSub(Executor deliveryExecutor, int maxPending) {
+        this.deliveryExecutor = deliveryExecutor;
+        this.maxPending = maxPending;
+        for (Topic.Kind kind : Topic.Kind.values()) {
+            kindMailboxes.put(kind, new CopyOnWriteArraySet<>());
+        }
+    }
+
+    protected static ExecutorService deliveryPool(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "pubsub-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void publish(Topic topic, long position) {
+        published.incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(topic, position);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                send(topic, position);
+            }
+        });
+    }
+
+    /**
+     * Hands a committed notification to local subscribers and, for cluster implementations,
+     * to the other nodes. Must not block.
+     */
+    protected abstract void send(Topic topic, long position);
+
+    @Override
+    public Subscription subscribe(Topic topic, Consumer<Notification> listener) {
+        var mailbox = new Mailbox(listener);
+        topicMailboxes.computeIfAbsent(topic, key -> new CopyOnWriteArraySet<>()).add(mailbox);
+        return () -> {
+            mailbox.cancel();
+            topicMailboxes.computeIfPresent(topic, (key, mailboxes) -> {
+                mailboxes.remove(mailbox);
+                return mailboxes.isEmpty() ? null : mailboxes;
+            });
+        };
+    }
+
+    @Override
+    public Subscription subscribe(Topic.Kind kind, Consumer<Notification> listener) {
+        var mailbox = new Mailbox(listener);
+        kindMailboxes.get(kind).add(mailbox);
+        return () -> {
+            mailbox.cancel();
+            kindMailboxes.get(kind).remove(mailbox);
+        };
+    }
+
+    /**
+     * Queues a notification for every local subscriber of its topic.
+     */
+    protected void dispatch(Topic topic, long position) {
+        var mailboxes = topicMailboxes.get(topic);
+        if (mailboxes != null) {
+            mailboxes.forEach(mailbox -> mailbox.offer(topic, position));
+        }
+        kindMailboxes.get(topic.kind()).forEach(mailbox -> mailbox.offer(topic, position));
+    }
+
+    /**
+     * Notifications buffered by the implementation itself, e.g. waiting to be sent to other nodes.
+     */
+    protected long getOutboundPending() {
+        return 0;
+    }
+
+    @Override
+    public PubSubStats getStats() {
+        return new PubSubStats(published.get(), delivered.get(), coalesced.get(), dropped.get(), getPending());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("health.pubsub.published", published, AtomicLong::get).register(registry);
+        FunctionCounter.builder("health.pubsub.delivered", delivered, AtomicLong::get).register(registry);
+        FunctionCounter.builder("health.pubsub.coalesced", coalesced, AtomicLong::get).register(registry);
+        FunctionCounter.builder("health.pubsub.dropped", dropped, AtomicLong::get).register(registry);
+        Gauge.builder("health.pubsub.pending", this, AbstractPubSub::getPending).register(registry);
+    }
+
+    @PreDestroy
+    void shutdownDelivery() {
+        if (deliveryExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private long getPending() {
+        long pending = getOutboundPending();
+        for (Set<Mailbox> mailboxes : topicMailboxes.values()) {
+            for (Mailbox mailbox : mailboxes) {
+                pending += mailbox.pending.size();
+            }
+        }
+        for (Set<Mailbox> mailboxes : kindMailboxes.values()) {
+            for (Mailbox mailbox : mailboxes) {
+                pending += mailbox.pending.size();
+            }
+        }
+        return pending;
+    }
+
+    private final class Mailbox {
+
+        private final Map<Topic, Long> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final Consumer<Notification> listener;
+        private volatile boolean cancelled;
+
+        private Mailbox(Consumer<Notification> listener) {
+            this.listener = listener;
+        }
+
+        void offer(Topic topic, long position) {
+            if (cancelled) {
+                return;
+            }
+            if (pending.size() >= maxPending && !pending.containsKey(topic)) {
+                if (dropped.incrementAndGet() % 1000 == 1) {
+                    log.warn("Pub/sub subscriber is {} topics behind, dropping notifications", pending.size());
+                }
+                return;
+            }
+            pending.merge(topic, position, (current, next) -> {
+                coalesced.incrementAndGet();
+                return Math.max(current, next);
+            });
+            schedule();
+        }
+
+        void cancel() {
+            cancelled = true;
+            pending.clear();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                deliveryExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                for (Topic topic : pending.keySet()) {
+                    var position = pending.remove(topic);
+                    if (position == null || cancelled) {
+                        continue;
+                    }
+                    delivered.incrementAndGet();
+                    try {
+                        listener.accept(new Notification(topic, position));
+                    } catch (RuntimeException e) {
+                        log.warn("Pub/sub listener failed for {}", topic, e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
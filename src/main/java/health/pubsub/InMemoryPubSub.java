@@ -0,0 +1,33 @@
+package health.pubsub;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Single-node pub/sub: notifications are only delivered to subscribers in this JVM.
+ * Used in tests and when the application runs as a single instance.
+ */
+@Component
+@ConditionalOnProperty(name = "health.pubsub.mode", havingValue = "memory")
+public class InMemoryPubSub extends AbstractPubSub {
+
+    @Autowired
+    public InMemoryPubSub(
+            @Value("${health.pubsub.delivery-threads:2}") int deliveryThreads,
+            @Value("${health.pubsub.max-pending:10000}") int maxPending) {
+        this(deliveryPool(deliveryThreads), maxPending);
+    }
+
+    InMemoryPubSub(Executor deliveryExecutor, int maxPending) {
+        super(deliveryExecutor, maxPending);
+    }
+
+    @Override
+    protected void send(Topic topic, long position) {
+        dispatch(topic, position);
+    }
+}
@@ -0,0 +1,12 @@
+package health.pubsub;
+
+/**
+ * Something changed on a topic. Positions only grow (the seq of the newest message of a chat,
+ * the time of the latest availability change of a doctor), so a subscriber that falls behind
+ * can be handed just the highest one and re-read whatever it needs.
+ *
+ * @param topic Topic that changed
+ * @param position Position of the change
+ */
+public record Notification(Topic topic, long position) {
+}
@@ -0,0 +1,227 @@
+package health.pubsub;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide pub/sub over PostgreSQL {@code LISTEN/NOTIFY}.
+ * <p>
+ * Local subscribers are notified right away. For the other nodes, notifications are merged per
+ * topic into an outbound buffer that a sender thread flushes every {@code flush-interval-ms} with
+ * one {@code pg_notify} statement, so a burst of messages in a chat costs one notification, and
+ * publishers never wait for the database. Every node keeps one dedicated connection listening on
+ * the channel and skips the notifications it sent itself.
+ * <p>
+ * NOTIFY is not durable: notifications sent while a listener reconnects are lost. Subscribers
+ * treat them as hints and clients still catch up with their cursors on the next request.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "health.pubsub.mode", havingValue = "postgres", matchIfMissing = true)
+public class PostgresPubSub extends AbstractPubSub {
+
+    static final String CHANNEL = "health_events";
+    static final String NOTIFY_SQL = "select count(*) from ("
+            + "select pg_notify(?, payload) from unnest(string_to_array(?, ',')) as payload) notified";
+    private static final int MAX_NOTIFICATIONS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Topic, Long> outbound = new ConcurrentHashMap<>();
+    private final int maxOutbound;
+    private final long flushIntervalMs;
+    private final int pollTimeoutMs;
+    private final long reconnectDelayMs;
+
+    private ScheduledExecutorService sender;
+    private Thread listener;
+    private volatile boolean running;
+
+    @Autowired
+    public PostgresPubSub(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            @Value("${health.pubsub.delivery-threads:2}") int deliveryThreads,
+            @Value("${health.pubsub.max-pending:10000}") int maxPending,
+            @Value("${health.pubsub.flush-interval-ms:20}") long flushIntervalMs,
+            @Value("${health.pubsub.poll-timeout-ms:500}") int pollTimeoutMs,
+            @Value("${health.pubsub.reconnect-delay-ms:2000}") long reconnectDelayMs) {
+        this(jdbcTemplate, dataSourceProperties, deliveryPool(deliveryThreads), maxPending,
+                flushIntervalMs, pollTimeoutMs, reconnectDelayMs);
+    }
+
+    PostgresPubSub(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            Executor deliveryExecutor,
+            int maxPending,
+            long flushIntervalMs,
+            int pollTimeoutMs,
+            long reconnectDelayMs) {
+        super(deliveryExecutor, maxPending);
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.maxOutbound = maxPending;
+        this.flushIntervalMs = flushIntervalMs;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.reconnectDelayMs = reconnectDelayMs;
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "pubsub-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        listener = new Thread(this::listen, "pubsub-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (sender != null) {
+            sender.shutdown();
+            sender.awaitTermination(1, TimeUnit.SECONDS);
+            flush();
+        }
+        if (listener != null) {
+            listener.join(pollTimeoutMs + 1000L);
+        }
+    }
+
+    @Override
+    protected void send(Topic topic, long position) {
+        dispatch(topic, position);
+        enqueue(topic, position);
+    }
+
+    @Override
+    protected long getOutboundPending() {
+        return outbound.size();
+    }
+
+    /**
+     * Sends the outbound buffer to the other nodes. Runs on the sender thread.
+     */
+    void flush() {
+        List<Topic> topics = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        for (Topic topic : outbound.keySet()) {
+            var position = outbound.remove(topic);
+            if (position != null) {
+                topics.add(topic);
+                positions.add(position);
+                payloads.add(nodeId + "|" + topic + "|" + position);
+            }
+        }
+        for (int from = 0; from < payloads.size(); from += MAX_NOTIFICATIONS_PER_STATEMENT) {
+            int to = Math.min(from + MAX_NOTIFICATIONS_PER_STATEMENT, payloads.size());
+            try {
+                jdbcTemplate.queryForObject(NOTIFY_SQL, Long.class, CHANNEL, String.join(",", payloads.subList(from, to)));
+            } catch (DataAccessException e) {
+                log.warn("Failed to send {} notifications, retrying with the next flush", to - from, e);
+                for (int i = from; i < to; i++) {
+                    enqueue(topics.get(i), positions.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles one NOTIFY payload of the form {@code node|topic|position}.
+     */
+    void receive(String payload) {
+        var parts = payload.split("\\|");
+        if (parts.length != 3) {
+            log.debug("Ignoring malformed notification {}", payload);
+            return;
+        }
+        if (nodeId.equals(parts[0])) {
+            return;
+        }
+        try {
+            dispatch(Topic.parse(parts[1]), Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed notification {}", payload);
+        }
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    private void enqueue(Topic topic, long position) {
+        if (outbound.size() >= maxOutbound && !outbound.containsKey(topic)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        outbound.merge(topic, position, (current, next) -> {
+            coalesced.incrementAndGet();
+            return Math.max(current, next);
+        });
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (var statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                var pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for cluster notifications on channel {}", CHANNEL);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Notification listener lost its connection, reconnecting in {} ms", reconnectDelayMs, e);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
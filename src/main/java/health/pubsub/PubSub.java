@@ -0,0 +1,42 @@
+package health.pubsub;
+
+import java.util.function.Consumer;
+
+/**
+ * Fans notifications out to subscribers on every API node.
+ * <p>
+ * Publishing never blocks: notifications are buffered per subscriber and delivered by a shared
+ * executor. While a subscriber is busy, notifications for the same topic are merged into the one
+ * with the highest position; a subscriber with too many distinct pending topics loses new ones,
+ * which shows up in {@link #getStats()}.
+ */
+public interface PubSub {
+
+    /**
+     * Publishes a notification. If a transaction is active, it is sent after commit.
+     *
+     * @param topic Topic that changed
+     * @param position Position of the change
+     */
+    void publish(Topic topic, long position);
+
+    /**
+     * Registers a listener for one topic, on notifications coming from any node.
+     *
+     * @param topic Topic to listen to
+     * @param listener Listener, invoked on a delivery thread
+     * @return Handle to stop listening
+     */
+    Subscription subscribe(Topic topic, Consumer<Notification> listener);
+
+    /**
+     * Registers a listener for every topic of a kind, e.g. all chats.
+     *
+     * @param kind Kind of topics to listen to
+     * @param listener Listener, invoked on a delivery thread
+     * @return Handle to stop listening
+     */
+    Subscription subscribe(Topic.Kind kind, Consumer<Notification> listener);
+
+    PubSubStats getStats();
+}
@@ -0,0 +1,13 @@
+package health.pubsub;
+
+/**
+ * Counters of a {@link PubSub} since startup.
+ *
+ * @param published Notifications published on this node
+ * @param delivered Notifications handed to local subscribers
+ * @param coalesced Notifications merged into a newer one before they were delivered or sent
+ * @param dropped Notifications lost because a subscriber or the outbound buffer was full
+ * @param pending Notifications currently waiting for a subscriber or for the next send
+ */
+public record PubSubStats(long published, long delivered, long coalesced, long dropped, long pending) {
+}
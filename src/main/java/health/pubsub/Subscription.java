@@ -0,0 +1,12 @@
+package health.pubsub;
+
+/**
+ * Registered listener of a {@link PubSub}.
+ */
+public interface Subscription {
+
+    /**
+     * Stops delivery to the listener. Notifications already pending for it are discarded.
+     */
+    void cancel();
+}
@@ -0,0 +1,44 @@
+package health.pubsub;
+
+import java.util.Locale;
+
+/**
+ * Notification topic: one per chat for new messages, one per doctor for availability changes.
+ *
+ * @param kind What the id refers to
+ * @param id Chat or doctor id
+ */
+public record Topic(Kind kind, long id) {
+
+    public enum Kind {
+        CHAT,
+        DOCTOR
+    }
+
+    public static Topic chat(long chatId) {
+        return new Topic(Kind.CHAT, chatId);
+    }
+
+    public static Topic doctor(long doctorId) {
+        return new Topic(Kind.DOCTOR, doctorId);
+    }
+
+    /**
+     * Parses the {@code kind:id} form produced by {@link #toString()}.
+     *
+     * @throws IllegalArgumentException if the value is not a topic
+     */
+    public static Topic parse(String value) {
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Not a topic: " + value);
+        }
+        var kind = Kind.valueOf(value.substring(0, separator).toUpperCase(Locale.ROOT));
+        return new Topic(kind, Long.parseLong(value.substring(separator + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase(Locale.ROOT) + ":" + id;
+    }
+}
@@ -0,0 +1,9 @@
+package health.realtime;
+
+import health.models.Chat;
+
+/**
+ * Published by {@link health.services.ChatService} when a new chat is stored.
+ */
+public record ChatCreatedEvent(Chat chat) {
+}
@@ -0,0 +1,34 @@
+package health.realtime;
+
+import health.models.Chat;
+import health.models.auth.Role;
+
+import java.util.List;
+
+/**
+ * Identifies one side of a chat: a customer, a doctor or the clinic that owns the chat.
+ */
+public record ChatParticipant(Role role, long id) {
+
+    public static ChatParticipant customer(long customerId) {
+        return new ChatParticipant(Role.CUSTOMER, customerId);
+    }
+
+    public static ChatParticipant doctor(long doctorId) {
+        return new ChatParticipant(Role.DOCTOR, doctorId);
+    }
+
+    public static ChatParticipant clinic(long clinicId) {
+        return new ChatParticipant(Role.CLINIC, clinicId);
+    }
+
+    /**
+     * Returns everyone who can read the chat.
+     */
+    public static List<ChatParticipant> of(Chat chat) {
+        return List.of(
+                customer(chat.getCustomer().getId()),
+                doctor(chat.getDoctor().getId()),
+                clinic(chat.getClinic().getId()));
+    }
+}
@@ -0,0 +1,9 @@
+package health.realtime;
+
+import health.models.dto.ReadReceiptDto;
+
+/**
+ * Published by {@link health.services.ChatService} when a participant advances their read position.
+ */
+public record ChatReadEvent(ReadReceiptDto receipt) {
+}
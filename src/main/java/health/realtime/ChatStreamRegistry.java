@@ -0,0 +1,295 @@
+package health.realtime;
+
+import health.models.Message;
+import health.models.dto.MessageDto;
+import health.models.mapper.MessageMapper;
+import health.pubsub.Notification;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.services.MessageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out of new chat messages to open event streams.
+ * <p>
+ * Subscribers are indexed by chat id, so publishing a message touches only the streams of that
+ * chat. A chat rarely has more than a few open streams and they change far less often than
+ * messages are sent, so subscriber sets are copy-on-write arrays. Streams are also indexed by participant, so chats created after a stream was opened are
+ * attached to it. Message events carry the {@link StreamCursor} of each stream as their id, which is what
+ * clients send back as Last-Event-ID when they reconnect.
+ * <p>
+ * Messages created on other nodes arrive as {@link PubSub} notifications carrying only the newest
+ * seq of the chat; they are read from the database, skipping the seqs this node already queued.
+ */
+@Slf4j
+@Component
+public class ChatStreamRegistry {
+
+    static final String MESSAGE_EVENT = "message";
+    static final String MORE_EVENT = "more";
+
+    private final Map<Long, Set<ChatSubscriber>> chatSubscribers = new ConcurrentHashMap<>();
+    private final Map<ChatParticipant, Set<ChatSubscriber>> participantSubscribers = new ConcurrentHashMap<>();
+    private final Map<Long, ChatCursor> cursors = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final MessageMapper messageMapper;
+    private final MessageService messageService;
+    private final PubSub pubSub;
+    private final Executor deliveryExecutor;
+    private final int bufferSize;
+
+    @Autowired
+    public ChatStreamRegistry(
+            MessageMapper messageMapper,
+            MessageService messageService,
+            PubSub pubSub,
+            @Value("${health.chat.stream.delivery-threads:4}") int deliveryThreads,
+            @Value("${health.chat.stream.buffer-size:64}") int bufferSize) {
+        this(messageMapper, messageService, pubSub, Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            var thread = new Thread(runnable, "chat-stream-delivery");
+            thread.setDaemon(true);
+            return thread;
+        }), bufferSize);
+    }
+
+    ChatStreamRegistry(MessageMapper messageMapper, MessageService messageService, PubSub pubSub, Executor deliveryExecutor, int bufferSize) {
+        this.messageMapper = messageMapper;
+        this.messageService = messageService;
+        this.pubSub = pubSub;
+        this.deliveryExecutor = deliveryExecutor;
+        this.bufferSize = bufferSize;
+    }
+
+    @PostConstruct
+    void subscribeToOtherNodes() {
+        pubSub.subscribe(Topic.Kind.CHAT, this::onChatNotification);
+    }
+
+    /**
+     * Starts delivering messages of the given chats to the emitter.
+     *
+     * @param emitter Emitter returned to the client
+     * @param participant Owner of the stream
+     * @param chatIds Chats the participant can currently read
+     * @return Registered subscriber
+     */
+    public ChatSubscriber register(SseEmitter emitter, ChatParticipant participant, Collection<Long> chatIds) {
+        return register(emitter, participant, chatIds, StreamCursor.startingAt(Instant.now()));
+    }
+
+    /**
+     * @param cursor Position the stream resumes from
+     */
+    ChatSubscriber register(SseEmitter emitter, ChatParticipant participant, Collection<Long> chatIds, StreamCursor cursor) {
+        var subscriber = new ChatSubscriber(participant, emitter, cursor, bufferSize, deliveryExecutor, this::unregister);
+        subscriberCount.incrementAndGet();
+        participantSubscribers.computeIfAbsent(participant, key -> new CopyOnWriteArraySet<>()).add(subscriber);
+        chatIds.forEach(chatId -> attach(subscriber, chatId));
+        emitter.onTimeout(subscriber::close);
+        emitter.onCompletion(subscriber::closed);
+        emitter.onError(error -> subscriber.closed());
+        return subscriber;
+    }
+
+    /**
+     * Queues already stored messages, used to resume a stream after a reconnect. Chats whose missed
+     * messages did not all fit are listed in a {@code more} event; clients page them with {@code ?after=}.
+     */
+    public void replay(ChatSubscriber subscriber, List<Message> messages, Collection<Long> incompleteChatIds) {
+        for (Message message : messages) {
+            if (!subscriber.offer(toEvent(messageMapper.mapToDto(message)))) {
+                subscriber.close();
+                return;
+            }
+        }
+        if (!incompleteChatIds.isEmpty() && !subscriber.offer(ChatSubscriber.StreamEvent.of(MORE_EVENT, Map.of("chatIds", incompleteChatIds)))) {
+            subscriber.close();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        var chatId = event.message().getChat().getId();
+        var subscribers = chatSubscribers.get(chatId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        cursor(chatId, event.message().getSeq()).claim(event.message().getSeq());
+        deliver(subscribers, toEvent(messageMapper.mapToDto(event.message())));
+    }
+
+    /**
+     * Reads the messages a chat got on other nodes since the last one queued here. Notifications
+     * of a busy chat are coalesced, so one read usually covers several messages.
+     */
+    void onChatNotification(Notification notification) {
+        var chatId = notification.topic().id();
+        var subscribers = chatSubscribers.get(chatId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        var cursor = cursor(chatId, notification.position());
+        long from = cursor.contiguous();
+        if (notification.position() <= from) {
+            return;
+        }
+        for (Message message : messageService.getMessagesAfter(chatId, from, bufferSize)) {
+            if (cursor.claim(message.getSeq())) {
+                deliver(subscribers, toEvent(messageMapper.mapToDto(message)));
+            }
+        }
+    }
+
+    private void deliver(Set<ChatSubscriber> subscribers, ChatSubscriber.StreamEvent streamEvent) {
+        for (ChatSubscriber subscriber : subscribers) {
+            if (!subscriber.offer(streamEvent)) {
+                log.debug("Dropping slow chat stream of {}", subscriber.getParticipant());
+                subscriber.close();
+            }
+        }
+    }
+
+    private ChatCursor cursor(long chatId, long seq) {
+        return cursors.computeIfAbsent(chatId, id -> new ChatCursor(seq - 1));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatCreated(ChatCreatedEvent event) {
+        var chatId = event.chat().getId();
+        for (ChatParticipant participant : ChatParticipant.of(event.chat())) {
+            var subscribers = participantSubscribers.get(participant);
+            if (subscribers != null) {
+                subscribers.forEach(subscriber -> attach(subscriber, chatId));
+            }
+        }
+    }
+
+    /**
+     * Forwards read receipts to both sides of the chat; receipts carry no event id,
+     * so they never move a client's resume position.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRead(ChatReadEvent event) {
+        var subscribers = chatSubscribers.get(event.receipt().chatId());
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        var streamEvent = ChatSubscriber.StreamEvent.of("read", event.receipt());
+        for (ChatSubscriber subscriber : subscribers) {
+            if (!subscriber.offer(streamEvent)) {
+                subscriber.close();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${health.chat.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Set<ChatSubscriber> subscribers : participantSubscribers.values()) {
+            for (ChatSubscriber subscriber : subscribers) {
+                if (!subscriber.offer(ChatSubscriber.StreamEvent.HEARTBEAT)) {
+                    subscriber.close();
+                }
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (deliveryExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private ChatSubscriber.StreamEvent toEvent(MessageDto message) {
+        return ChatSubscriber.StreamEvent.positioned(MESSAGE_EVENT, message);
+    }
+
+    private void attach(ChatSubscriber subscriber, long chatId) {
+        if (subscriber.getChatIds().add(chatId)) {
+            chatSubscribers.computeIfAbsent(chatId, id -> new CopyOnWriteArraySet<>()).add(subscriber);
+        }
+    }
+
+    private void unregister(ChatSubscriber subscriber) {
+        for (Long chatId : subscriber.getChatIds()) {
+            chatSubscribers.computeIfPresent(chatId, (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                if (subscribers.isEmpty()) {
+                    cursors.remove(id);
+                    return null;
+                }
+                return subscribers;
+            });
+        }
+        participantSubscribers.computeIfPresent(subscriber.getParticipant(), (participant, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        subscriberCount.decrementAndGet();
+    }
+
+    /**
+     * Seqs of a chat already queued to its streams: everything up to {@code contiguous}, plus the
+     * seqs in {@code ahead} that were queued before a gap below them was filled.
+     */
+    static final class ChatCursor {
+
+        private static final int MAX_AHEAD = 1024;
+
+        private final NavigableSet<Long> ahead = new TreeSet<>();
+        private long contiguous;
+
+        ChatCursor(long contiguous) {
+            this.contiguous = contiguous;
+        }
+
+        synchronized long contiguous() {
+            return contiguous;
+        }
+
+        /**
+         * Marks a seq as queued.
+         *
+         * @return false if it was queued before
+         */
+        synchronized boolean claim(long seq) {
+            if (seq <= contiguous || !ahead.add(seq)) {
+                return false;
+            }
+            if (ahead.size() > MAX_AHEAD) {
+                // The gap will not be filled (e.g. a lost notification), stop waiting for it
+                contiguous = ahead.first() - 1;
+            }
+            while (!ahead.isEmpty() && ahead.first() == contiguous + 1) {
+                contiguous = ahead.pollFirst();
+            }
+            return true;
+        }
+    }
+}
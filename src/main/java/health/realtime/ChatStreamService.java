@@ -0,0 +1,88 @@
+package health.realtime;
+
+import health.models.Message;
+import health.services.MessageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Opens Server-Sent Events streams of new chat messages.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatStreamService {
+
+    private final ChatStreamRegistry registry;
+    private final MessageService messageService;
+
+    @Value("${health.chat.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    /**
+     * Opens a stream for the participant's chats. When {@code lastEventId} is given, the messages
+     * missed since that event are replayed first, by seq from each chat's position in the cursor.
+     * The replay fits in the stream buffer; chats with more missed messages are listed in a
+     * {@code more} event.
+     *
+     * @param participant Owner of the stream
+     * @param chatIds Chats the participant can currently read
+     * @param lastEventId Value of the Last-Event-ID header, may be null
+     * @return Emitter to return from the controller
+     */
+    public SseEmitter open(ChatParticipant participant, Collection<Long> chatIds, String lastEventId) {
+        var emitter = new SseEmitter(timeoutMs);
+        var resumed = StreamCursor.parse(lastEventId);
+        var cursor = resumed.orElseGet(() -> StreamCursor.startingAt(Instant.now()));
+        cursor.retain(chatIds);
+        // Registered before reading, so messages committed meanwhile are delivered live or replayed, not lost
+        var subscriber = registry.register(emitter, participant, chatIds, cursor);
+        if (resumed.isPresent() && !chatIds.isEmpty()) {
+            replay(subscriber, cursor, chatIds);
+        }
+        return emitter;
+    }
+
+    private void replay(ChatSubscriber subscriber, StreamCursor cursor, Collection<Long> chatIds) {
+        // Resolved before touching the cursor, which only keeps a bounded number of positions
+        var after = new HashMap<Long, Long>();
+        var unpositioned = new ArrayList<Long>();
+        for (Long chatId : chatIds) {
+            cursor.position(chatId).ifPresentOrElse(seq -> after.put(chatId, seq), () -> unpositioned.add(chatId));
+        }
+        if (!unpositioned.isEmpty()) {
+            messageService.getFirstSeqsSince(unpositioned, cursor.origin()).forEach((chatId, seq) -> after.put(chatId, seq - 1));
+        }
+        // One slot stays free for the more event
+        int budget = subscriber.getCapacity() - 1;
+        List<Message> messages = new ArrayList<>();
+        var incomplete = new TreeSet<Long>();
+        for (Map.Entry<Long, Long> last : new TreeMap<>(messageService.getLastSeqs(chatIds)).entrySet()) {
+            var position = after.get(last.getKey());
+            if (position == null || last.getValue() <= position) {
+                continue;
+            }
+            cursor.start(last.getKey(), position);
+            if (messages.size() >= budget) {
+                incomplete.add(last.getKey());
+                continue;
+            }
+            var missed = messageService.getMessagesAfter(last.getKey(), position, budget - messages.size());
+            messages.addAll(missed.getContent());
+            if (missed.hasNext()) {
+                incomplete.add(last.getKey());
+            }
+        }
+        registry.replay(subscriber, messages, incomplete);
+    }
+}
@@ -0,0 +1,191 @@
+package health.realtime;
+
+import health.models.dto.MessageDto;
+import lombok.Getter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * One open event stream. Events are buffered in a bounded queue and written by a shared
+ * delivery executor, so a slow client never blocks the thread that published the event.
+ * The buffer is allocated with the first event, so an idle subscriber holds no buffer storage. Message events are sent with the stream's
+ * {@link StreamCursor} as their id, moved past the message as it is written.
+ */
+public class ChatSubscriber {
+
+    @Getter
+    private final ChatParticipant participant;
+    @Getter
+    private final SseEmitter emitter;
+    private final StreamCursor cursor;
+    private final Set<Long> chatIds = new CopyOnWriteArraySet<>();
+    private volatile Queue<StreamEvent> pending;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final int capacity;
+    private final Executor executor;
+    private final Consumer<ChatSubscriber> onClose;
+
+    ChatSubscriber(ChatParticipant participant, SseEmitter emitter, StreamCursor cursor, int capacity, Executor executor,
+                   Consumer<ChatSubscriber> onClose) {
+        this.participant = participant;
+        this.emitter = emitter;
+        this.cursor = cursor;
+        this.capacity = capacity;
+        this.executor = executor;
+        this.onClose = onClose;
+    }
+
+    Set<Long> getChatIds() {
+        return chatIds;
+    }
+
+    StreamCursor getCursor() {
+        return cursor;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    boolean hasBuffer() {
+        return pending != null;
+    }
+
+    /**
+     * Queues an event for delivery.
+     *
+     * @return false if the buffer is full or the stream is closed
+     */
+    boolean offer(StreamEvent event) {
+        if (closed.get()) {
+            return false;
+        }
+        if (pendingCount.incrementAndGet() > capacity) {
+            pendingCount.decrementAndGet();
+            return false;
+        }
+        buffer().add(event);
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Completes the stream; the client is expected to reconnect with Last-Event-ID.
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            clearBuffer();
+            onClose.accept(this);
+            emitter.complete();
+        }
+    }
+
+    /**
+     * Marks the stream closed after the container already finished it (timeout, error, completion).
+     */
+    void closed() {
+        if (closed.compareAndSet(false, true)) {
+            clearBuffer();
+            onClose.accept(this);
+        }
+    }
+
+    private Queue<StreamEvent> buffer() {
+        var queue = pending;
+        if (queue == null) {
+            synchronized (this) {
+                queue = pending;
+                if (queue == null) {
+                    pending = queue = new ConcurrentLinkedQueue<>();
+                }
+            }
+        }
+        return queue;
+    }
+
+    private void clearBuffer() {
+        var queue = pending;
+        if (queue != null) {
+            queue.clear();
+        }
+        pendingCount.set(0);
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        // Only scheduled after an event was buffered
+        var queue = buffer();
+        try {
+            StreamEvent event;
+            while (!closed.get() && (event = queue.poll()) != null) {
+                pendingCount.decrementAndGet();
+                if (event.data() instanceof MessageDto message) {
+                    cursor.advance(message.chatId(), message.seq());
+                }
+                emitter.send(event.toSse(event.positioned() ? cursor.toEventId() : null));
+            }
+        } catch (IOException | IllegalStateException e) {
+            closed();
+            return;
+        } finally {
+            draining.set(false);
+        }
+        if (!queue.isEmpty() && !closed.get()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Immutable event shared by every subscriber it is fanned out to.
+     */
+    record StreamEvent(String name, Object data, String comment, boolean positioned) {
+
+        static StreamEvent of(String name, Object data) {
+            return new StreamEvent(name, data, null, false);
+        }
+
+        /**
+         * Event sent with the stream cursor as its id.
+         */
+        static StreamEvent positioned(String name, Object data) {
+            return new StreamEvent(name, data, null, true);
+        }
+
+        static final StreamEvent HEARTBEAT = new StreamEvent(null, null, "heartbeat", false);
+
+        SseEmitter.SseEventBuilder toSse(String id) {
+            var builder = SseEmitter.event();
+            if (comment != null) {
+                return builder.comment(comment);
+            }
+            if (id != null) {
+                builder.id(id);
+            }
+            return builder.name(name).data(data);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package health.realtime;
+
+import health.models.Message;
+
+/**
+ * Published by {@link health.services.MessageService} when a new message is stored.
+ */
+public record MessageCreatedEvent(Message message) {
+}
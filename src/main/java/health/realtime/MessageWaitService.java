@@ -0,0 +1,148 @@
+package health.realtime;
+
+import health.models.Chat;
+import health.models.dto.MessageSyncDto;
+import health.models.mapper.MessageMapper;
+import health.pubsub.Notification;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.services.MessageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-poll "wait for new messages" support.
+ * <p>
+ * A request that finds nothing after its cursor is parked as a {@link DeferredResult}, which
+ * releases the servlet thread. It is completed by the next {@link MessageCreatedEvent} for the
+ * chat, without another database read, or with an empty page when the timeout expires.
+ * Messages created on other nodes are announced by {@link PubSub} notifications.
+ */
+@Service
+public class MessageWaitService {
+
+    private final Map<Long, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private final MessageService messageService;
+    private final MessageMapper messageMapper;
+    private final PubSub pubSub;
+    private final long defaultTimeoutMs;
+    private final long maxTimeoutMs;
+    private final int maxWaiters;
+
+    public MessageWaitService(
+            MessageService messageService,
+            MessageMapper messageMapper,
+            PubSub pubSub,
+            @Value("${health.chat.wait.default-timeout-ms:25000}") long defaultTimeoutMs,
+            @Value("${health.chat.wait.max-timeout-ms:60000}") long maxTimeoutMs,
+            @Value("${health.chat.wait.max-waiters:10000}") int maxWaiters) {
+        this.messageService = messageService;
+        this.messageMapper = messageMapper;
+        this.pubSub = pubSub;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+        this.maxWaiters = maxWaiters;
+    }
+
+    @PostConstruct
+    void subscribeToOtherNodes() {
+        pubSub.subscribe(Topic.Kind.CHAT, this::onChatNotification);
+    }
+
+    /**
+     * Returns messages after {@code afterSeq}, waiting for the next one if there are none yet.
+     *
+     * @param chat Chat the caller is allowed to read
+     * @param afterSeq Seq of the last message the caller has
+     * @param limit Maximum number of messages when some are already available
+     * @param timeoutMs Requested wait in milliseconds, null for the default
+     * @return Result completed with a page, an empty page on timeout, or 503 when too many requests wait
+     */
+    public DeferredResult<ResponseEntity<MessageSyncDto>> await(Chat chat, long afterSeq, int limit, Long timeoutMs) {
+        long timeout = timeoutMs == null ? defaultTimeoutMs : Math.max(1, Math.min(timeoutMs, maxTimeoutMs));
+        var result = new DeferredResult<ResponseEntity<MessageSyncDto>>(timeout,
+                () -> ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(), afterSeq, false)));
+        if (waiterCount.incrementAndGet() > maxWaiters) {
+            waiterCount.decrementAndGet();
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+            return result;
+        }
+
+        // Register before reading, so a message committed in between still wakes this request
+        var waiter = new Waiter(afterSeq, result);
+        waiters.computeIfAbsent(chat.getId(), id -> ConcurrentHashMap.newKeySet()).add(waiter);
+        result.onCompletion(() -> remove(chat.getId(), waiter));
+
+        var messages = messageService.getMessagesAfter(chat, afterSeq, limit);
+        if (!messages.isEmpty()) {
+            result.setResult(ResponseEntity.ok(messageMapper.mapToForwardPage(messages.getContent(), afterSeq, messages.hasNext())));
+        }
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageCreated(MessageCreatedEvent event) {
+        var message = event.message();
+        var chatWaiters = waiters.get(message.getChat().getId());
+        if (chatWaiters == null) {
+            return;
+        }
+        ResponseEntity<MessageSyncDto> page = null;
+        for (Waiter waiter : chatWaiters) {
+            if (message.getSeq() == waiter.afterSeq() + 1) {
+                if (page == null) {
+                    page = ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(message), waiter.afterSeq(), false));
+                }
+                waiter.result().setResult(page);
+            } else if (message.getSeq() > waiter.afterSeq()) {
+                // The waiter is missing earlier messages: send it back to fetch them with ?after=
+                waiter.result().setResult(ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(), waiter.afterSeq(), true)));
+            }
+        }
+    }
+
+    /**
+     * Wakes the waiters of a chat that got messages on another node. The notification carries only
+     * the newest seq, so they are sent back to fetch the messages with ?after=. Waiters already
+     * completed by {@link #onMessageCreated} ignore it.
+     */
+    void onChatNotification(Notification notification) {
+        var chatWaiters = waiters.get(notification.topic().id());
+        if (chatWaiters == null) {
+            return;
+        }
+        for (Waiter waiter : chatWaiters) {
+            if (notification.position() > waiter.afterSeq()) {
+                waiter.result().setResult(ResponseEntity.ok(messageMapper.mapToForwardPage(List.of(), waiter.afterSeq(), true)));
+            }
+        }
+    }
+
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+    private void remove(long chatId, Waiter waiter) {
+        waiters.computeIfPresent(chatId, (id, chatWaiters) -> {
+            if (chatWaiters.remove(waiter)) {
+                waiterCount.decrementAndGet();
+            }
+            return chatWaiters.isEmpty() ? null : chatWaiters;
+        });
+    }
+
+    private record Waiter(long afterSeq, DeferredResult<ResponseEntity<MessageSyncDto>> result) {
+    }
+}
@@ -0,0 +1,138 @@
+package health.realtime;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Resume position of a chat event stream, sent as the id of every message event and returned by the
+ * client as Last-Event-ID. It keeps the last seq delivered of the {@value #MAX_POSITIONS} chats that
+ * most recently had a message on the stream, plus the time the stream was first opened: a chat without
+ * a position is replayed from its first message sent since then. Encoded as
+ * {@code origin~chatId:seq,chatId:seq}, origin in epoch microseconds, least recently moved chat first.
+ * <p>
+ * The bound keeps the id well under the request header limit however many chats a stream covers;
+ * a chat that loses its position only costs duplicates on the next resume.
+ * Positions only move to the next seq of a chat, so a message delivered ahead of a gap is sent again
+ * after a resume instead of the gap being skipped; clients drop duplicates by (chatId, seq).
+ */
+final class StreamCursor {
+
+    static final int MAX_POSITIONS = 128;
+
+    private static final char ORIGIN_SEPARATOR = '~';
+
+    private final long origin;
+    private final Map<Long, Long> positions = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_POSITIONS;
+        }
+    };
+    private String eventId;
+
+    private StreamCursor(long origin) {
+        this.origin = origin;
+    }
+
+    static StreamCursor startingAt(Instant origin) {
+        return new StreamCursor(ChronoUnit.MICROS.between(Instant.EPOCH, origin));
+    }
+
+    /**
+     * @return The cursor of a Last-Event-ID header, empty if there is none or it is malformed
+     */
+    static Optional<StreamCursor> parse(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return Optional.empty();
+        }
+        var value = eventId.trim();
+        int separator = value.indexOf(ORIGIN_SEPARATOR);
+        try {
+            var cursor = new StreamCursor(Long.parseLong(separator < 0 ? value : value.substring(0, separator)));
+            if (separator >= 0 && separator < value.length() - 1) {
+                for (String pair : value.substring(separator + 1).split(",")) {
+                    int colon = pair.indexOf(':');
+                    long chatId = Long.parseLong(pair.substring(0, colon));
+                    long seq = Long.parseLong(pair.substring(colon + 1));
+                    if (seq < 0) {
+                        return Optional.empty();
+                    }
+                    cursor.move(chatId, seq);
+                }
+            }
+            return Optional.of(cursor);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return Optional.empty();
+        }
+    }
+
+    Instant origin() {
+        return Instant.EPOCH.plus(origin, ChronoUnit.MICROS);
+    }
+
+    synchronized OptionalLong position(long chatId) {
+        var seq = positions.get(chatId);
+        return seq == null ? OptionalLong.empty() : OptionalLong.of(seq);
+    }
+
+    /**
+     * Drops the positions of chats the participant can no longer read.
+     */
+    synchronized void retain(Collection<Long> chatIds) {
+        if (positions.keySet().retainAll(new HashSet<>(chatIds))) {
+            eventId = null;
+        }
+    }
+
+    /**
+     * Sets the position a replay of a chat starts from. A lower position than the current one wins,
+     * since resending is safe and skipping is not.
+     */
+    synchronized void start(long chatId, long seq) {
+        var current = positions.get(chatId);
+        if (current == null || seq < current) {
+            move(chatId, seq);
+        }
+    }
+
+    /**
+     * Records a delivered message. The first message of a chat without a position starts it,
+     * afterwards only the next seq moves it.
+     */
+    synchronized void advance(long chatId, long seq) {
+        var current = positions.get(chatId);
+        if (current == null || seq == current + 1) {
+            move(chatId, seq);
+        }
+    }
+
+    /**
+     * @return The encoded cursor, rebuilt only after a position moved
+     */
+    synchronized String toEventId() {
+        if (eventId == null) {
+            var id = new StringBuilder(20 + positions.size() * 16).append(origin).append(ORIGIN_SEPARATOR);
+            positions.forEach((chatId, seq) -> {
+                if (id.charAt(id.length() - 1) != ORIGIN_SEPARATOR) {
+                    id.append(',');
+                }
+                id.append(chatId).append(':').append(seq);
+            });
+            eventId = id.toString();
+        }
+        return eventId;
+    }
+
+    // Re-inserting moves the chat to the most recent end, the eldest position is dropped past the bound
+    private void move(long chatId, long seq) {
+        positions.remove(chatId);
+        positions.put(chatId, seq);
+        eventId = null;
+    }
+}
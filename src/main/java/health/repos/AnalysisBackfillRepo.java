@@ -0,0 +1,51 @@
+package health.repos;
+
+import health.models.UnitConversionCatalog;
+
+public interface AnalysisBackfillRepo {
+
+    /**
+     * Fills {@code numeric_value} for up to {@code limit} analyses with an id above {@code afterId}
+     * that do not have one yet. Results that are not numbers stay empty.
+     *
+     * @param afterId Id cursor of the previous chunk, 0 to start
+     * @param limit Rows to examine
+     * @return Highest id examined, {@code afterId} when no rows were left
+     */
+    long backfillNumericValues(long afterId, int limit);
+
+    /**
+     * Fills {@code canonical_value} and {@code canonical_unit} from {@code catalog} for up to {@code limit}
+     * numeric analyses with an id above {@code afterId} that do not have one yet. Results in units the
+     * catalog cannot convert stay empty.
+     *
+     * @param afterId Id cursor of the previous chunk, 0 to start
+     * @param limit Rows to examine
+     * @param catalog Conversions to apply
+     * @return Highest id examined, {@code afterId} when no rows were left
+     */
+    long backfillCanonicalValues(long afterId, int limit, UnitConversionCatalog catalog);
+
+    /**
+     * Reads the checkpoint of a backfill walk and locks it until the end of the transaction, so the chunk
+     * that follows and the checkpoint it writes are not interleaved with another instance's.
+     *
+     * @param walk Name of the walk
+     * @return The stored checkpoint, or the start of the table when the walk has none yet
+     */
+    Checkpoint lockCheckpoint(String walk);
+
+    /**
+     * Stores the checkpoint of a backfill walk; must run in the transaction of the chunk it records.
+     */
+    void saveCheckpoint(String walk, Checkpoint checkpoint);
+
+    /**
+     * @param lastId Highest analysis id examined
+     * @param done True once the walk reached the end of the table
+     */
+    record Checkpoint(long lastId, boolean done) {
+
+        public static final Checkpoint START = new Checkpoint(0, false);
+    }
+}
@@ -0,0 +1,76 @@
+package health.repos;
+
+import health.models.UnitConversionCatalog;
+import health.utils.AnalysisValueUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backfill for {@link AnalysisBackfillRepo}. Values are parsed with {@link AnalysisValueUtil} and converted
+ * with {@link UnitConversionCatalog}, the same way they are on every write.
+ */
+@RequiredArgsConstructor
+public class AnalysisBackfillRepoImpl implements AnalysisBackfillRepo {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public long backfillNumericValues(long afterId, int limit) {
+        List<Object[]> updates = new ArrayList<>();
+        long[] lastId = {afterId};
+        jdbcTemplate.query("select id, value from analysis where id > ? and numeric_value is null order by id limit ?",
+                (RowCallbackHandler) row -> {
+                    lastId[0] = row.getLong("id");
+                    var number = AnalysisValueUtil.parseNumeric(row.getString("value"));
+                    if (number != null) {
+                        updates.add(new Object[]{number, lastId[0]});
+                    }
+                }, afterId, limit);
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update analysis set numeric_value = ? where id = ? and numeric_value is null", updates);
+        }
+        return lastId[0];
+    }
+
+    @Override
+    public long backfillCanonicalValues(long afterId, int limit, UnitConversionCatalog catalog) {
+        List<Object[]> updates = new ArrayList<>();
+        long[] lastId = {afterId};
+        jdbcTemplate.query("select id, name, unit, numeric_value from analysis " +
+                        "where id > ? and canonical_value is null and numeric_value is not null order by id limit ?",
+                (RowCallbackHandler) row -> {
+                    lastId[0] = row.getLong("id");
+                    var normalized = catalog.normalize(row.getString("name"), row.getString("unit"), row.getDouble("numeric_value"));
+                    if (normalized != null) {
+                        updates.add(new Object[]{normalized.value(), normalized.unit(), lastId[0]});
+                    }
+                }, afterId, limit);
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update analysis set canonical_value = ?, canonical_unit = ? " +
+                    "where id = ? and canonical_value is null", updates);
+        }
+        return lastId[0];
+    }
+
+    @Override
+    public Checkpoint lockCheckpoint(String walk) {
+        var checkpoints = jdbcTemplate.query("select last_id, done from analysis_backfill_checkpoint where walk = ? for update",
+                (row, rowNum) -> new Checkpoint(row.getLong("last_id"), row.getBoolean("done")), walk);
+        return checkpoints.isEmpty() ? Checkpoint.START : checkpoints.get(0);
+    }
+
+    @Override
+    public void saveCheckpoint(String walk, Checkpoint checkpoint) {
+        int updated = jdbcTemplate.update("update analysis_backfill_checkpoint set last_id = ?, done = ? where walk = ?",
+                checkpoint.lastId(), checkpoint.done(), walk);
+        if (updated == 0) {
+            // A concurrent first insert fails on the primary key and rolls its chunk back
+            jdbcTemplate.update("insert into analysis_backfill_checkpoint (walk, last_id, done) values (?, ?, ?)",
+                    walk, checkpoint.lastId(), checkpoint.done());
+        }
+    }
+}
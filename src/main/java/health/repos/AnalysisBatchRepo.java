@@ -0,0 +1,23 @@
+package health.repos;
+
+import health.models.Analysis;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AnalysisBatchRepo {
+
+    /**
+     * Inserts new analyses with multi-row statements and sets their generated ids.
+     * Only the id of each analysis' customer is used, so a reference is enough.
+     */
+    void insertAll(List<Analysis> analyses);
+
+    /**
+     * Deletes the analyses among {@code ids} that belong to the customer with a single statement;
+     * ids of other customers or of no analysis are skipped. The latest index has to be updated first.
+     *
+     * @return Number of analyses deleted
+     */
+    int deleteOwned(long customerId, Collection<Long> ids);
+}
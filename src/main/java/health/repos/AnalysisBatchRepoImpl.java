@@ -0,0 +1,87 @@
+package health.repos;
+
+import health.models.Analysis;
+import health.utils.AnalysisValueUtil;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plain JDBC insert for {@link AnalysisBatchRepo}, sending up to {@value #ROWS_PER_STATEMENT} rows per
+ * statement. Nothing enters the persistence context, so long imports do not grow the open-in-view session.
+ * Ids come from the pooled generator of {@link Analysis}; the numeric value is parsed like the entity does.
+ */
+@RequiredArgsConstructor
+public class AnalysisBatchRepoImpl implements AnalysisBatchRepo {
+
+    static final int ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Override
+    public void insertAll(List<Analysis> analyses) {
+        var session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        var generator = session.getFactory().getMetamodel().entityPersister(Analysis.class).getIdentifierGenerator();
+        for (Analysis analysis : analyses) {
+            analysis.setId((Long) generator.generate(session, analysis));
+            analysis.setNumericValue(AnalysisValueUtil.parseNumeric(analysis.getValue()));
+        }
+        for (int from = 0; from < analyses.size(); from += ROWS_PER_STATEMENT) {
+            insertChunk(analyses.subList(from, Math.min(from + ROWS_PER_STATEMENT, analyses.size())));
+        }
+    }
+
+    @Override
+    public int deleteOwned(long customerId, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>(ids.size() + 1);
+        args.add(customerId);
+        args.addAll(ids);
+        return jdbcTemplate.update("delete from analysis where customers = ? and id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", args.toArray());
+    }
+
+    private void insertChunk(List<Analysis> chunk) {
+        var sql = new StringBuilder("insert into analysis (id, customers, name, value, numeric_value, unit, canonical_value, canonical_unit, date, flag) values ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+
+        jdbcTemplate.update(sql.toString(), statement -> {
+            int index = 1;
+            for (Analysis analysis : chunk) {
+                statement.setLong(index++, analysis.getId());
+                statement.setLong(index++, analysis.getCustomer().getId());
+                statement.setString(index++, analysis.getName());
+                statement.setString(index++, analysis.getValue());
+                setDouble(statement, index++, analysis.getNumericValue());
+                statement.setString(index++, analysis.getUnit());
+                setDouble(statement, index++, analysis.getCanonicalValue());
+                statement.setString(index++, analysis.getCanonicalUnit());
+                statement.setTimestamp(index++, Timestamp.from(analysis.getDate()));
+                statement.setString(index++, analysis.getFlag() == null ? null : analysis.getFlag().name());
+            }
+        });
+    }
+
+    private static void setDouble(PreparedStatement statement, int index, Double value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.DOUBLE);
+        } else {
+            statement.setDouble(index, value);
+        }
+    }
+}
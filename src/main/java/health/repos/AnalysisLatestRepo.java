@@ -0,0 +1,40 @@
+package health.repos;
+
+import health.models.Analysis;
+import health.models.dto.AnalysisDto;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AnalysisLatestRepo {
+
+    /**
+     * Reads the latest result of every analysis name of a customer from {@code analysis_latest}.
+     *
+     * @return One entry per analysis name, ordered by name
+     */
+    List<AnalysisDto> getLatest(long customerId);
+
+    /**
+     * Makes new analyses the latest of their name where they are newer than the current one.
+     * The analyses must already be written in the current transaction.
+     */
+    void updateLatest(Collection<Analysis> analyses);
+
+    /**
+     * Points the latest entries of analyses about to be deleted at the next newest result of their name
+     * outside {@code analysisIds}, or removes entries with none left. Ids of other customers are ignored.
+     * Takes a fixed number of statements however many ids are given; must run in the transaction that
+     * deletes the analyses.
+     */
+    void removeFromLatest(long customerId, Collection<Long> analysisIds);
+
+    /**
+     * Feeds up to {@code limit} analyses with an id above {@code afterId} into the latest index.
+     *
+     * @param afterId Id cursor of the previous chunk, 0 to start
+     * @param limit Rows to examine
+     * @return Highest id examined, {@code afterId} when no rows were left
+     */
+    long backfillLatest(long afterId, int limit);
+}
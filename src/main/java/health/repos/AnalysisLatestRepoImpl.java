@@ -0,0 +1,156 @@
+package health.repos;
+
+import health.models.Analysis;
+import health.models.AnalysisFlag;
+import health.models.dto.AnalysisDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintenance of {@code analysis_latest} for {@link AnalysisLatestRepo}.
+ * <p>
+ * An entry only ever moves to a newer result, so concurrent writers and the backfill can feed it in
+ * any order. Entries are written sorted by customer and name, so transactions touching the same names
+ * lock them in the same order. On PostgreSQL the upsert is {@code on conflict do update}; other databases,
+ * i.e. H2 in tests, use a standard {@code merge}.
+ */
+@RequiredArgsConstructor
+public class AnalysisLatestRepoImpl implements AnalysisLatestRepo {
+
+    private static final String UPSERT_POSTGRES = "insert into analysis_latest (customers, name, analysis, date) values (?, ?, ?, ?) " +
+            "on conflict (customers, name) do update set analysis = excluded.analysis, date = excluded.date " +
+            "where analysis_latest.date < excluded.date " +
+            "or (analysis_latest.date = excluded.date and analysis_latest.analysis < excluded.analysis)";
+
+    private static final String UPSERT_MERGE = "merge into analysis_latest l using (select cast(? as bigint) as customers, " +
+            "cast(? as varchar(255)) as name, cast(? as bigint) as analysis, cast(? as timestamp) as date) n " +
+            "on l.customers = n.customers and l.name = n.name " +
+            "when matched and (l.date < n.date or (l.date = n.date and l.analysis < n.analysis)) " +
+            "then update set analysis = n.analysis, date = n.date " +
+            "when not matched then insert (customers, name, analysis, date) values (n.customers, n.name, n.analysis, n.date)";
+
+    private static final Comparator<Entry> NEWEST = Comparator.comparing(Entry::date).thenComparingLong(Entry::analysisId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    @Override
+    public List<AnalysisDto> getLatest(long customerId) {
+        return jdbcTemplate.query("select a.id, a.name, a.value, a.numeric_value, a.unit, a.canonical_value, a.canonical_unit, a.date, a.flag from analysis_latest l " +
+                "join analysis a on a.id = l.analysis where l.customers = ? order by l.name", (row, rowNum) -> AnalysisDto.builder()
+                .id(row.getLong("id"))
+                .customerId(customerId)
+                .name(row.getString("name"))
+                .value(row.getString("value"))
+                .numericValue(getDouble(row, "numeric_value"))
+                .unit(row.getString("unit"))
+                .canonicalValue(getDouble(row, "canonical_value"))
+                .canonicalUnit(row.getString("canonical_unit"))
+                .date(row.getTimestamp("date").toInstant())
+                .flag(getFlag(row))
+                .build(), customerId);
+    }
+
+    @Override
+    public void updateLatest(Collection<Analysis> analyses) {
+        upsert(analyses.stream()
+                .map(analysis -> new Entry(analysis.getCustomer().getId(), analysis.getName(), analysis.getId(), analysis.getDate()))
+                .toList());
+    }
+
+    @Override
+    public void removeFromLatest(long customerId, Collection<Long> analysisIds) {
+        if (analysisIds.isEmpty()) {
+            return;
+        }
+        var idList = placeholders(analysisIds.size());
+        List<Object> args = new ArrayList<>(analysisIds.size() + 1);
+        args.add(customerId);
+        args.addAll(analysisIds);
+        List<String> names = jdbcTemplate.queryForList("select name from analysis_latest where customers = ? and analysis in (" +
+                idList + ")", String.class, args.toArray());
+        if (names.isEmpty()) {
+            return;
+        }
+        // Newest remaining result of every affected name, found before the entries are dropped
+        List<Object> nextArgs = new ArrayList<>(args.size() + names.size());
+        nextArgs.add(customerId);
+        nextArgs.addAll(names);
+        nextArgs.addAll(analysisIds);
+        List<Entry> next = jdbcTemplate.query("select id, name, date from (select a.id, a.name, a.date, " +
+                        "row_number() over (partition by a.name order by a.date desc, a.id desc) as position from analysis a " +
+                        "where a.customers = ? and a.name in (" + placeholders(names.size()) + ") and a.id not in (" + idList + ")) n " +
+                        "where n.position = 1",
+                (row, rowNum) -> new Entry(customerId, row.getString("name"), row.getLong("id"), row.getTimestamp("date").toInstant()),
+                nextArgs.toArray());
+        jdbcTemplate.update("delete from analysis_latest where customers = ? and analysis in (" + idList + ")", args.toArray());
+        // Entries a concurrent insert created in between only move to the remaining result if it is newer
+        upsert(next);
+    }
+
+    @Override
+    public long backfillLatest(long afterId, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        long[] lastId = {afterId};
+        jdbcTemplate.query("select id, customers, name, date from analysis where id > ? order by id limit ?",
+                (RowCallbackHandler) row -> {
+                    lastId[0] = row.getLong("id");
+                    entries.add(new Entry(row.getLong("customers"), row.getString("name"), lastId[0],
+                            row.getTimestamp("date").toInstant()));
+                }, afterId, limit);
+        upsert(entries);
+        return lastId[0];
+    }
+
+    private void upsert(List<Entry> entries) {
+        Map<Entry, Entry> newest = new TreeMap<>(Comparator.comparingLong(Entry::customerId).thenComparing(Entry::name));
+        for (Entry entry : entries) {
+            newest.merge(entry, entry, (current, candidate) -> NEWEST.compare(candidate, current) > 0 ? candidate : current);
+        }
+        if (newest.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(isPostgres() ? UPSERT_POSTGRES : UPSERT_MERGE, newest.values().stream()
+                .map(entry -> new Object[]{entry.customerId(), entry.name(), entry.analysisId(), Timestamp.from(entry.date())})
+                .toList());
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private static AnalysisFlag getFlag(ResultSet row) throws SQLException {
+        var flag = row.getString("flag");
+        return flag == null ? null : AnalysisFlag.valueOf(flag);
+    }
+
+    private static Double getDouble(ResultSet row, String column) throws SQLException {
+        double value = row.getDouble(column);
+        return row.wasNull() ? null : value;
+    }
+
+    private record Entry(long customerId, String name, long analysisId, Instant date) {
+    }
+}
@@ -6,7 +6,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
-public interface AnalysisRepo extends JpaRepository<Analysis, Long> {
+public interface AnalysisRepo extends JpaRepository<Analysis, Long>, AnalysisSeriesRepo, AnalysisBackfillRepo, AnalysisBatchRepo,
+        AnalysisLatestRepo {
 
     List<Analysis> getAnalysisesByCustomer(Customer customer);
 
@@ -0,0 +1,64 @@
+package health.repos;
+
+import health.models.AnalysisFlag;
+import health.models.AnalysisSeriesFilter;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AnalysisStatsDto;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface AnalysisSeriesRepo {
+
+    /**
+     * Reads the analyses of a customer ordered by name, then date, so every series arrives as one run
+     * of rows. Rows are fetched in chunks and handed over one by one, never collected in a list.
+     * Must run inside a transaction for PostgreSQL to use a cursor.
+     *
+     * @param customerId Owner of the analyses
+     * @param filter Names and date range to include
+     * @param consumer Receives every row
+     */
+    void forEachAnalysis(long customerId, AnalysisSeriesFilter filter, Consumer<AnalysisDto> consumer);
+
+    /**
+     * Reads the analyses of several customers ordered by customer, then id, fetched in chunks and handed
+     * over one by one. Must run inside a transaction for PostgreSQL to use a cursor.
+     *
+     * @param customerIds Owners of the analyses
+     * @param consumer Receives every row
+     */
+    void forEachAnalysisOfCustomers(Collection<Long> customerIds, Consumer<AnalysisDto> consumer);
+
+    /**
+     * Reads the canonical values of one analysis name in one canonical unit for several customers,
+     * ordered by customer, without building a row object per value. Runs outside of transactions too,
+     * in which case all rows of the call are read at once, so callers keep the customer lists short.
+     *
+     * @param customerIds Owners of the analyses
+     * @param name Analysis name
+     * @param canonicalUnit Unit the values have to be in
+     * @param from Earliest date, inclusive, or null
+     * @param to Latest date, exclusive, or null
+     * @param consumer Receives every value
+     */
+    void forEachCanonicalValue(long[] customerIds, String name, String canonicalUnit, Instant from, Instant to,
+                               CanonicalValueConsumer consumer);
+
+    /**
+     * Aggregates the canonical values of every analysis name of a customer in the database.
+     *
+     * @param customerId Owner of the analyses
+     * @param filter Names and date range to include
+     * @return One entry per analysis name, ordered by name
+     */
+    List<AnalysisStatsDto> getStats(long customerId, AnalysisSeriesFilter filter);
+
+    @FunctionalInterface
+    interface CanonicalValueConsumer {
+
+        void accept(long customerId, long epochMilli, double value, AnalysisFlag flag);
+    }
+}
@@ -0,0 +1,190 @@
+package health.repos;
+
+import health.models.AnalysisSeriesFilter;
+import health.models.AnalysisFlag;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AnalysisStatsDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Series reads for {@link AnalysisSeriesRepo}. The customer and name conditions match
+ * {@code idx_analysis_customer_name}, which also delivers the rows grouped by name;
+ * abnormal-only reads of a customer match {@code idx_analysis_customer_flag}.
+ */
+@RequiredArgsConstructor
+public class AnalysisSeriesRepoImpl implements AnalysisSeriesRepo {
+
+    static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void forEachAnalysis(long customerId, AnalysisSeriesFilter filter, Consumer<AnalysisDto> consumer) {
+        List<Object> args = new ArrayList<>();
+        var sql = new StringBuilder("select a.id, a.name, a.value, a.numeric_value, a.unit, a.canonical_value, a.canonical_unit, a.date, a.flag from analysis a");
+        appendWhere(sql, args, customerId, filter);
+        sql.append(" order by a.name, a.date, a.id");
+
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql.toString());
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(AnalysisDto.builder()
+                .id(row.getLong("id"))
+                .customerId(customerId)
+                .name(row.getString("name"))
+                .value(row.getString("value"))
+                .numericValue(getDouble(row, "numeric_value"))
+                .unit(row.getString("unit"))
+                .canonicalValue(getDouble(row, "canonical_value"))
+                .canonicalUnit(row.getString("canonical_unit"))
+                .date(row.getTimestamp("date").toInstant())
+                .flag(getFlag(row))
+                .build()));
+    }
+
+    @Override
+    public void forEachAnalysisOfCustomers(Collection<Long> customerIds, Consumer<AnalysisDto> consumer) {
+        if (customerIds.isEmpty()) {
+            return;
+        }
+        var sql = "select a.id, a.customers, a.name, a.value, a.numeric_value, a.unit, a.canonical_value, a.canonical_unit, " +
+                "a.date, a.flag from analysis a where a.customers in (" + String.join(", ", Collections.nCopies(customerIds.size(), "?")) +
+                ") order by a.customers, a.id";
+        var args = List.copyOf(customerIds);
+
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setLong(i + 1, args.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(AnalysisDto.builder()
+                .id(row.getLong("id"))
+                .customerId(row.getLong("customers"))
+                .name(row.getString("name"))
+                .value(row.getString("value"))
+                .numericValue(getDouble(row, "numeric_value"))
+                .unit(row.getString("unit"))
+                .canonicalValue(getDouble(row, "canonical_value"))
+                .canonicalUnit(row.getString("canonical_unit"))
+                .date(row.getTimestamp("date").toInstant())
+                .flag(getFlag(row))
+                .build()));
+    }
+
+    @Override
+    public void forEachCanonicalValue(long[] customerIds, String name, String canonicalUnit, Instant from, Instant to,
+                                      CanonicalValueConsumer consumer) {
+        if (customerIds.length == 0) {
+            return;
+        }
+        List<Object> args = new ArrayList<>();
+        var sql = new StringBuilder("select a.customers, a.date, a.canonical_value, a.flag from analysis a where a.customers in (")
+                .append(String.join(", ", Collections.nCopies(customerIds.length, "?")))
+                .append(") and a.name = ? and a.canonical_unit = ? and a.canonical_value is not null");
+        for (long customerId : customerIds) {
+            args.add(customerId);
+        }
+        args.add(name);
+        args.add(canonicalUnit);
+        if (from != null) {
+            sql.append(" and a.date >= ?");
+            args.add(Timestamp.from(from));
+        }
+        if (to != null) {
+            sql.append(" and a.date < ?");
+            args.add(Timestamp.from(to));
+        }
+        sql.append(" order by a.customers");
+
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql.toString());
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(
+                row.getLong("customers"),
+                row.getTimestamp("date").getTime(),
+                row.getDouble("canonical_value"),
+                getFlag(row)));
+    }
+
+    @Override
+    public List<AnalysisStatsDto> getStats(long customerId, AnalysisSeriesFilter filter) {
+        List<Object> args = new ArrayList<>();
+        // Aggregates and the latest row are taken from the same filtered rows, the latest being the one with the highest id on the latest date
+        var sql = new StringBuilder("select s.name, s.canonical_unit, s.value_count, s.min_value, s.max_value, s.avg_value, " +
+                "s.value, s.numeric_value, s.unit, s.date from (" +
+                "select a.name, a.value, a.numeric_value, a.unit, a.date, " +
+                "max(a.canonical_unit) over (partition by a.name) as canonical_unit, " +
+                "count(a.canonical_value) over (partition by a.name) as value_count, " +
+                "min(a.canonical_value) over (partition by a.name) as min_value, " +
+                "max(a.canonical_value) over (partition by a.name) as max_value, " +
+                "avg(a.canonical_value) over (partition by a.name) as avg_value, " +
+                "row_number() over (partition by a.name order by a.date desc, a.id desc) as position from analysis a");
+        appendWhere(sql, args, customerId, filter);
+        sql.append(") s where s.position = 1 order by s.name");
+
+        return jdbcTemplate.query(sql.toString(), (row, rowNum) -> AnalysisStatsDto.builder()
+                .name(row.getString("name"))
+                .unit(row.getString("unit"))
+                .canonicalUnit(row.getString("canonical_unit"))
+                .count(row.getLong("value_count"))
+                .min(getDouble(row, "min_value"))
+                .max(getDouble(row, "max_value"))
+                .avg(getDouble(row, "avg_value"))
+                .lastValue(row.getString("value"))
+                .lastNumericValue(getDouble(row, "numeric_value"))
+                .lastDate(row.getTimestamp("date").toInstant())
+                .build(), args.toArray());
+    }
+
+    private static void appendWhere(StringBuilder sql, List<Object> args, long customerId, AnalysisSeriesFilter filter) {
+        sql.append(" where a.customers = ?");
+        args.add(customerId);
+        if (!filter.names().isEmpty()) {
+            sql.append(" and a.name in (").append(String.join(", ", Collections.nCopies(filter.names().size(), "?"))).append(")");
+            args.addAll(filter.names());
+        }
+        if (filter.from() != null) {
+            sql.append(" and a.date >= ?");
+            args.add(Timestamp.from(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" and a.date < ?");
+            args.add(Timestamp.from(filter.to()));
+        }
+        if (filter.abnormalOnly()) {
+            sql.append(" and a.flag in ('LOW', 'HIGH')");
+        }
+    }
+
+    private static AnalysisFlag getFlag(ResultSet row) throws SQLException {
+        var flag = row.getString("flag");
+        return flag == null ? null : AnalysisFlag.valueOf(flag);
+    }
+
+    private static Double getDouble(ResultSet row, String column) throws SQLException {
+        double value = row.getDouble(column);
+        return row.wasNull() ? null : value;
+    }
+}
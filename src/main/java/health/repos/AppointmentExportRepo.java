@@ -0,0 +1,18 @@
+package health.repos;
+
+import health.models.dto.AppointmentDto;
+
+import java.util.function.Consumer;
+
+public interface AppointmentExportRepo {
+
+    /**
+     * Reads the appointments of a customer ordered by start time, fetched in chunks and handed over
+     * one by one. Must run inside a transaction for PostgreSQL to use a cursor.
+     *
+     * @param customerId Customer of the appointments
+     * @param clinicId Clinic to restrict to, null for all clinics
+     * @param consumer Receives every appointment
+     */
+    void forEachAppointment(long customerId, Long clinicId, Consumer<AppointmentDto> consumer);
+}
@@ -0,0 +1,52 @@
+package health.repos;
+
+import health.models.dto.AppointmentDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Export reads for {@link AppointmentExportRepo}. The doctor name is built like {@code AppointmentMapper} does.
+ */
+@RequiredArgsConstructor
+public class AppointmentExportRepoImpl implements AppointmentExportRepo {
+
+    static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void forEachAppointment(long customerId, Long clinicId, Consumer<AppointmentDto> consumer) {
+        List<Object> args = new ArrayList<>();
+        var sql = new StringBuilder("select a.id, a.clinics, a.doctors, a.customers, a.timetables, t.start, " +
+                "d.first_name, d.last_name from appointments a join timetables t on t.id = a.timetables " +
+                "join doctors d on d.id = a.doctors where a.customers = ?");
+        args.add(customerId);
+        if (clinicId != null) {
+            sql.append(" and a.clinics = ?");
+            args.add(clinicId);
+        }
+        sql.append(" order by t.start, a.id");
+
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(sql.toString());
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(AppointmentDto.builder()
+                .id(row.getLong("id"))
+                .clinicId(row.getLong("clinics"))
+                .doctorId(row.getLong("doctors"))
+                .customerId(row.getLong("customers"))
+                .timetableId(row.getLong("timetables"))
+                .start(row.getTimestamp("start").toInstant())
+                .doctorName(row.getString("first_name") + " " + row.getString("last_name"))
+                .build()));
+    }
+}
@@ -2,14 +2,20 @@ package health.repos;
 
 import health.models.*;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
 
-public interface AppointmentRepo extends JpaRepository<Appointment, Long> {
+public interface AppointmentRepo extends JpaRepository<Appointment, Long>, AppointmentExportRepo {
     List<Appointment> getAppointmentsByDoctor(Doctor doctor);
     List<Appointment> getAppointmentsByCustomer(Customer customer);
     List<Appointment> getAppointmentsByDoctorAndCustomer(Doctor doctor, Customer customer);
+    boolean existsByDoctorAndCustomer(Doctor doctor, Customer customer);
     List<Appointment> getAppointmentsByClinic(Clinic clinic);
     Optional<Appointment> findAppointmentByTimetable(Timetable timetable);
+
+    @Query("select a.customer.id from Appointment a where a.id = :id")
+    Optional<Long> findCustomerIdById(@Param("id") long id);
 }
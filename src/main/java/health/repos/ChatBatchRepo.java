@@ -0,0 +1,30 @@
+package health.repos;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+public interface ChatBatchRepo {
+
+    /**
+     * Batch variant of {@link ChatRepo#appendMessage} for several chats in one statement:
+     * reserves a range of sequence numbers per chat and refreshes its inbox columns.
+     *
+     * @return Seq of the last appended message by chat id
+     */
+    Map<Long, Long> appendMessages(Collection<MessageAppend> appends);
+
+    /**
+     * Messages appended to one chat.
+     *
+     * @param count Number of messages
+     * @param preview Preview of the last message
+     * @param role Sender of the last message
+     * @param sentAt Send time of the last message
+     * @param customerOffset Position (1-based) of the customer's last message in the batch, 0 if none
+     * @param doctorOffset Position (1-based) of the doctor's last message in the batch, 0 if none
+     */
+    record MessageAppend(long chatId, int count, String preview, String role, Instant sentAt,
+                         int customerOffset, int doctorOffset) {
+    }
+}
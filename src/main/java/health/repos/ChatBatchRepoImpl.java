@@ -0,0 +1,55 @@
+package health.repos;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class ChatBatchRepoImpl implements ChatBatchRepo {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Chat rows are locked in id order first, so concurrent batch writers cannot deadlock on them.
+     */
+    @Override
+    public Map<Long, Long> appendMessages(Collection<MessageAppend> appends) {
+        var ids = String.join(", ", Collections.nCopies(appends.size(), "?"));
+        var rows = String.join(", ", Collections.nCopies(appends.size(),
+                "(?::bigint, ?::int, ?::varchar, ?::varchar, ?::timestamp, ?::int, ?::int)"));
+        var sql = "with locked as (select id from chats where id in (" + ids + ") order by id for update), " +
+                "batch (id, count, preview, role, sent_at, customer_offset, doctor_offset) as (values " + rows + ") " +
+                "update chats c set last_message_seq = c.last_message_seq + b.count, " +
+                "last_message_preview = b.preview, last_message_role = b.role, last_activity = b.sent_at, " +
+                "customer_read_seq = case when b.customer_offset > 0 then c.last_message_seq + b.customer_offset else c.customer_read_seq end, " +
+                "doctor_read_seq = case when b.doctor_offset > 0 then c.last_message_seq + b.doctor_offset else c.doctor_read_seq end " +
+                "from batch b join locked l on l.id = b.id " +
+                "where c.id = b.id " +
+                "returning c.id, c.last_message_seq";
+
+        Map<Long, Long> lastSeqs = new HashMap<>();
+        jdbcTemplate.query(sql, statement -> {
+            int index = 1;
+            for (MessageAppend append : appends) {
+                statement.setLong(index++, append.chatId());
+            }
+            for (MessageAppend append : appends) {
+                statement.setLong(index++, append.chatId());
+                statement.setInt(index++, append.count());
+                statement.setString(index++, append.preview());
+                statement.setString(index++, append.role());
+                statement.setTimestamp(index++, Timestamp.from(append.sentAt()));
+                statement.setInt(index++, append.customerOffset());
+                statement.setInt(index++, append.doctorOffset());
+            }
+        }, row -> {
+            lastSeqs.put(row.getLong("id"), row.getLong("last_message_seq"));
+        });
+        return lastSeqs;
+    }
+}
@@ -4,14 +4,133 @@ import health.models.Chat;
 import health.models.Clinic;
 import health.models.Customer;
 import health.models.Doctor;
+import health.models.dto.InboxEntryDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface ChatRepo extends JpaRepository<Chat, Long> {
+public interface ChatRepo extends JpaRepository<Chat, Long>, ChatBatchRepo, ChatUpsertRepo {
     Optional<Chat> findChatByDoctorAndCustomer(Doctor doctor, Customer customer);
+
+    @EntityGraph(attributePaths = {"doctor", "customer"})
     List<Chat> getChatsByDoctor(Doctor doctor);
+
+    @EntityGraph(attributePaths = {"doctor", "customer"})
     List<Chat> getChatsByCustomer(Customer customer);
+
+    @EntityGraph(attributePaths = {"doctor", "customer"})
     List<Chat> getChatByClinic(Clinic clinic);
+
+    /**
+     * Ids of the participants of a chat, read from the chat row alone.
+     */
+    @Query("select c.customer.id as customerId, c.doctor.id as doctorId, c.clinic.id as clinicId from Chat c where c.id = :id")
+    Optional<Owners> findOwnersById(@Param("id") long id);
+
+    @Query("select c.id from Chat c where c.customer = :customer")
+    List<Long> getChatIdsByCustomer(@Param("customer") Customer customer);
+
+    @Query("select c.id from Chat c where c.doctor = :doctor")
+    List<Long> getChatIdsByDoctor(@Param("doctor") Doctor doctor);
+
+    @Query("select c.id from Chat c where c.clinic = :clinic")
+    List<Long> getChatIdsByClinic(@Param("clinic") Clinic clinic);
+
+    @Query("select c.id as chatId, c.lastMessageSeq as seq from Chat c where c.id in :ids")
+    List<ChatSeq> getLastMessageSeqsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Appends a message to the chat row: advances the sequence, refreshes the inbox columns and
+     * moves the sender's read position to the new message, all in one round trip.
+     * The row lock serializes writers until commit, so committed sequences have no gaps.
+     */
+    @Transactional
+    @Query(value = "update chats set last_message_seq = last_message_seq + 1, " +
+            "last_message_preview = :preview, last_message_role = :role, last_activity = :sentAt, " +
+            "customer_read_seq = case when :role = 'CUSTOMER' then last_message_seq + 1 else customer_read_seq end, " +
+            "doctor_read_seq = case when :role = 'DOCTOR' then last_message_seq + 1 else doctor_read_seq end " +
+            "where id = :id returning last_message_seq",
+            nativeQuery = true)
+    long appendMessage(@Param("id") long chatId,
+                       @Param("preview") String preview,
+                       @Param("role") String role,
+                       @Param("sentAt") Instant sentAt);
+
+    @Transactional
+    @Query(value = "update chats set customer_read_seq = least(greatest(customer_read_seq, :seq), last_message_seq) " +
+            "where id = :id returning customer_read_seq",
+            nativeQuery = true)
+    long markReadByCustomer(@Param("id") long chatId, @Param("seq") long seq);
+
+    @Transactional
+    @Query(value = "update chats set doctor_read_seq = least(greatest(doctor_read_seq, :seq), last_message_seq) " +
+            "where id = :id returning doctor_read_seq",
+            nativeQuery = true)
+    long markReadByDoctor(@Param("id") long chatId, @Param("seq") long seq);
+
+    /**
+     * Chats after {@code afterId} that probably hold a full archive block: a message sent before the cutoff
+     * at least {@code blockSize} seqs past the archive checkpoint. Deleted messages can make it a false positive.
+     */
+    @Query(value = "select c.id from chats c where c.id > :afterId and exists (" +
+            "select 1 from messages m where m.chats = c.id and m.send_time < :cutoff " +
+            "and m.seq >= c.archived_seq + :blockSize) order by c.id limit :limit",
+            nativeQuery = true)
+    List<Long> getChatIdsToArchive(@Param("afterId") long afterId,
+                                   @Param("cutoff") Instant cutoff,
+                                   @Param("blockSize") int blockSize,
+                                   @Param("limit") int limit);
+
+    /**
+     * Moves the archive checkpoint forward, only if no other node moved it since {@code expectedSeq} was read.
+     */
+    @Modifying
+    @Query(value = "update chats set archived_seq = :seq where id = :id and archived_seq = :expectedSeq",
+            nativeQuery = true)
+    int advanceArchivedSeq(@Param("id") long chatId, @Param("expectedSeq") long expectedSeq, @Param("seq") long seq);
+
+    @Query("select new health.models.dto.InboxEntryDto(c.id, cu.id, d.id, cl.id, " +
+            "concat(d.firstName, ' ', d.lastName), concat(cu.firstName, ' ', cu.lastName), " +
+            "c.lastMessagePreview, c.lastMessageRole, c.lastActivity, c.lastMessageSeq, " +
+            "c.customerReadSeq, c.doctorReadSeq, c.lastMessageSeq - c.customerReadSeq) " +
+            "from Chat c join c.customer cu join c.doctor d join c.clinic cl " +
+            "where c.customer = :customer order by c.lastActivity desc, c.id desc")
+    Slice<InboxEntryDto> getInboxByCustomer(@Param("customer") Customer customer, Pageable pageable);
+
+    @Query("select new health.models.dto.InboxEntryDto(c.id, cu.id, d.id, cl.id, " +
+            "concat(d.firstName, ' ', d.lastName), concat(cu.firstName, ' ', cu.lastName), " +
+            "c.lastMessagePreview, c.lastMessageRole, c.lastActivity, c.lastMessageSeq, " +
+            "c.customerReadSeq, c.doctorReadSeq, c.lastMessageSeq - c.doctorReadSeq) " +
+            "from Chat c join c.customer cu join c.doctor d join c.clinic cl " +
+            "where c.doctor = :doctor order by c.lastActivity desc, c.id desc")
+    Slice<InboxEntryDto> getInboxByDoctor(@Param("doctor") Doctor doctor, Pageable pageable);
+
+    @Query("select new health.models.dto.InboxEntryDto(c.id, cu.id, d.id, cl.id, " +
+            "concat(d.firstName, ' ', d.lastName), concat(cu.firstName, ' ', cu.lastName), " +
+            "c.lastMessagePreview, c.lastMessageRole, c.lastActivity, c.lastMessageSeq, " +
+            "c.customerReadSeq, c.doctorReadSeq, 0L) " +
+            "from Chat c join c.customer cu join c.doctor d join c.clinic cl " +
+            "where c.clinic = :clinic order by c.lastActivity desc, c.id desc")
+    Slice<InboxEntryDto> getInboxByClinic(@Param("clinic") Clinic clinic, Pageable pageable);
+
+    interface Owners {
+        long getCustomerId();
+        long getDoctorId();
+        long getClinicId();
+    }
+
+    interface ChatSeq {
+        long getChatId();
+        long getSeq();
+    }
 }
@@ -0,0 +1,21 @@
+package health.repos;
+
+import health.models.Chat;
+import health.models.Customer;
+import health.models.Doctor;
+
+public interface ChatUpsertRepo {
+
+    /**
+     * Returns the chat of a doctor and customer, inserting it first if there is none, in one statement on PostgreSQL.
+     * Concurrent callers always end up with the same chat thanks to the unique (doctors, customers) index.
+     */
+    ChatUpsert getOrCreate(Doctor doctor, Customer customer);
+
+    /**
+     * @param chat Chat with its participants, not attached to the persistence context
+     * @param created True if this call inserted the chat
+     */
+    record ChatUpsert(Chat chat, boolean created) {
+    }
+}
@@ -0,0 +1,93 @@
+package health.repos;
+
+import health.models.Chat;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.Doctor;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+@RequiredArgsConstructor
+public class ChatUpsertRepoImpl implements ChatUpsertRepo {
+
+    // The union branch reads the row a concurrent insert committed before this statement started;
+    // a row committed while it runs is only visible to the retry in getOrCreate
+    private static final String UPSERT = "with inserted as (" +
+            "insert into chats (id, doctors, customers, clinics, last_message_seq, last_activity, customer_read_seq, doctor_read_seq, archived_seq) " +
+            "values (?, ?, ?, ?, 0, ?, 0, 0, 0) " +
+            "on conflict (doctors, customers) do nothing " +
+            "returning id, clinics, last_message_seq, archived_seq, last_activity, true as created) " +
+            "select id, clinics, last_message_seq, archived_seq, last_activity, created from inserted " +
+            "union all " +
+            "select id, clinics, last_message_seq, archived_seq, last_activity, false from chats where doctors = ? and customers = ? " +
+            "limit 1";
+
+    // Fallback for databases without data-modifying CTEs (H2): the insert waits for a conflicting
+    // insert to finish, so the select that follows sees whichever row won
+    private static final String INSERT_IF_ABSENT = "insert into chats (id, doctors, customers, clinics, last_message_seq, last_activity, customer_read_seq, doctor_read_seq, archived_seq) " +
+            "values (?, ?, ?, ?, 0, ?, 0, 0, 0) " +
+            "on conflict do nothing";
+
+    private static final String SELECT = "select id, clinics, last_message_seq, archived_seq, last_activity, false as created " +
+            "from chats where doctors = ? and customers = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private volatile Boolean postgres;
+
+    @Override
+    public ChatUpsert getOrCreate(Doctor doctor, Customer customer) {
+        var session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        var generator = session.getFactory().getMetamodel().entityPersister(Chat.class).getIdentifierGenerator();
+        var chat = Chat.builder()
+                .doctor(doctor)
+                .customer(customer)
+                .clinic(doctor.getClinic())
+                .lastActivity(Instant.now().truncatedTo(ChronoUnit.MICROS))
+                .build();
+        long id = (Long) generator.generate(session, chat);
+
+        if (!isPostgres()) {
+            boolean created = jdbcTemplate.update(INSERT_IF_ABSENT, id, doctor.getId(), customer.getId(), doctor.getClinic().getId(),
+                    Timestamp.from(chat.getLastActivity())) == 1;
+            var upsert = jdbcTemplate.query(SELECT, (row, rowNum) -> toUpsert(row, chat), doctor.getId(), customer.getId()).get(0);
+            return new ChatUpsert(upsert.chat(), created);
+        }
+        var rows = jdbcTemplate.query(UPSERT, (row, rowNum) -> toUpsert(row, chat),
+                id, doctor.getId(), customer.getId(), doctor.getClinic().getId(), Timestamp.from(chat.getLastActivity()),
+                doctor.getId(), customer.getId());
+        if (rows.isEmpty()) {
+            rows = jdbcTemplate.query(SELECT, (row, rowNum) -> toUpsert(row, chat), doctor.getId(), customer.getId());
+        }
+        return rows.get(0);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    private ChatUpsert toUpsert(ResultSet row, Chat chat) throws SQLException {
+        chat.setId(row.getLong("id"));
+        chat.setLastMessageSeq(row.getLong("last_message_seq"));
+        chat.setArchivedSeq(row.getLong("archived_seq"));
+        chat.setLastActivity(row.getTimestamp("last_activity").toInstant());
+        long clinicId = row.getLong("clinics");
+        if (clinicId != chat.getClinic().getId()) {
+            chat.setClinic(entityManager.getReference(Clinic.class, clinicId));
+        }
+        return new ChatUpsert(chat, row.getBoolean("created"));
+    }
+}
@@ -0,0 +1,29 @@
+package health.repos;
+
+import health.models.dto.CustomerDto;
+
+import java.util.List;
+
+public interface ClinicCustomerRepo {
+
+    /**
+     * Counts the customers with an appointment or a chat at a clinic.
+     */
+    long countCustomersOfClinic(long clinicId);
+
+    /**
+     * Reads a page of the customers of a clinic, as in {@link #countCustomersOfClinic}, ordered by id.
+     * Only profile fields are filled.
+     *
+     * @param clinicId Clinic of the customers
+     * @param afterId Id cursor of the previous page, 0 to start
+     * @param limit Customers to return
+     * @return Customers with an id above {@code afterId}
+     */
+    List<CustomerDto> getCustomersOfClinic(long clinicId, long afterId, int limit);
+
+    /**
+     * Reads the ids of all customers of a clinic, as in {@link #countCustomersOfClinic}, in ascending order.
+     */
+    long[] getCustomerIdsOfClinic(long clinicId);
+}
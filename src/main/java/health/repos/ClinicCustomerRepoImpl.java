@@ -0,0 +1,63 @@
+package health.repos;
+
+import health.models.Gender;
+import health.models.dto.CustomerDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Clinic customer reads for {@link ClinicCustomerRepo}, with the same membership rule as
+ * {@code CustomerRepo.isCustomerOfClinic}. The gender is stored by ordinal, like the {@code Customer} mapping does.
+ */
+@RequiredArgsConstructor
+public class ClinicCustomerRepoImpl implements ClinicCustomerRepo {
+
+    private static final String OF_CLINIC = "(exists (select 1 from appointments a where a.customers = cu.id and a.clinics = ?) " +
+            "or exists (select 1 from chats c where c.customers = cu.id and c.clinics = ?))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public long countCustomersOfClinic(long clinicId) {
+        Long count = jdbcTemplate.queryForObject("select count(*) from customers cu where " + OF_CLINIC,
+                Long.class, clinicId, clinicId);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public List<CustomerDto> getCustomersOfClinic(long clinicId, long afterId, int limit) {
+        return jdbcTemplate.query("select cu.id, cu.first_name, cu.last_name, cu.age, cu.gender from customers cu " +
+                        "where cu.id > ? and " + OF_CLINIC + " order by cu.id limit ?",
+                (row, rowNum) -> CustomerDto.builder()
+                        .id(row.getLong("id"))
+                        .firstName(row.getString("first_name"))
+                        .lastName(row.getString("last_name"))
+                        .age(getInteger(row, "age"))
+                        .gender(getGender(row))
+                        .build(),
+                afterId, clinicId, clinicId, limit);
+    }
+
+    @Override
+    public long[] getCustomerIdsOfClinic(long clinicId) {
+        return jdbcTemplate.queryForList("select cu.id from customers cu where " + OF_CLINIC + " order by cu.id",
+                        Long.class, clinicId, clinicId)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private static Gender getGender(ResultSet row) throws SQLException {
+        var gender = getInteger(row, "gender");
+        return gender == null ? null : Gender.values()[gender];
+    }
+
+    private static Integer getInteger(ResultSet row, String column) throws SQLException {
+        int value = row.getInt(column);
+        return row.wasNull() ? null : value;
+    }
+}
@@ -3,9 +3,19 @@ package health.repos;
 import health.models.Customer;
 import health.models.auth.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
-public interface CustomerRepo extends JpaRepository<Customer, Long> {
+public interface CustomerRepo extends JpaRepository<Customer, Long>, ClinicCustomerRepo {
     Optional<Customer> findCustomerByUser(User user);
+
+    /**
+     * A customer belongs to a clinic once they booked an appointment or opened a chat with one of its doctors.
+     */
+    @Query("select count(cu) > 0 from Customer cu where cu.id = :customerId and (" +
+            "exists (select a.id from Appointment a where a.clinic.id = :clinicId and a.customer = cu) or " +
+            "exists (select c.id from Chat c where c.clinic.id = :clinicId and c.customer = cu))")
+    boolean isCustomerOfClinic(@Param("clinicId") long clinicId, @Param("customerId") long customerId);
 }
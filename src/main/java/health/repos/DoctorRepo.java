@@ -4,6 +4,8 @@ import health.models.Clinic;
 import health.models.Doctor;
 import health.models.auth.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +13,7 @@ import java.util.Optional;
 public interface DoctorRepo extends JpaRepository<Doctor, Long> {
     Optional<Doctor> findDoctorByUser(User user);
     List<Doctor> getDoctorsByClinic(Clinic clinic);
+
+    @Query("select d.clinic.id from Doctor d where d.id = :id")
+    Optional<Long> findClinicIdById(@Param("id") long id);
 }
@@ -0,0 +1,25 @@
+package health.repos;
+
+import health.models.EntityChangeLog;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface EntityChangeLogRepo extends JpaRepository<EntityChangeLog, Long> {
+    List<EntityChangeLog> findTop500ByIdGreaterThanOrderByIdAsc(long id);
+    List<EntityChangeLog> findByIdIn(Collection<Long> ids);
+
+    @Query("select coalesce(max(e.id), 0) from EntityChangeLog e")
+    long findMaxId();
+
+    @Modifying
+    @Transactional
+    @Query("delete from EntityChangeLog e where e.changedAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+}
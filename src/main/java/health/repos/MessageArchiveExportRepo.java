@@ -0,0 +1,15 @@
+package health.repos;
+
+import java.util.function.Consumer;
+
+public interface MessageArchiveExportRepo {
+
+    /**
+     * Reads the payloads of the archived blocks of a chat in seq order, a few blocks at a time,
+     * so a long archive never has to fit in memory. Must run inside a transaction for PostgreSQL to use a cursor.
+     *
+     * @param chatId Chat of the blocks
+     * @param consumer Receives every block payload
+     */
+    void forEachBlockPayload(long chatId, Consumer<byte[]> consumer);
+}
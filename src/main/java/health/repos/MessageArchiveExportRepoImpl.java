@@ -0,0 +1,29 @@
+package health.repos;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.function.Consumer;
+
+/**
+ * Export reads for {@link MessageArchiveExportRepo}, along {@code uk_message_archive_chat_last_seq}.
+ */
+@RequiredArgsConstructor
+public class MessageArchiveExportRepoImpl implements MessageArchiveExportRepo {
+
+    // A block holds up to block-size messages, so a handful of them is already a large fetch
+    static final int FETCH_SIZE = 8;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void forEachBlockPayload(long chatId, Consumer<byte[]> consumer) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("select payload from message_archive where chats = ? order by last_seq");
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setLong(1, chatId);
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(row.getBytes("payload")));
+    }
+}
@@ -0,0 +1,14 @@
+package health.repos;
+
+import health.models.Chat;
+import health.models.MessageArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface MessageArchiveRepo extends JpaRepository<MessageArchive, Long>, MessageArchiveExportRepo {
+    List<MessageArchive> getBlocksByChatOrderByLastSeqAsc(Chat chat);
+    List<MessageArchive> getBlocksByChatAndLastSeqGreaterThanOrderByLastSeqAsc(Chat chat, long seq, Pageable pageable);
+    List<MessageArchive> getBlocksByChatAndFirstSeqLessThanOrderByLastSeqDesc(Chat chat, long seq, Pageable pageable);
+}
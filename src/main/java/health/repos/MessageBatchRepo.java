@@ -0,0 +1,14 @@
+package health.repos;
+
+import health.models.Message;
+
+import java.util.List;
+
+public interface MessageBatchRepo {
+
+    /**
+     * Inserts new messages with multi-row statements and sets their generated ids.
+     * Messages must already have their chat and seq assigned.
+     */
+    void insertAll(List<Message> messages);
+}
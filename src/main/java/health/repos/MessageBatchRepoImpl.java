@@ -0,0 +1,55 @@
+package health.repos;
+
+import health.models.Message;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Plain JDBC insert for {@link MessageBatchRepo}, sending up to {@value #ROWS_PER_STATEMENT} rows per
+ * statement. Ids are drawn from the same pooled generator Hibernate uses for {@link Message}, so most
+ * of them cost no database call. Column names and the ordinal role follow the {@link Message} mapping.
+ */
+@RequiredArgsConstructor
+public class MessageBatchRepoImpl implements MessageBatchRepo {
+
+    static final int ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    @Override
+    public void insertAll(List<Message> messages) {
+        var session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        var generator = session.getFactory().getMetamodel().entityPersister(Message.class).getIdentifierGenerator();
+        for (Message message : messages) {
+            message.setId((Long) generator.generate(session, message));
+        }
+        for (int from = 0; from < messages.size(); from += ROWS_PER_STATEMENT) {
+            insertChunk(messages.subList(from, Math.min(from + ROWS_PER_STATEMENT, messages.size())));
+        }
+    }
+
+    private void insertChunk(List<Message> chunk) {
+        var sql = new StringBuilder("insert into messages (id, chats, text, role, send_time, seq) values ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+        }
+
+        jdbcTemplate.update(sql.toString(), statement -> {
+            int index = 1;
+            for (Message message : chunk) {
+                statement.setLong(index++, message.getId());
+                statement.setLong(index++, message.getChat().getId());
+                statement.setString(index++, message.getText());
+                statement.setInt(index++, message.getRole().ordinal());
+                statement.setTimestamp(index++, Timestamp.from(message.getSendTime()));
+                statement.setLong(index++, message.getSeq());
+            }
+        });
+    }
+}
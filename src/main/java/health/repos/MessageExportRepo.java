@@ -0,0 +1,18 @@
+package health.repos;
+
+import health.models.dto.MessageDto;
+
+import java.util.function.Consumer;
+
+public interface MessageExportRepo {
+
+    /**
+     * Reads the messages of a chat that are still in the messages table, in seq order, fetched in
+     * chunks and handed over one by one. Must run inside a transaction for PostgreSQL to use a cursor.
+     *
+     * @param chatId Chat of the messages
+     * @param afterSeq Only messages with a greater seq, i.e. the archive checkpoint of the chat
+     * @param consumer Receives every message
+     */
+    void forEachMessage(long chatId, long afterSeq, Consumer<MessageDto> consumer);
+}
@@ -0,0 +1,39 @@
+package health.repos;
+
+import health.models.auth.Role;
+import health.models.dto.MessageDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.function.Consumer;
+
+/**
+ * Export reads for {@link MessageExportRepo}, along {@code uk_message_chat_seq}.
+ */
+@RequiredArgsConstructor
+public class MessageExportRepoImpl implements MessageExportRepo {
+
+    static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void forEachMessage(long chatId, long afterSeq, Consumer<MessageDto> consumer) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("select id, chats, text, role, send_time, seq from messages " +
+                    "where chats = ? and seq > ? order by seq");
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setLong(1, chatId);
+            statement.setLong(2, afterSeq);
+            return statement;
+        }, (RowCallbackHandler) row -> consumer.accept(MessageDto.builder()
+                .id(row.getLong("id"))
+                .chatId(row.getLong("chats"))
+                .text(row.getString("text"))
+                .role(Role.values()[row.getInt("role")])
+                .sendTime(row.getTimestamp("send_time").toInstant())
+                .seq(row.getLong("seq"))
+                .build()));
+    }
+}
@@ -2,10 +2,29 @@ package health.repos;
 
 import health.models.Chat;
 import health.models.Message;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
-public interface MessageRepo extends JpaRepository<Message, Long> {
-    List<Message> getMessagesByChat(Chat chat);
+public interface MessageRepo extends JpaRepository<Message, Long>, MessageBatchRepo, MessageSearchRepo,
+        MessageExportRepo {
+    List<Message> getMessagesByChatOrderBySeqAsc(Chat chat);
+    Slice<Message> getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(Chat chat, long seq, Pageable pageable);
+    Slice<Message> getMessagesByChatIdAndSeqGreaterThanOrderBySeqAsc(long chatId, long seq, Pageable pageable);
+    Slice<Message> getMessagesByChatAndSeqLessThanOrderBySeqDesc(Chat chat, long seq, Pageable pageable);
+
+    @Query("select m.chat.id as chatId, min(m.seq) as seq from Message m " +
+            "where m.chat.id in :chatIds and m.sendTime >= :since group by m.chat.id")
+    List<ChatRepo.ChatSeq> getFirstSeqsSince(@Param("chatIds") Collection<Long> chatIds, @Param("since") Instant since);
+
+    @Modifying
+    @Query("delete from Message m where m.chat = :chat and m.seq > :afterSeq and m.seq <= :toSeq")
+    int deleteByChatAndSeqRange(@Param("chat") Chat chat, @Param("afterSeq") long afterSeq, @Param("toSeq") long toSeq);
 }
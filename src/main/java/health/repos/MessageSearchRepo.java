@@ -0,0 +1,26 @@
+package health.repos;
+
+import health.models.MessageSearchQuery;
+import health.models.dto.MessageSearchHitDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+public interface MessageSearchRepo {
+
+    /**
+     * Finds messages containing every term of the query, newest first.
+     *
+     * @param scope What {@code scopeId} refers to
+     * @param scopeId Id of the chat, doctor or clinic whose messages are searched
+     * @param query Parsed search terms
+     * @param pageable Page to return
+     * @return Matching messages with highlighted excerpts
+     */
+    Slice<MessageSearchHitDto> search(Scope scope, long scopeId, MessageSearchQuery query, Pageable pageable);
+
+    enum Scope {
+        CHAT,
+        DOCTOR,
+        CLINIC
+    }
+}
@@ -0,0 +1,75 @@
+package health.repos;
+
+import health.models.MessageSearchQuery;
+import health.models.auth.Role;
+import health.models.dto.MessageSearchHitDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message search for {@link MessageSearchRepo}.
+ * <p>
+ * On PostgreSQL, matching uses the GIN-indexed {@code search_vector} column (see V7__Message_search.sql)
+ * with a prefix tsquery. Other databases, i.e. H2 in tests, fall back to one {@code LIKE} per term, which
+ * scans the scope and also matches inside words. Excerpts are highlighted in Java for both, from the text
+ * of the returned page only.
+ */
+@RequiredArgsConstructor
+public class MessageSearchRepoImpl implements MessageSearchRepo {
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean fullText;
+
+    @Override
+    public Slice<MessageSearchHitDto> search(Scope scope, long scopeId, MessageSearchQuery query, Pageable pageable) {
+        List<Object> args = new ArrayList<>();
+        var sql = new StringBuilder("select m.id, m.chats, m.seq, m.role, m.send_time, m.text from messages m");
+        switch (scope) {
+            case CHAT -> sql.append(" where m.chats = ?");
+            case DOCTOR -> sql.append(" join chats c on c.id = m.chats where c.doctors = ?");
+            case CLINIC -> sql.append(" join chats c on c.id = m.chats where c.clinics = ?");
+        }
+        args.add(scopeId);
+        if (isFullText()) {
+            sql.append(" and m.search_vector @@ to_tsquery('simple', ?)");
+            args.add(query.toTsQuery());
+        } else {
+            for (String term : query.terms()) {
+                sql.append(" and lower(m.text) like ?");
+                args.add("%" + term + "%");
+            }
+        }
+        sql.append(" order by m.send_time desc, m.id desc limit ? offset ?");
+        args.add(pageable.getPageSize() + 1);
+        args.add(pageable.getOffset());
+
+        List<MessageSearchHitDto> hits = new ArrayList<>(jdbcTemplate.query(sql.toString(), (rs, rowNum) -> MessageSearchHitDto.builder()
+                .id(rs.getLong("id"))
+                .chatId(rs.getLong("chats"))
+                .seq(rs.getLong("seq"))
+                .role(Role.values()[rs.getInt("role")])
+                .sendTime(rs.getTimestamp("send_time").toInstant())
+                .highlight(query.highlight(rs.getString("text")))
+                .build(), args.toArray()));
+        boolean hasMore = hits.size() > pageable.getPageSize();
+        if (hasMore) {
+            hits.remove(hits.size() - 1);
+        }
+        return new SliceImpl<>(hits, pageable, hasMore);
+    }
+
+    private boolean isFullText() {
+        if (fullText == null) {
+            fullText = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return fullText;
+    }
+}
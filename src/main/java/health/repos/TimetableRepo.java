@@ -5,6 +5,7 @@ import health.models.Timetable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,5 +14,6 @@ public interface TimetableRepo extends JpaRepository<Timetable, Long> {
     List<Timetable> getTimetablesByDoctor(Doctor doctor);
     List<Timetable> getTimetablesByDoctorAndReserved(Doctor doctor, boolean reserved);
     Optional<Timetable> findTimetableByDoctorAndStart(Doctor doctor, Instant start);
+    List<Timetable> getTimetablesByDoctorAndStartIn(Doctor doctor, Collection<Instant> starts);
     void deleteByDoctorAndReserved(Doctor doctor, boolean reserved);
 }
@@ -0,0 +1,109 @@
+package health.services;
+
+import health.repos.AnalysisBackfillRepo;
+import health.repos.AnalysisRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Fills data derived from analyses for rows written before it was maintained: {@code analysis.numeric_value}
+ * (V9__Analysis_numeric_value.sql), the {@code analysis_latest} index (V10__Analysis_latest.sql), then
+ * {@code analysis.canonical_value} (V12__Analysis_canonical_value.sql), which needs the numeric values.
+ * <p>
+ * The table is walked by id in chunks of {@code chunk-size} rows, each chunk in its own short
+ * transaction, so the backfill never holds locks on many rows and can be interrupted at any time.
+ * Every walk keeps its cursor in {@code analysis_backfill_checkpoint} (V14__Analysis_backfill_checkpoint.sql),
+ * advanced in the transaction of the chunk, so a restart resumes where the walk stopped. New rows are
+ * covered on insert, so a walk that reached the end is marked done and never repeated.
+ */
+@Slf4j
+@Service
+public class AnalysisBackfillService {
+
+    static final String NUMERIC_WALK = "numeric_value";
+    static final String LATEST_WALK = "latest";
+    static final String CANONICAL_WALK = "canonical_value";
+
+    private final AnalysisRepo analysisRepo;
+    private final UnitConversionService unitConversionService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int maxChunksPerRun;
+
+    private boolean numericDone;
+    private boolean latestDone;
+    private volatile boolean done;
+
+    public AnalysisBackfillService(
+            AnalysisRepo analysisRepo,
+            UnitConversionService unitConversionService,
+            PlatformTransactionManager transactionManager,
+            @Value("${health.analysis.backfill.enabled:true}") boolean enabled,
+            @Value("${health.analysis.backfill.chunk-size:1000}") int chunkSize,
+            @Value("${health.analysis.backfill.max-chunks-per-run:100}") int maxChunksPerRun) {
+        this.analysisRepo = analysisRepo;
+        this.unitConversionService = unitConversionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    @Scheduled(initialDelayString = "${health.analysis.backfill.initial-delay-ms:30000}",
+            fixedDelayString = "${health.analysis.backfill.interval-ms:10000}")
+    public void backfill() {
+        if (!enabled || done) {
+            return;
+        }
+        backfillChunks();
+    }
+
+    /**
+     * Runs up to {@code max-chunks-per-run} chunks from the stored checkpoints.
+     *
+     * @return true once every row has been examined by all walks
+     */
+    synchronized boolean backfillChunks() {
+        for (int chunk = 0; chunk < maxChunksPerRun && !done; chunk++) {
+            if (!numericDone) {
+                numericDone = walk(NUMERIC_WALK, from -> analysisRepo.backfillNumericValues(from, chunkSize));
+            } else if (!latestDone) {
+                latestDone = walk(LATEST_WALK, from -> analysisRepo.backfillLatest(from, chunkSize));
+            } else {
+                var catalog = unitConversionService.getCatalog();
+                done = walk(CANONICAL_WALK, from -> analysisRepo.backfillCanonicalValues(from, chunkSize, catalog));
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Runs one chunk of a walk from its checkpoint and stores the new checkpoint in the same transaction.
+     *
+     * @param chunk Backfill of the rows after an id, returning the highest id examined
+     * @return true if the walk is done
+     */
+    private boolean walk(String walk, LongUnaryOperator chunk) {
+        var checkpoint = transactionTemplate.execute(status -> {
+            var from = analysisRepo.lockCheckpoint(walk);
+            if (from.done()) {
+                return from;
+            }
+            long last = chunk.applyAsLong(from.lastId());
+            var next = new AnalysisBackfillRepo.Checkpoint(last, last == from.lastId());
+            analysisRepo.saveCheckpoint(walk, next);
+            if (next.done()) {
+                log.info("Analysis backfill walk {} finished", walk);
+            }
+            return next;
+        });
+        return checkpoint == null || checkpoint.done();
+    }
+}
@@ -0,0 +1,429 @@
+package health.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.Analysis;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.dto.AnalysisImportErrorDto;
+import health.models.dto.AnalysisImportReportDto;
+import health.repos.CustomerRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bulk import of lab results from CSV or NDJSON.
+ * <p>
+ * The upload is read line by line and every row is validated on its own, so a bad row is reported
+ * and skipped instead of failing the file. Valid rows are inserted in transactions of
+ * {@code batch-size} rows through {@link AnalysisService#insertAnalyses}, so memory stays bounded by one batch
+ * and one line however large the file is, and a failure only loses the batch it happened in.
+ * <p>
+ * CSV needs a header row naming the {@code name}, {@code value}, {@code unit} and {@code date} columns
+ * (and {@code customerId} for clinic imports), in any order, separated by commas or semicolons.
+ * NDJSON rows are objects with the same fields. Dates are ISO-8601 date-times or plain dates (UTC midnight).
+ */
+@Slf4j
+@Service
+public class AnalysisImportService {
+
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+    static final int MAX_FIELD_LENGTH = 255;
+    private static final int MAX_CACHED_CUSTOMERS = 10_000;
+
+    private final AnalysisService analysisService;
+    private final CustomerRepo customerRepo;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxErrors;
+
+    public AnalysisImportService(
+            AnalysisService analysisService,
+            CustomerRepo customerRepo,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${health.analysis.import.batch-size:1000}") int batchSize,
+            @Value("${health.analysis.import.max-errors:1000}") int maxErrors) {
+        this.analysisService = analysisService;
+        this.customerRepo = customerRepo;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Imports results of the customer. A {@code customerId} column is optional and must name the customer.
+     */
+    public AnalysisImportReportDto importForCustomer(Customer customer, InputStream in, Format format, Charset charset) {
+        return importRows(in, format, charset, row -> {
+            if (row.customerId() != null && !row.customerId().equals(Long.toString(customer.getId()))) {
+                throw new RowException("customerId does not match the importing customer");
+            }
+            return customer;
+        });
+    }
+
+    /**
+     * Imports results a clinic's lab produced for its customers. Every row names its customer,
+     * who must have booked an appointment or opened a chat with the clinic.
+     */
+    public AnalysisImportReportDto importForClinic(Clinic clinic, InputStream in, Format format, Charset charset) {
+        // Customers are loaded once per import for flagging, those outside the clinic are cached as empty
+        Map<Long, Optional<Customer>> customers = new HashMap<>();
+        return importRows(in, format, charset, row -> {
+            if (row.customerId() == null || row.customerId().isBlank()) {
+                throw new RowException("customerId is required");
+            }
+            long customerId;
+            try {
+                customerId = Long.parseLong(row.customerId().strip());
+            } catch (NumberFormatException e) {
+                throw new RowException("customerId is not a number");
+            }
+            if (customers.size() >= MAX_CACHED_CUSTOMERS) {
+                customers.clear();
+            }
+            return customers.computeIfAbsent(customerId, id -> customerRepo.isCustomerOfClinic(clinic.getId(), id)
+                            ? customerRepo.findById(id) : Optional.empty())
+                    .orElseThrow(() -> new RowException("Customer " + customerId + " is not a customer of the clinic"));
+        });
+    }
+
+    /**
+     * Charset of an upload, UTF-8 unless the content type names another.
+     */
+    public static Charset charsetOf(MediaType contentType) {
+        return contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+    }
+
+    private AnalysisImportReportDto importRows(InputStream in, Format format, Charset charset, CustomerResolver customers) {
+        try {
+            return importRows(new LineReader(new InputStreamReader(in, charset), MAX_LINE_LENGTH), format, customers);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private AnalysisImportReportDto importRows(LineReader reader, Format format, CustomerResolver customers) throws IOException {
+        var report = new Report(maxErrors);
+        List<Analysis> batch = new ArrayList<>(batchSize);
+        long[] batchLines = new long[batchSize];
+        CsvHeader header = null;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && header == null) {
+                try {
+                    header = CsvHeader.parse(line);
+                } catch (RowException e) {
+                    report.reject(lineNumber, e.getMessage());
+                    break;
+                }
+                continue;
+            }
+            report.rows++;
+            try {
+                if (reader.isTruncated()) {
+                    throw new RowException("Line is longer than " + MAX_LINE_LENGTH + " characters");
+                }
+                var row = format == Format.CSV ? header.parseRow(line) : parseJsonRow(line);
+                batch.add(toAnalysis(row, customers.resolve(row)));
+                batchLines[batch.size() - 1] = lineNumber;
+            } catch (RowException e) {
+                report.reject(lineNumber, e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                store(batch, batchLines, report);
+            }
+        }
+        store(batch, batchLines, report);
+        return report.toDto();
+    }
+
+    private void store(List<Analysis> batch, long[] batchLines, Report report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> analysisService.insertAnalyses(batch));
+            report.imported += batch.size();
+        } catch (RuntimeException e) {
+            log.warn("Failed to store a batch of {} imported analyses", batch.size(), e);
+            for (int i = 0; i < batch.size(); i++) {
+                report.reject(batchLines[i], "Row could not be stored");
+            }
+        }
+        batch.clear();
+    }
+
+    private Row parseJsonRow(String line) throws RowException {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new RowException("Invalid JSON: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new RowException("Row is not a JSON object");
+        }
+        return new Row(text(node, "customerId"), text(node, "name"), text(node, "value"), text(node, "unit"), text(node, "date"));
+    }
+
+    private static String text(JsonNode node, String field) {
+        var value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Analysis toAnalysis(Row row, Customer customer) throws RowException {
+        return Analysis.builder()
+                .customer(customer)
+                .name(required(row.name(), "name"))
+                .value(required(row.value(), "value"))
+                .unit(required(row.unit(), "unit"))
+                .date(parseDate(required(row.date(), "date")))
+                .build();
+    }
+
+    private static String required(String value, String field) throws RowException {
+        if (value == null || value.isBlank()) {
+            throw new RowException(field + " is required");
+        }
+        var stripped = value.strip();
+        if (stripped.length() > MAX_FIELD_LENGTH) {
+            throw new RowException(field + " is longer than " + MAX_FIELD_LENGTH + " characters");
+        }
+        return stripped;
+    }
+
+    static Instant parseDate(String value) throws RowException {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+            return OffsetDateTime.parse(value).toInstant().truncatedTo(ChronoUnit.MICROS);
+        } catch (DateTimeParseException e) {
+            throw new RowException("date is not an ISO-8601 date or date-time");
+        }
+    }
+
+    public enum Format {
+        CSV(new MediaType("text", "csv")),
+        NDJSON(new MediaType("application", "x-ndjson"));
+
+        public static final String CSV_VALUE = "text/csv";
+        public static final String NDJSON_VALUE = "application/x-ndjson";
+
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public static Optional<Format> of(MediaType mediaType) {
+            for (Format format : values()) {
+                if (format.mediaType.isCompatibleWith(mediaType)) {
+                    return Optional.of(format);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private record Row(String customerId, String name, String value, String unit, String date) {
+    }
+
+    @FunctionalInterface
+    private interface CustomerResolver {
+        Customer resolve(Row row) throws RowException;
+    }
+
+    /**
+     * A row that cannot be imported; the message goes into the report as is.
+     */
+    private static final class RowException extends Exception {
+        RowException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static final class Report {
+
+        private final int maxErrors;
+        private final List<AnalysisImportErrorDto> errors = new ArrayList<>();
+        private long rows;
+        private long imported;
+        private long rejected;
+        private boolean errorsTruncated;
+
+        private Report(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        void reject(long line, String message) {
+            rejected++;
+            if (errors.size() < maxErrors) {
+                errors.add(new AnalysisImportErrorDto(line, message));
+            } else {
+                errorsTruncated = true;
+            }
+        }
+
+        AnalysisImportReportDto toDto() {
+            return new AnalysisImportReportDto(rows, imported, rejected, errors, errorsTruncated);
+        }
+    }
+
+    /**
+     * Column positions taken from the CSV header row.
+     */
+    private record CsvHeader(char delimiter, int customerId, int name, int value, int unit, int date) {
+
+        static CsvHeader parse(String line) throws RowException {
+            char delimiter = line.indexOf(',') < 0 && line.indexOf(';') >= 0 ? ';' : ',';
+            Map<String, Integer> columns = new HashMap<>();
+            var fields = split(line, delimiter);
+            for (int i = 0; i < fields.size(); i++) {
+                columns.putIfAbsent(fields.get(i).strip().replace("_", "").toLowerCase(Locale.ROOT), i);
+            }
+            for (String required : List.of("name", "value", "unit", "date")) {
+                if (!columns.containsKey(required)) {
+                    throw new RowException("Header has no " + required + " column");
+                }
+            }
+            return new CsvHeader(delimiter, columns.getOrDefault("customerid", -1),
+                    columns.get("name"), columns.get("value"), columns.get("unit"), columns.get("date"));
+        }
+
+        Row parseRow(String line) throws RowException {
+            var fields = split(line, delimiter);
+            return new Row(field(fields, customerId), field(fields, name), field(fields, value), field(fields, unit), field(fields, date));
+        }
+
+        private static String field(List<String> fields, int index) {
+            return index >= 0 && index < fields.size() ? fields.get(index) : null;
+        }
+
+        /**
+         * Splits one line, honouring double-quoted fields with {@code ""} escapes. Quoted line breaks are not supported.
+         */
+        private static List<String> split(String line, char delimiter) throws RowException {
+            List<String> fields = new ArrayList<>();
+            var field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                throw new RowException("Unterminated quoted field");
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    /**
+     * Reads lines of at most {@code maxLength} characters; the rest of a longer line is skipped
+     * and the line is flagged, so one huge line cannot exhaust the heap.
+     */
+    static final class LineReader {
+
+        private final Reader reader;
+        private final int maxLength;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean truncated;
+
+        LineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            truncated = false;
+            while (true) {
+                if (position == limit) {
+                    limit = Math.max(0, reader.read(buffer, 0, buffer.length));
+                    position = 0;
+                    if (limit == 0) {
+                        return line.length() > 0 || truncated ? finish() : null;
+                    }
+                }
+                char c = buffer[position++];
+                if (c == '\n') {
+                    return finish();
+                }
+                if (line.length() < maxLength) {
+                    line.append(c);
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        private String finish() {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                length--;
+            }
+            return line.substring(0, length);
+        }
+    }
+}
@@ -1,33 +1,211 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.Analysis;
+import health.models.AnalysisSeriesFilter;
 import health.models.Customer;
+import health.models.EntityType;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AnalysisPointDto;
+import health.models.dto.AnalysisSeriesDto;
+import health.models.dto.AnalysisStatsDto;
 import health.repos.AnalysisRepo;
+import health.utils.DownsamplingUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class AnalysisService {
 
+    public static final int MIN_CHART_POINTS = 3;
+    public static final int MAX_CHART_POINTS = 5000;
+    public static final int MAX_DELETE_IDS = 1000;
+
     private final AnalysisRepo analysisRepo;
+    private final ReferenceRangeService referenceRangeService;
+    private final UnitConversionService unitConversionService;
+    private final InvalidationBus invalidationBus;
 
     public List<Analysis> getAnalysysesByCustomer(Customer customer) {
         return analysisRepo.getAnalysisesByCustomer(customer);
     }
 
+    /**
+     * Hands the analyses of a customer to {@code consumer} as one series per name, ordered by name,
+     * with values ordered by date. Rows come from the database already grouped, so only the series
+     * being built is held in memory. The unit of a series is the unit of its first value, its canonical
+     * unit the first one set.
+     */
+    @Transactional(readOnly = true)
+    public void forEachSeries(Customer customer, AnalysisSeriesFilter filter, Consumer<AnalysisSeriesDto> consumer) {
+        var collector = new SeriesCollector(consumer);
+        analysisRepo.forEachAnalysis(customer.getId(), filter, collector);
+        collector.flush();
+    }
+
+    /**
+     * Returns count, min, max and average of the numeric values of every analysis name, and its latest result.
+     */
+    public List<AnalysisStatsDto> getStats(Customer customer, AnalysisSeriesFilter filter) {
+        return analysisRepo.getStats(customer.getId(), filter);
+    }
+
+    /**
+     * Returns the canonical values of one analysis reduced to at most {@code points} points with LTTB,
+     * or empty when it has no canonical values in the range. Results in units that cannot be converted
+     * are left out, so every point is on the same scale.
+     */
+    @Transactional(readOnly = true)
+    public Optional<AnalysisSeriesDto> getDownsampledSeries(Customer customer, String name, Instant from, Instant to, int points) {
+        List<AnalysisDto> rows = new ArrayList<>();
+        analysisRepo.forEachAnalysis(customer.getId(), new AnalysisSeriesFilter(List.of(name), from, to), analysis -> {
+            if (analysis.canonicalValue() != null) {
+                rows.add(analysis);
+            }
+        });
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        long[] x = new long[rows.size()];
+        double[] y = new double[rows.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = rows.get(i).date().toEpochMilli();
+            y[i] = rows.get(i).canonicalValue();
+        }
+        int threshold = Math.max(MIN_CHART_POINTS, Math.min(points, MAX_CHART_POINTS));
+        var values = Arrays.stream(DownsamplingUtil.lttb(x, y, threshold))
+                .mapToObj(i -> toPoint(rows.get(i)))
+                .toList();
+        return Optional.of(new AnalysisSeriesDto(name, rows.get(0).unit(), rows.get(0).canonicalUnit(), values));
+    }
+
+    /**
+     * Returns the latest result of every analysis name of a customer, ordered by name. Served from the
+     * {@code analysis_latest} index, so the cost does not grow with the history.
+     */
+    public List<AnalysisDto> getLatest(Customer customer) {
+        return analysisRepo.getLatest(customer.getId());
+    }
+
+    /**
+     * Stores new analyses with their canonical value, flagged against the reference ranges for their customer.
+     */
+    @Transactional
     public List<Analysis> addAnalysis(List<Analysis> analysis) {
-        return analysisRepo.saveAll(analysis);
+        analysis.forEach(this::prepare);
+        var saved = analysisRepo.saveAll(analysis);
+        // The index rows reference the new analyses, which have to reach the database first
+        analysisRepo.flush();
+        analysisRepo.updateLatest(saved);
+        publishChanges(saved);
+        return saved;
+    }
+
+    /**
+     * Inserts new analyses without loading them into the persistence context, for bulk imports.
+     * Like {@link #addAnalysis}, they are normalized and flagged for their customer, who has to be loaded.
+     */
+    @Transactional
+    public void insertAnalyses(List<Analysis> analyses) {
+        analyses.forEach(this::prepare);
+        analysisRepo.insertAll(analyses);
+        analysisRepo.updateLatest(analyses);
+        publishChanges(analyses);
     }
 
     public Optional<Analysis> getAnalysisById(Long id) {
         return analysisRepo.findById(id);
     }
 
-    public void deleteAnalysis(Analysis analysis) {
-        analysisRepo.delete(analysis);
+    /**
+     * Deletes analyses of a customer by id with a single delete statement, after moving the latest index
+     * entries of the deleted results to the next newest ones. Ids of other customers' analyses are skipped,
+     * without telling them apart from unknown ids.
+     *
+     * @param ids At most {@link #MAX_DELETE_IDS} ids
+     * @return Number of analyses deleted
+     */
+    @Transactional
+    public int deleteAnalyses(Customer customer, Collection<Long> ids) {
+        if (ids.size() > MAX_DELETE_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_DELETE_IDS + " analyses can be deleted at once, got " + ids.size());
+        }
+        var distinct = new LinkedHashSet<>(ids);
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+        analysisRepo.removeFromLatest(customer.getId(), distinct);
+        int deleted = analysisRepo.deleteOwned(customer.getId(), distinct);
+        if (deleted > 0) {
+            invalidationBus.publish(EntityType.ANALYSIS, customer.getId());
+        }
+        return deleted;
+    }
+
+    // Ranges may exist only for the canonical unit, so the flag needs the canonical value first
+    private void prepare(Analysis analysis) {
+        unitConversionService.normalize(analysis);
+        referenceRangeService.flag(analysis);
+    }
+
+    // Caches over analyses (e.g. clinic statistics) are keyed by customer, so one change per customer is enough
+    private void publishChanges(List<Analysis> analyses) {
+        analyses.stream()
+                .mapToLong(analysis -> analysis.getCustomer().getId())
+                .distinct()
+                .forEach(customerId -> invalidationBus.publish(EntityType.ANALYSIS, customerId));
+    }
+
+    private static AnalysisPointDto toPoint(AnalysisDto analysis) {
+        return new AnalysisPointDto(analysis.id(), analysis.value(), analysis.numericValue(), analysis.canonicalValue(),
+                analysis.date(), analysis.flag());
+    }
+
+    /**
+     * Collects consecutive rows of the same name into a series.
+     */
+    private static final class SeriesCollector implements Consumer<AnalysisDto> {
+
+        private final Consumer<AnalysisSeriesDto> consumer;
+        private String name;
+        private String unit;
+        private String canonicalUnit;
+        private List<AnalysisPointDto> values = new ArrayList<>();
+
+        private SeriesCollector(Consumer<AnalysisSeriesDto> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(AnalysisDto analysis) {
+            if (!analysis.name().equals(name)) {
+                flush();
+                name = analysis.name();
+                unit = analysis.unit();
+                canonicalUnit = null;
+            }
+            if (canonicalUnit == null) {
+                canonicalUnit = analysis.canonicalUnit();
+            }
+            values.add(toPoint(analysis));
+        }
+
+        void flush() {
+            if (!values.isEmpty()) {
+                consumer.accept(new AnalysisSeriesDto(name, unit, canonicalUnit, values));
+                values = new ArrayList<>();
+            }
+        }
     }
 }
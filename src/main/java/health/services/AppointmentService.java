@@ -1,5 +1,6 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.*;
 import health.repos.AppointmentRepo;
 import lombok.RequiredArgsConstructor;
@@ -13,6 +14,7 @@ import java.util.Optional;
 public class AppointmentService {
 
     private final AppointmentRepo appointmentRepository;
+    private final InvalidationBus invalidationBus;
 
     public List<Appointment> getAppointmentsByDoctor(Doctor doctor) {
         return appointmentRepository.getAppointmentsByDoctor(doctor);
@@ -26,6 +28,13 @@ public class AppointmentService {
         return appointmentRepository.getAppointmentsByDoctorAndCustomer(doctor, customer);
     }
 
+    /**
+     * Checks whether the doctor and customer share at least one appointment, without loading them.
+     */
+    public boolean hasAppointment(Doctor doctor, Customer customer) {
+        return appointmentRepository.existsByDoctorAndCustomer(doctor, customer);
+    }
+
     public List<Appointment> getAppointmentsByClinic(Clinic clinic) {
         return appointmentRepository.getAppointmentsByClinic(clinic);
     }
@@ -44,5 +53,6 @@ public class AppointmentService {
 
     public void deleteAppointment(Appointment appointment) {
         appointmentRepository.delete(appointment);
+        invalidationBus.publish(EntityType.APPOINTMENT, appointment.getId());
     }
 }
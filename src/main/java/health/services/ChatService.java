@@ -1,10 +1,22 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.*;
+import health.models.auth.Role;
+import health.models.dto.InboxEntryDto;
+import health.models.dto.ReadReceiptDto;
+import health.realtime.ChatCreatedEvent;
+import health.realtime.ChatReadEvent;
 import health.repos.ChatRepo;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,7 +24,11 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class ChatService {
 
+    public static final int MAX_INBOX_PAGE_SIZE = 100;
+
     private final ChatRepo chatRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InvalidationBus invalidationBus;
 
     public Optional<Chat> getChatByDoctorAndCustomer(Doctor doctor, Customer customer) {
         return chatRepository.findChatByDoctorAndCustomer(doctor, customer);
@@ -30,15 +46,97 @@ public class ChatService {
         return chatRepository.getChatByClinic(clinic);
     }
 
+    public List<Long> getChatIdsByDoctor(Doctor doctor) {
+        return chatRepository.getChatIdsByDoctor(doctor);
+    }
+
+    public List<Long> getChatIdsByCustomer(Customer customer) {
+        return chatRepository.getChatIdsByCustomer(customer);
+    }
+
+    public List<Long> getChatIdsByClinic(Clinic clinic) {
+        return chatRepository.getChatIdsByClinic(clinic);
+    }
+
+    /**
+     * Returns the customer's chats, most recently active first, with last message and unread count.
+     */
+    public Slice<InboxEntryDto> getInboxByCustomer(Customer customer, int page, int size) {
+        return chatRepository.getInboxByCustomer(customer, inboxPage(page, size));
+    }
+
+    public Slice<InboxEntryDto> getInboxByDoctor(Doctor doctor, int page, int size) {
+        return chatRepository.getInboxByDoctor(doctor, inboxPage(page, size));
+    }
+
+    public Slice<InboxEntryDto> getInboxByClinic(Clinic clinic, int page, int size) {
+        return chatRepository.getInboxByClinic(clinic, inboxPage(page, size));
+    }
+
+    /**
+     * Moves the participant's read position forward to {@code seq}, capped at the last message.
+     * The position never moves backwards, so late or repeated receipts are harmless.
+     *
+     * @return Receipt with the read position after the update
+     */
+    @Transactional
+    public ReadReceiptDto markRead(Chat chat, Role role, long seq) {
+        long readSeq = switch (role) {
+            case CUSTOMER -> chatRepository.markReadByCustomer(chat.getId(), seq);
+            case DOCTOR -> chatRepository.markReadByDoctor(chat.getId(), seq);
+            default -> throw new IllegalArgumentException("Role " + role + " has no read position");
+        };
+        var receipt = ReadReceiptDto.builder()
+                .chatId(chat.getId())
+                .role(role)
+                .seq(readSeq)
+                .build();
+        eventPublisher.publishEvent(new ChatReadEvent(receipt));
+        return receipt;
+    }
+
     public Optional<Chat> getChatById(Long id) {
         return chatRepository.findById(id);
     }
 
+    /**
+     * Returns a reference to the chat for updates by id, without loading it.
+     * The caller has to know that the chat exists.
+     */
+    public Chat getChatReference(Long id) {
+        return chatRepository.getReferenceById(id);
+    }
+
     public Chat saveOrUpdateChat(Chat chat) {
-        return chatRepository.save(chat);
+        if (chat.getId() != 0) {
+            return chatRepository.save(chat);
+        }
+        if (chat.getLastActivity() == null) {
+            chat.setLastActivity(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        }
+        var saved = chatRepository.save(chat);
+        eventPublisher.publishEvent(new ChatCreatedEvent(saved));
+        return saved;
+    }
+
+    /**
+     * Returns the chat of a doctor and customer, creating it if needed. Safe under concurrent calls:
+     * exactly one caller creates the chat and publishes {@link ChatCreatedEvent}.
+     */
+    public Chat getOrCreateChat(Doctor doctor, Customer customer) {
+        var upsert = chatRepository.getOrCreate(doctor, customer);
+        if (upsert.created()) {
+            eventPublisher.publishEvent(new ChatCreatedEvent(upsert.chat()));
+        }
+        return upsert.chat();
     }
 
     public void deleteChat(Chat chat) {
         chatRepository.delete(chat);
+        invalidationBus.publish(EntityType.CHAT, chat.getId());
+    }
+
+    private static PageRequest inboxPage(int page, int size) {
+        return PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_INBOX_PAGE_SIZE)));
     }
 }
@@ -0,0 +1,341 @@
+package health.services;
+
+import health.cache.InvalidationBus;
+import health.models.AnalysisFlag;
+import health.models.Clinic;
+import health.models.EntityType;
+import health.models.dto.AnalysisHistogramBinDto;
+import health.models.dto.AnalysisMonthStatsDto;
+import health.models.dto.AnalysisPercentilesDto;
+import health.models.dto.ClinicAnalysisStatsDto;
+import health.repos.AnalysisRepo;
+import health.repos.AnalysisSeriesRepo;
+import health.repos.CustomerRepo;
+import health.utils.TDigest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Population statistics of one analysis over the customers of a clinic (those with an appointment or a chat
+ * there), in one canonical unit and an optional date window.
+ * <p>
+ * The customers are split into chunks of {@code chunk-size} that are read and summarized in parallel on a
+ * fork/join pool of {@code parallelism} threads, each thread using its own connection. Every chunk builds
+ * exact counts and sums and a {@link TDigest} for the percentiles, overall and per month; the summaries
+ * are merged pairwise as the tasks join.
+ * <p>
+ * Results are cached per clinic, name, unit, window and histogram size. An entry is evicted when analyses
+ * of one of its customers change (published on the {@link InvalidationBus}), and expires after
+ * {@code ttl-ms}, which bounds how long new customers of the clinic are missing.
+ */
+@Service
+public class ClinicAnalysisStatsService {
+
+    public static final int MAX_BINS = 100;
+
+    private final CustomerRepo customerRepo;
+    private final AnalysisRepo analysisRepo;
+    private final UnitConversionService unitConversionService;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final double compression;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Map<Key, Entry> cache = new ConcurrentHashMap<>();
+
+    public ClinicAnalysisStatsService(
+            CustomerRepo customerRepo,
+            AnalysisRepo analysisRepo,
+            UnitConversionService unitConversionService,
+            InvalidationBus invalidationBus,
+            @Value("${health.clinic.stats.parallelism:4}") int parallelism,
+            @Value("${health.clinic.stats.chunk-size:1000}") int chunkSize,
+            @Value("${health.clinic.stats.compression:100}") double compression,
+            @Value("${health.clinic.stats.ttl-ms:600000}") long ttlMs,
+            @Value("${health.clinic.stats.max-entries:1000}") int maxEntries) {
+        this.customerRepo = customerRepo;
+        this.analysisRepo = analysisRepo;
+        this.unitConversionService = unitConversionService;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            var worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("clinic-stats-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+        this.chunkSize = chunkSize;
+        this.compression = compression;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        // Analysis changes carry the id of the customer the analyses belong to
+        invalidationBus.subscribe(EntityType.ANALYSIS, change -> evictCustomer(change.id()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Returns the statistics of one analysis over the customers of a clinic, from the cache when possible.
+     * Concurrent requests for the same statistics share one computation.
+     *
+     * @param unit Canonical unit of the values, null for the one of the unit conversion catalog
+     * @param from Earliest date, inclusive, or null
+     * @param to Latest date, exclusive, or null
+     * @param bins Histogram bins, limited to {@link #MAX_BINS}
+     * @return The statistics, empty if no unit is given and the name has no canonical unit
+     */
+    public Optional<ClinicAnalysisStatsDto> getStats(Clinic clinic, String name, String unit, Instant from, Instant to, int bins) {
+        var canonicalUnit = Optional.ofNullable(unit).or(() -> unitConversionService.getCatalog().canonicalUnit(name));
+        if (canonicalUnit.isEmpty()) {
+            return Optional.empty();
+        }
+        var key = new Key(clinic.getId(), name, canonicalUnit.get(), from, to, Math.max(1, Math.min(bins, MAX_BINS)));
+        long now = System.currentTimeMillis();
+        var entry = cache.get(key);
+        if (entry == null || entry.expiresAt < now) {
+            // Registered before any value is read, so changes committed from now on evict it
+            var created = new Entry(customerRepo.getCustomerIdsOfClinic(clinic.getId()), now + ttlMs);
+            entry = cache.compute(key, (k, current) -> current == null || current.expiresAt < now ? created : current);
+            if (entry == created) {
+                trim();
+                compute(key, created);
+            }
+        }
+        try {
+            return Optional.of(entry.result.join());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * @return Number of cached statistics
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private void compute(Key key, Entry entry) {
+        try {
+            var summary = pool.invoke(new ChunkTask(key, entry.customerIds, 0, entry.customerIds.length));
+            entry.result.complete(summary.toDto(key));
+        } catch (RuntimeException e) {
+            cache.remove(key, entry);
+            entry.result.completeExceptionally(e);
+        }
+    }
+
+    private void evictCustomer(long customerId) {
+        cache.values().removeIf(entry -> Arrays.binarySearch(entry.customerIds, customerId) >= 0);
+    }
+
+    // Drops the entries closest to expiry once the cache is full
+    private void trim() {
+        int excess = cache.size() - maxEntries;
+        if (excess > 0) {
+            cache.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt))
+                    .limit(excess)
+                    .toList()
+                    .forEach(e -> cache.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    private record Key(long clinicId, String name, String unit, Instant from, Instant to, int bins) {
+    }
+
+    private static final class Entry {
+
+        private final long[] customerIds;
+        private final long expiresAt;
+        private final CompletableFuture<ClinicAnalysisStatsDto> result = new CompletableFuture<>();
+
+        private Entry(long[] customerIds, long expiresAt) {
+            this.customerIds = customerIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Summarizes the customers in {@code [from, to)} of the id list, splitting it in halves down to one chunk.
+     */
+    private final class ChunkTask extends RecursiveTask<Summary> {
+
+        private final Key key;
+        private final long[] customerIds;
+        private final int from;
+        private final int to;
+
+        private ChunkTask(Key key, long[] customerIds, int from, int to) {
+            this.key = key;
+            this.customerIds = customerIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= chunkSize) {
+                var summary = new Summary(compression);
+                analysisRepo.forEachCanonicalValue(Arrays.copyOfRange(customerIds, from, to), key.name(), key.unit(),
+                        key.from(), key.to(), summary);
+                return summary;
+            }
+            int middle = (from + to) >>> 1;
+            var left = new ChunkTask(key, customerIds, from, middle);
+            left.fork();
+            var summary = new ChunkTask(key, customerIds, middle, to).compute();
+            summary.merge(left.join());
+            return summary;
+        }
+    }
+
+    /**
+     * Mergeable summary of the values of a disjoint set of customers; rows arrive ordered by customer.
+     */
+    static final class Summary implements AnalysisSeriesRepo.CanonicalValueConsumer {
+
+        private final double compression;
+        private final TDigest digest;
+        private final long[] flags = new long[AnalysisFlag.values().length];
+        private final TreeMap<YearMonth, Month> months = new TreeMap<>();
+        private long customers;
+        private long lastCustomerId = -1;
+        private double sum;
+
+        Summary(double compression) {
+            this.compression = compression;
+            this.digest = new TDigest(compression);
+        }
+
+        @Override
+        public void accept(long customerId, long epochMilli, double value, AnalysisFlag flag) {
+            if (customerId != lastCustomerId) {
+                customers++;
+                lastCustomerId = customerId;
+            }
+            digest.add(value);
+            sum += value;
+            if (flag != null) {
+                flags[flag.ordinal()]++;
+            }
+            var month = YearMonth.from(Instant.ofEpochMilli(epochMilli).atOffset(ZoneOffset.UTC));
+            months.computeIfAbsent(month, m -> new Month(compression)).add(value);
+        }
+
+        void merge(Summary other) {
+            customers += other.customers;
+            digest.merge(other.digest);
+            sum += other.sum;
+            for (int i = 0; i < flags.length; i++) {
+                flags[i] += other.flags[i];
+            }
+            other.months.forEach((month, stats) -> months.merge(month, stats, Month::merge));
+        }
+
+        ClinicAnalysisStatsDto toDto(Key key) {
+            long count = digest.size();
+            Map<AnalysisFlag, Long> flagCounts = new EnumMap<>(AnalysisFlag.class);
+            for (AnalysisFlag flag : AnalysisFlag.values()) {
+                flagCounts.put(flag, flags[flag.ordinal()]);
+            }
+            var stats = ClinicAnalysisStatsDto.builder()
+                    .name(key.name())
+                    .unit(key.unit())
+                    .from(key.from())
+                    .to(key.to())
+                    .customers(customers)
+                    .count(count)
+                    .flags(flagCounts)
+                    .histogram(List.of())
+                    .months(months.entrySet().stream()
+                            .map(e -> AnalysisMonthStatsDto.builder()
+                                    .month(e.getKey())
+                                    .count(e.getValue().digest.size())
+                                    .mean(e.getValue().sum / e.getValue().digest.size())
+                                    .percentiles(percentiles(e.getValue().digest))
+                                    .build())
+                            .toList());
+            if (count == 0) {
+                return stats.build();
+            }
+            return stats
+                    .min(digest.getMin())
+                    .max(digest.getMax())
+                    .mean(sum / count)
+                    .percentiles(percentiles(digest))
+                    .histogram(histogram(digest, key.bins()))
+                    .build();
+        }
+
+        private static AnalysisPercentilesDto percentiles(TDigest digest) {
+            return AnalysisPercentilesDto.builder()
+                    .p5(digest.quantile(0.05))
+                    .p25(digest.quantile(0.25))
+                    .p50(digest.quantile(0.5))
+                    .p75(digest.quantile(0.75))
+                    .p95(digest.quantile(0.95))
+                    .build();
+        }
+
+        // Equal-width bins between min and max, counted from the estimated distribution function
+        private static List<AnalysisHistogramBinDto> histogram(TDigest digest, int bins) {
+            double min = digest.getMin();
+            double max = digest.getMax();
+            long count = digest.size();
+            if (min == max) {
+                return List.of(new AnalysisHistogramBinDto(min, max, count));
+            }
+            List<AnalysisHistogramBinDto> histogram = new ArrayList<>(bins);
+            double width = (max - min) / bins;
+            long counted = 0;
+            for (int i = 0; i < bins; i++) {
+                double lower = min + i * width;
+                double upper = i == bins - 1 ? max : lower + width;
+                long below = i == bins - 1 ? count : Math.round(digest.cdf(upper) * count);
+                histogram.add(new AnalysisHistogramBinDto(lower, upper, below - counted));
+                counted = below;
+            }
+            return histogram;
+        }
+    }
+
+    private static final class Month {
+
+        private final TDigest digest;
+        private double sum;
+
+        private Month(double compression) {
+            this.digest = new TDigest(compression);
+        }
+
+        private void add(double value) {
+            digest.add(value);
+            sum += value;
+        }
+
+        private Month merge(Month other) {
+            digest.merge(other.digest);
+            sum += other.sum;
+            return this;
+        }
+    }
+}
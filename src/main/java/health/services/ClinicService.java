@@ -1,19 +1,30 @@
 package health.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import health.models.Clinic;
 import health.models.auth.User;
+import health.models.dto.ClinicDto;
+import health.models.mapper.ClinicMapper;
+import health.models.mapper.MergePatchMapper;
 import health.repos.ClinicRepo;
+import health.utils.EntityMergeUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class ClinicService {
 
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("name", "description");
+    private static final Set<String> REQUIRED_FIELDS = Set.of("name");
+
     private final ClinicRepo clinicRepository;
+    private final ClinicMapper clinicMapper;
+    private final MergePatchMapper mergePatchMapper;
 
     public Optional<Clinic> getClinicById(Long id) {
         return clinicRepository.findById(id);
@@ -27,6 +38,20 @@ public class ClinicService {
         return clinicRepository.save(clinic);
     }
 
+    /**
+     * Applies a JSON merge patch to the clinic's profile. A patch that changes nothing is not written,
+     * otherwise only the changed columns are.
+     *
+     * @return The clinic after the patch, empty if the patch is not valid
+     */
+    public Optional<Clinic> patchClinic(Clinic clinic, JsonNode patch) {
+        var current = clinicMapper.mapToDto(clinic);
+        return mergePatchMapper.apply(current, patch, ClinicDto.class, PATCHABLE_FIELDS, REQUIRED_FIELDS)
+                .map(patched -> patched.equals(current)
+                        ? clinic
+                        : updateClinic(EntityMergeUtil.replaceClinic(clinic, patched)));
+    }
+
     public List<Clinic> getAllClinics() {
         return clinicRepository.findAll();
     }
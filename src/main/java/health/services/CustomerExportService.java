@@ -0,0 +1,212 @@
+package health.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import health.models.AnalysisSeriesFilter;
+import health.models.Chat;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AppointmentDto;
+import health.models.dto.ChatDto;
+import health.models.dto.MessageDto;
+import health.models.mapper.ChatMapper;
+import health.models.mapper.CustomerMapper;
+import health.models.mapper.MessageMapper;
+import health.repos.AnalysisRepo;
+import health.repos.AppointmentRepo;
+import health.repos.ChatRepo;
+import health.repos.MessageArchiveRepo;
+import health.repos.MessageRepo;
+import health.utils.MessageBlockCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes everything stored about a customer as a ZIP archive straight to a stream:
+ * <ul>
+ *     <li>{@code customer.json} - the profile</li>
+ *     <li>{@code analyses.csv} - every analysis, in the format the analysis import reads</li>
+ *     <li>{@code appointments.ndjson}, {@code chats.ndjson} - one object per line</li>
+ *     <li>{@code messages.ndjson} - every message of those chats in seq order, archived ones included</li>
+ * </ul>
+ * Rows are read through cursors and written as they arrive, so memory use does not depend on the size
+ * of the history. Everything is read in one read-only repeatable-read transaction, so the files agree
+ * with each other even while the customer keeps writing; it holds a connection for the whole download.
+ */
+@Service
+public class CustomerExportService {
+
+    public static final String MEDIA_TYPE = "application/zip";
+
+    static final String ANALYSIS_HEADER = "id,name,value,unit,date,numeric_value,canonical_value,canonical_unit,flag";
+
+    private final AnalysisRepo analysisRepo;
+    private final AppointmentRepo appointmentRepo;
+    private final ChatRepo chatRepo;
+    private final MessageRepo messageRepo;
+    private final MessageArchiveRepo messageArchiveRepo;
+    private final CustomerMapper customerMapper;
+    private final ChatMapper chatMapper;
+    private final MessageMapper messageMapper;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter elementWriter;
+
+    public CustomerExportService(
+            AnalysisRepo analysisRepo,
+            AppointmentRepo appointmentRepo,
+            ChatRepo chatRepo,
+            MessageRepo messageRepo,
+            MessageArchiveRepo messageArchiveRepo,
+            CustomerMapper customerMapper,
+            ChatMapper chatMapper,
+            MessageMapper messageMapper,
+            ObjectMapper objectMapper) {
+        this.analysisRepo = analysisRepo;
+        this.appointmentRepo = appointmentRepo;
+        this.chatRepo = chatRepo;
+        this.messageRepo = messageRepo;
+        this.messageArchiveRepo = messageArchiveRepo;
+        this.customerMapper = customerMapper;
+        this.chatMapper = chatMapper;
+        this.messageMapper = messageMapper;
+        this.objectMapper = objectMapper;
+        // Entries are flushed once when they are complete, not after every line
+        this.elementWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Exports all data of a customer.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void exportForCustomer(Customer customer, OutputStream out) throws IOException {
+        var zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        writeJson(zip, "customer.json", customerMapper.mapToDto(customer));
+        writeAnalyses(zip, customer);
+        writeConversation(zip, customer, null);
+        zip.finish();
+    }
+
+    /**
+     * Exports what a clinic already has access to: the appointments and chats of the customer with
+     * the clinic and the messages of those chats. Profile and analyses stay with the customer.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void exportForClinic(Clinic clinic, Customer customer, OutputStream out) throws IOException {
+        var zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        writeConversation(zip, customer, clinic);
+        zip.finish();
+    }
+
+    private void writeConversation(ZipOutputStream zip, Customer customer, Clinic clinic) throws IOException {
+        Long clinicId = clinic == null ? null : clinic.getId();
+        List<Chat> chats = chatRepo.getChatsByCustomer(customer).stream()
+                .filter(chat -> clinicId == null || chat.getClinic().getId() == clinicId)
+                .sorted(Comparator.comparingLong(Chat::getId))
+                .toList();
+        this.<AppointmentDto>writeNdjson(zip, "appointments.ndjson", consumer -> appointmentRepo.forEachAppointment(customer.getId(), clinicId, consumer));
+        this.<ChatDto>writeNdjson(zip, "chats.ndjson", consumer -> chats.forEach(chat -> consumer.accept(chatMapper.mapToDto(chat))));
+        this.<MessageDto>writeNdjson(zip, "messages.ndjson", consumer -> chats.forEach(chat -> {
+            // Archived blocks hold everything up to the checkpoint, the table everything after it
+            messageArchiveRepo.forEachBlockPayload(chat.getId(), payload -> MessageBlockCodec.decode(chat, payload)
+                    .forEach(message -> consumer.accept(messageMapper.mapToDto(message))));
+            messageRepo.forEachMessage(chat.getId(), chat.getArchivedSeq(), consumer);
+        }));
+    }
+
+    private void writeJson(ZipOutputStream zip, String entry, Object value) throws IOException {
+        zip.putNextEntry(new ZipEntry(entry));
+        var generator = createGenerator(zip);
+        elementWriter.writeValue(generator, value);
+        generator.flush();
+        zip.closeEntry();
+    }
+
+    private <T> void writeNdjson(ZipOutputStream zip, String entry, Consumer<Consumer<T>> source) throws IOException {
+        zip.putNextEntry(new ZipEntry(entry));
+        var generator = createGenerator(zip);
+        source.accept(element -> {
+            try {
+                elementWriter.writeValue(generator, element);
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.flush();
+        zip.closeEntry();
+    }
+
+    private void writeAnalyses(ZipOutputStream zip, Customer customer) throws IOException {
+        zip.putNextEntry(new ZipEntry("analyses.csv"));
+        var writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+        writer.write(ANALYSIS_HEADER);
+        writer.write('\n');
+        analysisRepo.forEachAnalysis(customer.getId(), AnalysisSeriesFilter.ALL, analysis -> {
+            try {
+                writeAnalysis(writer, analysis);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    private static void writeAnalysis(Writer writer, AnalysisDto analysis) throws IOException {
+        writer.write(Long.toString(analysis.id()));
+        writer.write(',');
+        writer.write(csvField(analysis.name()));
+        writer.write(',');
+        writer.write(csvField(analysis.value()));
+        writer.write(',');
+        writer.write(csvField(analysis.unit()));
+        writer.write(',');
+        writer.write(analysis.date().toString());
+        writer.write(',');
+        writer.write(analysis.numericValue() == null ? "" : analysis.numericValue().toString());
+        writer.write(',');
+        writer.write(analysis.canonicalValue() == null ? "" : analysis.canonicalValue().toString());
+        writer.write(',');
+        writer.write(csvField(analysis.canonicalUnit()));
+        writer.write(',');
+        writer.write(analysis.flag() == null ? "" : analysis.flag().name());
+        writer.write('\n');
+    }
+
+    // Quoted only when needed, with quotes doubled, as the import reads it back
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // The generator must not close the archive, which stays open for the next entry
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        var generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Lines end with a newline instead of being separated by the default space
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+}
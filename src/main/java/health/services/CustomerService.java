@@ -1,17 +1,30 @@
 package health.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import health.models.Clinic;
 import health.models.Customer;
 import health.models.auth.User;
+import health.models.dto.CustomerDto;
+import health.models.mapper.CustomerMapper;
+import health.models.mapper.MergePatchMapper;
 import health.repos.CustomerRepo;
+import health.utils.EntityMergeUtil;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @AllArgsConstructor
 public class CustomerService {
+
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("firstName", "lastName", "age", "weight", "height", "gender");
+    private static final Set<String> REQUIRED_FIELDS = Set.of("firstName", "lastName");
+
     private final CustomerRepo customerRepo;
+    private final CustomerMapper customerMapper;
+    private final MergePatchMapper mergePatchMapper;
 
     public Optional<Customer> getCustomerById(Long id) {
         return customerRepo.findById(id);
@@ -21,7 +34,28 @@ public class CustomerService {
         return customerRepo.findCustomerByUser(currentUser);
     }
 
+    /**
+     * Checks whether the customer has an appointment or a chat with the clinic.
+     */
+    public boolean isCustomerOfClinic(Clinic clinic, Customer customer) {
+        return customerRepo.isCustomerOfClinic(clinic.getId(), customer.getId());
+    }
+
     public Customer updateCustomer(Customer updatedCustomer) {
         return customerRepo.save(updatedCustomer);
     }
+
+    /**
+     * Applies a JSON merge patch to the customer's profile. A patch that changes nothing is not written,
+     * otherwise only the changed columns are.
+     *
+     * @return The customer after the patch, empty if the patch is not valid
+     */
+    public Optional<Customer> patchCustomer(Customer customer, JsonNode patch) {
+        var current = customerMapper.mapToDto(customer);
+        return mergePatchMapper.apply(current, patch, CustomerDto.class, PATCHABLE_FIELDS, REQUIRED_FIELDS)
+                .map(patched -> patched.equals(current)
+                        ? customer
+                        : updateCustomer(EntityMergeUtil.replaceCustomer(customer, patched)));
+    }
 }
@@ -1,33 +1,70 @@
 package health.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import health.cache.InvalidationBus;
 import health.models.Clinic;
 import health.models.Doctor;
+import health.models.EntityType;
 import health.models.auth.User;
+import health.models.dto.DoctorDto;
+import health.models.mapper.DoctorMapper;
+import health.models.mapper.MergePatchMapper;
 import health.repos.DoctorRepo;
+import health.utils.EntityMergeUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class DoctorService {
 
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("firstName", "lastName", "speciality");
+
     private final DoctorRepo doctorRepository;
+    private final InvalidationBus invalidationBus;
+    private final DoctorMapper doctorMapper;
+    private final MergePatchMapper mergePatchMapper;
 
     public Optional<Doctor> getDoctorByUser(User user) {
         return doctorRepository.findDoctorByUser(user);
     }
 
     public Doctor updateDoctor(Doctor doctor) {
-        return doctorRepository.save(doctor);
+        var saved = doctorRepository.save(doctor);
+        invalidationBus.publish(EntityType.DOCTOR, saved.getId());
+        return saved;
+    }
+
+    /**
+     * Applies a JSON merge patch to the doctor's profile. A patch that changes nothing is not written,
+     * otherwise only the changed columns are.
+     *
+     * @return The doctor after the patch, empty if the patch is not valid
+     */
+    public Optional<Doctor> patchDoctor(Doctor doctor, JsonNode patch) {
+        var current = doctorMapper.mapToDto(doctor);
+        return mergePatchMapper.apply(current, patch, DoctorDto.class, PATCHABLE_FIELDS, PATCHABLE_FIELDS)
+                .map(patched -> patched.equals(current)
+                        ? doctor
+                        : updateDoctor(EntityMergeUtil.replaceDoctor(doctor, patched)));
     }
 
     public Optional<Doctor> getDoctorById(Long id) {
         return doctorRepository.findById(id);
     }
 
+    /**
+     * Returns a reference to the doctor for queries and associations, without loading it.
+     * The caller has to know that the doctor exists.
+     */
+    public Doctor getDoctorReference(Long id) {
+        return doctorRepository.getReferenceById(id);
+    }
+
     public List<Doctor> getDoctorsByClinic(Clinic clinic) {
         return doctorRepository.getDoctorsByClinic(clinic);
     }
@@ -0,0 +1,379 @@
+package health.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.Clinic;
+import health.models.dto.CustomerDto;
+import health.models.mapper.FhirMapper;
+import health.repos.AnalysisRepo;
+import health.repos.CustomerRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous FHIR bulk exports ({@code $export}) of the customers of a clinic and their analyses,
+ * as Patient and Observation NDJSON files.
+ * <p>
+ * Jobs run on a pool of {@code threads} threads and walk the customers of the clinic by id in chunks of
+ * {@code chunk-size}; every chunk is read in its own short read-only transaction and appended to the files,
+ * so neither the dataset nor a long transaction is held. Progress is the share of customers written.
+ * The export is not a snapshot: its transaction time is the start of the job, results stored while it
+ * runs may or may not be included.
+ * <p>
+ * Files are kept in {@code directory} on the local disk and the job registry lives in memory, so status
+ * and files are served by the node that ran the job. Finished jobs are removed with their files after
+ * {@code retention-ms}; a clinic has at most one job queued or running.
+ */
+@Slf4j
+@Service
+public class FhirExportService {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/fhir+ndjson";
+
+    /**
+     * Resource types of an export, each written to its own file.
+     */
+    public enum ResourceType {
+        PATIENT("Patient"),
+        OBSERVATION("Observation");
+
+        private final String fhirName;
+
+        ResourceType(String fhirName) {
+            this.fhirName = fhirName;
+        }
+
+        public String getFhirName() {
+            return fhirName;
+        }
+
+        public String getFileName() {
+            return fhirName + ".ndjson";
+        }
+
+        public static Optional<ResourceType> ofFhirName(String name) {
+            return Stream.of(values()).filter(type -> type.fhirName.equals(name)).findFirst();
+        }
+    }
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final CustomerRepo customerRepo;
+    private final AnalysisRepo analysisRepo;
+    private final FhirMapper fhirMapper;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int chunkSize;
+    private final Duration retention;
+    private final ExecutorService executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public FhirExportService(
+            CustomerRepo customerRepo,
+            AnalysisRepo analysisRepo,
+            FhirMapper fhirMapper,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${health.fhir.export.directory:${java.io.tmpdir}/health-fhir-export}") Path directory,
+            @Value("${health.fhir.export.threads:2}") int threads,
+            @Value("${health.fhir.export.chunk-size:500}") int chunkSize,
+            @Value("${health.fhir.export.retention-ms:3600000}") long retentionMs) {
+        this.customerRepo = customerRepo;
+        this.analysisRepo = analysisRepo;
+        this.fhirMapper = fhirMapper;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.retention = Duration.ofMillis(retentionMs);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "fhir-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Removes files of jobs from before a restart, the registry that knew them is gone. Only directories
+     * named like job ids are touched, in case the directory is shared.
+     */
+    @PostConstruct
+    void init() {
+        try {
+            Files.createDirectories(directory);
+            try (var leftovers = Files.list(directory)) {
+                leftovers.filter(path -> Files.isDirectory(path) && isJobId(path.getFileName().toString()))
+                        .forEach(FhirExportService::deleteRecursively);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot use FHIR export directory " + directory, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues an export of the clinic.
+     *
+     * @param request Kick-off request URL, echoed in the manifest
+     * @return The new job, empty if the clinic already has a job queued or running
+     */
+    public synchronized Optional<Job> start(Clinic clinic, String request) {
+        if (jobs.values().stream().anyMatch(job -> job.clinicId == clinic.getId() && job.status == Status.RUNNING)) {
+            return Optional.empty();
+        }
+        var job = new Job(UUID.randomUUID().toString(), clinic.getId(), request, Instant.now());
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job));
+        return Optional.of(job);
+    }
+
+    /**
+     * Returns a job of the clinic; jobs of other clinics are not found.
+     */
+    public Optional<Job> getJob(Clinic clinic, String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).filter(job -> job.clinicId == clinic.getId());
+    }
+
+    /**
+     * Returns the file of one resource type of a completed job.
+     */
+    public Optional<Path> getFile(Clinic clinic, String jobId, ResourceType type) {
+        return getJob(clinic, jobId)
+                .filter(job -> job.status == Status.COMPLETED)
+                .map(job -> job.directory(directory).resolve(type.getFileName()));
+    }
+
+    /**
+     * Cancels a job of the clinic, or deletes it with its files when it has finished.
+     *
+     * @return false if the clinic has no such job
+     */
+    public boolean delete(Clinic clinic, String jobId) {
+        var job = getJob(clinic, jobId);
+        if (job.isEmpty()) {
+            return false;
+        }
+        synchronized (job.get()) {
+            if (job.get().status == Status.RUNNING) {
+                // The worker stops before its next chunk and removes the files itself
+                job.get().status = Status.CANCELLED;
+                return true;
+            }
+        }
+        remove(job.get());
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${health.fhir.export.cleanup-interval-ms:60000}")
+    public void removeExpired() {
+        var cutoff = Instant.now().minus(retention);
+        jobs.values().stream()
+                .filter(job -> job.status != Status.RUNNING && job.finishedAt != null && job.finishedAt.isBefore(cutoff))
+                .forEach(this::remove);
+    }
+
+    void run(Job job) {
+        var jobDirectory = job.directory(directory);
+        try {
+            Files.createDirectories(jobDirectory);
+            job.customersTotal = customerRepo.countCustomersOfClinic(job.clinicId);
+            try (var patients = createGenerator(jobDirectory.resolve(ResourceType.PATIENT.getFileName()));
+                 var observations = createGenerator(jobDirectory.resolve(ResourceType.OBSERVATION.getFileName()))) {
+                long cursor = 0;
+                while (job.status == Status.RUNNING) {
+                    long from = cursor;
+                    var customers = transactionTemplate.execute(status -> writeChunk(job, from, patients, observations));
+                    if (customers == null || customers.isEmpty()) {
+                        break;
+                    }
+                    cursor = customers.get(customers.size() - 1).id();
+                    job.customersDone.addAndGet(customers.size());
+                }
+            }
+            finish(job, Status.COMPLETED, null);
+        } catch (RuntimeException | IOException e) {
+            log.error("FHIR export {} of clinic {} failed", job.id, job.clinicId, e);
+            finish(job, Status.FAILED, "Export failed");
+        }
+        if (job.status != Status.COMPLETED) {
+            deleteRecursively(jobDirectory);
+        }
+        job.completion.complete(null);
+    }
+
+    private List<CustomerDto> writeChunk(Job job, long afterId, JsonGenerator patients, JsonGenerator observations) {
+        var customers = customerRepo.getCustomersOfClinic(job.clinicId, afterId, chunkSize);
+        try {
+            for (CustomerDto customer : customers) {
+                fhirMapper.writePatient(patients, customer);
+                patients.writeRaw('\n');
+            }
+            job.counts.get(ResourceType.PATIENT).addAndGet(customers.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        analysisRepo.forEachAnalysisOfCustomers(customers.stream().map(CustomerDto::id).toList(), analysis -> {
+            try {
+                fhirMapper.writeObservation(observations, analysis);
+                observations.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            job.counts.get(ResourceType.OBSERVATION).incrementAndGet();
+        });
+        return customers;
+    }
+
+    // A cancel that arrives after the last chunk loses the race and the job completes
+    private void finish(Job job, Status status, String error) {
+        synchronized (job) {
+            if (job.status == Status.RUNNING) {
+                job.status = status;
+                job.error = error;
+            }
+            job.finishedAt = Instant.now();
+        }
+    }
+
+    private void remove(Job job) {
+        jobs.remove(job.id);
+        deleteRecursively(job.directory(directory));
+    }
+
+    private JsonGenerator createGenerator(Path file) throws IOException {
+        var generator = objectMapper.getFactory().createGenerator(new BufferedOutputStream(Files.newOutputStream(file)));
+        // Lines end with a newline instead of being separated by the default space
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private static boolean isJobId(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to delete FHIR export files {}", path, e);
+        }
+    }
+
+    /**
+     * State of one export, updated by its worker and read by status polls.
+     */
+    public static final class Job {
+
+        private final String id;
+        private final long clinicId;
+        private final String request;
+        private final Instant transactionTime;
+        private final AtomicLong customersDone = new AtomicLong();
+        private final Map<ResourceType, AtomicLong> counts = new EnumMap<>(ResourceType.class);
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private volatile long customersTotal = -1;
+        private volatile Status status = Status.RUNNING;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        Job(String id, long clinicId, String request, Instant transactionTime) {
+            this.id = id;
+            this.clinicId = clinicId;
+            this.request = request;
+            this.transactionTime = transactionTime;
+            for (ResourceType type : ResourceType.values()) {
+                counts.put(type, new AtomicLong());
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRequest() {
+            return request;
+        }
+
+        public Instant getTransactionTime() {
+            return transactionTime;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getCount(ResourceType type) {
+            return counts.get(type).get();
+        }
+
+        /**
+         * @return Percentage of customers written, 0 until they are counted
+         */
+        public int getProgress() {
+            long total = customersTotal;
+            if (status == Status.COMPLETED) {
+                return 100;
+            }
+            return total <= 0 ? 0 : (int) Math.min(99, customersDone.get() * 100 / total);
+        }
+
+        CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        Path directory(Path root) {
+            return root.resolve(id);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package health.services;
+
+import health.models.Chat;
+import health.models.Message;
+import health.models.MessageArchive;
+import health.repos.ChatRepo;
+import health.repos.MessageArchiveRepo;
+import health.repos.MessageRepo;
+import health.utils.MessageBlockCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Retention tiers for chat history.
+ * <p>
+ * Messages older than {@code after-days} move from the messages table into {@link MessageArchive}
+ * blocks of {@code block-size} consecutive seqs. Every block is written in its own transaction that
+ * also advances {@code chats.archived_seq} and deletes the archived rows, so the checkpoint always
+ * matches what is in the blocks and an interrupted run simply resumes from it. The checkpoint is
+ * advanced with a compare-and-set, so nodes running the job at the same time never archive a range twice.
+ * <p>
+ * Reads go through {@link MessageService}, which falls through to the blocks below the checkpoint.
+ */
+@Slf4j
+@Service
+public class MessageArchiveService {
+
+    private static final int CHAT_SCAN_BATCH = 100;
+
+    private final ChatRepo chatRepository;
+    private final MessageRepo messageRepository;
+    private final MessageArchiveRepo archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int blockSize;
+    private final int maxBlocksPerRun;
+
+    // Chat id the next run continues after, so every chat gets its turn when runs hit the block limit
+    private long chatCursor;
+
+    public MessageArchiveService(
+            ChatRepo chatRepository,
+            MessageRepo messageRepository,
+            MessageArchiveRepo archiveRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${health.chat.archive.enabled:false}") boolean enabled,
+            @Value("${health.chat.archive.after-days:365}") long afterDays,
+            @Value("${health.chat.archive.block-size:200}") int blockSize,
+            @Value("${health.chat.archive.max-blocks-per-run:1000}") int maxBlocksPerRun) {
+        this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retention = Duration.ofDays(afterDays);
+        this.blockSize = blockSize;
+        this.maxBlocksPerRun = maxBlocksPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${health.chat.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        int archived = archiveOlderThan(Instant.now().minus(retention));
+        if (archived > 0) {
+            log.info("Archived {} message blocks", archived);
+        }
+    }
+
+    /**
+     * Archives full blocks of messages sent before {@code cutoff}, at most {@code max-blocks-per-run}.
+     *
+     * @return Number of blocks written
+     */
+    synchronized int archiveOlderThan(Instant cutoff) {
+        int archived = 0;
+        while (archived < maxBlocksPerRun) {
+            var chatIds = chatRepository.getChatIdsToArchive(chatCursor, cutoff, blockSize, CHAT_SCAN_BATCH);
+            if (chatIds.isEmpty()) {
+                chatCursor = 0;
+                return archived;
+            }
+            for (long chatId : chatIds) {
+                while (archived < maxBlocksPerRun && archiveBlock(chatId, cutoff)) {
+                    archived++;
+                }
+                if (archived >= maxBlocksPerRun) {
+                    // The chat may have more blocks, start the next run with it
+                    chatCursor = chatId - 1;
+                    return archived;
+                }
+                chatCursor = chatId;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Moves the oldest {@code block-size} messages of a chat into one block, in one transaction.
+     * Nothing is archived unless the whole block was sent before the cutoff.
+     *
+     * @return true if a block was written
+     */
+    boolean archiveBlock(long chatId, Instant cutoff) {
+        Boolean archived = transactionTemplate.execute(status -> {
+            var chat = chatRepository.findById(chatId).orElse(null);
+            if (chat == null) {
+                return false;
+            }
+            long fromSeq = chat.getArchivedSeq();
+            var messages = messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(
+                    chat, fromSeq, PageRequest.of(0, blockSize)).getContent();
+            if (messages.size() < blockSize || messages.stream().anyMatch(message -> !message.getSendTime().isBefore(cutoff))) {
+                return false;
+            }
+            var first = messages.get(0);
+            var last = messages.get(messages.size() - 1);
+            if (chatRepository.advanceArchivedSeq(chatId, fromSeq, last.getSeq()) == 0) {
+                return false;
+            }
+            archiveRepository.save(MessageArchive.builder()
+                    .chat(chat)
+                    .firstSeq(first.getSeq())
+                    .lastSeq(last.getSeq())
+                    .messageCount(messages.size())
+                    .firstSendTime(first.getSendTime())
+                    .lastSendTime(last.getSendTime())
+                    .archivedAt(Instant.now())
+                    .payload(MessageBlockCodec.encode(messages))
+                    .build());
+            messageRepository.deleteByChatAndSeqRange(chat, fromSeq, last.getSeq());
+            return true;
+        });
+        return Boolean.TRUE.equals(archived);
+    }
+
+    /**
+     * Returns all archived messages of a chat, oldest first.
+     */
+    public List<Message> getAll(Chat chat) {
+        List<Message> messages = new ArrayList<>();
+        for (MessageArchive block : archiveRepository.getBlocksByChatOrderByLastSeqAsc(chat)) {
+            messages.addAll(MessageBlockCodec.decode(chat, block.getPayload()));
+        }
+        return messages;
+    }
+
+    /**
+     * Returns up to {@code limit} archived messages with seq greater than {@code afterSeq}, oldest first.
+     * Only the blocks covering the requested range are decompressed.
+     */
+    public List<Message> getAfter(Chat chat, long afterSeq, int limit) {
+        List<Message> messages = new ArrayList<>();
+        var blockPage = blockPage(limit);
+        long cursor = afterSeq;
+        while (messages.size() < limit) {
+            var blocks = archiveRepository.getBlocksByChatAndLastSeqGreaterThanOrderByLastSeqAsc(chat, cursor, blockPage);
+            for (MessageArchive block : blocks) {
+                for (Message message : MessageBlockCodec.decode(chat, block.getPayload())) {
+                    if (message.getSeq() > afterSeq && messages.size() < limit) {
+                        messages.add(message);
+                    }
+                }
+                cursor = block.getLastSeq();
+            }
+            if (blocks.size() < blockPage.getPageSize()) {
+                break;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Returns the newest {@code limit} archived messages with seq less than {@code beforeSeq}, oldest first.
+     */
+    public List<Message> getBefore(Chat chat, long beforeSeq, int limit) {
+        List<Message> descending = new ArrayList<>();
+        var blockPage = blockPage(limit);
+        long cursor = beforeSeq;
+        while (descending.size() < limit) {
+            var blocks = archiveRepository.getBlocksByChatAndFirstSeqLessThanOrderByLastSeqDesc(chat, cursor, blockPage);
+            for (MessageArchive block : blocks) {
+                var blockMessages = MessageBlockCodec.decode(chat, block.getPayload());
+                for (int i = blockMessages.size() - 1; i >= 0 && descending.size() < limit; i--) {
+                    if (blockMessages.get(i).getSeq() < beforeSeq) {
+                        descending.add(blockMessages.get(i));
+                    }
+                }
+                cursor = block.getFirstSeq();
+            }
+            if (blocks.size() < blockPage.getPageSize()) {
+                break;
+            }
+        }
+        Collections.reverse(descending);
+        return descending;
+    }
+
+    // Enough blocks for a page in one query, as long as the block size has not changed since they were written
+    private PageRequest blockPage(int limit) {
+        return PageRequest.of(0, limit / blockSize + 2);
+    }
+}
@@ -0,0 +1,287 @@
+package health.services;
+
+import health.models.Message;
+import health.models.auth.Role;
+import health.realtime.MessageCreatedEvent;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.repos.ChatBatchRepo;
+import health.repos.ChatRepo;
+import health.repos.MessageRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Entry point for new chat messages.
+ * <p>
+ * In the default {@code direct} mode each message is stored by {@link MessageService#saveOrUpdateMessage}
+ * in its own transaction. In {@code group-commit} mode request threads hand messages to a single
+ * writer thread, which stores everything queued meanwhile (plus whatever arrives within
+ * {@code window-ms}, up to {@code max-batch}) in one transaction: one statement reserving sequence
+ * numbers for all chats of the batch and multi-row inserts. A request is acknowledged only after
+ * that commit, so a returned seq is durable and readable right away, as in direct mode.
+ * A message the writer has not taken when {@code ack-timeout-ms} runs out is withdrawn and never
+ * stored; one it has taken is waited for, like a direct save. Messages of one chat keep their
+ * submission order.
+ */
+@Slf4j
+@Service
+public class MessageIngestService {
+
+    public static final String MODE_GROUP_COMMIT = "group-commit";
+
+    private final MessageService messageService;
+    private final MessageRepo messageRepository;
+    private final ChatRepo chatRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PubSub pubSub;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean groupCommit;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final long ackTimeoutMs;
+    private final BlockingQueue<PendingMessage> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageIngestService(
+            MessageService messageService,
+            MessageRepo messageRepository,
+            ChatRepo chatRepository,
+            ApplicationEventPublisher eventPublisher,
+            PubSub pubSub,
+            PlatformTransactionManager transactionManager,
+            @Value("${health.chat.ingest.mode:direct}") String mode,
+            @Value("${health.chat.ingest.window-ms:0}") long windowMs,
+            @Value("${health.chat.ingest.max-batch:500}") int maxBatch,
+            @Value("${health.chat.ingest.queue-capacity:10000}") int queueCapacity,
+            @Value("${health.chat.ingest.ack-timeout-ms:5000}") long ackTimeoutMs) {
+        this.messageService = messageService;
+        this.messageRepository = messageRepository;
+        this.chatRepository = chatRepository;
+        this.eventPublisher = eventPublisher;
+        this.pubSub = pubSub;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.groupCommit = MODE_GROUP_COMMIT.equals(mode);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = maxBatch;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!groupCommit) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "message-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Lets the writer store what is already queued before the context closes.
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(ackTimeoutMs);
+        }
+    }
+
+    /**
+     * Stores a new message and assigns its id and seq.
+     *
+     * @return Stored message, or empty if it was rejected because the queue is full, the batch
+     * failed or the writer did not take it within {@code ack-timeout-ms}; a rejected message is not stored
+     */
+    public Optional<Message> ingest(Message message) {
+        if (!groupCommit) {
+            return Optional.of(messageService.saveOrUpdateMessage(message));
+        }
+        var pending = new PendingMessage(message);
+        if (!running || !queue.offer(pending)) {
+            log.warn("Message ingest queue is full, rejecting message for chat {}", message.getChat().getId());
+            return Optional.empty();
+        }
+        try {
+            try {
+                return Optional.of(pending.stored().get(ackTimeoutMs, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                if (pending.take()) {
+                    queue.remove(pending);
+                    log.warn("Message for chat {} was not taken by the writer within {} ms, withdrawn",
+                            message.getChat().getId(), ackTimeoutMs);
+                    return Optional.empty();
+                }
+                // The writer already took it, so its transaction decides; a client retrying now would duplicate it
+                return Optional.of(pending.stored().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.take();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            log.warn("Message for chat {} was not stored", message.getChat().getId(), e);
+            return Optional.empty();
+        }
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<PendingMessage>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatch - batch.size());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatch) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return;
+            }
+            var next = queue.poll(left, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+    }
+
+    /**
+     * Stores the messages of a batch that were not withdrawn by their callers meanwhile.
+     */
+    void flush(List<PendingMessage> batch) {
+        var taken = batch.stream().filter(PendingMessage::take).toList();
+        if (!taken.isEmpty()) {
+            write(taken);
+        }
+    }
+
+    /**
+     * Stores a batch in one transaction. If that fails, every message is retried on its own,
+     * so one bad message (e.g. for a chat deleted meanwhile) does not fail the others.
+     */
+    private void write(List<PendingMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> store(batch));
+            batch.forEach(pending -> pending.stored().complete(pending.message()));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                log.error("Failed to store message for chat {}", batch.get(0).message().getChat().getId(), e);
+                batch.get(0).stored().completeExceptionally(e);
+                return;
+            }
+            log.warn("Failed to store batch of {} messages, retrying one by one", batch.size(), e);
+            for (PendingMessage pending : batch) {
+                pending.message().setId(0);
+                pending.message().setSeq(0);
+                write(List.of(pending));
+            }
+        }
+    }
+
+    private void store(List<PendingMessage> batch) {
+        Map<Long, List<Message>> byChat = new LinkedHashMap<>();
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            byChat.computeIfAbsent(pending.message().getChat().getId(), id -> new ArrayList<>()).add(pending.message());
+            messages.add(pending.message());
+        }
+
+        var lastSeqs = chatRepository.appendMessages(byChat.entrySet().stream()
+                .map(entry -> append(entry.getKey(), entry.getValue()))
+                .toList());
+        byChat.forEach((chatId, chatMessages) -> {
+            var lastSeq = lastSeqs.get(chatId);
+            if (lastSeq == null) {
+                throw new IllegalStateException("Chat " + chatId + " no longer exists");
+            }
+            long seq = lastSeq - chatMessages.size();
+            for (Message message : chatMessages) {
+                message.setSeq(++seq);
+            }
+        });
+
+        messageRepository.insertAll(messages);
+        messages.forEach(message -> eventPublisher.publishEvent(new MessageCreatedEvent(message)));
+        lastSeqs.forEach((chatId, lastSeq) -> pubSub.publish(Topic.chat(chatId), lastSeq));
+    }
+
+    private static ChatBatchRepo.MessageAppend append(long chatId, List<Message> messages) {
+        var last = messages.get(messages.size() - 1);
+        return new ChatBatchRepo.MessageAppend(
+                chatId,
+                messages.size(),
+                MessageService.preview(last.getText()),
+                last.getRole().name(),
+                last.getSendTime(),
+                lastPosition(messages, Role.CUSTOMER),
+                lastPosition(messages, Role.DOCTOR));
+    }
+
+    private static int lastPosition(List<Message> messages, Role role) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getRole() == role) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    record PendingMessage(Message message, CompletableFuture<Message> stored, AtomicBoolean taken) {
+
+        PendingMessage(Message message) {
+            this(message, new CompletableFuture<>(), new AtomicBoolean());
+        }
+
+        /**
+         * Hands the message to exactly one side: the writer storing it or the caller withdrawing it.
+         */
+        boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+    }
+}
@@ -1,33 +1,260 @@
 package health.services;
 
+import health.cache.ChatTailCache;
 import health.models.Chat;
+import health.models.Clinic;
+import health.models.Doctor;
 import health.models.Message;
+import health.models.dto.MessageDto;
+import health.models.dto.MessageSearchHitDto;
+import health.models.dto.MessageSyncDto;
+import health.models.mapper.MessageMapper;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.repos.ChatRepo;
+import health.realtime.MessageCreatedEvent;
 import health.repos.MessageRepo;
+import health.models.MessageSearchQuery;
+import health.repos.MessageSearchRepo.Scope;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class MessageService {
 
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int PREVIEW_LENGTH = 200;
+    public static final int MAX_SEARCH_PAGE_SIZE = 50;
+
     private final MessageRepo messageRepository;
+    private final ChatRepo chatRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChatTailCache tailCache;
+    private final MessageMapper messageMapper;
+    private final PubSub pubSub;
+    private final MessageArchiveService archiveService;
 
+    /**
+     * Returns the whole chat history, archived messages included.
+     */
     public List<Message> getMessagesByChat(Chat chat) {
-        return messageRepository.getMessagesByChat(chat);
+        var messages = messageRepository.getMessagesByChatOrderBySeqAsc(chat);
+        if (chat.getArchivedSeq() == 0) {
+            return messages;
+        }
+        List<Message> history = new ArrayList<>(archiveService.getAll(chat));
+        history.addAll(messages);
+        return history;
+    }
+
+    /**
+     * Returns messages with seq greater than {@code afterSeq}, oldest first.
+     * Reading from below the archive checkpoint starts with the archived blocks.
+     */
+    public Slice<Message> getMessagesAfter(Chat chat, long afterSeq, int limit) {
+        var pageable = page(limit);
+        if (afterSeq >= chat.getArchivedSeq()) {
+            return messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, afterSeq, pageable);
+        }
+        int size = pageable.getPageSize();
+        List<Message> messages = new ArrayList<>(archiveService.getAfter(chat, afterSeq, size + 1));
+        if (messages.size() > size) {
+            return new SliceImpl<>(messages.subList(0, size), pageable, true);
+        }
+        if (messages.size() == size) {
+            return new SliceImpl<>(messages, pageable, chat.getLastMessageSeq() > chat.getArchivedSeq());
+        }
+        var hot = messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(
+                chat, chat.getArchivedSeq(), PageRequest.of(0, size - messages.size()));
+        messages.addAll(hot.getContent());
+        return new SliceImpl<>(messages, pageable, hot.hasNext());
+    }
+
+    /**
+     * Returns messages of a chat known only by id with seq greater than {@code afterSeq}, oldest first.
+     */
+    public Slice<Message> getMessagesAfter(long chatId, long afterSeq, int limit) {
+        return messageRepository.getMessagesByChatIdAndSeqGreaterThanOrderBySeqAsc(chatId, afterSeq, page(limit));
+    }
+
+    /**
+     * Returns the newest messages with seq less than {@code beforeSeq}, oldest first.
+     * Once the messages table runs out, the page continues from the archived blocks.
+     */
+    public Slice<Message> getMessagesBefore(Chat chat, long beforeSeq, int limit) {
+        var pageable = page(limit);
+        long archivedSeq = chat.getArchivedSeq();
+        List<Message> ascending = new ArrayList<>();
+        boolean hasNext = false;
+        if (beforeSeq > archivedSeq + 1) {
+            var slice = messageRepository.getMessagesByChatAndSeqLessThanOrderBySeqDesc(chat, beforeSeq, pageable);
+            ascending.addAll(slice.getContent());
+            Collections.reverse(ascending);
+            hasNext = slice.hasNext();
+        }
+        if (archivedSeq == 0 || hasNext) {
+            return new SliceImpl<>(ascending, pageable, hasNext);
+        }
+        int missing = pageable.getPageSize() - ascending.size();
+        if (missing == 0) {
+            return new SliceImpl<>(ascending, pageable, true);
+        }
+        List<Message> archived = new ArrayList<>(archiveService.getBefore(chat, Math.min(beforeSeq, archivedSeq + 1), missing + 1));
+        hasNext = archived.size() > missing;
+        if (hasNext) {
+            archived.remove(0);
+        }
+        archived.addAll(ascending);
+        return new SliceImpl<>(archived, pageable, hasNext);
+    }
+
+    /**
+     * Returns the whole chat history, from the tail cache when it still fits there.
+     */
+    public List<MessageDto> getMessageDtosByChat(Chat chat) {
+        return tailCache.getAll(chat.getId(), chat.getLastMessageSeq()).orElseGet(() -> {
+            var messages = getMessagesByChat(chat).stream().map(messageMapper::mapToDto).toList();
+            if (messages.size() <= tailCache.getCapacity()) {
+                tailCache.load(chat.getId(), messages, lastSeq(messages));
+            }
+            return messages;
+        });
+    }
+
+    /**
+     * Forward page after {@code afterSeq}, served from the tail cache when it covers the range.
+     */
+    public MessageSyncDto getMessagePageAfter(Chat chat, long afterSeq, int limit) {
+        int size = page(limit).getPageSize();
+        var cached = tailCache.getAfter(chat.getId(), chat.getLastMessageSeq(), afterSeq, size);
+        if (cached.isPresent()) {
+            var messages = cached.get();
+            var cursor = messages.isEmpty() ? afterSeq : lastSeq(messages);
+            return new MessageSyncDto(messages, cursor, cursor < chat.getLastMessageSeq());
+        }
+        var messages = getMessagesAfter(chat, afterSeq, limit);
+        return messageMapper.mapToForwardPage(messages.getContent(), afterSeq, messages.hasNext());
+    }
+
+    /**
+     * Backward page before {@code beforeSeq}, served from the tail cache when it covers the range.
+     * Reading the newest page of a chat that is not cached loads its tail into the cache.
+     */
+    public MessageSyncDto getMessagePageBefore(Chat chat, long beforeSeq, int limit) {
+        int size = page(limit).getPageSize();
+        var cached = tailCache.getBefore(chat.getId(), chat.getLastMessageSeq(), beforeSeq, size);
+        if (cached.isEmpty() && beforeSeq > chat.getLastMessageSeq()) {
+            var tail = getMessagesBefore(chat, Long.MAX_VALUE, tailCache.getCapacity()).getContent()
+                    .stream().map(messageMapper::mapToDto).toList();
+            tailCache.load(chat.getId(), tail, lastSeq(tail));
+            cached = tailCache.getBefore(chat.getId(), chat.getLastMessageSeq(), beforeSeq, size);
+        }
+        if (cached.isPresent()) {
+            var messages = cached.get();
+            var cursor = messages.isEmpty() ? beforeSeq : messages.get(0).seq();
+            return new MessageSyncDto(messages, cursor, !messages.isEmpty() && cursor > 1);
+        }
+        var messages = getMessagesBefore(chat, beforeSeq, limit);
+        return messageMapper.mapToBackwardPage(messages.getContent(), beforeSeq, messages.hasNext());
+    }
+
+    /**
+     * Returns the last seq of each of the chats, by chat id.
+     */
+    public Map<Long, Long> getLastSeqs(Collection<Long> chatIds) {
+        return toMap(chatRepository.getLastMessageSeqsByIdIn(chatIds));
+    }
+
+    /**
+     * Returns the lowest seq sent at or after {@code since} of each of the chats that has one, by chat id.
+     */
+    public Map<Long, Long> getFirstSeqsSince(Collection<Long> chatIds, Instant since) {
+        return toMap(messageRepository.getFirstSeqsSince(chatIds, since));
+    }
+
+    /**
+     * Searches the messages of one chat, newest first.
+     */
+    public Slice<MessageSearchHitDto> searchInChat(Chat chat, MessageSearchQuery query, int page, int size) {
+        return messageRepository.search(Scope.CHAT, chat.getId(), query, searchPage(page, size));
+    }
+
+    /**
+     * Searches the messages of all chats of a doctor, newest first.
+     */
+    public Slice<MessageSearchHitDto> searchByDoctor(Doctor doctor, MessageSearchQuery query, int page, int size) {
+        return messageRepository.search(Scope.DOCTOR, doctor.getId(), query, searchPage(page, size));
+    }
+
+    /**
+     * Searches the messages of all chats of a clinic, newest first.
+     */
+    public Slice<MessageSearchHitDto> searchByClinic(Clinic clinic, MessageSearchQuery query, int page, int size) {
+        return messageRepository.search(Scope.CLINIC, clinic.getId(), query, searchPage(page, size));
     }
 
     public Optional<Message> getMessageById(Long id) {
         return messageRepository.findById(id);
     }
 
+    @Transactional
     public Message saveOrUpdateMessage(Message message) {
-        return messageRepository.save(message);
+        if (message.getId() != 0) {
+            tailCache.evict(message.getChat().getId());
+            return messageRepository.save(message);
+        }
+        message.setSeq(chatRepository.appendMessage(
+                message.getChat().getId(),
+                preview(message.getText()),
+                message.getRole().name(),
+                message.getSendTime()));
+        var saved = messageRepository.save(message);
+        eventPublisher.publishEvent(new MessageCreatedEvent(saved));
+        pubSub.publish(Topic.chat(saved.getChat().getId()), saved.getSeq());
+        return saved;
     }
 
     public void deleteMessage(Message message) {
+        tailCache.evict(message.getChat().getId());
         messageRepository.delete(message);
     }
+
+    private static long lastSeq(List<MessageDto> messages) {
+        return messages.isEmpty() ? 0 : messages.get(messages.size() - 1).seq();
+    }
+
+    private static Map<Long, Long> toMap(List<ChatRepo.ChatSeq> seqs) {
+        return seqs.stream().collect(Collectors.toMap(ChatRepo.ChatSeq::getChatId, ChatRepo.ChatSeq::getSeq));
+    }
+
+    static String preview(String value) {
+        if (value == null || value.length() <= PREVIEW_LENGTH) {
+            return value;
+        }
+        return value.substring(0, PREVIEW_LENGTH);
+    }
+
+    private Pageable searchPage(int page, int size) {
+        return PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE)));
+    }
+
+    private Pageable page(int limit) {
+        return PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
 }
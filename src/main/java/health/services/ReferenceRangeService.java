@@ -0,0 +1,146 @@
+package health.services;
+
+import health.models.Analysis;
+import health.models.Gender;
+import health.models.ReferenceRange;
+import health.models.ReferenceRangeCatalog;
+import health.utils.AnalysisValueUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reference ranges used to flag analyses when they are stored.
+ * <p>
+ * The catalog is read from a CSV file ({@code health.analysis.reference-ranges.location}) with the columns
+ * {@code name,unit,gender,min_age,max_age,low,high}, where empty cells mean "any" or "unbounded".
+ * The file is checked every {@code reload-interval-ms} and re-read when it changed. A new catalog is
+ * built completely before it replaces the current one, so a lookup never sees a partly loaded catalog,
+ * and a file that fails to parse leaves the current one in place.
+ * <p>
+ * Flags are stored with the analysis; results stored earlier keep their flag when the ranges change.
+ */
+@Slf4j
+@Service
+public class ReferenceRangeService {
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+
+    private volatile ReferenceRangeCatalog catalog = ReferenceRangeCatalog.EMPTY;
+    private long loadedModified = -1;
+
+    public ReferenceRangeService(
+            ResourceLoader resourceLoader,
+            @Value("${health.analysis.reference-ranges.location:classpath:reference-ranges.csv}") String location) {
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+    }
+
+    @PostConstruct
+    void load() {
+        reload();
+    }
+
+    @Scheduled(initialDelayString = "${health.analysis.reference-ranges.reload-interval-ms:60000}",
+            fixedDelayString = "${health.analysis.reference-ranges.reload-interval-ms:60000}")
+    public void reloadIfChanged() {
+        reload();
+    }
+
+    /**
+     * Re-reads the catalog file unless it is unchanged since the last load.
+     *
+     * @return true if a new catalog was installed
+     */
+    synchronized boolean reload() {
+        var resource = resourceLoader.getResource(location);
+        if (!resource.exists()) {
+            log.warn("Reference range catalog {} not found, analyses are not flagged", location);
+            return false;
+        }
+        long modified = lastModified(resource);
+        if (modified > 0 && modified == loadedModified) {
+            return false;
+        }
+        try (var reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            catalog = new ReferenceRangeCatalog(parse(reader));
+            loadedModified = modified;
+            log.info("Loaded {} reference ranges from {}", catalog.size(), location);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to load reference ranges from {}, keeping the current catalog", location, e);
+            return false;
+        }
+    }
+
+    public ReferenceRangeCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Flags an analysis against the catalog, using the gender and age of its customer. Ranges for the unit
+     * of the result are preferred, then ranges for its canonical unit.
+     * The flag is cleared when the result is not numeric or no range applies.
+     */
+    public void flag(Analysis analysis) {
+        var customer = analysis.getCustomer();
+        var gender = customer == null ? null : customer.getGender();
+        var age = customer == null ? null : customer.getAge();
+        var flag = catalog.flag(analysis.getName(), analysis.getUnit(), AnalysisValueUtil.parseNumeric(analysis.getValue()), gender, age);
+        if (flag == null && analysis.getCanonicalUnit() != null) {
+            flag = catalog.flag(analysis.getName(), analysis.getCanonicalUnit(), analysis.getCanonicalValue(), gender, age);
+        }
+        analysis.setFlag(flag);
+    }
+
+    static List<ReferenceRange> parse(Reader reader) throws IOException {
+        List<ReferenceRange> ranges = new ArrayList<>();
+        var lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("name,")) {
+                continue;
+            }
+            var cells = line.split(",", -1);
+            if (cells.length != 7 || cells[0].isBlank() || cells[1].isBlank()) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected name,unit,gender,min_age,max_age,low,high");
+            }
+            try {
+                ranges.add(new ReferenceRange(cells[0].strip(), cells[1].strip(),
+                        cells[2].isBlank() ? null : Gender.valueOf(cells[2].strip().toUpperCase(Locale.ROOT)),
+                        cells[3].isBlank() ? null : Integer.valueOf(cells[3].strip()),
+                        cells[4].isBlank() ? null : Integer.valueOf(cells[4].strip()),
+                        cells[5].isBlank() ? null : Double.valueOf(cells[5].strip()),
+                        cells[6].isBlank() ? null : Double.valueOf(cells[6].strip())));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return ranges;
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            // Not every resource knows its modification time, such resources are re-read every time
+            return -1;
+        }
+    }
+}
@@ -2,13 +2,18 @@ package health.services;
 
 import health.models.Doctor;
 import health.models.Timetable;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
 import health.repos.TimetableRepo;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -16,6 +21,7 @@ import java.util.Optional;
 public class TimetableService {
 
     private final TimetableRepo timetableRepository;
+    private final PubSub pubSub;
 
     public List<Timetable> getTimetablesByDoctor(Doctor doctor) {
         return timetableRepository.getTimetablesByDoctor(doctor);
@@ -38,15 +44,20 @@ public class TimetableService {
     }
 
     public Timetable createTimetable(Timetable timetable) {
-        return timetableRepository.save(timetable);
+        var saved = timetableRepository.save(timetable);
+        notifyAvailabilityChanged(saved.getDoctor());
+        return saved;
     }
 
     public Timetable updateTimetable(Timetable timetable) {
-        return timetableRepository.save(timetable);
+        var saved = timetableRepository.save(timetable);
+        notifyAvailabilityChanged(saved.getDoctor());
+        return saved;
     }
 
     public void deleteTimetable(Timetable timetable) {
         timetableRepository.delete(timetable);
+        notifyAvailabilityChanged(timetable.getDoctor());
     }
 
     public void reserveTimetable(Timetable timetable) {
@@ -62,22 +73,45 @@ public class TimetableService {
     public void deleteFreeTimetables(Doctor doctor){
         List<Timetable> freeTimetables = getFreeTimetablesByDoctor(doctor);
         timetableRepository.deleteAll(freeTimetables);
+        if (!freeTimetables.isEmpty()) {
+            notifyAvailabilityChanged(doctor);
+        }
     }
 
+    /**
+     * Creates the missing slots of a doctor's working hours. Existing slots are looked up with one
+     * query and new ones are saved together, so their inserts go out as JDBC batches.
+     */
+    @Transactional
     public List<Timetable> addOrUpdateFromRawTimetable(List<Instant> workingOurs, Doctor doctor) {
-        List<Timetable> result = new ArrayList<>();
-        for (Instant workingHour : workingOurs){
-            Optional<Timetable> timetableOpt = getTimetableByDoctorAndStart(doctor, workingHour);
-            if(timetableOpt.isPresent()){
-                result.add(timetableOpt.get());
-            }else{
-                result.add(createTimetable(Timetable.builder()
+        Map<Instant, Timetable> byStart = new HashMap<>();
+        timetableRepository.getTimetablesByDoctorAndStartIn(doctor, workingOurs)
+                .forEach(timetable -> byStart.put(timetable.getStart(), timetable));
+        List<Timetable> created = new ArrayList<>();
+        for (Instant workingHour : workingOurs) {
+            if (!byStart.containsKey(workingHour)) {
+                var timetable = Timetable.builder()
                         .doctor(doctor)
                         .start(workingHour)
                         .reserved(false)
-                        .build()));
+                        .build();
+                byStart.put(workingHour, timetable);
+                created.add(timetable);
             }
         }
-        return result;
+        if (!created.isEmpty()) {
+            timetableRepository.saveAll(created).forEach(timetable -> byStart.put(timetable.getStart(), timetable));
+            notifyAvailabilityChanged(doctor);
+        }
+        return workingOurs.stream().map(byStart::get).toList();
+    }
+
+    /**
+     * Tells every node that the doctor's free slots changed; the position is the change time.
+     */
+    private void notifyAvailabilityChanged(Doctor doctor) {
+        if (doctor != null) {
+            pubSub.publish(Topic.doctor(doctor.getId()), System.currentTimeMillis());
+        }
     }
-}
\ No newline at end of file
+}
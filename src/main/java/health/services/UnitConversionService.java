@@ -0,0 +1,98 @@
+package health.services;
+
+import health.models.Analysis;
+import health.models.UnitConversionCatalog;
+import health.utils.AnalysisValueUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Normalizes analysis results into the canonical unit of their name when they are stored, so charts
+ * and aggregates compare values reported in different units.
+ * <p>
+ * Conversions are read once at startup from a CSV file ({@code health.analysis.unit-conversions.location})
+ * with the columns {@code name,unit,canonical_unit,factor}. Unlike the reference ranges the table is not
+ * reloaded: stored canonical values depend on it, so changing it is a deployment, not an edit.
+ */
+@Slf4j
+@Service
+public class UnitConversionService {
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+
+    private UnitConversionCatalog catalog = UnitConversionCatalog.EMPTY;
+
+    public UnitConversionService(
+            ResourceLoader resourceLoader,
+            @Value("${health.analysis.unit-conversions.location:classpath:unit-conversions.csv}") String location) {
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+    }
+
+    @PostConstruct
+    void load() {
+        var resource = resourceLoader.getResource(location);
+        if (!resource.exists()) {
+            log.warn("Unit conversion table {} not found, analyses keep their own units", location);
+            return;
+        }
+        try (var reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            catalog = new UnitConversionCatalog(parse(reader));
+            log.info("Loaded {} unit conversions from {}", catalog.size(), location);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read unit conversions from " + location, e);
+        }
+    }
+
+    public UnitConversionCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Sets the numeric value of an analysis and its canonical value and unit. The canonical ones are
+     * cleared when the result is not numeric or its unit cannot be converted.
+     */
+    public void normalize(Analysis analysis) {
+        analysis.setNumericValue(AnalysisValueUtil.parseNumeric(analysis.getValue()));
+        var normalized = catalog.normalize(analysis.getName(), analysis.getUnit(), analysis.getNumericValue());
+        analysis.setCanonicalValue(normalized == null ? null : normalized.value());
+        analysis.setCanonicalUnit(normalized == null ? null : normalized.unit());
+    }
+
+    static List<UnitConversionCatalog.Conversion> parse(Reader reader) throws IOException {
+        List<UnitConversionCatalog.Conversion> conversions = new ArrayList<>();
+        var lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("name,")) {
+                continue;
+            }
+            var cells = line.split(",", -1);
+            if (cells.length != 4 || cells[0].isBlank() || cells[1].isBlank() || cells[2].isBlank()) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected name,unit,canonical_unit,factor");
+            }
+            try {
+                conversions.add(new UnitConversionCatalog.Conversion(cells[0].strip(), cells[1].strip(), cells[2].strip(),
+                        Double.parseDouble(cells[3].strip())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return conversions;
+    }
+}
@@ -0,0 +1,35 @@
+package health.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Utility class for reading numbers out of analysis results.
+ * Results are entered as text, numeric ones with either a decimal point or a decimal comma.
+ */
+public class AnalysisValueUtil {
+
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private AnalysisValueUtil() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Parses a result that is a plain number, such as {@code "5.5"} or {@code " 5,5 "}.
+     * Qualified results like {@code "<0.1"} or {@code "positive"} are not numbers.
+     *
+     * @param value Result as entered
+     * @return The number, or null if the result is not one
+     */
+    public static Double parseNumeric(String value) {
+        if (value == null) {
+            return null;
+        }
+        var candidate = value.strip().replace(',', '.');
+        if (!NUMBER.matcher(candidate).matches()) {
+            return null;
+        }
+        double number = Double.parseDouble(candidate);
+        return Double.isFinite(number) ? number : null;
+    }
+}
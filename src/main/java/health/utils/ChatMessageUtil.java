@@ -5,6 +5,7 @@ import health.models.Message;
 import health.models.auth.Role;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Utility class for creating chat messages.
@@ -18,6 +19,8 @@ public class ChatMessageUtil {
 
     /**
      * Creates a new message for a chat.
+     * The send time is truncated to the database precision so that sync cursors built
+     * from the saved message match the stored value.
      *
      * @param chat The chat to add the message to
      * @param text The message text
@@ -29,7 +32,7 @@ public class ChatMessageUtil {
                 .chat(chat)
                 .role(role)
                 .text(text)
-                .sendTime(Instant.now())
+                .sendTime(Instant.now().truncatedTo(ChronoUnit.MICROS))
                 .build();
     }
 }
\ No newline at end of file
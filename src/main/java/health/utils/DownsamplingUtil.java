@@ -0,0 +1,68 @@
+package health.utils;
+
+/**
+ * Utility class for reducing chart series to a displayable number of points.
+ */
+public class DownsamplingUtil {
+
+    private DownsamplingUtil() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Picks at most {@code threshold} points with Largest-Triangle-Three-Buckets: the first and last
+     * points are kept and every bucket in between contributes the point forming the largest triangle
+     * with the previously picked point and the average of the next bucket. Peaks survive, which a
+     * plain average or every-n-th sampling would flatten.
+     *
+     * @param x Point positions, ascending (e.g. epoch millis)
+     * @param y Point values
+     * @param threshold Maximum number of points to keep, at least 3
+     * @return Indices of the kept points, ascending
+     */
+    public static int[] lttb(long[] x, double[] y, int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Downsampling needs at least 3 points, got " + threshold);
+        }
+        int size = x.length;
+        if (threshold >= size) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] picked = new int[threshold];
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = nextStart;
+            double maxArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                        - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = i;
+                }
+            }
+            picked[bucket + 1] = best;
+            previous = best;
+        }
+        picked[threshold - 1] = size - 1;
+        return picked;
+    }
+}
@@ -85,4 +85,49 @@ public class EntityMergeUtil {
         }
         return entity;
     }
+
+    /**
+     * Copies every editable field of a complete CustomerDto into the entity, null values included,
+     * so that fields removed by a merge patch are cleared.
+     *
+     * @param entity Existing customer entity
+     * @param dto DTO with all editable fields
+     * @return Updated customer entity
+     */
+    public static Customer replaceCustomer(Customer entity, CustomerDto dto) {
+        entity.setFirstName(dto.firstName());
+        entity.setLastName(dto.lastName());
+        entity.setAge(dto.age());
+        entity.setWeight(dto.weight());
+        entity.setHeight(dto.height());
+        entity.setGender(dto.gender());
+        return entity;
+    }
+
+    /**
+     * Copies every editable field of a complete DoctorDto into the entity.
+     *
+     * @param entity Existing doctor entity
+     * @param dto DTO with all editable fields
+     * @return Updated doctor entity
+     */
+    public static Doctor replaceDoctor(Doctor entity, DoctorDto dto) {
+        entity.setFirstName(dto.firstName());
+        entity.setLastName(dto.lastName());
+        entity.setSpeciality(dto.speciality());
+        return entity;
+    }
+
+    /**
+     * Copies every editable field of a complete ClinicDto into the entity, null values included.
+     *
+     * @param entity Existing clinic entity
+     * @param dto DTO with all editable fields
+     * @return Updated clinic entity
+     */
+    public static Clinic replaceClinic(Clinic entity, ClinicDto dto) {
+        entity.setName(dto.name());
+        entity.setDescription(dto.description());
+        return entity;
+    }
 }
\ No newline at end of file
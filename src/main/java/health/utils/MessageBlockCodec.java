@@ -0,0 +1,80 @@
+package health.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import health.models.Chat;
+import health.models.Message;
+import health.models.dto.MessageDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Utility class for the payload of archived message blocks.
+ * A block is the JSON array of its messages compressed with deflate; chat text repeats a lot,
+ * so blocks usually shrink to a fraction of the rows they replace.
+ */
+public class MessageBlockCodec {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+    private static final TypeReference<List<MessageDto>> BLOCK_TYPE = new TypeReference<>() {
+    };
+
+    private MessageBlockCodec() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Compresses messages into a block payload.
+     *
+     * @param messages Messages of one chat, in seq order
+     * @return Block payload
+     */
+    public static byte[] encode(List<Message> messages) {
+        var dtos = messages.stream().map(message -> MessageDto.builder()
+                .id(message.getId())
+                .text(message.getText())
+                .role(message.getRole())
+                .sendTime(message.getSendTime())
+                .seq(message.getSeq())
+                .build()).toList();
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_COMPRESSION))) {
+            MAPPER.writeValue(out, dtos);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode message block", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores the messages of a block as detached entities of the given chat.
+     *
+     * @param chat Chat the block belongs to
+     * @param payload Block payload
+     * @return Messages in seq order
+     */
+    public static List<Message> decode(Chat chat, byte[] payload) {
+        try (var in = new InflaterInputStream(new ByteArrayInputStream(payload))) {
+            List<MessageDto> dtos = MAPPER.readValue(in, BLOCK_TYPE);
+            return dtos.stream().map(dto -> Message.builder()
+                    .id(dto.id())
+                    .chat(chat)
+                    .text(dto.text())
+                    .role(dto.role())
+                    .sendTime(dto.sendTime())
+                    .seq(dto.seq())
+                    .build()).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode message block", e);
+        }
+    }
+}
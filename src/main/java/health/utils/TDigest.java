@@ -0,0 +1,227 @@
+package health.utils;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable sketch of a distribution for estimating quantiles, after Dunning's merging t-digest.
+ * <p>
+ * Values are kept as centroids (mean, weight), small near both tails and large in the middle, so
+ * extreme percentiles stay accurate while the size is bounded by about {@code compression} centroids,
+ * whatever the number of values. New values are buffered and folded in by one sorted merge pass.
+ * Digests built over disjoint parts of the data can be merged, which lets chunks be summarized in
+ * parallel. Not thread-safe.
+ */
+public class TDigest {
+
+    private final double compression;
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    private final double[] buffer;
+    private int buffered;
+    private double total;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    /**
+     * @param compression Accuracy versus size; about 100 gives errors well below 1% of rank
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression has to be at least 10, got " + compression);
+        }
+        this.compression = compression;
+        this.buffer = new double[(int) Math.ceil(compression) * 5];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN");
+        }
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        total++;
+        min = total == 1 || value < min ? value : min;
+        max = total == 1 || value > max ? value : max;
+    }
+
+    /**
+     * Adds the values of {@code other}, which is left unchanged apart from having its buffer folded in.
+     */
+    public void merge(TDigest other) {
+        if (other.total == 0) {
+            return;
+        }
+        other.compress();
+        compress();
+        collapse(means, weights, means.length, other.means, other.weights, other.means.length);
+        min = total == 0 || other.min < min ? other.min : min;
+        max = total == 0 || other.max > max ? other.max : max;
+        total += other.total;
+    }
+
+    /**
+     * @return Number of values added
+     */
+    public long size() {
+        return (long) total;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Estimates the value below which a share {@code q} of the values falls.
+     *
+     * @param q Share between 0 and 1
+     * @return The estimate, NaN for an empty digest
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile has to be between 0 and 1, got " + q);
+        }
+        compress();
+        int n = means.length;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (n == 1) {
+            return means[0];
+        }
+        double index = q * total;
+        // The first and last halves of the outer centroids are spread between them and the extremes
+        if (index <= weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double soFar = weights[0] / 2;
+        for (int i = 0; i < n - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (soFar + step >= index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - soFar) / step;
+            }
+            soFar += step;
+        }
+        double last = weights[n - 1] / 2;
+        return Math.min(max, means[n - 1] + (max - means[n - 1]) * (index - soFar) / last);
+    }
+
+    /**
+     * Estimates the share of values at or below {@code x}.
+     *
+     * @return Share between 0 and 1, NaN for an empty digest
+     */
+    public double cdf(double x) {
+        compress();
+        int n = means.length;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (x < min) {
+            return 0;
+        }
+        if (x >= max) {
+            return 1;
+        }
+        if (n == 1) {
+            return (x - min) / (max - min);
+        }
+        if (x < means[0]) {
+            return weights[0] / 2 * (x - min) / (means[0] - min) / total;
+        }
+        double soFar = weights[0] / 2;
+        for (int i = 0; i < n - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (x < means[i + 1]) {
+                return (soFar + step * (x - means[i]) / (means[i + 1] - means[i])) / total;
+            }
+            soFar += step;
+        }
+        return (soFar + weights[n - 1] / 2 * (x - means[n - 1]) / (max - means[n - 1])) / total;
+    }
+
+    /**
+     * @return Number of centroids, once buffered values are folded in
+     */
+    int centroids() {
+        compress();
+        return means.length;
+    }
+
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        int count = buffered;
+        buffered = 0;
+        // Total already counts the buffered values, collapse works on the centroids alone
+        total -= count;
+        collapse(means, weights, means.length, buffer, null, count);
+        total += count;
+    }
+
+    /**
+     * Merges two sorted centroid lists into one and joins neighbours as long as the joined centroid stays
+     * within one unit of the scale function. Weights of {@code null} mean 1 for every value.
+     */
+    private void collapse(double[] means1, double[] weights1, int n1, double[] means2, double[] weights2, int n2) {
+        double sum = total + (weights2 == null ? n2 : Arrays.stream(weights2, 0, n2).sum());
+        double[] newMeans = new double[n1 + n2];
+        double[] newWeights = new double[n1 + n2];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        double mean = 0;
+        double weight = 0;
+        double soFar = 0;
+        double limit = 0;
+        while (i < n1 || j < n2) {
+            double nextMean;
+            double nextWeight;
+            if (j >= n2 || (i < n1 && means1[i] <= means2[j])) {
+                nextMean = means1[i];
+                nextWeight = weights1[i++];
+            } else {
+                nextMean = means2[j];
+                nextWeight = weights2 == null ? 1 : weights2[j];
+                j++;
+            }
+            if (weight == 0) {
+                mean = nextMean;
+                weight = nextWeight;
+                limit = sum * inverseScale(scale(0) + 1);
+            } else if (soFar + weight + nextWeight <= limit) {
+                weight += nextWeight;
+                mean += (nextMean - mean) * nextWeight / weight;
+            } else {
+                newMeans[size] = mean;
+                newWeights[size++] = weight;
+                soFar += weight;
+                limit = sum * inverseScale(scale(soFar / sum) + 1);
+                mean = nextMean;
+                weight = nextWeight;
+            }
+        }
+        if (weight > 0) {
+            newMeans[size] = mean;
+            newWeights[size++] = weight;
+        }
+        means = Arrays.copyOf(newMeans, size);
+        weights = Arrays.copyOf(newWeights, size);
+    }
+
+    // k1 scale function: centroids get smaller towards q = 0 and q = 1
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+
+    private double inverseScale(double k) {
+        return (Math.sin(Math.min(Math.PI / 2, k * 2 * Math.PI / compression)) + 1) / 2;
+    }
+}
@@ -0,0 +1,18 @@
+-- Latest result per analysis name of every customer (AnalysisLatestRepoImpl)
+-- One row per (customer, name) pointing at the newest analysis, so the latest values of a customer
+-- are read from a handful of rows however long the history is. Rows are upserted on every insert and
+-- re-pointed before an analysis is deleted; existing data is filled in by AnalysisBackfillService.
+
+CREATE TABLE IF NOT EXISTS analysis_latest (
+    customers BIGINT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    analysis BIGINT NOT NULL,
+    date TIMESTAMP NOT NULL,
+    PRIMARY KEY (customers, name),
+    CONSTRAINT uk_analysis_latest_analysis UNIQUE (analysis),
+    CONSTRAINT fk_analysis_latest_customer FOREIGN KEY (customers) REFERENCES customers(id) ON DELETE CASCADE,
+    CONSTRAINT fk_analysis_latest_analysis FOREIGN KEY (analysis) REFERENCES analysis(id) ON DELETE CASCADE
+);
+
+-- Rollback instructions:
+-- DROP TABLE IF EXISTS analysis_latest;
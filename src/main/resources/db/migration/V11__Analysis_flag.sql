@@ -0,0 +1,13 @@
+-- Out-of-range flag of every analysis (ReferenceRangeService)
+-- Computed once when a result is stored, from the reference ranges in effect at that time:
+-- NORMAL, LOW or HIGH, NULL when the result is not numeric or no range applies.
+-- Results stored before this migration stay NULL.
+
+ALTER TABLE analysis ADD COLUMN IF NOT EXISTS flag VARCHAR(8);
+
+-- "Only abnormal" filters: the customer's LOW and HIGH results in date order
+CREATE INDEX IF NOT EXISTS idx_analysis_customer_flag ON analysis(customers, flag, date);
+
+-- Rollback instructions:
+-- DROP INDEX IF EXISTS idx_analysis_customer_flag;
+-- ALTER TABLE analysis DROP COLUMN IF EXISTS flag;
@@ -0,0 +1,12 @@
+-- Numeric value of every analysis in the canonical unit of its name (UnitConversionService)
+-- Written together with the result from the conversion table in unit-conversions.csv, so charts and
+-- statistics compare results reported in different units. NULL when the result is not numeric or its
+-- unit has no conversion; names without conversions keep their value and unit.
+-- Rows stored before this migration are filled by AnalysisBackfillService.
+
+ALTER TABLE analysis ADD COLUMN IF NOT EXISTS canonical_value DOUBLE PRECISION;
+ALTER TABLE analysis ADD COLUMN IF NOT EXISTS canonical_unit VARCHAR(255);
+
+-- Rollback instructions:
+-- ALTER TABLE analysis DROP COLUMN IF EXISTS canonical_unit;
+-- ALTER TABLE analysis DROP COLUMN IF EXISTS canonical_value;
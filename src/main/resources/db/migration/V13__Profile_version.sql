@@ -0,0 +1,13 @@
+-- Version of customer, doctor and clinic profiles for optimistic locking
+-- Incremented by Hibernate on every update and compared in its WHERE clause, so concurrent profile
+-- updates cannot silently overwrite each other. Sent to clients as the ETag of the profile and
+-- checked against If-Match on PATCH. Existing rows start at 0.
+
+ALTER TABLE customers ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE doctors ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE clinics ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Rollback instructions:
+-- ALTER TABLE clinics DROP COLUMN IF EXISTS version;
+-- ALTER TABLE doctors DROP COLUMN IF EXISTS version;
+-- ALTER TABLE customers DROP COLUMN IF EXISTS version;
@@ -0,0 +1,19 @@
+-- Progress of the analysis backfill walks (AnalysisBackfillService)
+-- One row per walk with the highest analysis id it has examined, advanced in the transaction of every
+-- chunk, so a restart resumes where the walk stopped and a finished walk is never repeated.
+-- Walks without a row start from the beginning.
+
+CREATE TABLE IF NOT EXISTS analysis_backfill_checkpoint (
+    walk VARCHAR(32) PRIMARY KEY,
+    last_id BIGINT NOT NULL,
+    done BOOLEAN NOT NULL
+);
+
+INSERT INTO analysis_backfill_checkpoint (walk, last_id, done) VALUES
+    ('numeric_value', 0, FALSE),
+    ('latest', 0, FALSE),
+    ('canonical_value', 0, FALSE)
+ON CONFLICT (walk) DO NOTHING;
+
+-- Rollback instructions:
+-- DROP TABLE IF EXISTS analysis_backfill_checkpoint;
@@ -0,0 +1,14 @@
+-- Change log polled by every API node to invalidate local caches
+
+CREATE TABLE IF NOT EXISTS entity_change_log (
+    id BIGSERIAL PRIMARY KEY,
+    entity_type VARCHAR(50) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    origin VARCHAR(36) NOT NULL,
+    changed_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_entity_change_log_changed_at ON entity_change_log(changed_at);
+
+-- Rollback instructions:
+-- DROP TABLE IF EXISTS entity_change_log;
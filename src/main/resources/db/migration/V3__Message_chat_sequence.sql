@@ -0,0 +1,38 @@
+-- Per-chat gapless message sequence numbers used for keyset pagination
+
+-- V1 names the send time column sendtime, the entity mapping and every later query use send_time
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'messages' AND column_name = 'sendtime') THEN
+        ALTER TABLE messages RENAME COLUMN sendtime TO send_time;
+    END IF;
+END $$;
+
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS last_message_seq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS seq BIGINT;
+
+-- Number existing history in send order
+UPDATE messages m
+SET seq = numbered.seq
+FROM (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY chats ORDER BY send_time, id) AS seq
+    FROM messages
+) numbered
+WHERE m.id = numbered.id;
+
+UPDATE chats c
+SET last_message_seq = totals.max_seq
+FROM (
+    SELECT chats, MAX(seq) AS max_seq FROM messages GROUP BY chats
+) totals
+WHERE c.id = totals.chats;
+
+ALTER TABLE messages ALTER COLUMN seq SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_message_chat_seq ON messages(chats, seq);
+
+-- Rollback instructions:
+-- DROP INDEX IF EXISTS uk_message_chat_seq;
+-- ALTER TABLE messages DROP COLUMN IF EXISTS seq;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS last_message_seq;
+-- ALTER TABLE messages RENAME COLUMN send_time TO sendtime; (only on databases created from V1)
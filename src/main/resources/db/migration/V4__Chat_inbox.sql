@@ -0,0 +1,33 @@
+-- Denormalized inbox columns on chats: last message preview, activity time and per-side read positions
+
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS last_message_preview VARCHAR(200);
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS last_message_role VARCHAR(255);
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS last_activity TIMESTAMP;
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS customer_read_seq BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS doctor_read_seq BIGINT NOT NULL DEFAULT 0;
+
+-- Existing history counts as read, otherwise every old chat would show up as unread
+UPDATE chats SET customer_read_seq = last_message_seq, doctor_read_seq = last_message_seq;
+
+UPDATE chats c
+SET last_message_preview = LEFT(m.text, 200),
+    last_activity = m.send_time
+FROM messages m
+WHERE m.chats = c.id AND m.seq = c.last_message_seq;
+
+UPDATE chats SET last_activity = NOW() WHERE last_activity IS NULL;
+ALTER TABLE chats ALTER COLUMN last_activity SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_chat_customer_activity ON chats(customers, last_activity);
+CREATE INDEX IF NOT EXISTS idx_chat_doctor_activity ON chats(doctors, last_activity);
+CREATE INDEX IF NOT EXISTS idx_chat_clinic_activity ON chats(clinics, last_activity);
+
+-- Rollback instructions:
+-- DROP INDEX IF EXISTS idx_chat_clinic_activity;
+-- DROP INDEX IF EXISTS idx_chat_doctor_activity;
+-- DROP INDEX IF EXISTS idx_chat_customer_activity;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS doctor_read_seq;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS customer_read_seq;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS last_activity;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS last_message_role;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS last_message_preview;
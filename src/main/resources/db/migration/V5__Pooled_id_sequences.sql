@@ -0,0 +1,28 @@
+-- Entity ids come from sequences with pooled-lo allocation: every nextval reserves a block of 50 ids,
+-- so Hibernate can assign ids in memory and batch inserts. The sequences behind the existing BIGSERIAL
+-- columns are reused; column defaults stay in place for manual inserts.
+-- entity_change_log keeps its IDENTITY id (used as a polling cursor).
+
+ALTER SEQUENCE analysis_id_seq INCREMENT BY 50;
+ALTER SEQUENCE appointments_id_seq INCREMENT BY 50;
+ALTER SEQUENCE chats_id_seq INCREMENT BY 50;
+ALTER SEQUENCE clinics_id_seq INCREMENT BY 50;
+ALTER SEQUENCE customers_id_seq INCREMENT BY 50;
+ALTER SEQUENCE doctors_id_seq INCREMENT BY 50;
+ALTER SEQUENCE messages_id_seq INCREMENT BY 50;
+ALTER SEQUENCE timetables_id_seq INCREMENT BY 50;
+
+-- The next nextval must start a block above every existing id
+SELECT setval('analysis_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM analysis), false);
+SELECT setval('appointments_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM appointments), false);
+SELECT setval('chats_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM chats), false);
+SELECT setval('clinics_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM clinics), false);
+SELECT setval('customers_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM customers), false);
+SELECT setval('doctors_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM doctors), false);
+SELECT setval('messages_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM messages), false);
+SELECT setval('timetables_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM timetables), false);
+
+-- Rollback instructions:
+-- Switch the entities back to GenerationType.IDENTITY first, then for every sequence above:
+-- ALTER SEQUENCE analysis_id_seq INCREMENT BY 1;
+-- SELECT setval('analysis_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM analysis), false);
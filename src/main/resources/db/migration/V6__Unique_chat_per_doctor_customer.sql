@@ -0,0 +1,54 @@
+-- One chat per (doctor, customer) pair, required by the ON CONFLICT get-or-create in ChatUpsertRepoImpl
+
+-- Merge chats created twice by concurrent requests into the oldest one of each pair
+CREATE TEMP TABLE chat_duplicates AS
+SELECT c.id AS duplicate_id, kept.keep_id
+FROM chats c
+JOIN (
+    SELECT doctors, customers, MIN(id) AS keep_id
+    FROM chats
+    GROUP BY doctors, customers
+    HAVING COUNT(*) > 1
+) kept ON kept.doctors = c.doctors AND kept.customers = c.customers AND c.id <> kept.keep_id;
+
+-- Park the affected sequence numbers on unique negative values, then renumber in send order
+UPDATE messages m
+SET seq = -m.id
+WHERE m.chats IN (SELECT duplicate_id FROM chat_duplicates UNION SELECT keep_id FROM chat_duplicates);
+
+UPDATE messages m
+SET chats = d.keep_id
+FROM chat_duplicates d
+WHERE m.chats = d.duplicate_id;
+
+UPDATE messages m
+SET seq = numbered.seq
+FROM (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY chats ORDER BY send_time, id) AS seq
+    FROM messages
+    WHERE chats IN (SELECT keep_id FROM chat_duplicates)
+) numbered
+WHERE m.id = numbered.id;
+
+UPDATE chats c
+SET last_message_seq = totals.max_seq,
+    customer_read_seq = totals.max_seq,
+    doctor_read_seq = totals.max_seq,
+    last_message_preview = LEFT(latest.text, 200),
+    last_activity = latest.send_time
+FROM (
+    SELECT chats, MAX(seq) AS max_seq FROM messages GROUP BY chats
+) totals
+JOIN messages latest ON latest.chats = totals.chats AND latest.seq = totals.max_seq
+WHERE c.id = totals.chats AND c.id IN (SELECT keep_id FROM chat_duplicates);
+
+DELETE FROM chats WHERE id IN (SELECT duplicate_id FROM chat_duplicates);
+DROP TABLE chat_duplicates;
+
+DROP INDEX IF EXISTS idx_chat_doctor_customer;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_chat_doctor_customer ON chats(doctors, customers);
+
+-- Rollback instructions:
+-- DROP INDEX IF EXISTS uk_chat_doctor_customer;
+-- CREATE INDEX IF NOT EXISTS idx_chat_doctor_customer ON chats(doctors, customers);
+-- (merged duplicate chats are not restored)
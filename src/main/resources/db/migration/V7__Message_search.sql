@@ -0,0 +1,14 @@
+-- Full-text search over chat messages (MessageSearchRepoImpl)
+-- A stored generated column is recomputed by PostgreSQL on every insert and update, so the
+-- tsvector and its GIN index stay current without triggers or reindexing (PostgreSQL 12+).
+-- The 'simple' configuration only lowercases words, with no stemming or stop words, so search
+-- behaves the same whatever language the messages are written in.
+
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(text, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_message_search ON messages USING gin (search_vector);
+
+-- Rollback instructions:
+-- DROP INDEX IF EXISTS idx_message_search;
+-- ALTER TABLE messages DROP COLUMN IF EXISTS search_vector;
@@ -0,0 +1,30 @@
+-- Cold storage for old chat history (MessageArchiveService)
+-- Messages older than the retention age move out of the messages table in blocks of consecutive
+-- seqs; each block is one row holding the deflate-compressed JSON of its messages.
+-- chats.archived_seq is the archive checkpoint: every seq up to it lives in message_archive.
+
+ALTER TABLE chats ADD COLUMN IF NOT EXISTS archived_seq BIGINT NOT NULL DEFAULT 0;
+
+CREATE SEQUENCE IF NOT EXISTS message_archive_id_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS message_archive (
+    id BIGINT PRIMARY KEY DEFAULT nextval('message_archive_id_seq'),
+    chats BIGINT NOT NULL,
+    first_seq BIGINT NOT NULL,
+    last_seq BIGINT NOT NULL,
+    message_count INTEGER NOT NULL,
+    first_send_time TIMESTAMP NOT NULL,
+    last_send_time TIMESTAMP NOT NULL,
+    archived_at TIMESTAMP NOT NULL,
+    payload BYTEA NOT NULL,
+    CONSTRAINT fk_message_archive_chat FOREIGN KEY (chats) REFERENCES chats(id) ON DELETE CASCADE
+);
+
+-- Blocks of a chat never overlap, so last_seq alone orders them and finds the block holding a seq
+CREATE UNIQUE INDEX IF NOT EXISTS uk_message_archive_chat_last_seq ON message_archive(chats, last_seq);
+
+-- Rollback instructions:
+-- Archived messages are lost unless copied back into messages first.
+-- DROP TABLE IF EXISTS message_archive;
+-- DROP SEQUENCE IF EXISTS message_archive_id_seq;
+-- ALTER TABLE chats DROP COLUMN IF EXISTS archived_seq;
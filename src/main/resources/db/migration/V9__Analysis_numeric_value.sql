@@ -0,0 +1,10 @@
+-- Numeric copy of analysis.value for aggregation and charts (AnalysisSeriesRepoImpl)
+-- Stays NULL for results that are not plain numbers ("positive", "<0.1").
+-- Adding a nullable column without a default only touches the catalog, so this does not rewrite the table.
+-- Existing rows are filled in by AnalysisBackfillService in short chunked transactions after startup,
+-- with the same parsing the application applies on every write; nothing is backfilled here.
+
+ALTER TABLE analysis ADD COLUMN IF NOT EXISTS numeric_value DOUBLE PRECISION;
+
+-- Rollback instructions:
+-- ALTER TABLE analysis DROP COLUMN IF EXISTS numeric_value;
@@ -0,0 +1,168 @@
+package health.cache;
+
+import health.models.Chat;
+import health.models.Message;
+import health.models.auth.Role;
+import health.models.dto.MessageDto;
+import health.models.mapper.MessageMapper;
+import health.realtime.MessageCreatedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatTailCacheTest {
+
+    private ChatTailCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatTailCache(new MessageMapper(), 4, 1_000_000);
+    }
+
+    @Test
+    void getBefore_WhenTailLoaded_ShouldServeNewestPage() {
+        // Arrange
+        cache.load(1L, messages(1L, 7, 10), 10);
+
+        // Act
+        var result = cache.getBefore(1L, 10, Long.MAX_VALUE, 3);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(List.of(8L, 9L, 10L), seqs(result.get()));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void getBefore_WhenRangeOlderThanRing_ShouldMiss() {
+        // Arrange
+        cache.load(1L, messages(1L, 7, 10), 10);
+
+        // Act
+        var result = cache.getBefore(1L, 10, 8, 3);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void getAfter_WhenChatMovedOnElsewhere_ShouldMiss() {
+        // Arrange
+        cache.load(1L, messages(1L, 1, 3), 3);
+
+        // Act
+        var stale = cache.getAfter(1L, 4, 2, 10);
+        var fresh = cache.getAfter(1L, 3, 2, 10);
+
+        // Assert
+        assertTrue(stale.isEmpty());
+        assertEquals(List.of(3L), seqs(fresh.orElseThrow()));
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    void append_ShouldWriteThroughAndOverwriteOldest() {
+        // Arrange
+        cache.load(1L, messages(1L, 1, 4), 4);
+
+        // Act
+        cache.append(message(1L, 5));
+        cache.onMessageCreated(new MessageCreatedEvent(Message.builder()
+                .chat(Chat.builder().id(1L).build())
+                .text("six")
+                .role(Role.DOCTOR)
+                .sendTime(Instant.now())
+                .seq(6)
+                .build()));
+
+        // Assert
+        assertEquals(List.of(3L, 4L, 5L, 6L), seqs(cache.getBefore(1L, 6, Long.MAX_VALUE, 4).orElseThrow()));
+        assertTrue(cache.getAll(1L, 6).isEmpty());
+    }
+
+    @Test
+    void append_WhenSeqSkipped_ShouldDropRing() {
+        // Arrange
+        cache.load(1L, messages(1L, 1, 2), 2);
+
+        // Act
+        cache.append(message(1L, 4));
+
+        // Assert
+        assertEquals(0, cache.getChatCount());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void getAll_WhenHistoryFits_ShouldReturnEverything() {
+        // Arrange
+        cache.load(1L, List.of(), 0);
+        cache.append(message(1L, 1));
+
+        // Act
+        var result = cache.getAll(1L, 1);
+
+        // Assert
+        assertEquals(List.of(1L), seqs(result.orElseThrow()));
+    }
+
+    @Test
+    void load_WhenOverBudget_ShouldEvictLeastRecentlyUsed() {
+        // Arrange
+        long ringBytes = MessageRing.OVERHEAD_BYTES + 8 * 4 + 4 * MessageRing.estimate(message(1L, 1));
+        cache = new ChatTailCache(new MessageMapper(), 4, ringBytes * 2);
+        cache.load(1L, messages(1L, 1, 4), 4);
+        cache.load(2L, messages(2L, 1, 4), 4);
+        cache.getAll(1L, 4);
+
+        // Act
+        cache.load(3L, messages(3L, 1, 4), 4);
+
+        // Assert
+        assertEquals(2, cache.getChatCount());
+        assertTrue(cache.getAll(1L, 4).isPresent());
+        assertTrue(cache.getAll(2L, 4).isEmpty());
+        assertTrue(cache.getBytes() <= ringBytes * 2);
+    }
+
+    @Test
+    void evict_ShouldReleaseMemory() {
+        // Arrange
+        cache.load(1L, messages(1L, 1, 3), 3);
+        assertTrue(cache.getBytes() > 0);
+
+        // Act
+        cache.evict(1L);
+
+        // Assert
+        assertEquals(0, cache.getBytes());
+        assertTrue(cache.getAll(1L, 3).isEmpty());
+    }
+
+    private static List<MessageDto> messages(long chatId, long fromSeq, long toSeq) {
+        var messages = new ArrayList<MessageDto>();
+        LongStream.rangeClosed(fromSeq, toSeq).forEach(seq -> messages.add(message(chatId, seq)));
+        return messages;
+    }
+
+    private static MessageDto message(long chatId, long seq) {
+        return MessageDto.builder()
+                .id(seq)
+                .chatId(chatId)
+                .text("message")
+                .role(Role.CUSTOMER)
+                .seq(seq)
+                .build();
+    }
+
+    private static List<Long> seqs(List<MessageDto> messages) {
+        return messages.stream().map(MessageDto::seq).toList();
+    }
+}
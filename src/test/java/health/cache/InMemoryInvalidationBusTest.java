@@ -0,0 +1,82 @@
+package health.cache;
+
+import health.models.EntityType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryInvalidationBusTest {
+
+    private InMemoryInvalidationBus bus;
+    private List<EntityChange> received;
+
+    @BeforeEach
+    void setUp() {
+        bus = new InMemoryInvalidationBus();
+        received = new ArrayList<>();
+        bus.subscribe(EntityType.CHAT, received::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void publish_WithoutTransaction_ShouldNotifyImmediately() {
+        // Act
+        bus.publish(EntityType.CHAT, 5L);
+
+        // Assert
+        assertEquals(List.of(new EntityChange(EntityType.CHAT, 5L)), received);
+    }
+
+    @Test
+    void publish_ShouldOnlyNotifyListenersOfThatType() {
+        // Act
+        bus.publish(EntityType.DOCTOR, 5L);
+
+        // Assert
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void publish_InsideTransaction_ShouldNotifyAfterCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        bus.publish(EntityType.CHAT, 7L);
+
+        // Assert
+        assertTrue(received.isEmpty());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(List.of(new EntityChange(EntityType.CHAT, 7L)), received);
+    }
+
+    @Test
+    void publish_WhenListenerFails_ShouldStillNotifyOthers() {
+        // Arrange
+        List<EntityChange> other = new ArrayList<>();
+        bus.subscribe(EntityType.CHAT, change -> {
+            throw new IllegalStateException("boom");
+        });
+        bus.subscribe(EntityType.CHAT, other::add);
+
+        // Act
+        bus.publish(EntityType.CHAT, 1L);
+
+        // Assert
+        assertEquals(1, received.size());
+        assertEquals(1, other.size());
+    }
+}
@@ -0,0 +1,124 @@
+package health.cache;
+
+import health.models.EntityChangeLog;
+import health.models.EntityType;
+import health.repos.EntityChangeLogRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JdbcInvalidationBusTest {
+
+    @Mock
+    private EntityChangeLogRepo changeLogRepo;
+
+    private JdbcInvalidationBus bus;
+    private List<EntityChange> received;
+
+    @BeforeEach
+    void setUp() {
+        when(changeLogRepo.findMaxId()).thenReturn(10L);
+        bus = new JdbcInvalidationBus(changeLogRepo, 10_000, 24);
+        bus.initCursor();
+        received = new ArrayList<>();
+        bus.subscribe(EntityType.CHAT, received::add);
+    }
+
+    @Test
+    void publish_ShouldWriteChangeLogAndNotifyLocally() {
+        // Act
+        bus.publish(EntityType.CHAT, 3L);
+
+        // Assert
+        ArgumentCaptor<EntityChangeLog> captor = ArgumentCaptor.forClass(EntityChangeLog.class);
+        verify(changeLogRepo).save(captor.capture());
+        assertEquals(EntityType.CHAT, captor.getValue().getEntityType());
+        assertEquals(3L, captor.getValue().getEntityId());
+        assertEquals(List.of(new EntityChange(EntityType.CHAT, 3L)), received);
+    }
+
+    @Test
+    void poll_ShouldDeliverRemoteChangesAndAdvanceCursor() {
+        // Arrange
+        when(changeLogRepo.findTop500ByIdGreaterThanOrderByIdAsc(10L))
+                .thenReturn(List.of(entry(11L, "other-node", 4L), entry(12L, "other-node", 5L)));
+
+        // Act
+        bus.poll();
+
+        // Assert
+        assertEquals(List.of(new EntityChange(EntityType.CHAT, 4L), new EntityChange(EntityType.CHAT, 5L)), received);
+        assertEquals(12L, bus.getCursor());
+        assertEquals(0, bus.getTrackedGaps());
+    }
+
+    @Test
+    void poll_ShouldSkipChangesPublishedByThisNode() {
+        // Arrange
+        bus.publish(EntityType.CHAT, 3L);
+        ArgumentCaptor<EntityChangeLog> captor = ArgumentCaptor.forClass(EntityChangeLog.class);
+        verify(changeLogRepo).save(captor.capture());
+        received.clear();
+        when(changeLogRepo.findTop500ByIdGreaterThanOrderByIdAsc(10L))
+                .thenReturn(List.of(entry(11L, captor.getValue().getOrigin(), 3L)));
+
+        // Act
+        bus.poll();
+
+        // Assert
+        assertTrue(received.isEmpty());
+        assertEquals(11L, bus.getCursor());
+    }
+
+    @Test
+    void poll_WhenIdIsSkipped_ShouldDeliverItOnceCommitted() {
+        // Arrange
+        when(changeLogRepo.findTop500ByIdGreaterThanOrderByIdAsc(10L))
+                .thenReturn(List.of(entry(12L, "other-node", 5L)));
+        when(changeLogRepo.findTop500ByIdGreaterThanOrderByIdAsc(12L)).thenReturn(List.of());
+        bus.poll();
+        when(changeLogRepo.findByIdIn(Set.of(11L))).thenReturn(List.of(entry(11L, "other-node", 4L)));
+
+        // Act
+        bus.poll();
+
+        // Assert
+        assertEquals(List.of(new EntityChange(EntityType.CHAT, 5L), new EntityChange(EntityType.CHAT, 4L)), received);
+        assertEquals(0, bus.getTrackedGaps());
+    }
+
+    @Test
+    void purge_ShouldDeleteRowsOlderThanRetention() {
+        // Arrange
+        when(changeLogRepo.deleteOlderThan(any())).thenReturn(3);
+
+        // Act
+        bus.purge();
+
+        // Assert
+        verify(changeLogRepo).deleteOlderThan(argThat(cutoff -> cutoff.isBefore(Instant.now().minusSeconds(23 * 3600))));
+    }
+
+    private EntityChangeLog entry(long id, String origin, long entityId) {
+        return EntityChangeLog.builder()
+                .id(id)
+                .entityType(EntityType.CHAT)
+                .entityId(entityId)
+                .origin(origin)
+                .changedAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package health.cache;
+
+import health.models.EntityType;
+import health.realtime.ChatParticipant;
+import health.repos.AppointmentRepo;
+import health.repos.ChatRepo;
+import health.repos.DoctorRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OwnershipIndexTest {
+
+    @Mock
+    private DoctorRepo doctorRepo;
+
+    @Mock
+    private ChatRepo chatRepo;
+
+    @Mock
+    private AppointmentRepo appointmentRepo;
+
+    private InMemoryInvalidationBus invalidationBus;
+    private OwnershipIndex ownershipIndex;
+
+    @BeforeEach
+    void setUp() {
+        invalidationBus = new InMemoryInvalidationBus();
+        ownershipIndex = new OwnershipIndex(doctorRepo, chatRepo, appointmentRepo, invalidationBus, 16);
+    }
+
+    @Test
+    void isChatOf_ShouldLoadOwnersOnceForAllParticipants() {
+        // Arrange
+        when(chatRepo.findOwnersById(5L)).thenReturn(Optional.of(owners(1L, 2L, 3L)));
+
+        // Act & Assert
+        assertTrue(ownershipIndex.isChatOf(5L, ChatParticipant.customer(1L)));
+        assertTrue(ownershipIndex.isChatOf(5L, ChatParticipant.doctor(2L)));
+        assertTrue(ownershipIndex.isChatOf(5L, ChatParticipant.clinic(3L)));
+        assertFalse(ownershipIndex.isChatOf(5L, ChatParticipant.customer(2L)));
+        assertFalse(ownershipIndex.isChatOf(5L, ChatParticipant.clinic(1L)));
+        verify(chatRepo, times(1)).findOwnersById(5L);
+        assertEquals(1, ownershipIndex.getMisses());
+        assertEquals(4, ownershipIndex.getHits());
+    }
+
+    @Test
+    void isDoctorOfClinic_WhenDoctorIsMissing_ShouldFailWithoutCaching() {
+        // Arrange
+        when(doctorRepo.findClinicIdById(9L)).thenReturn(Optional.empty());
+
+        // Act
+        boolean first = ownershipIndex.isDoctorOfClinic(9L, 1L);
+        boolean second = ownershipIndex.isDoctorOfClinic(9L, 1L);
+
+        // Assert
+        assertFalse(first);
+        assertFalse(second);
+        verify(doctorRepo, times(2)).findClinicIdById(9L);
+    }
+
+    @Test
+    void isAppointmentOf_AfterPublishedChange_ShouldReload() {
+        // Arrange
+        when(appointmentRepo.findCustomerIdById(4L)).thenReturn(Optional.of(1L), Optional.empty());
+        assertTrue(ownershipIndex.isAppointmentOf(4L, 1L));
+
+        // Act
+        invalidationBus.publish(EntityType.APPOINTMENT, 4L);
+        boolean afterDelete = ownershipIndex.isAppointmentOf(4L, 1L);
+
+        // Assert
+        assertFalse(afterDelete);
+        verify(appointmentRepo, times(2)).findCustomerIdById(4L);
+    }
+
+    @Test
+    void isDoctorOfClinic_WhenIdsCollide_ShouldStayCorrect() {
+        // Arrange
+        when(doctorRepo.findClinicIdById(anyLong())).thenAnswer(invocation -> Optional.of(invocation.<Long>getArgument(0) % 7 + 1));
+
+        // Act & Assert
+        for (int round = 0; round < 2; round++) {
+            for (long doctorId = 1; doctorId <= 100; doctorId++) {
+                assertTrue(ownershipIndex.isDoctorOfClinic(doctorId, doctorId % 7 + 1));
+                assertFalse(ownershipIndex.isDoctorOfClinic(doctorId, doctorId % 7 + 2));
+            }
+        }
+        verify(doctorRepo, atLeast(100)).findClinicIdById(anyLong());
+        verify(doctorRepo, atMost(200)).findClinicIdById(anyLong());
+    }
+
+    private static ChatRepo.Owners owners(long customerId, long doctorId, long clinicId) {
+        return new ChatRepo.Owners() {
+            @Override
+            public long getCustomerId() {
+                return customerId;
+            }
+
+            @Override
+            public long getDoctorId() {
+                return doctorId;
+            }
+
+            @Override
+            public long getClinicId() {
+                return clinicId;
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package health.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSearchQueryTest {
+
+    @Test
+    void parse_ShouldKeepDistinctLowercaseWordsOnly() {
+        // Act
+        var query = MessageSearchQuery.parse("Blood  test, blood's RESULTS: 'x' & y:*").orElseThrow();
+
+        // Assert
+        assertEquals(List.of("blood", "test", "s", "results", "x", "y"), query.terms());
+        assertEquals("blood:* & test:* & s:* & results:* & x:* & y:*", query.toTsQuery());
+    }
+
+    @Test
+    void parse_WithoutWords_ShouldBeEmpty() {
+        // Act & Assert
+        assertTrue(MessageSearchQuery.parse("  !?* ").isEmpty());
+        assertTrue(MessageSearchQuery.parse(null).isEmpty());
+    }
+
+    @Test
+    void parse_ShouldCapNumberOfTerms() {
+        // Act
+        var query = MessageSearchQuery.parse("a b c d e f g h i j k").orElseThrow();
+
+        // Assert
+        assertEquals(MessageSearchQuery.MAX_TERMS, query.terms().size());
+    }
+
+    @Test
+    void highlight_ShouldMarkWordsStartingWithTermsAndEscapeHtml() {
+        // Arrange
+        var query = MessageSearchQuery.parse("test").orElseThrow();
+
+        // Act
+        var result = query.highlight("<b>Tests</b> & retest of testosterone");
+
+        // Assert
+        assertEquals("&lt;b&gt;<mark>Tests</mark>&lt;/b&gt; &amp; retest of <mark>testosterone</mark>", result);
+    }
+
+    @Test
+    void highlight_OfLongText_ShouldCutExcerptAroundFirstMatch() {
+        // Arrange
+        var query = MessageSearchQuery.parse("cholesterol").orElseThrow();
+        var text = "word ".repeat(100) + "cholesterol is fine " + "word ".repeat(100);
+
+        // Act
+        var result = query.highlight(text);
+
+        // Assert
+        assertTrue(result.startsWith("…"));
+        assertTrue(result.endsWith("…"));
+        assertTrue(result.contains("<mark>cholesterol</mark> is fine"));
+        assertTrue(result.length() < MessageSearchQuery.EXCERPT_LENGTH + 20);
+    }
+}
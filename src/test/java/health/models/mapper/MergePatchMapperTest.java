@@ -0,0 +1,75 @@
+package health.models.mapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.Gender;
+import health.models.dto.CustomerDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.Validation;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergePatchMapperTest {
+
+    private static final Set<String> EDITABLE = Set.of("firstName", "lastName", "age", "gender");
+    private static final Set<String> REQUIRED = Set.of("firstName", "lastName");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MergePatchMapper mergePatchMapper;
+    private CustomerDto customer;
+
+    @BeforeEach
+    void setUp() {
+        mergePatchMapper = new MergePatchMapper(objectMapper, Validation.buildDefaultValidatorFactory().getValidator());
+        customer = CustomerDto.builder()
+                .id(1L)
+                .email("customer@example.com")
+                .firstName("John")
+                .lastName("Doe")
+                .age(30)
+                .gender(Gender.MALE)
+                .build();
+    }
+
+    @Test
+    void merge_ShouldFollowRfc7396() throws Exception {
+        // Arrange
+        var target = json("{\"a\":\"b\",\"c\":{\"d\":\"e\",\"f\":\"g\"},\"l\":[1,2]}");
+        var patch = json("{\"a\":\"z\",\"c\":{\"f\":null},\"l\":[3],\"n\":{\"m\":null}}");
+
+        // Act
+        var merged = MergePatchMapper.merge(target, patch);
+
+        // Assert
+        assertEquals(json("{\"a\":\"z\",\"c\":{\"d\":\"e\"},\"l\":[3],\"n\":{}}"), merged);
+        assertEquals(json("{\"a\":\"b\",\"c\":{\"d\":\"e\",\"f\":\"g\"},\"l\":[1,2]}"), target);
+    }
+
+    @Test
+    void apply_ShouldReplaceAndClearPatchedFieldsOnly() throws Exception {
+        // Act
+        var patched = mergePatchMapper.apply(customer, json("{\"lastName\":\"Roe\",\"age\":null}"),
+                CustomerDto.class, EDITABLE, REQUIRED);
+
+        // Assert
+        assertEquals(customer.toBuilder().lastName("Roe").age(null).build(), patched.orElseThrow());
+    }
+
+    @Test
+    void apply_WithInvalidPatch_ShouldBeEmpty() throws Exception {
+        // Act & Assert
+        assertTrue(mergePatchMapper.apply(customer, json("{\"firstName\":null}"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+        assertTrue(mergePatchMapper.apply(customer, json("{\"lastName\":\" \"}"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+        assertTrue(mergePatchMapper.apply(customer, json("{\"email\":\"other@example.com\"}"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+        assertTrue(mergePatchMapper.apply(customer, json("{\"age\":\"old\"}"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+        assertTrue(mergePatchMapper.apply(customer, json("{\"age\":-1}"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+        assertTrue(mergePatchMapper.apply(customer, json("[]"), CustomerDto.class, EDITABLE, REQUIRED).isEmpty());
+    }
+
+    private JsonNode json(String value) throws Exception {
+        return objectMapper.readTree(value);
+    }
+}
@@ -0,0 +1,141 @@
+package health.pubsub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryPubSubTest {
+
+    private List<Runnable> parkedDeliveries;
+    private InMemoryPubSub pubSub;
+
+    @BeforeEach
+    void setUp() {
+        parkedDeliveries = new ArrayList<>();
+        pubSub = new InMemoryPubSub(parkedDeliveries::add, 2);
+    }
+
+    @Test
+    void publish_ShouldDeliverToTopicAndKindSubscribersOnly() {
+        // Arrange
+        pubSub = new InMemoryPubSub(Runnable::run, 100);
+        List<Notification> chatOne = new ArrayList<>();
+        List<Notification> allChats = new ArrayList<>();
+        List<Notification> doctors = new ArrayList<>();
+        pubSub.subscribe(Topic.chat(1L), chatOne::add);
+        pubSub.subscribe(Topic.Kind.CHAT, allChats::add);
+        pubSub.subscribe(Topic.Kind.DOCTOR, doctors::add);
+
+        // Act
+        pubSub.publish(Topic.chat(1L), 5L);
+        pubSub.publish(Topic.chat(2L), 1L);
+
+        // Assert
+        assertEquals(List.of(new Notification(Topic.chat(1L), 5L)), chatOne);
+        assertEquals(2, allChats.size());
+        assertTrue(doctors.isEmpty());
+    }
+
+    @Test
+    void publish_WhileSubscriberIsBusy_ShouldCoalesceToHighestPosition() {
+        // Arrange
+        List<Notification> received = new ArrayList<>();
+        pubSub.subscribe(Topic.Kind.CHAT, received::add);
+
+        // Act
+        pubSub.publish(Topic.chat(1L), 5L);
+        pubSub.publish(Topic.chat(1L), 7L);
+        pubSub.publish(Topic.chat(1L), 6L);
+        parkedDeliveries.forEach(Runnable::run);
+
+        // Assert
+        assertEquals(1, parkedDeliveries.size());
+        assertEquals(List.of(new Notification(Topic.chat(1L), 7L)), received);
+        assertEquals(2, pubSub.getStats().coalesced());
+        assertEquals(1, pubSub.getStats().delivered());
+    }
+
+    @Test
+    void publish_WhenSubscriberFallsTooFarBehind_ShouldDropAndReport() {
+        // Arrange
+        List<Notification> received = new ArrayList<>();
+        pubSub.subscribe(Topic.Kind.CHAT, received::add);
+
+        // Act
+        for (long chatId = 1; chatId <= 5; chatId++) {
+            pubSub.publish(Topic.chat(chatId), 1L);
+        }
+        var stats = pubSub.getStats();
+        parkedDeliveries.forEach(Runnable::run);
+
+        // Assert
+        assertEquals(5, stats.published());
+        assertEquals(3, stats.dropped());
+        assertEquals(2, stats.pending());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    void publish_WithSlowSubscriber_ShouldNotBlockPublisherOrOtherSubscribers() throws Exception {
+        // Arrange
+        pubSub = new InMemoryPubSub(AbstractPubSub.deliveryPool(2), 100);
+        var release = new CountDownLatch(1);
+        var fastReceived = new CountDownLatch(1);
+        pubSub.subscribe(Topic.doctor(1L), notification -> await(release));
+        pubSub.subscribe(Topic.doctor(1L), notification -> fastReceived.countDown());
+
+        // Act
+        long started = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            pubSub.publish(Topic.doctor(1L), i);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // Assert
+        try {
+            assertTrue(fastReceived.await(5, TimeUnit.SECONDS));
+            assertTrue(elapsedMs < 1000, "publishing took " + elapsedMs + " ms");
+        } finally {
+            release.countDown();
+            pubSub.shutdownDelivery();
+        }
+    }
+
+    @Test
+    void cancel_ShouldStopDelivery() {
+        // Arrange
+        List<Notification> received = new ArrayList<>();
+        var subscription = pubSub.subscribe(Topic.chat(1L), received::add);
+        pubSub.publish(Topic.chat(1L), 1L);
+
+        // Act
+        subscription.cancel();
+        parkedDeliveries.forEach(Runnable::run);
+        pubSub.publish(Topic.chat(1L), 2L);
+
+        // Assert
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void topic_ShouldRoundTripThroughItsStringForm() {
+        // Act & Assert
+        assertEquals("doctor:42", Topic.doctor(42L).toString());
+        assertEquals(Topic.chat(7L), Topic.parse("chat:7"));
+        assertThrows(IllegalArgumentException.class, () -> Topic.parse("chat-7"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package health.pubsub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostgresPubSubTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private PostgresPubSub pubSub;
+    private List<Notification> received;
+
+    @BeforeEach
+    void setUp() {
+        pubSub = new PostgresPubSub(jdbcTemplate, new DataSourceProperties(), Runnable::run, 100, 20, 500, 2000);
+        received = new ArrayList<>();
+        pubSub.subscribe(Topic.Kind.CHAT, received::add);
+    }
+
+    @Test
+    void publish_ShouldNotifyLocallyAndBatchOutboundPerTopic() {
+        // Act
+        pubSub.publish(Topic.chat(1L), 4L);
+        pubSub.publish(Topic.chat(1L), 5L);
+        pubSub.publish(Topic.doctor(2L), 100L);
+        pubSub.flush();
+
+        // Assert
+        assertEquals(2, received.size());
+        var payloads = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).queryForObject(eq(PostgresPubSub.NOTIFY_SQL), eq(Long.class), eq(PostgresPubSub.CHANNEL), payloads.capture());
+        var node = pubSub.getNodeId();
+        assertEquals(Set.of(node + "|chat:1|5", node + "|doctor:2|100"), Set.of(payloads.getValue().split(",")));
+        assertEquals(0, pubSub.getStats().pending());
+    }
+
+    @Test
+    void flush_WhenNothingWasPublished_ShouldNotTouchDatabase() {
+        // Act
+        pubSub.flush();
+
+        // Assert
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void flush_WhenNotifyFails_ShouldKeepNotificationsForNextFlush() {
+        // Arrange
+        pubSub.publish(Topic.chat(1L), 4L);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("connection reset"))
+                .thenReturn(1L);
+
+        // Act
+        pubSub.flush();
+        pubSub.flush();
+
+        // Assert
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Long.class), any(), eq(pubSub.getNodeId() + "|chat:1|4"));
+    }
+
+    @Test
+    void receive_ShouldDispatchNotificationsFromOtherNodesOnly() {
+        // Act
+        pubSub.receive(pubSub.getNodeId() + "|chat:1|4");
+        pubSub.receive("other-node|chat:1|5");
+        pubSub.receive("other-node|not-a-topic|5");
+        pubSub.receive("garbage");
+
+        // Assert
+        assertEquals(List.of(new Notification(Topic.chat(1L), 5L)), received);
+    }
+}
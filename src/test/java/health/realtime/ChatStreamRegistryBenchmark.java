@@ -0,0 +1,53 @@
+package health.realtime;
+
+import health.models.mapper.MessageMapper;
+import health.pubsub.PubSub;
+import health.services.MessageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Heap cost of idle chat streams: emitter, subscriber and registry entries for 3 chats each,
+ * measured as the used heap difference after full collections.
+ * <p>
+ * Not part of the regular test run, start it with {@code mvn test -Dtest=ChatStreamRegistryBenchmark}.
+ */
+class ChatStreamRegistryBenchmark {
+
+    private static final int SUBSCRIBERS = 10_000;
+
+    @Test
+    void measureIdleStreamCost() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        var parkedDeliveries = new ArrayList<Runnable>();
+        var registry = new ChatStreamRegistry(new MessageMapper(), mock(MessageService.class), mock(PubSub.class),
+                parkedDeliveries::add, 64);
+        long before = usedHeapAfterGc(memory);
+
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            long customerId = i;
+            registry.register(new SseEmitter(60_000L), ChatParticipant.customer(customerId),
+                    List.of(customerId * 3, customerId * 3 + 1, customerId * 3 + 2));
+        }
+        long after = usedHeapAfterGc(memory);
+
+        assertEquals(SUBSCRIBERS, registry.getSubscriberCount());
+        System.out.printf("idle chat stream: %d bytes per connection (emitter + registry, 3 chats each)%n",
+                (after - before) / SUBSCRIBERS);
+    }
+
+    private long usedHeapAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
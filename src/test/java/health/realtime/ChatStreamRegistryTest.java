@@ -0,0 +1,251 @@
+package health.realtime;
+
+import health.models.*;
+import health.models.auth.Role;
+import health.models.mapper.MessageMapper;
+import health.pubsub.Notification;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.services.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ChatStreamRegistryTest {
+
+    private ChatStreamRegistry registry;
+    private MessageService messageService;
+    private List<Runnable> parkedDeliveries;
+    private Chat chat;
+
+    @BeforeEach
+    void setUp() {
+        messageService = mock(MessageService.class);
+        registry = new ChatStreamRegistry(new MessageMapper(), messageService, mock(PubSub.class), Runnable::run, 4);
+        parkedDeliveries = new ArrayList<>();
+        chat = Chat.builder()
+                .id(1L)
+                .clinic(Clinic.builder().id(3L).build())
+                .doctor(Doctor.builder().id(2L).build())
+                .customer(Customer.builder().id(5L).build())
+                .build();
+    }
+
+    @Test
+    void onMessageCreated_ShouldDeliverOnlyToSubscribersOfThatChat() throws Exception {
+        // Arrange
+        SseEmitter customerEmitter = mock(SseEmitter.class);
+        SseEmitter otherEmitter = mock(SseEmitter.class);
+        registry.register(customerEmitter, ChatParticipant.customer(5L), List.of(1L));
+        registry.register(otherEmitter, ChatParticipant.customer(6L), List.of(9L));
+
+        // Act
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+
+        // Assert
+        verify(customerEmitter).send(any(SseEmitter.SseEventBuilder.class));
+        verify(otherEmitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void onChatCreated_ShouldAttachOpenStreamsOfParticipants() throws Exception {
+        // Arrange
+        SseEmitter doctorEmitter = mock(SseEmitter.class);
+        registry.register(doctorEmitter, ChatParticipant.doctor(2L), List.of());
+
+        // Act
+        registry.onChatCreated(new ChatCreatedEvent(chat));
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+
+        // Assert
+        verify(doctorEmitter).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void onMessageCreated_WhenBufferIsFull_ShouldDropSlowSubscriber() {
+        // Arrange
+        registry = new ChatStreamRegistry(new MessageMapper(), messageService, mock(PubSub.class), parkedDeliveries::add, 2);
+        SseEmitter emitter = mock(SseEmitter.class);
+        var subscriber = registry.register(emitter, ChatParticipant.customer(5L), List.of(1L));
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+        }
+
+        // Assert
+        assertTrue(subscriber.isClosed());
+        assertEquals(0, subscriber.getPendingCount());
+        assertEquals(0, registry.getSubscriberCount());
+        verify(emitter).complete();
+    }
+
+    @Test
+    void register_WhenEmitterCompletes_ShouldUnregister() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        ArgumentCaptor<Runnable> onCompletion = ArgumentCaptor.forClass(Runnable.class);
+        registry.register(emitter, ChatParticipant.customer(5L), List.of(1L));
+        verify(emitter).onCompletion(onCompletion.capture());
+
+        // Act
+        onCompletion.getValue().run();
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+
+        // Assert
+        assertEquals(0, registry.getSubscriberCount());
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void onChatNotification_ShouldDeliverOnlyMessagesNotQueuedYet() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        registry.register(emitter, ChatParticipant.customer(5L), List.of(1L));
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L).toBuilder().seq(3L).build()));
+        when(messageService.getMessagesAfter(1L, 1L, 4)).thenReturn(new SliceImpl<>(List.of(
+                message(1L).toBuilder().seq(2L).build(),
+                message(1L).toBuilder().seq(3L).build())));
+
+        // Act
+        registry.onChatNotification(new Notification(Topic.chat(1L), 3L));
+        registry.onChatNotification(new Notification(Topic.chat(1L), 3L));
+
+        // Assert
+        verify(emitter, times(3)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(messageService, times(1)).getMessagesAfter(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void onChatNotification_WithoutLocalStreams_ShouldNotReadMessages() {
+        // Act
+        registry.onChatNotification(new Notification(Topic.chat(1L), 3L));
+
+        // Assert
+        verifyNoInteractions(messageService);
+    }
+
+    @Test
+    void heartbeat_ShouldWriteToEveryStream() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        registry.register(emitter, ChatParticipant.clinic(3L), List.of(1L));
+
+        // Act
+        registry.heartbeat();
+
+        // Assert
+        verify(emitter).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void replay_ShouldQueueStoredMessages() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        var subscriber = registry.register(emitter, ChatParticipant.customer(5L), List.of(1L));
+
+        // Act
+        registry.replay(subscriber, List.of(message(1L), message(1L)), List.of());
+
+        // Assert
+        verify(emitter, times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void replay_WithIncompleteChats_ShouldSignalMore() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        var subscriber = registry.register(emitter, ChatParticipant.customer(5L), List.of(1L));
+
+        // Act
+        registry.replay(subscriber, List.of(message(1L)), List.of(1L));
+
+        // Assert
+        var events = sentEvents(emitter, 2);
+        assertTrue(events.get(1).contains("event:more"));
+        assertTrue(events.get(1).contains("chatIds=[1]"));
+        assertFalse(subscriber.isClosed());
+    }
+
+    @Test
+    void onMessageCreated_ShouldSendStreamCursorAsEventId() throws Exception {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        var cursor = StreamCursor.parse("1704103200000000~1:1,7:3").orElseThrow();
+        registry.register(emitter, ChatParticipant.customer(5L), List.of(1L, 7L), cursor);
+
+        // Act
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L).toBuilder().seq(2L).build()));
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L).toBuilder().seq(4L).build()));
+
+        // Assert
+        var events = sentEvents(emitter, 2);
+        assertTrue(events.get(0).contains("id:1704103200000000~7:3,1:2\n"));
+        // Seq 3 was not delivered, so resuming has to start after 2
+        assertTrue(events.get(1).contains("id:1704103200000000~7:3,1:2\n"));
+    }
+
+    @Test
+    void register_ThousandsOfIdleStreams_ShouldNotAllocateBuffersOrParkDeliveries() {
+        // Arrange
+        int count = 10_000;
+        registry = new ChatStreamRegistry(new MessageMapper(), messageService, mock(PubSub.class), parkedDeliveries::add, 64);
+        var subscribers = new ArrayList<ChatSubscriber>();
+
+        // Act
+        for (int i = 0; i < count; i++) {
+            long customerId = i;
+            subscribers.add(registry.register(new SseEmitter(60_000L), ChatParticipant.customer(customerId),
+                    List.of(customerId * 3, customerId * 3 + 1, customerId * 3 + 2)));
+        }
+
+        // Assert
+        assertEquals(count, registry.getSubscriberCount());
+        assertTrue(parkedDeliveries.isEmpty());
+        assertTrue(subscribers.stream().noneMatch(ChatSubscriber::hasBuffer));
+    }
+
+    @Test
+    void onMessageCreated_ShouldAllocateBufferOnlyForSubscribersOfThatChat() {
+        // Arrange
+        var subscriber = registry.register(mock(SseEmitter.class), ChatParticipant.customer(5L), List.of(1L));
+        var idle = registry.register(mock(SseEmitter.class), ChatParticipant.customer(6L), List.of(9L));
+
+        // Act
+        registry.onMessageCreated(new MessageCreatedEvent(message(1L)));
+
+        // Assert
+        assertTrue(subscriber.hasBuffer());
+        assertFalse(idle.hasBuffer());
+    }
+
+    private List<String> sentEvents(SseEmitter emitter, int count) throws Exception {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, times(count)).send(events.capture());
+        return events.getAllValues().stream()
+                .map(event -> event.build().stream().map(part -> String.valueOf(part.getData())).reduce("", String::concat))
+                .toList();
+    }
+
+    private Message message(long chatId) {
+        return Message.builder()
+                .id(10L)
+                .chat(chat.toBuilder().id(chatId).build())
+                .role(Role.CUSTOMER)
+                .text("Hello")
+                .sendTime(Instant.parse("2024-01-01T10:00:00Z"))
+                .seq(1L)
+                .build();
+    }
+}
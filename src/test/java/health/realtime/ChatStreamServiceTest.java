@@ -0,0 +1,128 @@
+package health.realtime;
+
+import health.models.Chat;
+import health.models.Message;
+import health.services.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatStreamServiceTest {
+
+    private static final String ORIGIN = "1704103200000000";
+
+    @Mock
+    private ChatStreamRegistry registry;
+
+    @Mock
+    private MessageService messageService;
+
+    @InjectMocks
+    private ChatStreamService chatStreamService;
+
+    private ChatSubscriber subscriber;
+
+    @BeforeEach
+    void setUp() {
+        subscriber = new ChatSubscriber(ChatParticipant.customer(5L), mock(SseEmitter.class), StreamCursor.startingAt(Instant.now()),
+                4, Runnable::run, closed -> {});
+    }
+
+    @Test
+    void open_WithCursor_ShouldReplayBySeqWithinBufferAndListIncompleteChats() {
+        // Arrange
+        var first = message(1L, 3L);
+        var second = message(1L, 4L);
+        var third = message(3L, 7L);
+        when(registry.register(any(), any(), any(), any())).thenReturn(subscriber);
+        when(messageService.getFirstSeqsSince(List.of(3L), Instant.parse("2024-01-01T10:00:00Z"))).thenReturn(Map.of(3L, 7L));
+        when(messageService.getLastSeqs(List.of(1L, 2L, 3L))).thenReturn(Map.of(1L, 4L, 2L, 5L, 3L, 9L));
+        when(messageService.getMessagesAfter(1L, 2L, 3)).thenReturn(new SliceImpl<>(List.of(first, second)));
+        when(messageService.getMessagesAfter(3L, 6L, 1)).thenReturn(new SliceImpl<>(List.of(third), PageRequest.of(0, 1), true));
+
+        // Act
+        chatStreamService.open(ChatParticipant.customer(5L), List.of(1L, 2L, 3L), ORIGIN + "~1:2,2:5,8:1");
+
+        // Assert
+        ArgumentCaptor<StreamCursor> cursor = ArgumentCaptor.forClass(StreamCursor.class);
+        verify(registry).register(any(), eq(ChatParticipant.customer(5L)), eq(List.of(1L, 2L, 3L)), cursor.capture());
+        assertEquals(ORIGIN + "~1:2,2:5,3:6", cursor.getValue().toEventId());
+        verify(registry).replay(subscriber, List.of(first, second, third), Set.of(3L));
+        verify(messageService, never()).getMessagesAfter(eq(2L), anyLong(), anyInt());
+    }
+
+    @Test
+    void open_WithCursorOverThousandsOfChats_ShouldKeepEventIdBoundedAndReplayDroppedChatsFromOrigin() {
+        // Arrange
+        int chats = 5_000;
+        var previous = StreamCursor.parse(ORIGIN).orElseThrow();
+        var chatIds = new ArrayList<Long>();
+        var lastSeqs = new HashMap<Long, Long>();
+        for (long chatId = 1; chatId <= chats; chatId++) {
+            previous.advance(chatId, 10L);
+            chatIds.add(chatId);
+            lastSeqs.put(chatId, 10L);
+        }
+        // Chat 1 moved least recently, so its position was dropped, and it had a message since
+        lastSeqs.put(1L, 11L);
+        var missed = message(1L, 11L);
+        when(registry.register(any(), any(), any(), any())).thenReturn(subscriber);
+        when(messageService.getFirstSeqsSince(anyCollection(), eq(Instant.parse("2024-01-01T10:00:00Z")))).thenReturn(Map.of(1L, 3L));
+        when(messageService.getLastSeqs(chatIds)).thenReturn(lastSeqs);
+        when(messageService.getMessagesAfter(1L, 2L, 3)).thenReturn(new SliceImpl<>(List.of(missed)));
+
+        // Act
+        var eventId = previous.toEventId();
+        chatStreamService.open(ChatParticipant.customer(5L), chatIds, eventId);
+
+        // Assert
+        assertTrue(eventId.length() < 8192, "event id was " + eventId.length() + " characters");
+        assertEquals(eventId, StreamCursor.parse(eventId).orElseThrow().toEventId());
+        ArgumentCaptor<Collection<Long>> unpositioned = ArgumentCaptor.forClass(Collection.class);
+        verify(messageService).getFirstSeqsSince(unpositioned.capture(), any());
+        assertEquals(chats - StreamCursor.MAX_POSITIONS, unpositioned.getValue().size());
+        assertTrue(unpositioned.getValue().contains(1L));
+        verify(registry).replay(subscriber, List.of(missed), Set.of());
+    }
+
+    @Test
+    void open_WithMalformedLastEventId_ShouldStartFreshStream() {
+        // Arrange
+        when(registry.register(any(), any(), any(), any())).thenReturn(subscriber);
+
+        // Act
+        chatStreamService.open(ChatParticipant.customer(5L), List.of(1L), "not-a-cursor");
+
+        // Assert
+        verify(registry, never()).replay(any(), any(), any());
+        verifyNoInteractions(messageService);
+    }
+
+    private Message message(long chatId, long seq) {
+        return Message.builder()
+                .id(chatId * 100 + seq)
+                .chat(Chat.builder().id(chatId).build())
+                .seq(seq)
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package health.realtime;
+
+import health.models.Chat;
+import health.models.Message;
+import health.models.auth.Role;
+import health.models.dto.MessageSyncDto;
+import health.models.mapper.MessageMapper;
+import health.pubsub.Notification;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.services.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageWaitServiceTest {
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private PubSub pubSub;
+
+    private MessageWaitService messageWaitService;
+    private Chat chat;
+
+    @BeforeEach
+    void setUp() {
+        messageWaitService = new MessageWaitService(messageService, new MessageMapper(), pubSub, 25_000, 60_000, 2);
+        chat = Chat.builder().id(1L).build();
+    }
+
+    @Test
+    void await_WhenMessagesAlreadyExist_ShouldCompleteImmediately() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50))
+                .thenReturn(new SliceImpl<>(List.of(message(4L)), PageRequest.of(0, 50), false));
+
+        // Act
+        var result = messageWaitService.await(chat, 3L, 50, null);
+
+        // Assert
+        var page = body(result);
+        assertEquals(1, page.messages().size());
+        assertEquals(4L, page.cursor());
+    }
+
+    @Test
+    void await_WhenNothingNew_ShouldParkUntilNextMessage() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        var result = messageWaitService.await(chat, 3L, 50, null);
+        assertFalse(result.hasResult());
+
+        // Act
+        messageWaitService.onMessageCreated(new MessageCreatedEvent(message(4L)));
+
+        // Assert
+        var page = body(result);
+        assertEquals(4L, page.messages().get(0).seq());
+        assertEquals(4L, page.cursor());
+        verify(messageService, times(1)).getMessagesAfter(chat, 3L, 50);
+    }
+
+    @Test
+    void onMessageCreated_WhenWaiterMissedMessages_ShouldAskClientToFetch() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        var result = messageWaitService.await(chat, 3L, 50, null);
+
+        // Act
+        messageWaitService.onMessageCreated(new MessageCreatedEvent(message(6L)));
+
+        // Assert
+        var page = body(result);
+        assertTrue(page.messages().isEmpty());
+        assertTrue(page.hasMore());
+        assertEquals(3L, page.cursor());
+    }
+
+    @Test
+    void onMessageCreated_ShouldIgnoreOtherChats() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        var result = messageWaitService.await(chat, 3L, 50, null);
+        var other = message(4L);
+        other.setChat(Chat.builder().id(2L).build());
+
+        // Act
+        messageWaitService.onMessageCreated(new MessageCreatedEvent(other));
+
+        // Assert
+        assertFalse(result.hasResult());
+    }
+
+    @Test
+    void onChatNotification_WhenMessageWasSentOnAnotherNode_ShouldAskClientToFetch() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        var waiting = messageWaitService.await(chat, 3L, 50, null);
+        when(messageService.getMessagesAfter(chat, 5L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        var upToDate = messageWaitService.await(chat, 5L, 50, null);
+
+        // Act
+        messageWaitService.onChatNotification(new Notification(Topic.chat(1L), 5L));
+
+        // Assert
+        var page = body(waiting);
+        assertTrue(page.messages().isEmpty());
+        assertTrue(page.hasMore());
+        assertFalse(upToDate.hasResult());
+        verify(messageService, never()).getMessagesAfter(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void await_WhenTooManyRequestsWait_ShouldRejectWithServiceUnavailable() {
+        // Arrange
+        when(messageService.getMessagesAfter(chat, 3L, 50)).thenReturn(new SliceImpl<>(List.of()));
+        messageWaitService.await(chat, 3L, 50, null);
+        messageWaitService.await(chat, 3L, 50, null);
+
+        // Act
+        var result = messageWaitService.await(chat, 3L, 50, null);
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        var response = (ResponseEntity<MessageSyncDto>) result.getResult();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals(2, messageWaitService.getWaiterCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private MessageSyncDto body(DeferredResult<ResponseEntity<MessageSyncDto>> result) {
+        assertTrue(result.hasResult());
+        return ((ResponseEntity<MessageSyncDto>) result.getResult()).getBody();
+    }
+
+    private Message message(long seq) {
+        return Message.builder()
+                .id(seq + 100)
+                .chat(chat)
+                .role(Role.DOCTOR)
+                .text("Reply " + seq)
+                .sendTime(Instant.now())
+                .seq(seq)
+                .build();
+    }
+}
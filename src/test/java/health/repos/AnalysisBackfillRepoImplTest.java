@@ -0,0 +1,55 @@
+package health.repos;
+
+import health.repos.AnalysisBackfillRepo.Checkpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisBackfillRepoImplTest {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private AnalysisBackfillRepoImpl repo;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table analysis_backfill_checkpoint (walk varchar(32) primary key, last_id bigint not null, " +
+                "done boolean not null)");
+        jdbcTemplate.update("insert into analysis_backfill_checkpoint (walk, last_id, done) values ('latest', 0, false)");
+        repo = new AnalysisBackfillRepoImpl(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void saveCheckpoint_ShouldBeReadBackByLockCheckpoint() {
+        // Act
+        repo.saveCheckpoint("latest", new Checkpoint(1200L, false));
+
+        // Assert
+        assertEquals(new Checkpoint(1200L, false), repo.lockCheckpoint("latest"));
+    }
+
+    @Test
+    void saveCheckpoint_WhenWalkHasNoRow_ShouldInsertIt() {
+        // Act
+        var before = repo.lockCheckpoint("canonical_value");
+        repo.saveCheckpoint("canonical_value", new Checkpoint(300L, true));
+
+        // Assert
+        assertEquals(Checkpoint.START, before);
+        assertEquals(new Checkpoint(300L, true), repo.lockCheckpoint("canonical_value"));
+        assertEquals(new Checkpoint(0L, false), repo.lockCheckpoint("latest"));
+    }
+}
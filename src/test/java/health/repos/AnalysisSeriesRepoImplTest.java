@@ -0,0 +1,91 @@
+package health.repos;
+
+import health.models.AnalysisSeriesFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisSeriesRepoImplTest {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private AnalysisSeriesRepoImpl repo;
+
+    @BeforeEach
+    void setUp() {
+        // VALUE is a keyword in H2 but a column name here, as in PostgreSQL
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;NON_KEYWORDS=VALUE", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table analysis (id bigint primary key, customers bigint not null, name varchar(255) not null, " +
+                "value varchar(255) not null, numeric_value double precision, unit varchar(255) not null, " +
+                "canonical_value double precision, canonical_unit varchar(32), date timestamp not null, flag varchar(16))");
+        repo = new AnalysisSeriesRepoImpl(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void getStats_WithAbnormalOnly_ShouldTakeLastValueFromAbnormalResults() {
+        // Arrange
+        var earlier = Instant.parse("2024-01-01T08:00:00Z");
+        var latest = Instant.parse("2024-02-01T08:00:00Z");
+        insert(1L, "Glucose", 7.5, earlier, "HIGH");
+        insert(2L, "Glucose", 3.1, latest, "LOW");
+        // Normal result on the same date with a higher id
+        insert(3L, "Glucose", 5.0, latest, "NORMAL");
+        // Another customer's abnormal result
+        insert(4L, 2L, "Glucose", 9.0, latest, "HIGH");
+
+        // Act
+        var stats = repo.getStats(1L, new AnalysisSeriesFilter(List.of(), null, null, true));
+
+        // Assert
+        assertEquals(1, stats.size());
+        var glucose = stats.get(0);
+        assertEquals("3.1", glucose.lastValue());
+        assertEquals(3.1, glucose.lastNumericValue());
+        assertEquals(latest, glucose.lastDate());
+        assertEquals(2, glucose.count());
+        assertEquals(3.1, glucose.min());
+        assertEquals(7.5, glucose.max());
+    }
+
+    @Test
+    void getStats_WhenResultsShareLatestDate_ShouldTakeHighestId() {
+        // Arrange
+        var latest = Instant.parse("2024-02-01T08:00:00Z");
+        insert(1L, "Glucose", 3.1, latest, "LOW");
+        insert(2L, "Glucose", 5.0, latest, "NORMAL");
+        insert(3L, "Cholesterol", 4.2, latest, "NORMAL");
+
+        // Act
+        var stats = repo.getStats(1L, AnalysisSeriesFilter.ALL);
+
+        // Assert
+        assertEquals(List.of("Cholesterol", "Glucose"), stats.stream().map(stat -> stat.name()).toList());
+        assertEquals("5.0", stats.get(1).lastValue());
+        assertEquals(2, stats.get(1).count());
+    }
+
+    private void insert(long id, String name, double value, Instant date, String flag) {
+        insert(id, 1L, name, value, date, flag);
+    }
+
+    private void insert(long id, long customerId, String name, double value, Instant date, String flag) {
+        jdbcTemplate.update("insert into analysis (id, customers, name, value, numeric_value, unit, canonical_value, canonical_unit, date, flag) " +
+                        "values (?, ?, ?, ?, ?, 'mmol/L', ?, 'mmol/L', ?, ?)",
+                id, customerId, name, Double.toString(value), value, value, Timestamp.from(date), flag);
+    }
+}
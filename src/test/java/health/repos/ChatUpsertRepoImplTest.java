@@ -0,0 +1,135 @@
+package health.repos;
+
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.Doctor;
+import health.models.auth.Role;
+import health.models.auth.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs get-or-create against H2 with the real entity mapping, so the unique (doctors, customers)
+ * index decides which of several concurrent inserts wins.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:mem:chat-upsert;MODE=PostgreSQL;NON_KEYWORDS=VALUE;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=false",
+        "health.pubsub.mode=memory",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ChatUpsertRepoImplTest {
+
+    @Autowired
+    private ChatRepo chatRepository;
+    @Autowired
+    private UserRepo userRepository;
+    @Autowired
+    private ClinicRepo clinicRepository;
+    @Autowired
+    private DoctorRepo doctorRepository;
+    @Autowired
+    private CustomerRepo customerRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Doctor doctor;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        var clinic = clinicRepository.save(Clinic.builder().user(user(Role.CLINIC)).name("Clinic").build());
+        doctor = doctorRepository.save(Doctor.builder()
+                .user(user(Role.DOCTOR))
+                .clinic(clinic)
+                .firstName("Upsert")
+                .lastName("Doctor")
+                .speciality("therapist")
+                .build());
+        customer = customerRepository.save(Customer.builder()
+                .user(user(Role.CUSTOMER))
+                .firstName("Upsert")
+                .lastName("Customer")
+                .build());
+    }
+
+    @Test
+    void getOrCreate_WhenChatExists_ShouldReturnItWithoutCreating() {
+        // Arrange
+        var transaction = new TransactionTemplate(transactionManager);
+        var first = transaction.execute(status -> chatRepository.getOrCreate(doctor, customer));
+
+        // Act
+        var second = transaction.execute(status -> chatRepository.getOrCreate(doctor, customer));
+
+        // Assert
+        assertTrue(first.created());
+        assertFalse(second.created());
+        assertEquals(first.chat().getId(), second.chat().getId());
+        assertEquals(doctor.getClinic().getId(), second.chat().getClinic().getId());
+    }
+
+    @Test
+    void getOrCreate_WhenCalledConcurrently_ShouldCreateExactlyOneChat() throws Exception {
+        // Arrange
+        var transaction = new TransactionTemplate(transactionManager);
+        int threads = 16;
+        var executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        List<Future<ChatUpsertRepo.ChatUpsert>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return transaction.execute(status -> chatRepository.getOrCreate(doctor, customer));
+            }));
+        }
+
+        // Act
+        start.countDown();
+        Set<Long> chatIds = new HashSet<>();
+        int created = 0;
+        for (Future<ChatUpsertRepo.ChatUpsert> result : results) {
+            var upsert = result.get(10, TimeUnit.SECONDS);
+            chatIds.add(upsert.chat().getId());
+            created += upsert.created() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1, chatIds.size());
+        assertEquals(1, created);
+        assertEquals(1, chatRepository.findAll().stream().filter(chat -> chat.getDoctor().getId() == doctor.getId()).count());
+    }
+
+    private User user(Role role) {
+        return userRepository.save(User.builder()
+                .email(UUID.randomUUID() + "@upsert.test")
+                .password("secret")
+                .role(role)
+                .build());
+    }
+}
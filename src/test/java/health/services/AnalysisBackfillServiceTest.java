@@ -0,0 +1,172 @@
+package health.services;
+
+import health.models.UnitConversionCatalog;
+import health.repos.AnalysisBackfillRepo.Checkpoint;
+import health.repos.AnalysisRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalysisBackfillServiceTest {
+
+    @Mock
+    private AnalysisRepo analysisRepo;
+
+    @Mock
+    private UnitConversionService unitConversionService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AnalysisBackfillService backfillService;
+
+    // Checkpoint table
+    private Map<String, Checkpoint> checkpoints;
+
+    @BeforeEach
+    void setUp() {
+        backfillService = new AnalysisBackfillService(analysisRepo, unitConversionService, transactionManager, true, 100, 2);
+        checkpoints = new HashMap<>();
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(analysisRepo.lockCheckpoint(anyString()))
+                .thenAnswer(invocation -> checkpoints.getOrDefault(invocation.<String>getArgument(0), Checkpoint.START));
+        lenient().doAnswer(invocation -> checkpoints.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(analysisRepo).saveCheckpoint(anyString(), any());
+    }
+
+    @Test
+    void backfillChunks_ShouldResumeFromCursorInNextRun() {
+        // Arrange
+        when(analysisRepo.backfillNumericValues(0L, 100)).thenReturn(120L);
+        when(analysisRepo.backfillNumericValues(120L, 100)).thenReturn(260L);
+        when(analysisRepo.backfillNumericValues(260L, 100)).thenReturn(300L);
+
+        // Act
+        boolean firstRun = backfillService.backfillChunks();
+        boolean secondRun = backfillService.backfillChunks();
+
+        // Assert
+        assertFalse(firstRun);
+        assertFalse(secondRun);
+        verify(analysisRepo).backfillNumericValues(260L, 100);
+        verify(transactionManager, times(4)).commit(any());
+    }
+
+    @Test
+    void backfillChunks_AfterRestart_ShouldResumeFromStoredCheckpoint() {
+        // Arrange
+        when(analysisRepo.backfillNumericValues(0L, 100)).thenReturn(120L);
+        when(analysisRepo.backfillNumericValues(120L, 100)).thenReturn(260L);
+        backfillService.backfillChunks();
+        var restarted = new AnalysisBackfillService(analysisRepo, unitConversionService, transactionManager, true, 100, 1);
+
+        // Act
+        restarted.backfillChunks();
+
+        // Assert
+        verify(analysisRepo, times(1)).backfillNumericValues(0L, 100);
+        verify(analysisRepo, times(1)).backfillNumericValues(120L, 100);
+        verify(analysisRepo).backfillNumericValues(260L, 100);
+    }
+
+    @Test
+    void backfillChunks_WhenStoredCheckpointsAreDone_ShouldNotWalkAgain() {
+        // Arrange
+        checkpoints.put(AnalysisBackfillService.NUMERIC_WALK, new Checkpoint(500L, true));
+        checkpoints.put(AnalysisBackfillService.LATEST_WALK, new Checkpoint(500L, true));
+        checkpoints.put(AnalysisBackfillService.CANONICAL_WALK, new Checkpoint(500L, true));
+
+        // Act
+        backfillService.backfillChunks();
+        boolean done = backfillService.backfillChunks();
+
+        // Assert
+        assertTrue(done);
+        verify(analysisRepo, never()).backfillNumericValues(anyLong(), anyInt());
+        verify(analysisRepo, never()).backfillLatest(anyLong(), anyInt());
+        verify(analysisRepo, never()).backfillCanonicalValues(anyLong(), anyInt(), any());
+        verify(analysisRepo, never()).saveCheckpoint(anyString(), any());
+    }
+
+    @Test
+    void backfillChunks_ShouldStoreCheckpointOfEveryChunk() {
+        // Arrange
+        when(analysisRepo.backfillNumericValues(0L, 100)).thenReturn(120L);
+        when(analysisRepo.backfillNumericValues(120L, 100)).thenReturn(120L);
+
+        // Act
+        backfillService.backfillChunks();
+
+        // Assert
+        var inOrder = inOrder(analysisRepo);
+        inOrder.verify(analysisRepo).saveCheckpoint(AnalysisBackfillService.NUMERIC_WALK, new Checkpoint(120L, false));
+        inOrder.verify(analysisRepo).saveCheckpoint(AnalysisBackfillService.NUMERIC_WALK, new Checkpoint(120L, true));
+        assertEquals(new Checkpoint(120L, true), checkpoints.get(AnalysisBackfillService.NUMERIC_WALK));
+    }
+
+    @Test
+    void backfill_WhenTableIsExhausted_ShouldStopRunning() {
+        // Arrange
+        when(analysisRepo.backfillNumericValues(0L, 100)).thenReturn(0L);
+
+        // Act
+        backfillService.backfill();
+        backfillService.backfill();
+
+        // Assert
+        verify(analysisRepo, times(1)).backfillNumericValues(anyLong(), anyInt());
+    }
+
+    @Test
+    void backfillChunks_WhenNumericValuesAreDone_ShouldWalkLatestIndex() {
+        // Arrange
+        when(analysisRepo.backfillNumericValues(0L, 100)).thenReturn(0L);
+        when(analysisRepo.backfillLatest(0L, 100)).thenReturn(80L);
+        when(analysisRepo.backfillLatest(80L, 100)).thenReturn(80L);
+
+        // Act
+        boolean firstRun = backfillService.backfillChunks();
+        boolean secondRun = backfillService.backfillChunks();
+
+        // Assert
+        assertFalse(firstRun);
+        assertTrue(secondRun);
+        verify(analysisRepo, times(1)).backfillNumericValues(anyLong(), anyInt());
+        verify(analysisRepo).backfillLatest(80L, 100);
+    }
+
+    @Test
+    void backfillChunks_WhenLatestIndexIsDone_ShouldConvertWithCatalog() {
+        // Arrange
+        var catalog = new UnitConversionCatalog(List.of(new UnitConversionCatalog.Conversion("Glucose", "mg/dL", "mmol/L", 0.0555)));
+        when(unitConversionService.getCatalog()).thenReturn(catalog);
+        when(analysisRepo.backfillCanonicalValues(0L, 100, catalog)).thenReturn(40L);
+        when(analysisRepo.backfillCanonicalValues(40L, 100, catalog)).thenReturn(40L);
+
+        // Act
+        boolean firstRun = backfillService.backfillChunks();
+        boolean secondRun = backfillService.backfillChunks();
+
+        // Assert
+        assertFalse(firstRun);
+        assertTrue(secondRun);
+        var inOrder = inOrder(analysisRepo);
+        inOrder.verify(analysisRepo).backfillNumericValues(0L, 100);
+        inOrder.verify(analysisRepo).backfillLatest(0L, 100);
+        inOrder.verify(analysisRepo).backfillCanonicalValues(40L, 100, catalog);
+    }
+}
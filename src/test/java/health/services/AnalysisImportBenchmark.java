@@ -0,0 +1,215 @@
+package health.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.cache.InMemoryInvalidationBus;
+import health.models.Analysis;
+import health.models.Customer;
+import health.models.auth.Role;
+import health.models.auth.User;
+import health.repos.AnalysisRepo;
+import health.repos.CustomerRepo;
+import health.repos.UserRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput and peak heap of importing 1M analysis rows from CSV and NDJSON, with the real batch inserts,
+ * {@code analysis_latest} upserts and one transaction per batch on H2. The database is file-backed, so stored
+ * rows do not count as heap. {@link #parserOnly} repeats the runs with a repository that only counts rows,
+ * which isolates reading, validation, normalization, flagging and batching.
+ * <p>
+ * Not part of the regular test run, start it with {@code mvn test -Dtest=AnalysisImportBenchmark}.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/analysis-import-benchmark;MODE=PostgreSQL;NON_KEYWORDS=VALUE;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=false",
+        "health.invalidation.bus=memory",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "logging.level.org.hibernate.engine.transaction.internal.TransactionImpl=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({AnalysisService.class, ReferenceRangeService.class, UnitConversionService.class, InMemoryInvalidationBus.class})
+class AnalysisImportBenchmark {
+
+    private static final long ROWS = 1_000_000;
+    private static final int NAMES = 20;
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    @Autowired
+    private AnalysisService analysisService;
+    @Autowired
+    private ReferenceRangeService referenceRangeService;
+    @Autowired
+    private UnitConversionService unitConversionService;
+    @Autowired
+    private CustomerRepo customerRepository;
+    @Autowired
+    private UserRepo userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importMillionRows() {
+        var service = new AnalysisImportService(analysisService, customerRepository, new ObjectMapper(), transactionManager, 1000, 1000);
+        var csvCustomer = customer();
+        var csv = run(service, csvCustomer, AnalysisImportService.Format.CSV);
+        assertStored(csvCustomer);
+        var ndjsonCustomer = customer();
+        var ndjson = run(service, ndjsonCustomer, AnalysisImportService.Format.NDJSON);
+        assertStored(ndjsonCustomer);
+        System.out.printf("csv:    %9.0f rows/s, peak heap %5.1f MB (inserts, latest upserts, transactions)%n",
+                csv.throughput(), csv.peakHeapMegabytes());
+        System.out.printf("ndjson: %9.0f rows/s, peak heap %5.1f MB (inserts, latest upserts, transactions)%n",
+                ndjson.throughput(), ndjson.peakHeapMegabytes());
+    }
+
+    @Test
+    void parserOnly() {
+        var stored = new AtomicLong();
+        var service = new AnalysisImportService(new AnalysisService(countingRepo(stored), referenceRangeService, unitConversionService,
+                new InMemoryInvalidationBus()), null, new ObjectMapper(), new NoOpTransactionManager(), 1000, 1000);
+        var customer = Customer.builder().id(1L).build();
+        var csv = run(service, customer, AnalysisImportService.Format.CSV);
+        var ndjson = run(service, customer, AnalysisImportService.Format.NDJSON);
+        assertEquals(2 * ROWS, stored.get());
+        System.out.printf("csv, parser only:    %9.0f rows/s, peak heap %5.1f MB (no database)%n",
+                csv.throughput(), csv.peakHeapMegabytes());
+        System.out.printf("ndjson, parser only: %9.0f rows/s, peak heap %5.1f MB (no database)%n",
+                ndjson.throughput(), ndjson.peakHeapMegabytes());
+    }
+
+    private Result run(AnalysisImportService service, Customer customer, AnalysisImportService.Format format) {
+        var upload = format == AnalysisImportService.Format.CSV
+                ? new GeneratedUpload("name,value,unit,date\n", row ->
+                        "Glucose " + row % NAMES + "," + (4 + row % 30 / 10.0) + ",mmol/L," + START.plusSeconds(row * 60) + "\n")
+                : new GeneratedUpload("", row ->
+                        "{\"name\":\"Glucose " + row % NAMES + "\",\"value\":\"" + (4 + row % 30 / 10.0)
+                                + "\",\"unit\":\"mmol/L\",\"date\":\"" + START.plusSeconds(row * 60) + "\"}\n");
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long started = System.nanoTime();
+        var report = service.importForCustomer(customer, upload, format, StandardCharsets.UTF_8);
+        long elapsed = System.nanoTime() - started;
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+        assertEquals(ROWS, report.imported());
+        return new Result(ROWS * 1e9 / elapsed, peakHeap / (1024.0 * 1024.0));
+    }
+
+    private record Result(double throughput, double peakHeapMegabytes) {
+    }
+
+    private void assertStored(Customer customer) {
+        assertEquals(ROWS, jdbcTemplate.queryForObject("select count(*) from analysis where customers = ?", Long.class, customer.getId()));
+        assertEquals(NAMES, jdbcTemplate.queryForObject("select count(*) from analysis_latest where customers = ?", Long.class, customer.getId()));
+    }
+
+    private Customer customer() {
+        return customerRepository.save(Customer.builder()
+                .user(userRepository.save(User.builder()
+                        .email(UUID.randomUUID() + "@import.test")
+                        .password("secret")
+                        .role(Role.CUSTOMER)
+                        .build()))
+                .firstName("Import")
+                .lastName("Customer")
+                .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AnalysisRepo countingRepo(AtomicLong stored) {
+        return (AnalysisRepo) Proxy.newProxyInstance(AnalysisRepo.class.getClassLoader(), new Class<?>[]{AnalysisRepo.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "insertAll" -> stored.addAndGet(((List<Analysis>) args[0]).size());
+                    case "updateLatest" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Upload of {@link #ROWS} rows produced one line at a time, so the benchmark never holds the file.
+     */
+    private static class GeneratedUpload extends InputStream {
+
+        private final LongFunction<String> row;
+        private byte[] line;
+        private int position;
+        private long next;
+
+        GeneratedUpload(String header, LongFunction<String> row) {
+            this.row = row;
+            this.line = header.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            while (position == line.length) {
+                if (next == ROWS) {
+                    return -1;
+                }
+                line = row.apply(next++).getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            int count = Math.min(length, line.length - position);
+            System.arraycopy(line, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    private static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
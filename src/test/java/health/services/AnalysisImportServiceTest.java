@@ -0,0 +1,218 @@
+package health.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.Analysis;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.Gender;
+import health.models.dto.AnalysisImportErrorDto;
+import health.models.dto.AnalysisImportReportDto;
+import health.repos.CustomerRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnalysisImportServiceTest {
+
+    @Mock
+    private AnalysisService analysisService;
+
+    @Mock
+    private CustomerRepo customerRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AnalysisImportService importService;
+    private List<List<Analysis>> batches;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        importService = new AnalysisImportService(analysisService, customerRepository, new ObjectMapper(),
+                transactionManager, 2, 2);
+        batches = new ArrayList<>();
+        customer = Customer.builder().id(1L).build();
+    }
+
+    @Test
+    void importForCustomer_WithCsv_ShouldInsertValidRowsInBatchesAndReportInvalidOnes() {
+        // Arrange
+        storeBatches();
+        var csv = """
+                name;unit;value;date
+                Glucose;mmol/L;"5,4";2024-03-01T08:00:00Z
+                Glucose;mmol/L;6.1;2024-03-02
+                ;mmol/L;6.1;2024-03-02
+                Glucose;mmol/L;6.1;yesterday
+
+                "Vitamin \"\"D\"\"";ng/mL;31;2024-03-03T10:15:30+03:00
+                """;
+
+        // Act
+        var report = importService.importForCustomer(customer, upload(csv), AnalysisImportService.Format.CSV, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(5L, report.rows());
+        assertEquals(3L, report.imported());
+        assertEquals(2L, report.rejected());
+        assertEquals(List.of(
+                new AnalysisImportErrorDto(4L, "name is required"),
+                new AnalysisImportErrorDto(5L, "date is not an ISO-8601 date or date-time")), report.errors());
+        assertEquals(List.of(2, 1), batches.stream().map(List::size).toList());
+        var first = batches.get(0).get(0);
+        assertEquals("5,4", first.getValue());
+        assertEquals(Instant.parse("2024-03-01T08:00:00Z"), first.getDate());
+        assertEquals(1L, first.getCustomer().getId());
+        assertEquals(Instant.parse("2024-03-02T00:00:00Z"), batches.get(0).get(1).getDate());
+        assertEquals("Vitamin \"D\"", batches.get(1).get(0).getName());
+        assertEquals(Instant.parse("2024-03-03T07:15:30Z"), batches.get(1).get(0).getDate());
+    }
+
+    @Test
+    void importForCustomer_WithNdjson_ShouldParseEveryLineAsObject() {
+        // Arrange
+        storeBatches();
+        var ndjson = """
+                {"name":"Glucose","value":5.4,"unit":"mmol/L","date":"2024-03-01T08:00:00Z"}
+                {"name":"Glucose","value":"6.1"
+                ["Glucose"]
+                {"name":"Glucose","value":"6.1","unit":"mmol/L","date":"2024-03-02","customerId":1}
+                {"name":"Glucose","value":"6.1","unit":"mmol/L","date":"2024-03-02","customerId":2}
+                """;
+
+        // Act
+        var report = importService.importForCustomer(customer, upload(ndjson), AnalysisImportService.Format.NDJSON, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(5L, report.rows());
+        assertEquals(2L, report.imported());
+        assertEquals(3L, report.rejected());
+        assertTrue(report.errors().get(0).message().startsWith("Invalid JSON"));
+        assertEquals(new AnalysisImportErrorDto(3L, "Row is not a JSON object"), report.errors().get(1));
+        assertTrue(report.errorsTruncated());
+        assertEquals("5.4", batches.get(0).get(0).getValue());
+    }
+
+    @Test
+    void importForCustomer_WhenHeaderMissesColumn_ShouldRejectFile() {
+        // Act
+        var report = importService.importForCustomer(customer, upload("name,value,date\nGlucose,5.4,2024-03-01\n"),
+                AnalysisImportService.Format.CSV, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(0L, report.rows());
+        assertEquals(List.of(new AnalysisImportErrorDto(1L, "Header has no unit column")), report.errors());
+        verifyNoInteractions(analysisService, transactionManager);
+    }
+
+    @Test
+    void importForCustomer_WhenBatchFails_ShouldRejectItsRowsAndContinue() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        doThrow(new DataIntegrityViolationException("value too long"))
+                .doAnswer(invocation -> null)
+                .when(analysisService).insertAnalyses(anyList());
+        var csv = """
+                name,value,unit,date
+                A,1,u,2024-03-01
+                B,2,u,2024-03-01
+                C,3,u,2024-03-01
+                """;
+
+        // Act
+        var report = importService.importForCustomer(customer, upload(csv), AnalysisImportService.Format.CSV, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(1L, report.imported());
+        assertEquals(2L, report.rejected());
+        assertEquals(List.of(2L, 3L), report.errors().stream().map(AnalysisImportErrorDto::line).toList());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void importForCustomer_WhenErrorsExceedLimit_ShouldTruncateReport() {
+        // Arrange
+        var csv = "name,value,unit,date\n" + ",1,u,2024-03-01\n".repeat(3) + "A,1,u,2024-03-01,\"open\n";
+
+        // Act
+        AnalysisImportReportDto report = importService.importForCustomer(customer, upload(csv),
+                AnalysisImportService.Format.CSV, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(4L, report.rejected());
+        assertEquals(2, report.errors().size());
+        assertTrue(report.errorsTruncated());
+    }
+
+    @Test
+    void importForClinic_ShouldOnlyAcceptCustomersOfClinic() {
+        // Arrange
+        storeBatches();
+        var clinic = Clinic.builder().id(7L).build();
+        var member = Customer.builder().id(1L).gender(Gender.FEMALE).build();
+        when(customerRepository.isCustomerOfClinic(7L, 1L)).thenReturn(true);
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(member));
+        when(customerRepository.isCustomerOfClinic(7L, 2L)).thenReturn(false);
+        var csv = """
+                customer_id,name,value,unit,date
+                1,Glucose,5.4,mmol/L,2024-03-01
+                2,Glucose,5.4,mmol/L,2024-03-01
+                1,Glucose,5.9,mmol/L,2024-03-02
+                ,Glucose,5.9,mmol/L,2024-03-02
+                """;
+
+        // Act
+        var report = importService.importForClinic(clinic, upload(csv), AnalysisImportService.Format.CSV, StandardCharsets.UTF_8);
+
+        // Assert
+        assertEquals(2L, report.imported());
+        assertEquals(List.of(
+                new AnalysisImportErrorDto(3L, "Customer 2 is not a customer of the clinic"),
+                new AnalysisImportErrorDto(5L, "customerId is required")), report.errors());
+        verify(customerRepository, times(1)).isCustomerOfClinic(7L, 1L);
+        verify(customerRepository, never()).findById(2L);
+        assertSame(member, batches.get(0).get(0).getCustomer());
+    }
+
+    @Test
+    void format_ShouldResolveFromContentType() {
+        // Assert
+        assertEquals(Optional.of(AnalysisImportService.Format.CSV),
+                AnalysisImportService.Format.of(MediaType.parseMediaType("text/csv;charset=windows-1251")));
+        assertEquals(Optional.of(AnalysisImportService.Format.NDJSON),
+                AnalysisImportService.Format.of(MediaType.parseMediaType("application/x-ndjson")));
+        assertEquals(Optional.empty(), AnalysisImportService.Format.of(MediaType.APPLICATION_JSON));
+        assertEquals("windows-1251",
+                AnalysisImportService.charsetOf(MediaType.parseMediaType("text/csv;charset=windows-1251")).name());
+    }
+
+    private void storeBatches() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        doAnswer(invocation -> batches.add(new ArrayList<>(invocation.<List<Analysis>>getArgument(0))))
+                .when(analysisService).insertAnalyses(anyList());
+    }
+
+    private static ByteArrayInputStream upload(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
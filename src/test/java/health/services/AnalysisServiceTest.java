@@ -1,7 +1,14 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.Analysis;
+import health.models.AnalysisFlag;
+import health.models.AnalysisSeriesFilter;
 import health.models.Customer;
+import health.models.EntityType;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AnalysisPointDto;
+import health.models.dto.AnalysisSeriesDto;
 import health.repos.AnalysisRepo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,11 +18,17 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,6 +37,15 @@ class AnalysisServiceTest {
     @Mock
     private AnalysisRepo analysisRepo;
 
+    @Mock
+    private ReferenceRangeService referenceRangeService;
+
+    @Mock
+    private UnitConversionService unitConversionService;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private AnalysisService analysisService;
 
@@ -72,6 +94,84 @@ class AnalysisServiceTest {
         verify(analysisRepo).getAnalysisesByCustomer(customer);
     }
 
+    @Test
+    void forEachSeries_ShouldGroupConsecutiveRowsByName() {
+        // Arrange
+        var filter = new AnalysisSeriesFilter(List.of("Cholesterol", "Glucose"), null, null);
+        var now = Instant.now();
+        doAnswer(invocation -> {
+            Consumer<AnalysisDto> consumer = invocation.getArgument(2);
+            consumer.accept(new AnalysisDto(2L, 1L, "Cholesterol", "4.2", 4.2, "mmol/L", 4.2, "mmol/L", now, AnalysisFlag.NORMAL));
+            consumer.accept(new AnalysisDto(1L, 1L, "Glucose", "5.5", 5.5, "mmol/L", 5.5, "mmol/L", now.minusSeconds(60), null));
+            consumer.accept(new AnalysisDto(3L, 1L, "Glucose", "110", 110.0, "mg/dL", 6.105, "mmol/L", now, null));
+            return null;
+        }).when(analysisRepo).forEachAnalysis(eq(1L), eq(filter), any());
+        List<AnalysisSeriesDto> series = new ArrayList<>();
+
+        // Act
+        analysisService.forEachSeries(customer, filter, series::add);
+
+        // Assert
+        assertEquals(2, series.size());
+        assertEquals("Cholesterol", series.get(0).name());
+        assertEquals(List.of(new AnalysisPointDto(2L, "4.2", 4.2, 4.2, now, AnalysisFlag.NORMAL)), series.get(0).values());
+        assertEquals("Glucose", series.get(1).name());
+        assertEquals("mmol/L", series.get(1).unit());
+        assertEquals("mmol/L", series.get(1).canonicalUnit());
+        assertEquals(List.of(5.5, 6.105), series.get(1).values().stream().map(AnalysisPointDto::canonicalValue).toList());
+    }
+
+    @Test
+    void forEachSeries_WhenNothingMatches_ShouldProduceNoSeries() {
+        // Arrange
+        List<AnalysisSeriesDto> series = new ArrayList<>();
+
+        // Act
+        analysisService.forEachSeries(customer, AnalysisSeriesFilter.ALL, series::add);
+
+        // Assert
+        assertTrue(series.isEmpty());
+        verify(analysisRepo).forEachAnalysis(eq(1L), eq(AnalysisSeriesFilter.ALL), any());
+    }
+
+    @Test
+    void getDownsampledSeries_ShouldKeepEndpointsAndPeaks() {
+        // Arrange
+        var start = Instant.parse("2015-01-01T00:00:00Z");
+        doAnswer(invocation -> {
+            Consumer<AnalysisDto> consumer = invocation.getArgument(2);
+            consumer.accept(new AnalysisDto(0L, 1L, "Glucose", "positive", null, "mmol/L", null, null, start, null));
+            for (long i = 1; i <= 1000; i++) {
+                double value = i == 500 ? 30.0 : 5.0;
+                consumer.accept(new AnalysisDto(i, 1L, "Glucose", Double.toString(value), value, "mmol/L", value, "mmol/L",
+                        start.plusSeconds(i * 86400), null));
+            }
+            consumer.accept(new AnalysisDto(1001L, 1L, "Glucose", "90", 90.0, "mg/L", null, null, start.plusSeconds(1001 * 86400), null));
+            return null;
+        }).when(analysisRepo).forEachAnalysis(eq(1L), eq(new AnalysisSeriesFilter(List.of("Glucose"), null, null)), any());
+
+        // Act
+        var result = analysisService.getDownsampledSeries(customer, "Glucose", null, null, 50);
+
+        // Assert
+        assertTrue(result.isPresent());
+        var ids = result.get().values().stream().map(AnalysisPointDto::id).toList();
+        assertEquals(50, ids.size());
+        assertEquals(1L, ids.get(0));
+        assertEquals(1000L, ids.get(ids.size() - 1));
+        assertTrue(ids.contains(500L));
+        assertEquals("mmol/L", result.get().canonicalUnit());
+    }
+
+    @Test
+    void getDownsampledSeries_WhenNoNumericValues_ShouldReturnEmpty() {
+        // Act
+        var result = analysisService.getDownsampledSeries(customer, "Glucose", null, null, 500);
+
+        // Assert
+        assertTrue(result.isEmpty());
+    }
+
     @Test
     void addAnalysis_ShouldSaveAndReturnAnalyses() {
         // Arrange
@@ -86,6 +186,58 @@ class AnalysisServiceTest {
         verify(analysisRepo).saveAll(analysesToAdd);
     }
 
+    @Test
+    void addAnalysis_ShouldNormalizeFlagAndUpdateLatestIndexAfterFlush() {
+        // Arrange
+        List<Analysis> analysesToAdd = List.of(analysis1, analysis2);
+        when(analysisRepo.saveAll(analysesToAdd)).thenReturn(analysesToAdd);
+
+        // Act
+        analysisService.addAnalysis(analysesToAdd);
+
+        // Assert
+        var inOrder = inOrder(unitConversionService, referenceRangeService, analysisRepo);
+        inOrder.verify(unitConversionService).normalize(analysis1);
+        inOrder.verify(referenceRangeService).flag(analysis1);
+        inOrder.verify(unitConversionService).normalize(analysis2);
+        inOrder.verify(referenceRangeService).flag(analysis2);
+        inOrder.verify(analysisRepo).saveAll(analysesToAdd);
+        inOrder.verify(analysisRepo).flush();
+        inOrder.verify(analysisRepo).updateLatest(analysesToAdd);
+        verify(invalidationBus).publish(EntityType.ANALYSIS, 1L);
+    }
+
+    @Test
+    void insertAnalyses_ShouldNormalizeFlagAndUpdateLatestIndex() {
+        // Arrange
+        List<Analysis> analysesToAdd = List.of(analysis1, analysis2);
+
+        // Act
+        analysisService.insertAnalyses(analysesToAdd);
+
+        // Assert
+        var inOrder = inOrder(unitConversionService, referenceRangeService, analysisRepo);
+        inOrder.verify(unitConversionService).normalize(analysis2);
+        inOrder.verify(referenceRangeService).flag(analysis2);
+        inOrder.verify(analysisRepo).insertAll(analysesToAdd);
+        inOrder.verify(analysisRepo).updateLatest(analysesToAdd);
+        verify(invalidationBus).publish(EntityType.ANALYSIS, 1L);
+    }
+
+    @Test
+    void getLatest_ShouldReadLatestIndex() {
+        // Arrange
+        var latest = List.of(new AnalysisDto(2L, 1L, "Glucose", "6.1", 6.1, "mmol/L", 6.1, "mmol/L", Instant.now(), AnalysisFlag.HIGH));
+        when(analysisRepo.getLatest(1L)).thenReturn(latest);
+
+        // Act
+        List<AnalysisDto> result = analysisService.getLatest(customer);
+
+        // Assert
+        assertEquals(latest, result);
+        verify(analysisRepo, never()).getAnalysisesByCustomer(any());
+    }
+
     @Test
     void getAnalysisById_WhenAnalysisExists_ShouldReturnAnalysis() {
         // Arrange
@@ -114,11 +266,39 @@ class AnalysisServiceTest {
     }
 
     @Test
-    void deleteAnalysis_ShouldDeleteAnalysis() {
+    void deleteAnalyses_ShouldUpdateLatestIndexThenDeleteOwnedOnce() {
+        // Arrange
+        when(analysisRepo.deleteOwned(eq(1L), any())).thenReturn(2);
+
         // Act
-        analysisService.deleteAnalysis(analysis1);
+        int deleted = analysisService.deleteAnalyses(customer, List.of(1L, 2L, 1L, 999L));
 
         // Assert
-        verify(analysisRepo).delete(analysis1);
+        assertEquals(2, deleted);
+        var inOrder = inOrder(analysisRepo);
+        inOrder.verify(analysisRepo).removeFromLatest(1L, Set.of(1L, 2L, 999L));
+        inOrder.verify(analysisRepo).deleteOwned(1L, Set.of(1L, 2L, 999L));
+        verify(analysisRepo, never()).findById(any());
+        verify(invalidationBus).publish(EntityType.ANALYSIS, 1L);
+    }
+
+    @Test
+    void deleteAnalyses_WhenNothingOwned_ShouldNotPublish() {
+        // Act
+        int deleted = analysisService.deleteAnalyses(customer, List.of(999L));
+
+        // Assert
+        assertEquals(0, deleted);
+        verifyNoInteractions(invalidationBus);
+    }
+
+    @Test
+    void deleteAnalyses_WithTooManyIds_ShouldThrow() {
+        // Arrange
+        var ids = LongStream.rangeClosed(1, AnalysisService.MAX_DELETE_IDS + 1).boxed().toList();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> analysisService.deleteAnalyses(customer, ids));
+        verifyNoInteractions(analysisRepo);
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.*;
 import health.repos.AppointmentRepo;
 import org.junit.jupiter.api.BeforeEach;
@@ -23,6 +24,9 @@ class AppointmentServiceTest {
     @Mock
     private AppointmentRepo appointmentRepository;
 
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private AppointmentService appointmentService;
 
@@ -113,6 +117,19 @@ class AppointmentServiceTest {
         verify(appointmentRepository).getAppointmentsByDoctorAndCustomer(doctor, customer);
     }
 
+    @Test
+    void hasAppointment_ShouldOnlyCheckExistence() {
+        // Arrange
+        when(appointmentRepository.existsByDoctorAndCustomer(doctor, customer)).thenReturn(true);
+
+        // Act
+        boolean result = appointmentService.hasAppointment(doctor, customer);
+
+        // Assert
+        assertTrue(result);
+        verify(appointmentRepository, never()).getAppointmentsByDoctorAndCustomer(any(), any());
+    }
+
     @Test
     void getAppointmentsByClinic_ShouldReturnAppointmentsForClinic() {
         // Arrange
@@ -188,11 +205,12 @@ class AppointmentServiceTest {
     }
 
     @Test
-    void deleteAppointment_ShouldDeleteAppointment() {
+    void deleteAppointment_ShouldDeleteAppointmentAndPublishChange() {
         // Act
         appointmentService.deleteAppointment(appointment);
 
         // Assert
         verify(appointmentRepository).delete(appointment);
+        verify(invalidationBus).publish(EntityType.APPOINTMENT, appointment.getId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package health.services;
+
+import health.cache.InMemoryInvalidationBus;
+import health.pubsub.InMemoryPubSub;
+import health.models.Analysis;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.Doctor;
+import health.models.auth.Role;
+import health.models.auth.User;
+import health.repos.ClinicRepo;
+import health.repos.CustomerRepo;
+import health.repos.DoctorRepo;
+import health.repos.UserRepo;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counts JDBC statements needed for bulk analysis uploads and timetable generation, on H2 with the
+ * real entity mapping. Inserts are only batched when ids do not come from IDENTITY columns.
+ * <p>
+ * Not part of the regular test run, start it with {@code mvn test -Dtest=BulkInsertBenchmark}.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bulk;MODE=PostgreSQL;NON_KEYWORDS=VALUE",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "health.pubsub.mode=memory",
+        "health.invalidation.bus=memory",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "logging.level.org.hibernate.stat=WARN",
+        "logging.level.org.hibernate.engine.transaction.internal.TransactionImpl=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({AnalysisService.class, ReferenceRangeService.class, UnitConversionService.class, TimetableService.class,
+        InMemoryPubSub.class, InMemoryInvalidationBus.class})
+class BulkInsertBenchmark {
+
+    private static final int ANALYSES = 5_000;
+    private static final int SLOTS = 2_000;
+
+    @Autowired
+    private AnalysisService analysisService;
+    @Autowired
+    private TimetableService timetableService;
+    @Autowired
+    private UserRepo userRepository;
+    @Autowired
+    private CustomerRepo customerRepository;
+    @Autowired
+    private ClinicRepo clinicRepository;
+    @Autowired
+    private DoctorRepo doctorRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    void bulkAnalysisUpload() {
+        var customer = customerRepository.save(Customer.builder()
+                .user(user(Role.CUSTOMER))
+                .firstName("Bulk")
+                .lastName("Customer")
+                .build());
+        var now = Instant.now();
+        List<Analysis> analyses = new ArrayList<>(ANALYSES);
+        for (int i = 0; i < ANALYSES; i++) {
+            analyses.add(Analysis.builder()
+                    .customer(customer)
+                    .name("analysis-" + (i % 40))
+                    .value(Integer.toString(i))
+                    .unit("mg/dL")
+                    .date(now.minus(i, ChronoUnit.HOURS))
+                    .build());
+        }
+
+        statistics.clear();
+        long started = System.nanoTime();
+        analysisService.addAnalysis(analyses);
+        report("analysis upload", ANALYSES, started);
+        assertEquals(ANALYSES, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    void timetableGeneration() {
+        var clinic = clinicRepository.save(Clinic.builder().user(user(Role.CLINIC)).name("Bulk clinic").build());
+        var doctor = doctorRepository.save(Doctor.builder()
+                .user(user(Role.DOCTOR))
+                .clinic(clinic)
+                .firstName("Bulk")
+                .lastName("Doctor")
+                .speciality("therapist")
+                .build());
+        var start = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        List<Instant> workingHours = new ArrayList<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            workingHours.add(start.plus(i, ChronoUnit.HOURS));
+        }
+
+        statistics.clear();
+        long started = System.nanoTime();
+        timetableService.addOrUpdateFromRawTimetable(workingHours, doctor);
+        report("timetable generation", SLOTS, started);
+        assertEquals(SLOTS, statistics.getEntityInsertCount());
+    }
+
+    private User user(Role role) {
+        return userRepository.save(User.builder()
+                .email(UUID.randomUUID() + "@bulk.test")
+                .password("secret")
+                .role(role)
+                .build());
+    }
+
+    private void report(String name, int rows, long started) {
+        System.out.printf("%-20s %6d rows, %6d statements prepared, %4d transactions, %6.1f ms%n",
+                name, rows, statistics.getPrepareStatementCount(), statistics.getTransactionCount(),
+                (System.nanoTime() - started) / 1e6);
+    }
+}
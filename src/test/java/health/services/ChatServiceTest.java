@@ -1,19 +1,31 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.*;
+import health.models.auth.Role;
+import health.models.dto.InboxEntryDto;
+import health.models.dto.ReadReceiptDto;
+import health.realtime.ChatCreatedEvent;
+import health.realtime.ChatReadEvent;
 import health.repos.ChatRepo;
+import health.repos.ChatUpsertRepo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +34,12 @@ class ChatServiceTest {
     @Mock
     private ChatRepo chatRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private ChatService chatService;
 
@@ -131,6 +149,30 @@ class ChatServiceTest {
         verify(chatRepository).getChatByClinic(clinic);
     }
 
+    @Test
+    void getChatIdsByDoctor_ShouldReturnIdsOnly() {
+        // Arrange
+        when(chatRepository.getChatIdsByDoctor(doctor)).thenReturn(List.of(1L, 2L));
+
+        // Act
+        List<Long> result = chatService.getChatIdsByDoctor(doctor);
+
+        // Assert
+        assertEquals(List.of(1L, 2L), result);
+    }
+
+    @Test
+    void saveOrUpdateChat_WhenChatExists_ShouldNotPublishCreation() {
+        // Arrange
+        when(chatRepository.save(chat)).thenReturn(chat);
+
+        // Act
+        chatService.saveOrUpdateChat(chat);
+
+        // Assert
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
     @Test
     void getChatById_WhenChatExists_ShouldReturnChat() {
         // Arrange
@@ -184,14 +226,97 @@ class ChatServiceTest {
         assertEquals(customer, result.getCustomer());
         assertEquals(clinic, result.getClinic());
         verify(chatRepository).save(newChat);
+        verify(eventPublisher).publishEvent(new ChatCreatedEvent(result));
+    }
+
+    @Test
+    void saveOrUpdateChat_WhenNew_ShouldStampLastActivity() {
+        // Arrange
+        Chat newChat = Chat.builder()
+                .doctor(doctor)
+                .customer(customer)
+                .clinic(clinic)
+                .build();
+        when(chatRepository.save(newChat)).thenReturn(newChat);
+
+        // Act
+        chatService.saveOrUpdateChat(newChat);
+
+        // Assert
+        assertNotNull(newChat.getLastActivity());
+    }
+
+    @Test
+    void getInboxByCustomer_ShouldClampPageSize() {
+        // Arrange
+        var entry = InboxEntryDto.builder().chatId(1L).unreadCount(3L).build();
+        var pageable = PageRequest.of(0, ChatService.MAX_INBOX_PAGE_SIZE);
+        when(chatRepository.getInboxByCustomer(customer, pageable))
+                .thenReturn(new SliceImpl<>(List.of(entry), pageable, false));
+
+        // Act
+        var result = chatService.getInboxByCustomer(customer, -1, 10_000);
+
+        // Assert
+        assertEquals(List.of(entry), result.getContent());
+        verify(chatRepository).getInboxByCustomer(customer, pageable);
+    }
+
+    @Test
+    void markRead_ByDoctor_ShouldPublishReceiptWithStoredPosition() {
+        // Arrange
+        when(chatRepository.markReadByDoctor(1L, 10L)).thenReturn(7L);
+
+        // Act
+        ReadReceiptDto result = chatService.markRead(chat, Role.DOCTOR, 10L);
+
+        // Assert
+        assertEquals(new ReadReceiptDto(1L, Role.DOCTOR, 7L), result);
+        verify(chatRepository, never()).markReadByCustomer(anyLong(), anyLong());
+        verify(eventPublisher).publishEvent(new ChatReadEvent(result));
+    }
+
+    @Test
+    void markRead_ByClinic_ShouldBeRejected() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> chatService.markRead(chat, Role.CLINIC, 1L));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void getOrCreateChat_WhenCreated_ShouldPublishCreation() {
+        // Arrange
+        when(chatRepository.getOrCreate(doctor, customer)).thenReturn(new ChatUpsertRepo.ChatUpsert(chat, true));
+
+        // Act
+        Chat result = chatService.getOrCreateChat(doctor, customer);
+
+        // Assert
+        assertEquals(chat, result);
+        verify(eventPublisher).publishEvent(new ChatCreatedEvent(chat));
+    }
+
+    @Test
+    void getOrCreateChat_WhenExisting_ShouldNotPublishCreation() {
+        // Arrange
+        when(chatRepository.getOrCreate(doctor, customer)).thenReturn(new ChatUpsertRepo.ChatUpsert(chat, false));
+
+        // Act
+        Chat result = chatService.getOrCreateChat(doctor, customer);
+
+        // Assert
+        assertEquals(chat, result);
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+        verify(chatRepository, never()).save(any());
     }
 
     @Test
-    void deleteChat_ShouldDeleteChat() {
+    void deleteChat_ShouldDeleteChatAndPublishChange() {
         // Act
         chatService.deleteChat(chat);
 
         // Assert
         verify(chatRepository).delete(chat);
+        verify(invalidationBus).publish(EntityType.CHAT, chat.getId());
     }
 }
\ No newline at end of file
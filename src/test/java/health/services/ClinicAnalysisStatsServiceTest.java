@@ -0,0 +1,151 @@
+package health.services;
+
+import health.cache.EntityChange;
+import health.cache.InvalidationBus;
+import health.models.AnalysisFlag;
+import health.models.Clinic;
+import health.models.EntityType;
+import health.models.UnitConversionCatalog;
+import health.models.dto.AnalysisHistogramBinDto;
+import health.repos.AnalysisRepo;
+import health.repos.AnalysisSeriesRepo;
+import health.repos.CustomerRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClinicAnalysisStatsServiceTest {
+
+    private static final Instant JANUARY = Instant.parse("2024-01-15T08:00:00Z");
+    private static final Instant FEBRUARY = Instant.parse("2024-02-15T08:00:00Z");
+
+    @Mock
+    private CustomerRepo customerRepo;
+
+    @Mock
+    private AnalysisRepo analysisRepo;
+
+    @Mock
+    private UnitConversionService unitConversionService;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    private ClinicAnalysisStatsService statsService;
+    private Consumer<EntityChange> invalidationListener;
+    private Clinic clinic;
+
+    @BeforeEach
+    void setUp() {
+        statsService = new ClinicAnalysisStatsService(customerRepo, analysisRepo, unitConversionService, invalidationBus,
+                2, 2, 100, 600000, 10);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<EntityChange>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(invalidationBus).subscribe(eq(EntityType.ANALYSIS), listener.capture());
+        invalidationListener = listener.getValue();
+        clinic = Clinic.builder().id(7L).build();
+        lenient().when(unitConversionService.getCatalog()).thenReturn(new UnitConversionCatalog(List.of(
+                new UnitConversionCatalog.Conversion("Glucose", "mg/dL", "mmol/L", 0.0555))));
+        lenient().when(customerRepo.getCustomerIdsOfClinic(7L)).thenReturn(new long[]{1, 2, 3, 4, 5});
+        // Customer n has the values n and 10 * n in January and 100 * n in February, the last one flagged high
+        lenient().doAnswer(invocation -> {
+            long[] customerIds = invocation.getArgument(0);
+            AnalysisSeriesRepo.CanonicalValueConsumer consumer = invocation.getArgument(5);
+            for (long customerId : customerIds) {
+                consumer.accept(customerId, JANUARY.toEpochMilli(), customerId, AnalysisFlag.NORMAL);
+                consumer.accept(customerId, JANUARY.toEpochMilli(), 10 * customerId, AnalysisFlag.NORMAL);
+                consumer.accept(customerId, FEBRUARY.toEpochMilli(), 100 * customerId, AnalysisFlag.HIGH);
+            }
+            return null;
+        }).when(analysisRepo).forEachCanonicalValue(any(), eq("Glucose"), eq("mmol/L"), isNull(), isNull(), any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        statsService.shutdown();
+    }
+
+    @Test
+    void getStats_ShouldMergeChunkSummaries() {
+        // Act
+        var stats = statsService.getStats(clinic, "Glucose", null, null, null, 4).orElseThrow();
+
+        // Assert
+        verify(analysisRepo, times(3)).forEachCanonicalValue(any(), eq("Glucose"), eq("mmol/L"), isNull(), isNull(), any());
+        assertEquals("mmol/L", stats.unit());
+        assertEquals(5, stats.customers());
+        assertEquals(15, stats.count());
+        assertEquals(1.0, stats.min());
+        assertEquals(500.0, stats.max());
+        assertEquals(111.0, stats.mean(), 1e-9);
+        assertEquals(10, stats.flags().get(AnalysisFlag.NORMAL));
+        assertEquals(5, stats.flags().get(AnalysisFlag.HIGH));
+        assertEquals(0, stats.flags().get(AnalysisFlag.LOW));
+        assertEquals(15, stats.histogram().stream().mapToLong(AnalysisHistogramBinDto::count).sum());
+        assertEquals(4, stats.histogram().size());
+        assertEquals(List.of(YearMonth.of(2024, 1), YearMonth.of(2024, 2)), stats.months().stream().map(m -> m.month()).toList());
+        assertEquals(10, stats.months().get(0).count());
+        assertEquals(300.0, stats.months().get(1).percentiles().p50(), 1e-9);
+        assertEquals(300.0, stats.months().get(1).mean(), 1e-9);
+    }
+
+    @Test
+    void getStats_ShouldBeCachedUntilAnalysesOfCustomerChange() {
+        // Arrange
+        statsService.getStats(clinic, "Glucose", null, null, null, 20);
+
+        // Act
+        statsService.getStats(clinic, "Glucose", null, null, null, 20);
+        invalidationListener.accept(new EntityChange(EntityType.ANALYSIS, 42L));
+        statsService.getStats(clinic, "Glucose", null, null, null, 20);
+        invalidationListener.accept(new EntityChange(EntityType.ANALYSIS, 3L));
+        var stats = statsService.getStats(clinic, "Glucose", null, null, null, 20);
+
+        // Assert
+        assertEquals(15, stats.orElseThrow().count());
+        verify(customerRepo, times(2)).getCustomerIdsOfClinic(7L);
+        verify(analysisRepo, times(6)).forEachCanonicalValue(any(), any(), any(), any(), any(), any());
+        assertEquals(1, statsService.size());
+    }
+
+    @Test
+    void getStats_WithoutValues_ShouldOnlyCount() {
+        // Arrange
+        when(customerRepo.getCustomerIdsOfClinic(8L)).thenReturn(new long[0]);
+
+        // Act
+        var stats = statsService.getStats(Clinic.builder().id(8L).build(), "Glucose", null, null, null, 20).orElseThrow();
+
+        // Assert
+        assertEquals(0, stats.count());
+        assertNull(stats.mean());
+        assertNull(stats.percentiles());
+        assertTrue(stats.histogram().isEmpty());
+    }
+
+    @Test
+    void getStats_WhenNameHasNoCanonicalUnit_ShouldNeedUnit() {
+        // Act
+        var withoutUnit = statsService.getStats(clinic, "Blood type", null, null, null, 20);
+
+        // Assert
+        assertTrue(withoutUnit.isEmpty());
+        verifyNoInteractions(customerRepo, analysisRepo);
+    }
+}
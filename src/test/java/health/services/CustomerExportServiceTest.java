@@ -0,0 +1,193 @@
+package health.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.AnalysisFlag;
+import health.models.AnalysisSeriesFilter;
+import health.models.Chat;
+import health.models.Clinic;
+import health.models.Customer;
+import health.models.Doctor;
+import health.models.Message;
+import health.models.auth.Role;
+import health.models.auth.User;
+import health.models.dto.AnalysisDto;
+import health.models.dto.AppointmentDto;
+import health.models.dto.MessageDto;
+import health.models.mapper.ChatMapper;
+import health.models.mapper.CustomerMapper;
+import health.models.mapper.MessageMapper;
+import health.repos.AnalysisRepo;
+import health.repos.AppointmentRepo;
+import health.repos.ChatRepo;
+import health.repos.MessageArchiveRepo;
+import health.repos.MessageRepo;
+import health.utils.MessageBlockCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerExportServiceTest {
+
+    @Mock
+    private AnalysisRepo analysisRepo;
+
+    @Mock
+    private AppointmentRepo appointmentRepo;
+
+    @Mock
+    private ChatRepo chatRepo;
+
+    @Mock
+    private MessageRepo messageRepo;
+
+    @Mock
+    private MessageArchiveRepo messageArchiveRepo;
+
+    private CustomerExportService exportService;
+    private Customer customer;
+    private Clinic clinic;
+    private Chat chat;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new CustomerExportService(analysisRepo, appointmentRepo, chatRepo, messageRepo, messageArchiveRepo,
+                new CustomerMapper(), new ChatMapper(), new MessageMapper(), new ObjectMapper().findAndRegisterModules());
+        now = Instant.parse("2024-03-01T08:00:00Z");
+        customer = Customer.builder()
+                .id(1L)
+                .user(User.builder().id(10L).email("customer@example.com").build())
+                .firstName("John")
+                .lastName("Doe")
+                .build();
+        clinic = Clinic.builder().id(7L).build();
+        chat = chat(5L, clinic, 2L);
+    }
+
+    @Test
+    void exportForCustomer_ShouldWriteEveryFile() throws IOException {
+        // Arrange
+        doAnswer(invocation -> {
+            Consumer<AnalysisDto> consumer = invocation.getArgument(2);
+            consumer.accept(new AnalysisDto(1L, 1L, "Glucose", "5,4", 5.4, "mmol/L", 5.4, "mmol/L", now, AnalysisFlag.NORMAL));
+            consumer.accept(new AnalysisDto(2L, 1L, "Blood \"type\"", "A+", null, "-", null, null, now, null));
+            return null;
+        }).when(analysisRepo).forEachAnalysis(eq(1L), eq(AnalysisSeriesFilter.ALL), any());
+        doAnswer(invocation -> {
+            invocation.<Consumer<AppointmentDto>>getArgument(2).accept(AppointmentDto.builder().id(3L).customerId(1L).start(now).build());
+            return null;
+        }).when(appointmentRepo).forEachAppointment(eq(1L), eq(null), any());
+        when(chatRepo.getChatsByCustomer(customer)).thenReturn(List.of(chat));
+        streamMessages(chat, 3L);
+
+        // Act
+        var files = export(out -> exportService.exportForCustomer(customer, out));
+
+        // Assert
+        assertEquals(List.of("customer.json", "analyses.csv", "appointments.ndjson", "chats.ndjson", "messages.ndjson"),
+                List.copyOf(files.keySet()));
+        assertTrue(files.get("customer.json").contains("\"email\":\"customer@example.com\""));
+        assertEquals(List.of(
+                CustomerExportService.ANALYSIS_HEADER,
+                "1,Glucose,\"5,4\",mmol/L,2024-03-01T08:00:00Z,5.4,5.4,mmol/L,NORMAL",
+                "2,\"Blood \"\"type\"\"\",A+,-,2024-03-01T08:00:00Z,,,,"), files.get("analyses.csv").lines().toList());
+        assertEquals(1, files.get("appointments.ndjson").lines().count());
+        assertTrue(files.get("chats.ndjson").startsWith("{\"id\":5,"));
+        var messages = files.get("messages.ndjson").lines().toList();
+        assertEquals(3, messages.size());
+        assertTrue(messages.get(0).contains("\"seq\":1"));
+        assertTrue(messages.get(2).contains("\"seq\":3"));
+        assertTrue(files.get("messages.ndjson").endsWith("\n"));
+    }
+
+    @Test
+    void exportForClinic_ShouldOnlyWriteConversationWithClinic() throws IOException {
+        // Arrange
+        var otherChat = chat(6L, Clinic.builder().id(8L).build(), 0L);
+        when(chatRepo.getChatsByCustomer(customer)).thenReturn(List.of(otherChat, chat));
+        streamMessages(chat, 3L);
+
+        // Act
+        var files = export(out -> exportService.exportForClinic(clinic, customer, out));
+
+        // Assert
+        assertEquals(List.of("appointments.ndjson", "chats.ndjson", "messages.ndjson"), List.copyOf(files.keySet()));
+        assertEquals(1, files.get("chats.ndjson").lines().count());
+        verify(appointmentRepo).forEachAppointment(eq(1L), eq(7L), any());
+        verify(messageRepo, never()).forEachMessage(eq(6L), anyLong(), any());
+        verifyNoInteractions(analysisRepo);
+    }
+
+    @Test
+    void csvField_ShouldQuoteOnlyWhenNeeded() {
+        // Assert
+        assertEquals("", CustomerExportService.csvField(null));
+        assertEquals("mmol/L", CustomerExportService.csvField("mmol/L"));
+        assertEquals("\"a\nb\"", CustomerExportService.csvField("a\nb"));
+        assertEquals("\"say \"\"hi\"\"\"", CustomerExportService.csvField("say \"hi\""));
+    }
+
+    // Messages up to the archive checkpoint come from one archived block, the next one from the table
+    private void streamMessages(Chat chat, long liveSeq) {
+        var archived = List.of(message(chat, 1L), message(chat, 2L));
+        doAnswer(invocation -> {
+            invocation.<Consumer<byte[]>>getArgument(1).accept(MessageBlockCodec.encode(archived));
+            return null;
+        }).when(messageArchiveRepo).forEachBlockPayload(eq(chat.getId()), any());
+        doAnswer(invocation -> {
+            invocation.<Consumer<MessageDto>>getArgument(2).accept(new MessageMapper().mapToDto(message(chat, liveSeq)));
+            return null;
+        }).when(messageRepo).forEachMessage(eq(chat.getId()), eq(chat.getArchivedSeq()), any());
+    }
+
+    private Chat chat(long id, Clinic clinic, long archivedSeq) {
+        return Chat.builder()
+                .id(id)
+                .clinic(clinic)
+                .doctor(Doctor.builder().id(2L).firstName("Anna").lastName("Smith").build())
+                .customer(customer)
+                .archivedSeq(archivedSeq)
+                .build();
+    }
+
+    private Message message(Chat chat, long seq) {
+        return Message.builder().id(100 + seq).chat(chat).text("Message " + seq).role(Role.CUSTOMER)
+                .sendTime(now.plusSeconds(seq)).seq(seq).build();
+    }
+
+    private static Map<String, String> export(ExportCall call) throws IOException {
+        var out = new ByteArrayOutputStream();
+        call.export(out);
+        Map<String, String> files = new LinkedHashMap<>();
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8)) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                files.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+
+    private interface ExportCall {
+        void export(ByteArrayOutputStream out) throws IOException;
+    }
+}
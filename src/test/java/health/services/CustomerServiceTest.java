@@ -1,18 +1,25 @@
 package health.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import health.models.Customer;
 import health.models.auth.User;
+import health.models.mapper.CustomerMapper;
+import health.models.mapper.MergePatchMapper;
 import health.repos.CustomerRepo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import javax.validation.Validation;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -21,6 +28,13 @@ class CustomerServiceTest {
     @Mock
     private CustomerRepo customerRepo;
 
+    @Spy
+    private CustomerMapper customerMapper = new CustomerMapper();
+
+    @Spy
+    private MergePatchMapper mergePatchMapper = new MergePatchMapper(new ObjectMapper(),
+            Validation.buildDefaultValidatorFactory().getValidator());
+
     @InjectMocks
     private CustomerService customerService;
 
@@ -117,4 +131,46 @@ class CustomerServiceTest {
         assertEquals(updatedCustomer, result);
         verify(customerRepo).save(updatedCustomer);
     }
-}
\ No newline at end of file
+
+    @Test
+    void patchCustomer_ShouldWriteChangedProfile() throws Exception {
+        // Arrange
+        when(customerRepo.save(customer)).thenReturn(customer);
+
+        // Act
+        var result = customerService.patchCustomer(customer, json("{\"lastName\":\"Roe\",\"age\":null,\"height\":180}"));
+
+        // Assert
+        assertSame(customer, result.orElseThrow());
+        assertEquals("John", customer.getFirstName());
+        assertEquals("Roe", customer.getLastName());
+        assertNull(customer.getAge());
+        assertEquals(180, customer.getHeight());
+        verify(customerRepo).save(customer);
+    }
+
+    @Test
+    void patchCustomer_WhenNothingChanges_ShouldNotWrite() throws Exception {
+        // Act
+        var result = customerService.patchCustomer(customer, json("{\"firstName\":\"John\",\"age\":30}"));
+
+        // Assert
+        assertSame(customer, result.orElseThrow());
+        verify(customerRepo, never()).save(any());
+    }
+
+    @Test
+    void patchCustomer_WithInvalidPatch_ShouldLeaveCustomerUnchanged() throws Exception {
+        // Act
+        var result = customerService.patchCustomer(customer, json("{\"lastName\":\"Roe\",\"age\":0}"));
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertEquals("Doe", customer.getLastName());
+        verify(customerRepo, never()).save(any());
+    }
+
+    private static JsonNode json(String value) throws Exception {
+        return new ObjectMapper().readTree(value);
+    }
+}
@@ -1,7 +1,9 @@
 package health.services;
 
+import health.cache.InvalidationBus;
 import health.models.Clinic;
 import health.models.Doctor;
+import health.models.EntityType;
 import health.models.auth.User;
 import health.repos.DoctorRepo;
 import org.junit.jupiter.api.BeforeEach;
@@ -24,6 +26,9 @@ class DoctorServiceTest {
     @Mock
     private DoctorRepo doctorRepository;
 
+    @Mock
+    private InvalidationBus invalidationBus;
+
     @InjectMocks
     private DoctorService doctorService;
 
@@ -100,6 +105,7 @@ class DoctorServiceTest {
         // Assert
         assertEquals(updatedDoctor, result);
         verify(doctorRepository).save(updatedDoctor);
+        verify(invalidationBus).publish(EntityType.DOCTOR, 1L);
     }
 
     @Test
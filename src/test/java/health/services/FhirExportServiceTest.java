@@ -0,0 +1,168 @@
+package health.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import health.models.AnalysisFlag;
+import health.models.Clinic;
+import health.models.dto.AnalysisDto;
+import health.models.dto.CustomerDto;
+import health.models.mapper.FhirMapper;
+import health.repos.AnalysisRepo;
+import health.repos.CustomerRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FhirExportServiceTest {
+
+    @Mock
+    private CustomerRepo customerRepo;
+
+    @Mock
+    private AnalysisRepo analysisRepo;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private FhirExportService exportService;
+    private Clinic clinic;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new FhirExportService(customerRepo, analysisRepo, new FhirMapper(),
+                new ObjectMapper().findAndRegisterModules(), transactionManager, directory, 1, 2, 3600000);
+        exportService.init();
+        clinic = Clinic.builder().id(7L).build();
+        now = Instant.parse("2024-03-01T08:00:00Z");
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportService.shutdown();
+    }
+
+    @Test
+    void start_ShouldWritePatientsAndObservationsInChunks() throws Exception {
+        // Arrange
+        when(customerRepo.countCustomersOfClinic(7L)).thenReturn(3L);
+        when(customerRepo.getCustomersOfClinic(7L, 0L, 2)).thenReturn(List.of(customer(1L), customer(2L)));
+        when(customerRepo.getCustomersOfClinic(7L, 2L, 2)).thenReturn(List.of(customer(4L)));
+        when(customerRepo.getCustomersOfClinic(7L, 4L, 2)).thenReturn(List.of());
+        doAnswer(invocation -> {
+            Consumer<AnalysisDto> consumer = invocation.getArgument(1);
+            consumer.accept(new AnalysisDto(10L, 1L, "Glucose", "5.4", 5.4, "mmol/L", 5.4, "mmol/L", now, AnalysisFlag.NORMAL));
+            consumer.accept(new AnalysisDto(11L, 2L, "Blood type", "A+", null, null, null, null, now, null));
+            return null;
+        }).when(analysisRepo).forEachAnalysisOfCustomers(eq(List.of(1L, 2L)), any());
+
+        // Act
+        var job = exportService.start(clinic, "http://localhost/clinic/fhir/$export").orElseThrow();
+        job.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(FhirExportService.Status.COMPLETED, job.getStatus());
+        assertEquals(100, job.getProgress());
+        assertEquals(3, job.getCount(FhirExportService.ResourceType.PATIENT));
+        assertEquals(2, job.getCount(FhirExportService.ResourceType.OBSERVATION));
+        var patients = read(FhirExportService.ResourceType.PATIENT, job.getId());
+        assertEquals(3, patients.size());
+        assertTrue(patients.get(0).startsWith("{\"resourceType\":\"Patient\",\"id\":\"1\""));
+        var observations = read(FhirExportService.ResourceType.OBSERVATION, job.getId());
+        assertEquals(2, observations.size());
+        assertTrue(observations.get(0).contains("\"valueQuantity\":{\"value\":5.4,\"unit\":\"mmol/L\"}"));
+        assertTrue(observations.get(0).contains("\"code\":\"N\""));
+        assertTrue(observations.get(1).contains("\"valueString\":\"A+\""));
+        verify(analysisRepo).forEachAnalysisOfCustomers(eq(List.of(4L)), any());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void start_WhenClinicHasRunningJob_ShouldReturnEmpty() throws Exception {
+        // Arrange
+        var blocked = new CountDownLatch(1);
+        when(customerRepo.countCustomersOfClinic(7L)).thenAnswer(invocation -> {
+            blocked.await(5, TimeUnit.SECONDS);
+            return 0L;
+        });
+        var job = exportService.start(clinic, "request").orElseThrow();
+
+        // Act
+        var second = exportService.start(clinic, "request");
+
+        // Assert
+        assertTrue(second.isEmpty());
+        blocked.countDown();
+        job.getCompletion().get(5, TimeUnit.SECONDS);
+        assertTrue(exportService.start(clinic, "request").isPresent());
+    }
+
+    @Test
+    void delete_WhenRunning_ShouldCancelAndRemoveFiles() throws Exception {
+        // Arrange
+        var blocked = new CountDownLatch(1);
+        when(customerRepo.countCustomersOfClinic(7L)).thenAnswer(invocation -> {
+            blocked.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+        var job = exportService.start(clinic, "request").orElseThrow();
+
+        // Act
+        assertTrue(exportService.delete(clinic, job.getId()));
+        blocked.countDown();
+        job.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(FhirExportService.Status.CANCELLED, job.getStatus());
+        assertFalse(Files.exists(directory.resolve(job.getId())));
+        assertTrue(exportService.getFile(clinic, job.getId(), FhirExportService.ResourceType.PATIENT).isEmpty());
+        verify(customerRepo, never()).getCustomersOfClinic(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void getJob_OfOtherClinic_ShouldReturnEmpty() throws Exception {
+        // Arrange
+        var job = exportService.start(clinic, "request").orElseThrow();
+        job.getCompletion().get(5, TimeUnit.SECONDS);
+
+        // Act
+        var result = exportService.getJob(Clinic.builder().id(8L).build(), job.getId());
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertTrue(exportService.getFile(clinic, job.getId(), FhirExportService.ResourceType.PATIENT).isPresent());
+    }
+
+    private List<String> read(FhirExportService.ResourceType type, String jobId) throws IOException {
+        var file = exportService.getFile(clinic, jobId, type).orElseThrow();
+        return Files.readAllLines(file);
+    }
+
+    private static CustomerDto customer(long id) {
+        return CustomerDto.builder().id(id).firstName("John").lastName("Doe " + id).build();
+    }
+}
@@ -0,0 +1,196 @@
+package health.services;
+
+import health.models.Chat;
+import health.models.Message;
+import health.models.MessageArchive;
+import health.models.auth.Role;
+import health.repos.ChatRepo;
+import health.repos.MessageArchiveRepo;
+import health.repos.MessageRepo;
+import health.utils.MessageBlockCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageArchiveServiceTest {
+
+    private static final int BLOCK_SIZE = 3;
+
+    @Mock
+    private ChatRepo chatRepository;
+
+    @Mock
+    private MessageRepo messageRepository;
+
+    @Mock
+    private MessageArchiveRepo archiveRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MessageArchiveService archiveService;
+    private Chat chat;
+    private Instant cutoff;
+
+    @BeforeEach
+    void setUp() {
+        archiveService = new MessageArchiveService(chatRepository, messageRepository, archiveRepository,
+                transactionManager, true, 365, BLOCK_SIZE, 2);
+        chat = Chat.builder().id(1L).build();
+        cutoff = Instant.parse("2025-01-01T00:00:00Z");
+    }
+
+    @Test
+    void archiveBlock_WhenWholeBlockIsOld_ShouldMoveItAndAdvanceCheckpoint() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(chatRepository.findById(1L)).thenReturn(Optional.of(chat));
+        var messages = messages(1, 3, cutoff.minus(Duration.ofDays(1)));
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 0L, PageRequest.of(0, BLOCK_SIZE)))
+                .thenReturn(new SliceImpl<>(messages));
+        when(chatRepository.advanceArchivedSeq(1L, 0L, 3L)).thenReturn(1);
+
+        // Act
+        boolean archived = archiveService.archiveBlock(1L, cutoff);
+
+        // Assert
+        assertTrue(archived);
+        var block = ArgumentCaptor.forClass(MessageArchive.class);
+        verify(archiveRepository).save(block.capture());
+        assertEquals(1L, block.getValue().getFirstSeq());
+        assertEquals(3L, block.getValue().getLastSeq());
+        assertEquals(3, block.getValue().getMessageCount());
+        verify(messageRepository).deleteByChatAndSeqRange(chat, 0L, 3L);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void archiveBlock_WhenBlockHasRecentMessage_ShouldKeepIt() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(chatRepository.findById(1L)).thenReturn(Optional.of(chat));
+        var messages = new ArrayList<>(messages(1, 2, cutoff.minus(Duration.ofDays(1))));
+        messages.add(message(3, cutoff.plusSeconds(1)));
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 0L, PageRequest.of(0, BLOCK_SIZE)))
+                .thenReturn(new SliceImpl<>(messages));
+
+        // Act
+        boolean archived = archiveService.archiveBlock(1L, cutoff);
+
+        // Assert
+        assertFalse(archived);
+        verify(chatRepository, never()).advanceArchivedSeq(anyLong(), anyLong(), anyLong());
+        verifyNoInteractions(archiveRepository);
+    }
+
+    @Test
+    void archiveBlock_WhenAnotherNodeMovedCheckpoint_ShouldNotWriteBlock() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(chatRepository.findById(1L)).thenReturn(Optional.of(chat));
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 0L, PageRequest.of(0, BLOCK_SIZE)))
+                .thenReturn(new SliceImpl<>(messages(1, 3, cutoff.minus(Duration.ofDays(1)))));
+        when(chatRepository.advanceArchivedSeq(1L, 0L, 3L)).thenReturn(0);
+
+        // Act
+        boolean archived = archiveService.archiveBlock(1L, cutoff);
+
+        // Assert
+        assertFalse(archived);
+        verifyNoInteractions(archiveRepository);
+        verify(messageRepository, never()).deleteByChatAndSeqRange(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void archiveOlderThan_WhenRunLimitReached_ShouldResumeWithSameChat() {
+        // Arrange
+        var service = spy(archiveService);
+        when(chatRepository.getChatIdsToArchive(0L, cutoff, BLOCK_SIZE, 100)).thenReturn(List.of(5L));
+        doReturn(true).when(service).archiveBlock(5L, cutoff);
+
+        // Act
+        int archived = service.archiveOlderThan(cutoff);
+        service.archiveOlderThan(cutoff);
+
+        // Assert
+        assertEquals(2, archived);
+        verify(chatRepository).getChatIdsToArchive(4L, cutoff, BLOCK_SIZE, 100);
+    }
+
+    @Test
+    void getBefore_ShouldDecodeNewestArchivedMessagesBeforeSeq() {
+        // Arrange
+        var sendTime = cutoff.minus(Duration.ofDays(30));
+        var older = block(1, 3, sendTime);
+        var newer = block(4, 6, sendTime);
+        when(archiveRepository.getBlocksByChatAndFirstSeqLessThanOrderByLastSeqDesc(chat, 6L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(newer, older));
+
+        // Act
+        List<Message> result = archiveService.getBefore(chat, 6L, 4);
+
+        // Assert
+        assertEquals(List.of(2L, 3L, 4L, 5L), result.stream().map(Message::getSeq).toList());
+        assertEquals("message 2", result.get(0).getText());
+        assertEquals(sendTime, result.get(0).getSendTime());
+        assertSame(chat, result.get(0).getChat());
+    }
+
+    @Test
+    void getAfter_ShouldSkipMessagesUpToSeq() {
+        // Arrange
+        var sendTime = cutoff.minus(Duration.ofDays(30));
+        when(archiveRepository.getBlocksByChatAndLastSeqGreaterThanOrderByLastSeqAsc(chat, 2L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(block(1, 3, sendTime)));
+
+        // Act
+        List<Message> result = archiveService.getAfter(chat, 2L, 2);
+
+        // Assert
+        assertEquals(List.of(3L), result.stream().map(Message::getSeq).toList());
+    }
+
+    private MessageArchive block(long firstSeq, long lastSeq, Instant sendTime) {
+        return MessageArchive.builder()
+                .chat(chat)
+                .firstSeq(firstSeq)
+                .lastSeq(lastSeq)
+                .payload(MessageBlockCodec.encode(messages(firstSeq, lastSeq, sendTime)))
+                .build();
+    }
+
+    private List<Message> messages(long firstSeq, long lastSeq, Instant sendTime) {
+        return LongStream.rangeClosed(firstSeq, lastSeq).mapToObj(seq -> message(seq, sendTime)).toList();
+    }
+
+    private Message message(long seq, Instant sendTime) {
+        return Message.builder()
+                .id(100 + seq)
+                .chat(chat)
+                .role(Role.CUSTOMER)
+                .text("message " + seq)
+                .sendTime(sendTime)
+                .seq(seq)
+                .build();
+    }
+}
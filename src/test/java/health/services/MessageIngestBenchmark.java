@@ -0,0 +1,208 @@
+package health.services;
+
+import health.cache.ChatTailCache;
+import health.models.Chat;
+import health.models.Message;
+import health.models.auth.Role;
+import health.models.mapper.MessageMapper;
+import health.pubsub.InMemoryPubSub;
+import health.repos.ChatBatchRepo;
+import health.repos.ChatRepo;
+import health.repos.MessageRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput of direct vs group-commit message ingestion against a latency model of the database:
+ * every statement costs one round trip, a commit costs a log flush, connections come from a pool of
+ * 10 (as configured for Hikari) and the chat row stays locked from the sequence update to commit.
+ * <p>
+ * Not part of the regular test run, start it with {@code mvn test -Dtest=MessageIngestBenchmark}.
+ */
+class MessageIngestBenchmark {
+
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(300);
+    private static final long COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long ROW_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+    private static final int POOL_SIZE = 10;
+    private static final int CLIENTS = 64;
+    private static final int CHATS = 200;
+    private static final int MESSAGES_PER_CLIENT = 200;
+
+    @Test
+    void compareDirectAndGroupCommit() throws Exception {
+        var direct = run("direct");
+        var groupCommit = run(MessageIngestService.MODE_GROUP_COMMIT);
+        System.out.printf("direct:       %8.0f msg/s, p99 %6.2f ms%n", direct.throughput(), direct.p99Millis());
+        System.out.printf("group-commit: %8.0f msg/s, p99 %6.2f ms%n", groupCommit.throughput(), groupCommit.p99Millis());
+    }
+
+    private Result run(String mode) throws Exception {
+        var database = new SimulatedDatabase();
+        var pubSub = new InMemoryPubSub(1, 10_000);
+        var messageService = new MessageService(database.messageRepo(), database.chatRepo(), event -> { },
+                new ChatTailCache(new MessageMapper(), 64, 1 << 20), new MessageMapper(), pubSub, null);
+        var ingestService = new MessageIngestService(messageService, database.messageRepo(), database.chatRepo(),
+                event -> { }, pubSub, database, mode, 0, 500, 100_000, 60_000);
+        var transactionTemplate = new TransactionTemplate(database);
+        Function<Message, Message> ingest = MessageIngestService.MODE_GROUP_COMMIT.equals(mode)
+                ? message -> ingestService.ingest(message).orElseThrow()
+                : message -> transactionTemplate.execute(status -> messageService.saveOrUpdateMessage(message));
+        ingestService.start();
+
+        var latencies = new long[CLIENTS * MESSAGES_PER_CLIENT];
+        var next = new AtomicInteger();
+        var done = new CountDownLatch(CLIENTS);
+        long started = System.nanoTime();
+        for (int client = 0; client < CLIENTS; client++) {
+            int clientId = client;
+            new Thread(() -> {
+                for (int i = 0; i < MESSAGES_PER_CLIENT; i++) {
+                    var chat = Chat.builder().id((clientId * 31L + i) % CHATS + 1).build();
+                    long sent = System.nanoTime();
+                    ingest.apply(Message.builder()
+                            .chat(chat)
+                            .role(i % 2 == 0 ? Role.CUSTOMER : Role.DOCTOR)
+                            .text("message " + i)
+                            .sendTime(Instant.now())
+                            .build());
+                    latencies[next.getAndIncrement()] = System.nanoTime() - sent;
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - started;
+        ingestService.stop();
+
+        assertEquals(latencies.length, database.stored.get());
+        Arrays.sort(latencies);
+        return new Result(latencies.length * 1e9 / elapsed, latencies[(int) (latencies.length * 0.99)] / 1e6);
+    }
+
+    private record Result(double throughput, double p99Millis) {
+    }
+
+    private static void roundTrip(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+
+    /**
+     * Transaction manager and repositories sharing one latency model.
+     */
+    private static class SimulatedDatabase implements PlatformTransactionManager {
+
+        private final Semaphore connections = new Semaphore(POOL_SIZE, true);
+        private final Map<Long, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+        private final Map<Long, AtomicLong> sequences = new ConcurrentHashMap<>();
+        private final ThreadLocal<List<ReentrantLock>> heldLocks = ThreadLocal.withInitial(ArrayList::new);
+        private final AtomicLong ids = new AtomicLong();
+        private final AtomicLong stored = new AtomicLong();
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            connections.acquireUninterruptibly();
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            roundTrip(COMMIT_NANOS);
+            release();
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            release();
+        }
+
+        private void release() {
+            heldLocks.get().forEach(ReentrantLock::unlock);
+            heldLocks.get().clear();
+            connections.release();
+        }
+
+        private long append(long chatId, int count) {
+            var lock = rowLocks.computeIfAbsent(chatId, id -> new ReentrantLock());
+            lock.lock();
+            heldLocks.get().add(lock);
+            roundTrip(ROUND_TRIP_NANOS);
+            return sequences.computeIfAbsent(chatId, id -> new AtomicLong()).addAndGet(count);
+        }
+
+        private Map<Long, Long> appendAll(Collection<ChatBatchRepo.MessageAppend> appends) {
+            Map<Long, Long> lastSeqs = new HashMap<>();
+            appends.stream()
+                    .sorted(Comparator.comparingLong(ChatBatchRepo.MessageAppend::chatId))
+                    .forEach(append -> {
+                        var lock = rowLocks.computeIfAbsent(append.chatId(), id -> new ReentrantLock());
+                        lock.lock();
+                        heldLocks.get().add(lock);
+                        lastSeqs.put(append.chatId(), sequences.computeIfAbsent(append.chatId(), id -> new AtomicLong()).addAndGet(append.count()));
+                    });
+            roundTrip(ROUND_TRIP_NANOS + appends.size() * ROW_NANOS);
+            return lastSeqs;
+        }
+
+        @SuppressWarnings("unchecked")
+        ChatRepo chatRepo() {
+            return (ChatRepo) Proxy.newProxyInstance(ChatRepo.class.getClassLoader(), new Class<?>[]{ChatRepo.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "appendMessage" -> append((long) args[0], 1);
+                        case "appendMessages" -> appendAll((Collection<ChatBatchRepo.MessageAppend>) args[0]);
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        @SuppressWarnings("unchecked")
+        MessageRepo messageRepo() {
+            return (MessageRepo) Proxy.newProxyInstance(MessageRepo.class.getClassLoader(), new Class<?>[]{MessageRepo.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "save" -> {
+                            roundTrip(ROUND_TRIP_NANOS + ROW_NANOS);
+                            var message = (Message) args[0];
+                            message.setId(ids.incrementAndGet());
+                            stored.incrementAndGet();
+                            yield message;
+                        }
+                        case "insertAll" -> {
+                            var messages = (List<Message>) args[0];
+                            int statements = (messages.size() + 499) / 500;
+                            roundTrip(statements * ROUND_TRIP_NANOS + messages.size() * ROW_NANOS);
+                            messages.forEach(message -> message.setId(ids.incrementAndGet()));
+                            stored.addAndGet(messages.size());
+                            yield null;
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
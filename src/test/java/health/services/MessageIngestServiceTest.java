@@ -0,0 +1,218 @@
+package health.services;
+
+import health.models.Chat;
+import health.models.Message;
+import health.models.auth.Role;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.realtime.MessageCreatedEvent;
+import health.repos.ChatBatchRepo.MessageAppend;
+import health.repos.ChatRepo;
+import health.repos.MessageRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageIngestServiceTest {
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private MessageRepo messageRepository;
+
+    @Mock
+    private ChatRepo chatRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PubSub pubSub;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MessageIngestService ingestService;
+    private Chat chat;
+    private Chat otherChat;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = service(MessageIngestService.MODE_GROUP_COMMIT);
+        chat = Chat.builder().id(1L).build();
+        otherChat = Chat.builder().id(2L).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        ingestService.stop();
+    }
+
+    @Test
+    void ingest_InDirectMode_ShouldDelegateToMessageService() {
+        // Arrange
+        ingestService = service("direct");
+        var message = message(chat, Role.CUSTOMER, "hi");
+        when(messageService.saveOrUpdateMessage(message)).thenReturn(message);
+
+        // Act
+        var result = ingestService.ingest(message);
+
+        // Assert
+        assertEquals(message, result.orElseThrow());
+        verifyNoInteractions(messageRepository, chatRepository);
+    }
+
+    @Test
+    void flush_ShouldAssignContiguousSeqsPerChatInSubmissionOrder() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        var first = pending(message(chat, Role.CUSTOMER, "first"));
+        var other = pending(message(otherChat, Role.DOCTOR, "other"));
+        var second = pending(message(chat, Role.DOCTOR, "second"));
+        var third = pending(message(chat, Role.CUSTOMER, "third"));
+        when(chatRepository.appendMessages(List.of(
+                new MessageAppend(1L, 3, "third", "CUSTOMER", third.message().getSendTime(), 3, 2),
+                new MessageAppend(2L, 1, "other", "DOCTOR", other.message().getSendTime(), 0, 1))))
+                .thenReturn(Map.of(1L, 12L, 2L, 1L));
+
+        // Act
+        ingestService.flush(List.of(first, other, second, third));
+
+        // Assert
+        assertEquals(10L, first.stored().join().getSeq());
+        assertEquals(11L, second.stored().join().getSeq());
+        assertEquals(12L, third.stored().join().getSeq());
+        assertEquals(1L, other.stored().join().getSeq());
+        verify(messageRepository).insertAll(List.of(first.message(), other.message(), second.message(), third.message()));
+        verify(eventPublisher).publishEvent(new MessageCreatedEvent(first.message()));
+        verify(pubSub).publish(Topic.chat(1L), 12L);
+        verify(pubSub).publish(Topic.chat(2L), 1L);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void flush_WhenBatchFails_ShouldRetryMessagesOneByOne() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        var good = pending(message(chat, Role.CUSTOMER, "good"));
+        var orphan = pending(message(otherChat, Role.CUSTOMER, "orphan"));
+        when(chatRepository.appendMessages(anyCollection())).thenAnswer(invocation -> {
+            Collection<MessageAppend> appends = invocation.getArgument(0);
+            // Chat 2 was deleted meanwhile
+            return appends.stream().anyMatch(append -> append.chatId() == 1L) ? Map.of(1L, 5L) : Map.of();
+        });
+
+        // Act
+        ingestService.flush(List.of(good, orphan));
+
+        // Assert
+        assertEquals(5L, good.stored().join().getSeq());
+        assertTrue(orphan.stored().isCompletedExceptionally());
+        verify(messageRepository).insertAll(List.of(good.message()));
+        verify(eventPublisher).publishEvent(new MessageCreatedEvent(good.message()));
+        verify(eventPublisher, never()).publishEvent(new MessageCreatedEvent(orphan.message()));
+    }
+
+    @Test
+    void ingest_ShouldWaitForGroupCommit() {
+        // Arrange
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(chatRepository.appendMessages(anyCollection())).thenReturn(Map.of(1L, 7L));
+        doAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            messages.forEach(message -> message.setId(100L));
+            return null;
+        }).when(messageRepository).insertAll(any());
+        ingestService.start();
+
+        // Act
+        var result = ingestService.ingest(message(chat, Role.DOCTOR, "hello"));
+
+        // Assert
+        assertEquals(100L, result.orElseThrow().getId());
+        assertEquals(7L, result.get().getSeq());
+        assertEquals(0, ingestService.getQueuedCount());
+    }
+
+    @Test
+    void ingest_WhenAckTimesOutBeforeWriterTakesMessage_ShouldNotStoreIt() throws Exception {
+        // Arrange
+        var writerBusy = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            writerBusy.countDown();
+            release.await();
+            return new SimpleTransactionStatus();
+        });
+        when(chatRepository.appendMessages(anyCollection())).thenReturn(Map.of(1L, 1L));
+        ingestService = new MessageIngestService(messageService, messageRepository, chatRepository, eventPublisher,
+                pubSub, transactionManager, MessageIngestService.MODE_GROUP_COMMIT, 0, 500, 100, 100);
+        ingestService.start();
+        var taken = message(chat, Role.CUSTOMER, "taken");
+        var withdrawn = message(otherChat, Role.CUSTOMER, "withdrawn");
+        var takenResult = CompletableFuture.supplyAsync(() -> ingestService.ingest(taken));
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        // Act
+        var result = ingestService.ingest(withdrawn);
+        release.countDown();
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertEquals(1L, takenResult.get(5, TimeUnit.SECONDS).orElseThrow().getSeq());
+        ingestService.stop();
+        assertEquals(0, ingestService.getQueuedCount());
+        verify(messageRepository).insertAll(List.of(taken));
+        verify(messageRepository, never()).insertAll(argThat(messages -> messages.contains(withdrawn)));
+        verify(eventPublisher, never()).publishEvent(new MessageCreatedEvent(withdrawn));
+    }
+
+    @Test
+    void ingest_WhenWriterNotRunning_ShouldReject() {
+        // Act
+        var result = ingestService.ingest(message(chat, Role.DOCTOR, "hello"));
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(chatRepository, messageRepository);
+    }
+
+    private MessageIngestService service(String mode) {
+        return new MessageIngestService(messageService, messageRepository, chatRepository, eventPublisher,
+                pubSub, transactionManager, mode, 0, 500, 100, 5_000);
+    }
+
+    private static MessageIngestService.PendingMessage pending(Message message) {
+        return new MessageIngestService.PendingMessage(message);
+    }
+
+    private static Message message(Chat chat, Role role, String text) {
+        return Message.builder()
+                .chat(chat)
+                .role(role)
+                .text(text)
+                .sendTime(Instant.now())
+                .build();
+    }
+}
@@ -1,21 +1,38 @@
 package health.services;
 
+import health.cache.ChatTailCache;
 import health.models.Chat;
 import health.models.Message;
+import health.models.MessageSearchQuery;
+import health.repos.MessageSearchRepo;
+import health.models.dto.MessageDto;
+import health.models.dto.MessageSyncDto;
+import health.models.mapper.MessageMapper;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
+import health.realtime.MessageCreatedEvent;
 import health.models.auth.Role;
+import health.repos.ChatRepo;
 import health.repos.MessageRepo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,6 +41,24 @@ class MessageServiceTest {
     @Mock
     private MessageRepo messageRepository;
 
+    @Mock
+    private ChatRepo chatRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ChatTailCache tailCache;
+
+    @Mock
+    private PubSub pubSub;
+
+    @Mock
+    private MessageArchiveService archiveService;
+
+    @Spy
+    private MessageMapper messageMapper = new MessageMapper();
+
     @InjectMocks
     private MessageService messageService;
 
@@ -49,14 +84,125 @@ class MessageServiceTest {
     void getMessagesByChat_ShouldReturnMessagesForChat() {
         // Arrange
         List<Message> expectedMessages = List.of(message);
-        when(messageRepository.getMessagesByChat(chat)).thenReturn(expectedMessages);
+        when(messageRepository.getMessagesByChatOrderBySeqAsc(chat)).thenReturn(expectedMessages);
 
         // Act
         List<Message> result = messageService.getMessagesByChat(chat);
 
         // Assert
         assertEquals(expectedMessages, result);
-        verify(messageRepository).getMessagesByChat(chat);
+        verify(messageRepository).getMessagesByChatOrderBySeqAsc(chat);
+    }
+
+    @Test
+    void getMessagesAfter_ShouldPageForwardFromSeq() {
+        // Arrange
+        Slice<Message> expected = new SliceImpl<>(List.of(message), PageRequest.of(0, 20), true);
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 5L, PageRequest.of(0, 20)))
+                .thenReturn(expected);
+
+        // Act
+        Slice<Message> result = messageService.getMessagesAfter(chat, 5L, 20);
+
+        // Assert
+        assertEquals(expected, result);
+        assertTrue(result.hasNext());
+    }
+
+    @Test
+    void getMessagesAfter_ShouldClampLimit() {
+        // Arrange
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(any(), anyLong(), any()))
+                .thenReturn(new SliceImpl<>(List.of()));
+
+        // Act
+        messageService.getMessagesAfter(chat, 0L, 10_000);
+
+        // Assert
+        verify(messageRepository).getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 0L, PageRequest.of(0, MessageService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    void getMessagesBefore_ShouldReturnOlderPageInAscendingOrder() {
+        // Arrange
+        Message older = message.toBuilder().id(2L).seq(8L).build();
+        Message newer = message.toBuilder().id(3L).seq(9L).build();
+        when(messageRepository.getMessagesByChatAndSeqLessThanOrderBySeqDesc(chat, 10L, PageRequest.of(0, 2)))
+                .thenReturn(new SliceImpl<>(List.of(newer, older), PageRequest.of(0, 2), true));
+
+        // Act
+        Slice<Message> result = messageService.getMessagesBefore(chat, 10L, 2);
+
+        // Assert
+        assertEquals(List.of(older, newer), result.getContent());
+        assertTrue(result.hasNext());
+    }
+
+    @Test
+    void getMessagesBefore_WhenHotMessagesRunOut_ShouldContinueFromArchive() {
+        // Arrange
+        chat.setArchivedSeq(8L);
+        Message archived7 = message.toBuilder().id(7L).seq(7L).build();
+        Message archived8 = message.toBuilder().id(8L).seq(8L).build();
+        Message hot = message.toBuilder().id(9L).seq(9L).build();
+        when(messageRepository.getMessagesByChatAndSeqLessThanOrderBySeqDesc(chat, 10L, PageRequest.of(0, 3)))
+                .thenReturn(new SliceImpl<>(List.of(hot), PageRequest.of(0, 3), false));
+        when(archiveService.getBefore(chat, 9L, 3)).thenReturn(List.of(message.toBuilder().seq(6L).build(), archived7, archived8));
+
+        // Act
+        Slice<Message> result = messageService.getMessagesBefore(chat, 10L, 3);
+
+        // Assert
+        assertEquals(List.of(archived7, archived8, hot), result.getContent());
+        assertTrue(result.hasNext());
+    }
+
+    @Test
+    void getMessagesBefore_WhenBelowArchiveCheckpoint_ShouldReadOnlyArchive() {
+        // Arrange
+        chat.setArchivedSeq(400L);
+        Message archived = message.toBuilder().seq(1L).build();
+        when(archiveService.getBefore(chat, 2L, 21)).thenReturn(List.of(archived));
+
+        // Act
+        Slice<Message> result = messageService.getMessagesBefore(chat, 2L, 20);
+
+        // Assert
+        assertEquals(List.of(archived), result.getContent());
+        assertFalse(result.hasNext());
+        verify(messageRepository, never()).getMessagesByChatAndSeqLessThanOrderBySeqDesc(any(), anyLong(), any());
+    }
+
+    @Test
+    void getMessagesAfter_WhenBelowArchiveCheckpoint_ShouldStartWithArchive() {
+        // Arrange
+        chat.setArchivedSeq(2L);
+        chat.setLastMessageSeq(5L);
+        Message archived = message.toBuilder().seq(2L).build();
+        Message hot = message.toBuilder().seq(3L).build();
+        when(archiveService.getAfter(chat, 1L, 3)).thenReturn(List.of(archived));
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 2L, PageRequest.of(0, 1)))
+                .thenReturn(new SliceImpl<>(List.of(hot), PageRequest.of(0, 1), true));
+
+        // Act
+        Slice<Message> result = messageService.getMessagesAfter(chat, 1L, 2);
+
+        // Assert
+        assertEquals(List.of(archived, hot), result.getContent());
+        assertTrue(result.hasNext());
+    }
+
+    @Test
+    void getFirstSeqsSince_ShouldMapSeqsByChat() {
+        // Arrange
+        var since = Instant.parse("2024-01-01T10:00:00Z");
+        when(messageRepository.getFirstSeqsSince(List.of(1L, 2L), since)).thenReturn(List.of(chatSeq(1L, 4L), chatSeq(2L, 9L)));
+
+        // Act
+        Map<Long, Long> result = messageService.getFirstSeqsSince(List.of(1L, 2L), since);
+
+        // Assert
+        assertEquals(Map.of(1L, 4L, 2L, 9L), result);
     }
 
     @Test
@@ -95,7 +241,9 @@ class MessageServiceTest {
                 .text("I can help you with that. What's your question?")
                 .sendTime(Instant.now())
                 .build();
-                
+
+        when(chatRepository.appendMessage(1L, "I can help you with that. What's your question?", "DOCTOR", newMessage.getSendTime()))
+                .thenReturn(4L);
         when(messageRepository.save(newMessage)).thenReturn(
                 Message.builder()
                         .id(2L)
@@ -114,7 +262,103 @@ class MessageServiceTest {
         assertEquals(Role.DOCTOR, result.getRole());
         assertEquals("I can help you with that. What's your question?", result.getText());
         assertNotNull(result.getSendTime());
+        assertEquals(4L, newMessage.getSeq());
         verify(messageRepository).save(newMessage);
+        verify(eventPublisher).publishEvent(new MessageCreatedEvent(result));
+    }
+
+    @Test
+    void saveOrUpdateMessage_WhenMessageExists_ShouldKeepSeq() {
+        // Arrange
+        message.setSeq(3L);
+        when(messageRepository.save(message)).thenReturn(message);
+
+        // Act
+        Message result = messageService.saveOrUpdateMessage(message);
+
+        // Assert
+        assertEquals(3L, result.getSeq());
+        verify(chatRepository, never()).appendMessage(anyLong(), any(), any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+        verify(pubSub, never()).publish(any(), anyLong());
+    }
+
+    @Test
+    void saveOrUpdateMessage_WhenNew_ShouldNotifyOtherNodesWithItsSeq() {
+        // Arrange
+        Message newMessage = Message.builder()
+                .chat(chat)
+                .role(Role.CUSTOMER)
+                .text("Are you available tomorrow?")
+                .sendTime(Instant.now())
+                .build();
+        when(chatRepository.appendMessage(1L, "Are you available tomorrow?", "CUSTOMER", newMessage.getSendTime()))
+                .thenReturn(7L);
+        when(messageRepository.save(newMessage)).thenReturn(newMessage);
+
+        // Act
+        messageService.saveOrUpdateMessage(newMessage);
+
+        // Assert
+        verify(pubSub).publish(Topic.chat(1L), 7L);
+    }
+
+    @Test
+    void getMessagePageBefore_WhenTailCached_ShouldNotQueryRepository() {
+        // Arrange
+        chat.setLastMessageSeq(12L);
+        var cached = List.of(MessageDto.builder().chatId(1L).seq(11L).build(), MessageDto.builder().chatId(1L).seq(12L).build());
+        when(tailCache.getBefore(1L, 12L, Long.MAX_VALUE, 2)).thenReturn(Optional.of(cached));
+
+        // Act
+        MessageSyncDto result = messageService.getMessagePageBefore(chat, Long.MAX_VALUE, 2);
+
+        // Assert
+        assertEquals(cached, result.messages());
+        assertEquals(11L, result.cursor());
+        assertTrue(result.hasMore());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void getMessagePageBefore_WhenNewestPageNotCached_ShouldLoadTail() {
+        // Arrange
+        chat.setLastMessageSeq(1L);
+        message.setSeq(1L);
+        var cached = List.of(messageMapper.mapToDto(message));
+        when(tailCache.getCapacity()).thenReturn(64);
+        when(tailCache.getBefore(1L, 1L, Long.MAX_VALUE, 50))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(cached));
+        when(messageRepository.getMessagesByChatAndSeqLessThanOrderBySeqDesc(chat, Long.MAX_VALUE, PageRequest.of(0, 64)))
+                .thenReturn(new SliceImpl<>(List.of(message), PageRequest.of(0, 64), false));
+
+        // Act
+        MessageSyncDto result = messageService.getMessagePageBefore(chat, Long.MAX_VALUE, 50);
+
+        // Assert
+        verify(tailCache).load(1L, cached, 1L);
+        assertEquals(cached, result.messages());
+        assertFalse(result.hasMore());
+    }
+
+    @Test
+    void getMessagePageAfter_WhenNotCached_ShouldFallBackToRepository() {
+        // Arrange
+        chat.setLastMessageSeq(30L);
+        message.setSeq(6L);
+        when(tailCache.getAfter(1L, 30L, 5L, 20)).thenReturn(Optional.empty());
+        when(messageRepository.getMessagesByChatAndSeqGreaterThanOrderBySeqAsc(chat, 5L, PageRequest.of(0, 20)))
+                .thenReturn(new SliceImpl<>(List.of(message), PageRequest.of(0, 20), true));
+
+        // Act
+        MessageSyncDto result = messageService.getMessagePageAfter(chat, 5L, 20);
+
+        // Assert
+        assertEquals(1, result.messages().size());
+        assertEquals(6L, result.cursor());
+        assertTrue(result.hasMore());
+        verify(tailCache, never()).load(anyLong(), any(), anyLong());
     }
 
     @Test
@@ -125,4 +369,34 @@ class MessageServiceTest {
         // Assert
         verify(messageRepository).delete(message);
     }
-}
\ No newline at end of file
+
+    @Test
+    void searchInChat_ShouldClampPageSizeAndScopeToChat() {
+        // Arrange
+        var query = MessageSearchQuery.parse("appointment").orElseThrow();
+        var pageable = PageRequest.of(0, MessageService.MAX_SEARCH_PAGE_SIZE);
+        when(messageRepository.search(MessageSearchRepo.Scope.CHAT, 1L, query, pageable))
+                .thenReturn(new SliceImpl<>(List.of(), pageable, false));
+
+        // Act
+        var result = messageService.searchInChat(chat, query, -3, 1_000);
+
+        // Assert
+        assertFalse(result.hasNext());
+        verify(messageRepository).search(MessageSearchRepo.Scope.CHAT, 1L, query, pageable);
+    }
+
+    private static ChatRepo.ChatSeq chatSeq(long chatId, long seq) {
+        return new ChatRepo.ChatSeq() {
+            @Override
+            public long getChatId() {
+                return chatId;
+            }
+
+            @Override
+            public long getSeq() {
+                return seq;
+            }
+        };
+    }
+}
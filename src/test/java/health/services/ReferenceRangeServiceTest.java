@@ -0,0 +1,132 @@
+package health.services;
+
+import health.models.Analysis;
+import health.models.AnalysisFlag;
+import health.models.Customer;
+import health.models.Gender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceRangeServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private Path catalogFile;
+    private ReferenceRangeService referenceRangeService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        catalogFile = directory.resolve("reference-ranges.csv");
+        write("""
+                # comment
+                name,unit,gender,min_age,max_age,low,high
+                Hemoglobin,g/L,,,,115,170
+                Hemoglobin,g/L,FEMALE,,,120,150
+                Hemoglobin,g/L,FEMALE,12,17,115,155
+                Cholesterol,mmol/L,,,,,5.2
+                """);
+        referenceRangeService = new ReferenceRangeService(new DefaultResourceLoader(), catalogFile.toUri().toString());
+        referenceRangeService.load();
+    }
+
+    @Test
+    void flag_ShouldUseMostSpecificRangeForCustomer() {
+        // Arrange
+        var woman = Customer.builder().id(1L).gender(Gender.FEMALE).age(40).build();
+        var girl = Customer.builder().id(2L).gender(Gender.FEMALE).age(15).build();
+        var unknown = Customer.builder().id(3L).build();
+
+        // Act
+        var adult = analysis(woman, "Hemoglobin", "g/L", "118");
+        var teen = analysis(girl, "Hemoglobin", "g/L", "118");
+        var general = analysis(unknown, "hemoglobin", "G/L", "118");
+        var high = analysis(unknown, "Cholesterol", "mmol/L", "6,1");
+
+        // Assert
+        assertEquals(AnalysisFlag.LOW, adult.getFlag());
+        assertEquals(AnalysisFlag.NORMAL, teen.getFlag());
+        assertEquals(AnalysisFlag.NORMAL, general.getFlag());
+        assertEquals(AnalysisFlag.HIGH, high.getFlag());
+    }
+
+    @Test
+    void flag_WhenNotNumericOrNoRange_ShouldLeaveFlagEmpty() {
+        // Arrange
+        var customer = Customer.builder().id(1L).gender(Gender.MALE).build();
+
+        // Act
+        var text = analysis(customer, "Hemoglobin", "g/L", "hemolyzed");
+        var otherUnit = analysis(customer, "Hemoglobin", "g/dL", "9.1");
+
+        // Assert
+        assertNull(text.getFlag());
+        assertNull(otherUnit.getFlag());
+    }
+
+    @Test
+    void flag_WhenNoRangeForUnit_ShouldUseCanonicalValue() {
+        // Arrange
+        var customer = Customer.builder().id(1L).gender(Gender.MALE).build();
+        var analysis = Analysis.builder().customer(customer).name("Hemoglobin").unit("g/dL").value("9.1")
+                .canonicalValue(91.0).canonicalUnit("g/L").date(Instant.now()).build();
+
+        // Act
+        referenceRangeService.flag(analysis);
+
+        // Assert
+        assertEquals(AnalysisFlag.LOW, analysis.getFlag());
+    }
+
+    @Test
+    void reload_WhenFileIsBroken_ShouldKeepCurrentCatalog() throws IOException {
+        // Arrange
+        write("Hemoglobin,g/L,,,,low,170\n");
+
+        // Act
+        boolean reloaded = referenceRangeService.reload();
+
+        // Assert
+        assertFalse(reloaded);
+        assertEquals(4, referenceRangeService.getCatalog().size());
+    }
+
+    @Test
+    void reload_WhenFileChanged_ShouldSwapCatalog() throws IOException {
+        // Arrange
+        var unchanged = referenceRangeService.reload();
+        write("Glucose,mmol/L,,,,3.9,5.5\n");
+
+        // Act
+        boolean reloaded = referenceRangeService.reload();
+
+        // Assert
+        assertFalse(unchanged);
+        assertTrue(reloaded);
+        assertEquals(1, referenceRangeService.getCatalog().size());
+        assertTrue(referenceRangeService.getCatalog().find("Glucose", "mmol/L", null, null).isPresent());
+    }
+
+    private Analysis analysis(Customer customer, String name, String unit, String value) {
+        var analysis = Analysis.builder().customer(customer).name(name).unit(unit).value(value).date(Instant.now()).build();
+        referenceRangeService.flag(analysis);
+        return analysis;
+    }
+
+    // Bumps the modification time, file systems may not tell writes within the same second apart
+    private void write(String content) throws IOException {
+        long previous = Files.exists(catalogFile) ? Files.getLastModifiedTime(catalogFile).toMillis() : 0;
+        Files.writeString(catalogFile, content);
+        Files.setLastModifiedTime(catalogFile, FileTime.fromMillis(Math.max(previous + 2000, System.currentTimeMillis())));
+    }
+}
@@ -2,6 +2,8 @@ package health.services;
 
 import health.models.Doctor;
 import health.models.Timetable;
+import health.pubsub.PubSub;
+import health.pubsub.Topic;
 import health.repos.TimetableRepo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,6 +27,9 @@ class TimetableServiceTest {
     @Mock
     private TimetableRepo timetableRepository;
 
+    @Mock
+    private PubSub pubSub;
+
     @InjectMocks
     private TimetableService timetableService;
 
@@ -206,6 +211,7 @@ class TimetableServiceTest {
         
         assertEquals(timetable1.getId(), savedTimetable.getId());
         assertTrue(savedTimetable.isReserved());
+        verify(pubSub).publish(eq(Topic.doctor(1L)), anyLong());
     }
 
     @Test
@@ -238,14 +244,27 @@ class TimetableServiceTest {
         // Assert
         verify(timetableRepository).getTimetablesByDoctorAndReserved(doctor, false);
         verify(timetableRepository).deleteAll(freeTimetables);
+        verify(pubSub).publish(eq(Topic.doctor(1L)), anyLong());
+    }
+
+    @Test
+    void deleteFreeTimetables_WhenNothingIsFree_ShouldNotNotify() {
+        // Arrange
+        when(timetableRepository.getTimetablesByDoctorAndReserved(doctor, false)).thenReturn(List.of());
+
+        // Act
+        timetableService.deleteFreeTimetables(doctor);
+
+        // Assert
+        verifyNoInteractions(pubSub);
     }
 
     @Test
     void addOrUpdateFromRawTimetable_WithExistingTimetable_ShouldNotCreateNewTimetable() {
         // Arrange
         List<Instant> workingHours = List.of(now);
-        when(timetableRepository.findTimetableByDoctorAndStart(doctor, now))
-                .thenReturn(Optional.of(timetable1));
+        when(timetableRepository.getTimetablesByDoctorAndStartIn(doctor, workingHours))
+                .thenReturn(List.of(timetable1));
 
         // Act
         List<Timetable> result = timetableService.addOrUpdateFromRawTimetable(workingHours, doctor);
@@ -254,6 +273,8 @@ class TimetableServiceTest {
         assertEquals(1, result.size());
         assertEquals(timetable1, result.get(0));
         verify(timetableRepository, never()).save(any(Timetable.class));
+        verify(timetableRepository, never()).saveAll(any());
+        verifyNoInteractions(pubSub);
     }
 
     @Test
@@ -262,18 +283,20 @@ class TimetableServiceTest {
         Instant newTime = now.plusSeconds(10800); // 3 hours later
         List<Instant> workingHours = List.of(newTime);
         
-        when(timetableRepository.findTimetableByDoctorAndStart(doctor, newTime))
-                .thenReturn(Optional.empty());
+        when(timetableRepository.getTimetablesByDoctorAndStartIn(doctor, workingHours))
+                .thenReturn(List.of());
                 
-        when(timetableRepository.save(any(Timetable.class)))
+        when(timetableRepository.saveAll(anyList()))
                 .thenAnswer(invocation -> {
-                    Timetable saved = invocation.getArgument(0);
-                    return Timetable.builder()
-                            .id(3L)
-                            .doctor(saved.getDoctor())
-                            .start(saved.getStart())
-                            .reserved(saved.isReserved())
-                            .build();
+                    List<Timetable> saved = invocation.getArgument(0);
+                    return saved.stream()
+                            .map(timetable -> Timetable.builder()
+                                    .id(3L)
+                                    .doctor(timetable.getDoctor())
+                                    .start(timetable.getStart())
+                                    .reserved(timetable.isReserved())
+                                    .build())
+                            .toList();
                 });
 
         // Act
@@ -286,9 +309,31 @@ class TimetableServiceTest {
         assertEquals(newTime, result.get(0).getStart());
         assertFalse(result.get(0).isReserved());
         
-        verify(timetableRepository).save(argThat(timetable -> 
-                timetable.getDoctor().equals(doctor) &&
-                timetable.getStart().equals(newTime) &&
-                !timetable.isReserved()));
+        verify(timetableRepository).saveAll(argThat((List<Timetable> timetables) ->
+                timetables.size() == 1 &&
+                timetables.get(0).getDoctor().equals(doctor) &&
+                timetables.get(0).getStart().equals(newTime) &&
+                !timetables.get(0).isReserved()));
+    }
+
+    @Test
+    void addOrUpdateFromRawTimetable_WithMixedHours_ShouldSaveOnlyMissingSlotsInOneCall() {
+        // Arrange
+        Instant newTime = now.plusSeconds(10800);
+        List<Instant> workingHours = List.of(now, newTime, newTime);
+        when(timetableRepository.getTimetablesByDoctorAndStartIn(doctor, workingHours))
+                .thenReturn(List.of(timetable1));
+        when(timetableRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        List<Timetable> result = timetableService.addOrUpdateFromRawTimetable(workingHours, doctor);
+
+        // Assert
+        assertEquals(3, result.size());
+        assertEquals(timetable1, result.get(0));
+        assertEquals(newTime, result.get(1).getStart());
+        assertSame(result.get(1), result.get(2));
+        verify(timetableRepository).saveAll(argThat((List<Timetable> timetables) -> timetables.size() == 1));
+        verify(timetableRepository, never()).findTimetableByDoctorAndStart(any(), any());
     }
 }
\ No newline at end of file
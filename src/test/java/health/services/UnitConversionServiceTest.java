@@ -0,0 +1,103 @@
+package health.services;
+
+import health.models.Analysis;
+import health.models.UnitConversionCatalog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitConversionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private UnitConversionService unitConversionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var table = directory.resolve("unit-conversions.csv");
+        Files.writeString(table, """
+                # comment
+                name,unit,canonical_unit,factor
+                Glucose,mg/dL,mmol/L,0.0555
+                Creatinine,mg/dL,umol/L,88.42
+                """);
+        unitConversionService = new UnitConversionService(new DefaultResourceLoader(), table.toUri().toString());
+        unitConversionService.load();
+    }
+
+    @Test
+    void normalize_ShouldConvertIntoCanonicalUnit() {
+        // Act
+        var converted = analysis("glucose", "MG / DL", "100");
+        var canonical = analysis("Glucose", "mmol/L", "5,4");
+        var micro = analysis("Creatinine", "µmol/L", "80");
+
+        // Assert
+        assertEquals(100.0, converted.getNumericValue());
+        assertEquals(5.55, converted.getCanonicalValue(), 1e-9);
+        assertEquals("mmol/L", converted.getCanonicalUnit());
+        assertEquals(5.4, canonical.getCanonicalValue());
+        assertEquals("mmol/L", canonical.getCanonicalUnit());
+        assertEquals(80.0, micro.getCanonicalValue());
+        assertEquals("umol/L", micro.getCanonicalUnit());
+    }
+
+    @Test
+    void normalize_WhenUnitCannotBeConverted_ShouldLeaveCanonicalValueEmpty() {
+        // Act
+        var unknownUnit = analysis("Glucose", "mg/L", "90");
+        var text = analysis("Glucose", "mg/dL", "positive");
+        var unknownName = analysis("Ferritin", "ng/mL", "40");
+
+        // Assert
+        assertNull(unknownUnit.getCanonicalValue());
+        assertNull(unknownUnit.getCanonicalUnit());
+        assertNull(text.getCanonicalValue());
+        assertEquals(40.0, unknownName.getCanonicalValue());
+        assertEquals("ng/mL", unknownName.getCanonicalUnit());
+    }
+
+    @Test
+    void catalog_WhenNameHasTwoCanonicalUnits_ShouldBeRejected() throws IOException {
+        // Arrange
+        var conversions = UnitConversionService.parse(new StringReader("""
+                Hemoglobin,g/dL,g/L,10
+                Hemoglobin,mmol/L,g/dL,1.611
+                """));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new UnitConversionCatalog(conversions));
+        assertThrows(IllegalArgumentException.class, () -> UnitConversionService.parse(new StringReader("Hemoglobin,g/dL,g/L,ten\n")));
+    }
+
+    @Test
+    void load_ShouldReadBundledTable() {
+        // Arrange
+        var bundled = new UnitConversionService(new DefaultResourceLoader(), "classpath:unit-conversions.csv");
+
+        // Act
+        bundled.load();
+
+        // Assert
+        assertTrue(bundled.getCatalog().size() > 0);
+        assertEquals(List.of("mmol/L", "g/L"), List.of(bundled.getCatalog().canonicalUnit("Glucose").orElseThrow(),
+                bundled.getCatalog().canonicalUnit("hemoglobin").orElseThrow()));
+    }
+
+    private Analysis analysis(String name, String unit, String value) {
+        var analysis = Analysis.builder().name(name).unit(unit).value(value).date(Instant.now()).build();
+        unitConversionService.normalize(analysis);
+        return analysis;
+    }
+}
@@ -0,0 +1,88 @@
+package health.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TDigestTest {
+
+    @Test
+    void quantile_ShouldStayCloseToExactValuesWithBoundedSize() {
+        // Arrange
+        var random = new Random(42);
+        var digest = new TDigest(100);
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 50;
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        // Act & Assert
+        for (double q : new double[]{0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            assertEquals(exact, digest.quantile(q), 0.5, "quantile " + q);
+        }
+        assertEquals(values[0], digest.quantile(0));
+        assertEquals(values[values.length - 1], digest.quantile(1));
+        assertEquals(100_000, digest.size());
+        assertTrue(digest.centroids() <= 200, "centroids: " + digest.centroids());
+    }
+
+    @Test
+    void merge_ShouldMatchOneDigestOverAllValues() {
+        // Arrange
+        var random = new Random(7);
+        var whole = new TDigest(100);
+        var parts = new TDigest[8];
+        for (int part = 0; part < parts.length; part++) {
+            parts[part] = new TDigest(100);
+            for (int i = 0; i < 5_000; i++) {
+                double value = random.nextDouble() * 100;
+                parts[part].add(value);
+                whole.add(value);
+            }
+        }
+
+        // Act
+        var merged = new TDigest(100);
+        for (TDigest part : parts) {
+            merged.merge(part);
+        }
+
+        // Assert
+        assertEquals(whole.size(), merged.size());
+        assertEquals(whole.getMin(), merged.getMin());
+        assertEquals(whole.getMax(), merged.getMax());
+        for (double q : new double[]{0.05, 0.5, 0.95}) {
+            assertEquals(q * 100, merged.quantile(q), 1.0, "quantile " + q);
+        }
+        assertEquals(0.3, merged.cdf(30), 0.01);
+    }
+
+    @Test
+    void quantile_WithFewValues_ShouldInterpolateBetweenThem() {
+        // Arrange
+        var digest = new TDigest(100);
+        digest.add(1);
+        digest.add(2);
+        digest.add(3);
+
+        // Act & Assert
+        assertEquals(2, digest.quantile(0.5), 1e-9);
+        assertEquals(1, digest.quantile(0));
+        assertEquals(3, digest.quantile(1));
+        assertEquals(0, digest.cdf(0.5));
+        assertEquals(1, digest.cdf(3));
+    }
+
+    @Test
+    void quantile_WhenEmpty_ShouldBeNaN() {
+        // Act & Assert
+        assertTrue(Double.isNaN(new TDigest(100).quantile(0.5)));
+        assertTrue(Double.isNaN(new TDigest(100).cdf(1)));
+    }
+}